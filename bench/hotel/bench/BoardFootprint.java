@@ -0,0 +1,69 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.BoardGenerator;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Reports the heap used per board cell by a board definition and by each
+ * game played on it, and the time to start a game, on a large generated
+ * board.
+ *
+ * Usage: BoardFootprint [size] [ring length] [hotels] [games]
+ */
+public class BoardFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1001;
+        int ring = (args.length > 1) ? Integer.parseInt(args[1]) : 4 * size;
+        int hotels = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int games = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        Path dir = Files.createTempDirectory("hotel-footprint");
+        try {
+            List<Path> dirs = BoardGenerator.DEFAULT.withDimensions(size, size).withRingLength(ring)
+                    .withHotels(hotels).generateAll(1, 1, dir, 1);
+            long cells = (long) size * size;
+
+            long before = heapUsed();
+            BoardDefinition def = BoardDefinition.parse(dirs.get(0));
+            long definition = heapUsed() - before;
+
+            for (int i = 0; i < 3; i++)     // warm up
+                new Game(new GameObserver() {
+                }, def);
+            Game[] gs = new Game[games];
+            before = heapUsed();
+            long start = System.nanoTime();
+            for (int i = 0; i < games; i++)
+                gs[i] = new Game(new GameObserver() {
+                }, def);
+            long nanos = System.nanoTime() - start;
+            long perGame = (heapUsed() - before) / games;
+
+            System.out.printf("%dx%d board, ring of %d, %d hotels%n", size, size, def.getHotelCards().size() > 0
+                    ? gs[0].getBoard().getRingLength() : 0, def.getHotelCards().size());
+            System.out.printf("definition: %8.2f B/cell%n", (double) definition / cells);
+            System.out.printf("game:       %8.2f B/cell (%,d B)%n", (double) perGame / cells, perGame);
+            System.out.printf("new Game:   %8.3f ms%n", nanos / 1e6 / games);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                    Files.delete(p);
+            }
+        }
+    }
+
+    private static long heapUsed() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
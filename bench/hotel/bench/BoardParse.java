@@ -0,0 +1,141 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.BoardGenerator;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+/**
+ * Measures how fast boards are read: BoardDefinition.parse against the
+ * Scanner and split based parser it replaced (copied below), on large
+ * generated boards. As both open as many files, the time to just list and
+ * read the files is measured too, to tell the cost of parsing from that of
+ * the file system.
+ *
+ * Usage: BoardParse [boards] [size] [hotels] [rounds]
+ */
+public class BoardParse {
+
+    public static void main(String[] args) throws IOException {
+        int boards = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 201;
+        int hotels = (args.length > 2) ? Integer.parseInt(args[2]) : 400;
+        int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+        Path dir = Files.createTempDirectory("hotel-parse");
+        try {
+            List<Path> dirs = BoardGenerator.DEFAULT.withDimensions(size, size).withRingLength(8 * size)
+                    .withHotels(hotels).withCosts(2000, 1.1, 2, 40)
+                    .generateAll(boards, 1, dir, Runtime.getRuntime().availableProcessors());
+            long bytes = 0;
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator)
+                    if (Files.isRegularFile(p))
+                        bytes += Files.size(p);
+            }
+            System.out.printf("%d boards of %dx%d tiles and %d hotels, %.1f KiB each%n", boards, size, size,
+                    hotels, bytes / 1024.0 / boards);
+
+            long io = Long.MAX_VALUE, legacy = Long.MAX_VALUE, parsed = Long.MAX_VALUE;
+            long check = 0;
+            for (int r = 0; r < rounds; r++) {
+                long start = System.nanoTime();
+                for (Path d : dirs)
+                    for (String n : d.toFile().list())
+                        check += Files.readAllBytes(d.resolve(n)).length;
+                io = Math.min(io, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (Path d : dirs)
+                    check += LegacyBoard.read(d.toFile()).check();
+                legacy = Math.min(legacy, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (Path d : dirs)
+                    check += BoardDefinition.parse(d).getHotelCards().size();
+                parsed = Math.min(parsed, System.nanoTime() - start);
+            }
+            System.out.printf("read:   %8.3f ms/board%n", io / 1e6 / boards);
+            System.out.printf("legacy: %8.3f ms/board%n", legacy / 1e6 / boards);
+            System.out.printf("parse:  %8.3f ms/board (%.1fx, %.1fx above reading)%n", parsed / 1e6 / boards,
+                    (double) legacy / parsed, (double) Math.max(legacy - io, 0) / Math.max(parsed - io, 1));
+            if (check == 0)
+                System.out.println();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                    Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * The parser BoardDefinition and HotelCard used before the tokenizer.
+     */
+    private static class LegacyBoard {
+
+        private int[][] hotelIds;
+        private char[][] types;
+        private final Map<Integer, int[][]> cards = new HashMap<>();
+
+        static LegacyBoard read(File dir) throws IOException {
+            LegacyBoard b = new LegacyBoard();
+            for (File f : dir.listFiles((_f, n) -> !n.equals("board.txt"))) {
+                int id = Integer.parseInt(f.getName().replaceFirst("\\.txt", ""));
+                b.cards.put(id, readCard(f));
+            }
+            List<String[]> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(new File(dir, "board.txt").toPath(), StandardCharsets.ISO_8859_1))
+                if (!line.trim().isEmpty())
+                    lines.add(line.trim().split("[,\\s]+"));
+            int rows = lines.size(), columns = lines.get(0).length;
+            b.hotelIds = new int[rows][columns];
+            b.types = new char[rows][columns];
+            for (int i = 0; i < rows; i++)
+                for (int j = 0; j < columns; j++) {
+                    String token = lines.get(i)[j];
+                    switch (token) {
+                        case "S":
+                        case "C":
+                        case "B":
+                        case "H":
+                        case "E":
+                        case "F":
+                            b.types[i][j] = token.charAt(0);
+                            break;
+                        default:
+                            b.hotelIds[i][j] = Integer.parseInt(token);
+                    }
+                }
+            return b;
+        }
+
+        private static int[][] readCard(File f) throws IOException {
+            try (Scanner s = new Scanner(new BufferedReader(new FileReader(f))).useDelimiter(",|(\\s+)")) {
+                s.nextLine();
+                int[] fixed = {s.nextInt(), s.nextInt(), s.nextInt()};
+                ArrayList<Integer> bcs = new ArrayList<>();
+                ArrayList<Integer> scs = new ArrayList<>();
+                while (s.hasNextInt()) {
+                    bcs.add(s.nextInt());
+                    scs.add(s.nextInt());
+                }
+                return new int[][] {fixed, bcs.stream().mapToInt(c -> c).toArray(),
+                        scs.stream().mapToInt(c -> c).toArray()};
+            }
+        }
+
+        int check() {
+            return cards.size() + hotelIds.length + types.length;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.Rules;
+import hotel.sim.ColumnarReader;
+import hotel.sim.GameExport;
+import hotel.sim.RuleSweep;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Measures what exporting games costs the simulator: the games per second of
+ * a sweep run with and without a GameExport, the bytes per game exported and
+ * the time to scan one column of the export compared to all of them.
+ *
+ * Usage: ExportThroughput [board directory] [games] [threads]
+ */
+public class ExportThroughput {
+
+    public static void main(String[] args) throws IOException {
+        BoardDefinition def = BoardDefinition.read(new File((args.length > 0) ? args[0] : "boards/default"));
+        int games = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path dir = Files.createTempDirectory("hotel-export");
+        try (RuleSweep sweep = new RuleSweep(def, 1000, threads)) {
+            Path warmUp = Files.createDirectories(dir.resolve("warm-up"));
+            sweep.setExport(warmUp);
+            gamesPerSecond(sweep, games / 2);
+            sweep.setExport(null);
+            gamesPerSecond(sweep, games / 2);
+            double plain = gamesPerSecond(sweep, games);
+            delete(warmUp);
+            sweep.setExport(dir);
+            double exported = gamesPerSecond(sweep, games);
+            System.out.printf("without export: %,.0f games/s%n", plain);
+            System.out.printf("with export:    %,.0f games/s (%+.1f%%)%n", exported,
+                    100 * (exported / plain - 1));
+
+            long bytes = 0;
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator)
+                    bytes += Files.size(p);
+            }
+            System.out.printf("export size:    %.1f bytes/game%n", (double) bytes / games);
+
+            for (int i = 0; i < 5; i++) {     // warm up the reader
+                scan(dir, new String[] {"rounds"});
+                scan(dir, GameExport.COLUMNS);
+            }
+            long one = scan(dir, new String[] {"rounds"});
+            long all = scan(dir, GameExport.COLUMNS);
+            System.out.printf("scan rounds:    %.2f ms (all %d columns: %.2f ms)%n",
+                    one / 1e6, GameExport.COLUMNS.length, all / 1e6);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator)
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    private static double gamesPerSecond(RuleSweep sweep, int games) {
+        long start = System.nanoTime();
+        sweep.run(Rules.DEFAULT, 0, games, games, 1);
+        return games / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static long scan(Path dir, String[] columns) throws IOException {
+        long[] sum = {0};
+        long start = System.nanoTime();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator)
+                try (ColumnarReader r = new ColumnarReader(p)) {
+                    for (String c : columns)
+                        r.scan(c, v -> sum[0] += v);
+                }
+        }
+        long time = System.nanoTime() - start;
+        if (sum[0] == 42)
+            System.out.print("");   // keep the sum alive
+        return time;
+    }
+}
@@ -0,0 +1,149 @@
+package hotel.bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import hotel.model.BoardDefinition;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.RingLayout;
+import hotel.sim.OffHeapEngine;
+import hotel.sim.OffHeapGameStore;
+import java.io.File;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Reports the heap usage, off-heap usage and GC pauses of holding and playing
+ * many games in flight, with the object model (Game) and with the off-heap
+ * store (OffHeapGameStore). Every game plays the same number of greedy rounds
+ * (see OffHeapEngine.playGreedyRound). The object model is measured on fewer
+ * games by default, since a million of them doesn't fit in a default heap;
+ * its figures are extrapolated linearly.
+ *
+ * Usage: GameStoreFootprint [board directory] [games] [object model games] [rounds]
+ */
+public class GameStoreFootprint {
+
+    private static long gcPauses;
+    private static long gcTotalMillis;
+    private static long gcMaxMillis;
+
+    private static class Observer implements GameObserver {
+
+        private boolean over;
+        private boolean bankruptcy;
+
+        @Override
+        public void setPlayerBankrupt(int p) {
+            bankruptcy = true;
+        }
+
+        @Override
+        public void setWinner(int p) {
+            over = true;
+        }
+    }
+
+    public static void main(String[] args) {
+        BoardDefinition def = BoardDefinition.read(new File((args.length > 0) ? args[0] : "boards/default"));
+        long games = (args.length > 1) ? Long.parseLong(args[1]) : 1_000_000;
+        int objectGames = (args.length > 2) ? Integer.parseInt(args[2]) : 100_000;
+        int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        listenToGc();
+
+        System.out.printf("%-12s %10s %14s %14s %10s %12s %12s %10s%n", "model", "games",
+                "heap (MB)", "off-heap (MB)", "B/game", "GC pauses", "total (ms)", "max (ms)");
+
+        // Object model
+        long heapBefore = heapUsed();
+        Game[] gs = new Game[objectGames];
+        Observer[] os = new Observer[objectGames];
+        for (int i = 0; i < objectGames; i++) {
+            os[i] = new Observer();
+            gs[i] = new Game(os[i], def);
+        }
+        long heap = Math.max(0, heapUsed() - heapBefore);
+        resetGcStats();
+        int[] hids = gs[0].getHotelIds();
+        for (int k = 0; k < rounds; k++)
+            for (int i = 0; i < objectGames; i++) {
+                if (os[i].over)
+                    continue;
+                gs[i].playRound();
+                if (os[i].bankruptcy) {
+                    os[i].bankruptcy = false;
+                    continue;
+                }
+                for (int hid : hids)
+                    if (gs[i].buyHotel(hid) || gs[i].requestBuilding(hid) || gs[i].buyEntrance(hid))
+                        break;
+            }
+        report("objects", objectGames, heap, 0);
+        double scale = (double) games / objectGames;
+        System.out.printf("%-12s %10d %14.1f %14s %10s %12s %12s %10s%n", "  (scaled)", games,
+                heap * scale / (1 << 20), "-", "-", "-", "-", "-");
+        gs = null;
+        os = null;
+
+        // Off-heap store
+        heapBefore = heapUsed();
+        long directBefore = directUsed();
+        OffHeapGameStore store = new OffHeapGameStore(new RingLayout(def), games);
+        OffHeapEngine engine = new OffHeapEngine(store);
+        for (long g = 0; g < games; g++)
+            engine.reset(g);
+        heap = Math.max(0, heapUsed() - heapBefore);
+        long direct = directUsed() - directBefore;
+        resetGcStats();
+        SplittableRandom rng = new SplittableRandom(1);
+        for (int k = 0; k < rounds; k++)
+            for (long g = 0; g < games; g++)
+                if (store.getWinner(g) < 0)
+                    engine.playGreedyRound(g, rng);
+        report("off-heap", games, heap, direct);
+    }
+
+    private static void report(String model, long games, long heap, long direct) {
+        System.out.printf("%-12s %10d %14.1f %14.1f %10d %12d %12d %10d%n", model, games,
+                (double) heap / (1 << 20), (double) direct / (1 << 20), (heap + direct) / games,
+                gcPauses, gcTotalMillis, gcMaxMillis);
+    }
+
+    private static long heapUsed() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+            if (pool.getName().equals("direct"))
+                return pool.getMemoryUsed();
+        return 0;
+    }
+
+    private static synchronized void resetGcStats() {
+        gcPauses = 0;
+        gcTotalMillis = 0;
+        gcMaxMillis = 0;
+    }
+
+    private static void listenToGc() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            ((NotificationEmitter) gc).addNotificationListener((n, _h) -> {
+                if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                GarbageCollectionNotificationInfo info
+                        = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                long millis = info.getGcInfo().getDuration();
+                synchronized (GameStoreFootprint.class) {
+                    gcPauses++;
+                    gcTotalMillis += millis;
+                    gcMaxMillis = Math.max(gcMaxMillis, millis);
+                }
+            }, null, null);
+    }
+}
@@ -0,0 +1,65 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.RingLayout;
+import hotel.sim.LockstepEngine;
+import hotel.sim.OffHeapEngine;
+import hotel.sim.OffHeapGameStore;
+import java.io.File;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the rounds per second of the lockstep engine (LockstepEngine) with
+ * the scalar one (OffHeapEngine), both playing the same greedy policy on a
+ * batch of games, restarting games as they finish.
+ *
+ * Usage: LockstepThroughput [board directory] [lanes] [seconds]
+ */
+public class LockstepThroughput {
+
+    public static void main(String[] args) {
+        BoardDefinition def = BoardDefinition.read(new File((args.length > 0) ? args[0] : "boards/default"));
+        int lanes = (args.length > 1) ? Integer.parseInt(args[1]) : 1024;
+        double seconds = (args.length > 2) ? Double.parseDouble(args[2]) : 5;
+        RingLayout layout = new RingLayout(def);
+
+        scalar(layout, lanes, seconds / 2);    // warm up
+        double scalar = scalar(layout, lanes, seconds);
+        lockstep(layout, lanes, seconds / 2);
+        double lockstep = lockstep(layout, lanes, seconds);
+        System.out.printf("scalar:   %,.0f rounds/s%n", scalar);
+        System.out.printf("lockstep: %,.0f rounds/s (%.2fx)%n", lockstep, lockstep / scalar);
+    }
+
+    private static double scalar(RingLayout layout, int lanes, double seconds) {
+        OffHeapGameStore store = new OffHeapGameStore(layout, lanes);
+        OffHeapEngine engine = new OffHeapEngine(store);
+        SplittableRandom rng = new SplittableRandom(1);
+        for (int g = 0; g < lanes; g++)
+            engine.reset(g);
+        long rounds = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long now;
+        do {
+            for (int g = 0; g < lanes; g++) {
+                engine.playGreedyRound(g, rng);
+                if (store.getWinner(g) >= 0)
+                    engine.reset(g);
+            }
+            rounds += lanes;
+        } while ((now = System.nanoTime()) < end);
+        return rounds / ((now - start) / 1e9);
+    }
+
+    private static double lockstep(RingLayout layout, int lanes, double seconds) {
+        LockstepEngine engine = new LockstepEngine(layout, lanes, 1);
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long now;
+        do
+            engine.step();
+        while ((now = System.nanoTime()) < end);
+        return engine.getRounds() / ((now - start) / 1e9);
+    }
+}
@@ -0,0 +1,90 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Asserts that a steady-state Game.playRound allocates nothing, the way JMH's
+ * GC profiler reports gc.alloc.rate.norm, using the per-thread allocation
+ * counter of the JVM. Between rounds the players greedily buy, build and buy
+ * entrances (outside of the measurement), so that stays and bank requests are
+ * exercised as well. Rounds that end in a bankruptcy are not steady-state and
+ * are left out. Exits with a non-zero status on a regression.
+ *
+ * Usage: PlayRoundAllocation [board directory] [measured rounds]
+ */
+public class PlayRoundAllocation {
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static class Observer implements GameObserver {
+
+        private boolean bankruptcy;
+        private boolean over;
+
+        @Override
+        public void setPlayerBankrupt(int p) {
+            bankruptcy = true;
+        }
+
+        @Override
+        public void setWinner(int p) {
+            over = true;
+        }
+    }
+
+    public static void main(String[] args) {
+        BoardDefinition def = BoardDefinition.read(new File((args.length > 0) ? args[0] : "boards/default"));
+        long rounds = (args.length > 1) ? Long.parseLong(args[1]) : 1_000_000;
+
+        // Warm up, so that the measurement sees the compiled code
+        play(def, rounds / 2);
+
+        // Calibrate the (normally zero) cost of reading the counter itself
+        long overhead = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        overhead = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - overhead;
+
+        long[] result = play(def, rounds);
+        double bytesPerOp = (double) (result[0] - result[1] * overhead) / result[1];
+        System.out.printf("playRound: %d rounds, %.3f B/op%n", result[1], bytesPerOp);
+        if (bytesPerOp > 0) {
+            System.err.println("playRound allocates on the steady-state path");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays rounds until the number specified has been measured, starting new
+     * games as needed.
+     *
+     * @return the bytes allocated and the number of measured rounds
+     */
+    private static long[] play(BoardDefinition def, long rounds) {
+        long allocated = 0;
+        long measured = 0;
+        while (measured < rounds) {
+            Observer o = new Observer();
+            Game g = new Game(o, def);
+            int[] hids = g.getHotelIds();
+            while (!o.over && measured < rounds) {
+                long before = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                g.playRound();
+                long after = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                if (o.bankruptcy) {
+                    o.bankruptcy = false;
+                    continue;   // the current player is out, nothing to decide
+                }
+                allocated += after - before;
+                measured++;
+                for (int hid : hids)
+                    if (g.buyHotel(hid) || g.requestBuilding(hid) || g.buyEntrance(hid))
+                        break;
+            }
+        }
+        return new long[]{allocated, measured};
+    }
+}
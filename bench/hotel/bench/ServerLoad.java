@@ -0,0 +1,315 @@
+package hotel.bench;
+
+import hotel.model.BoardDefinition;
+import hotel.model.BoardSource;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.MoveGenerator;
+import hotel.model.Rules;
+import hotel.net.GameClient;
+import hotel.net.GameServer;
+import hotel.net.Protocol;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a GameServer in this JVM with bots playing many tables, at each of
+ * the rates given, and reports the commands per second served and the
+ * latency of the commands at the 50th, 99th and 99.9th percentiles.
+ *
+ * The bots send the mix of moves random players make (measured by playing
+ * local games with random legal moves first): mostly rounds, then money
+ * requests, hotel purchases, building requests and entrances, for random
+ * hotels of the board. Moves a game turns down cost a server what the legal
+ * ones do up to the point they fail, so the mix is sent as it is; a table
+ * whose game is over is closed and replaced with a new one, as a real table
+ * would be.
+ *
+ * The load is open loop: each connection has a schedule of send times at
+ * the rate given and the latency of a command is measured from the time it
+ * was due, not from the time it was sent, so a server that falls behind is
+ * charged for the commands that queue up behind a slow one (coordinated
+ * omission). The latency from the actual send is printed next to it for
+ * comparison.
+ *
+ * With a log directory, the server logs every command (see GameServer) and
+ * the latencies include the wait for the log to reach the disk.
+ *
+ * Usage: ServerLoad [board] [tables] [rate,rate...] [seconds] [connections]
+ * [server threads] [log directory]
+ */
+public class ServerLoad {
+
+    private static final int[] TYPES = {MoveGenerator.PASS, MoveGenerator.REQUEST_MONEY, MoveGenerator.BUY_HOTEL,
+        MoveGenerator.REQUEST_BUILDING, MoveGenerator.BUY_ENTRANCE};
+
+    /**
+     * A histogram of latencies in nanoseconds, in buckets 1/64 of a power of
+     * two wide (about 1.6% precision).
+     */
+    private static final class Histogram {
+
+        private final long[] counts = new long[64 + 58 * 64];
+        private long total;
+
+        void record(long nanos) {
+            long v = Math.max(nanos, 0);
+            int i;
+            if (v < 64) {
+                i = (int) v;
+            } else {
+                int e = 63 - Long.numberOfLeadingZeros(v);
+                i = 64 + (e - 6) * 64 + (int) ((v >>> (e - 6)) - 64);
+            }
+            counts[i]++;
+            total++;
+        }
+
+        void add(Histogram h) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += h.counts[i];
+            total += h.total;
+        }
+
+        long percentile(double q) {
+            long target = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(target, 1))
+                    return upperBound(i);
+            }
+            return 0;
+        }
+
+        private static long upperBound(int i) {
+            if (i < 64)
+                return i;
+            int e = (i - 64) / 64 + 6;
+            return ((64L + (i - 64) % 64 + 1) << (e - 6)) - 1;
+        }
+    }
+
+    /**
+     * A connection and the tables it plays, sending on its own thread. The
+     * responses are counted on the client's reader thread (or the sender's,
+     * if one comes before its callback is set), under the bot's lock.
+     */
+    private static final class Bot implements Runnable {
+
+        final GameClient client;
+        final int[] tables;
+        final AtomicIntegerArray over;      // 1: game over, 2: being replaced
+        final int board;
+        final double[] mix;
+        final int[] hids;
+        final Histogram corrected = new Histogram(), uncorrected = new Histogram();
+        final AtomicLong outstanding = new AtomicLong();
+        long unsent;
+        long ok, refused;
+        long start, end, interval, finished;
+
+        Bot(GameClient client, int tables, int board, double[] mix, int[] hids) throws IOException {
+            this.client = client;
+            this.tables = new int[tables];
+            over = new AtomicIntegerArray(tables);
+            this.board = board;
+            this.mix = mix;
+            this.hids = hids;
+            for (int t = 0; t < tables; t++)
+                this.tables[t] = client.createTable(board);
+        }
+
+        @Override
+        public void run() {
+            SplittableRandom rng = new SplittableRandom(tables[0]);
+            long giveUp = end + (end - start);
+            for (long k = 0; ; k++) {
+                long due = start + k * interval;
+                if (due >= end)
+                    break;
+                long now = System.nanoTime();
+                if (now > giveUp) {
+                    unsent += (end - due + interval - 1) / interval;
+                    break;
+                }
+                while (now < due) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+                int t = (int) (k % tables.length);
+                boolean flush = start + (k + 1) * interval > System.nanoTime();
+                try {
+                    if (over.compareAndSet(t, 1, 2)) {
+                        send(Protocol.CLOSE, tables[t], 0, due, false, -1);
+                        send(Protocol.CREATE, 0, board, due, flush, t);
+                    } else if (over.get(t) == 0) {
+                        send(Protocol.PLAY, tables[t], move(rng), due, flush, t);
+                    } else if (flush) {
+                        client.flush();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            try {
+                client.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private int move(SplittableRandom rng) {
+            double x = rng.nextDouble();
+            int type = 0;
+            while (type < TYPES.length - 1 && x >= mix[type])
+                type++;
+            return MoveGenerator.moveOf(TYPES[type], (type >= 2) ? hids[rng.nextInt(hids.length)] : 0);
+        }
+
+        private void send(int op, int table, int arg, long due, boolean flush, int slot) throws IOException {
+            outstanding.incrementAndGet();
+            long sentAt = System.nanoTime();
+            CompletableFuture<GameClient.Response> f = client.send(op, table, arg, flush);
+            f.whenComplete((r, e) -> {
+                long now = System.nanoTime();
+                synchronized (this) {
+                    corrected.record(now - due);
+                    uncorrected.record(now - sentAt);
+                    if (r != null && r.getStatus() == Protocol.OK)
+                        ok++;
+                    else if (r != null)
+                        refused++;
+                }
+                if (r != null) {
+                    if (op == Protocol.CREATE) {
+                        tables[slot] = r.getValue();
+                        over.set(slot, 0);
+                    } else if (r.getStatus() == Protocol.GAME_OVER) {
+                        over.compareAndSet(slot, 0, 1);
+                    }
+                }
+                outstanding.decrementAndGet();
+            });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String board = (args.length > 0) ? args[0] : "default";
+        int tables = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        String[] rates = ((args.length > 2) ? args[2] : "5000,10000,20000,40000").split(",");
+        double seconds = (args.length > 3) ? Double.parseDouble(args[3]) : 5;
+        int connections = (args.length > 4) ? Integer.parseInt(args[4]) : 8;
+        int threads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        Path log = (args.length > 6) ? Paths.get(args[6]) : null;
+
+        BoardSource source = BoardSource.getDefault();
+        BoardDefinition def = source.get(board);
+        int index = source.getNames().indexOf(board);
+        int[] hids = new Game(new GameObserver() {
+        }, def, Rules.DEFAULT, 1).getHotelIds();
+        double[] mix = measureMix(def);
+        System.out.printf("%s, %d tables, %d connections, %d server threads%s%n", board, tables, connections, threads,
+                (log != null) ? ", logged to " + log : "");
+        System.out.printf("mix: round %.1f%%, money %.1f%%, buy %.1f%%, build %.1f%%, entrance %.1f%%%n",
+                100 * mix[0], 100 * (mix[1] - mix[0]), 100 * (mix[2] - mix[1]), 100 * (mix[3] - mix[2]),
+                100 * (1 - mix[3]));
+
+        try (GameServer server = new GameServer(source, 0, threads, log)) {
+            run(server, index, tables, Integer.parseInt(rates[0]), Math.min(seconds, 2), connections, mix, hids);  // warm up
+            System.out.printf("%10s %10s %8s %10s %10s %10s %12s%n", "target/s", "served/s", "refused", "p50 us",
+                    "p99 us", "p999 us", "p99 uncorr");
+            for (String rate : rates) {
+                Bot[] bots = run(server, index, tables, Integer.parseInt(rate), seconds, connections, mix, hids);
+                Histogram corrected = new Histogram(), uncorrected = new Histogram();
+                long served = 0, refused = 0, unsent = 0, finished = 0;
+                for (Bot b : bots) {
+                    corrected.add(b.corrected);
+                    uncorrected.add(b.uncorrected);
+                    served += b.ok + b.refused;
+                    refused += b.refused;
+                    unsent += b.unsent;
+                    finished = Math.max(finished, b.finished);
+                }
+                long elapsed = finished - bots[0].start;
+                System.out.printf("%10s %,10.0f %7.1f%% %,10.1f %,10.1f %,10.1f %,12.1f%s%n", rate,
+                        served / (elapsed / 1e9), 100.0 * refused / Math.max(served, 1),
+                        corrected.percentile(0.5) / 1e3, corrected.percentile(0.99) / 1e3,
+                        corrected.percentile(0.999) / 1e3, uncorrected.percentile(0.99) / 1e3,
+                        (unsent > 0) ? String.format("  (%,d not sent: saturated)", unsent) : "");
+            }
+        }
+    }
+
+    /**
+     * Plays the tables given over new connections at a rate for a while and
+     * returns the bots once every command has been answered.
+     */
+    private static Bot[] run(GameServer server, int board, int tables, int rate, double seconds, int connections,
+            double[] mix, int[] hids) throws Exception {
+        Bot[] bots = new Bot[connections];
+        for (int c = 0; c < connections; c++)
+            bots[c] = new Bot(new GameClient(server.getPort()), tables / connections + ((c < tables % connections)
+                    ? 1 : 0), board, mix, hids);
+        long start = System.nanoTime() + 10_000_000;
+        Thread[] threads = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            Bot b = bots[c];
+            b.start = start + c * (long) (1e9 / rate);   // spread the connections over the first interval
+            b.end = start + (long) (seconds * 1e9);
+            b.interval = (long) (1e9 * connections / rate);
+            threads[c] = new Thread(b, "load-sender");
+            threads[c].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        for (Bot b : bots) {
+            while (b.outstanding.get() > 0)
+                Thread.sleep(1);
+            b.finished = System.nanoTime();
+        }
+        for (Bot b : bots) {
+            for (int t : b.tables)
+                b.client.closeTable(t);
+            b.client.close();
+        }
+        return bots;
+    }
+
+    /**
+     * Returns the cumulative shares of the move types (in the order of
+     * TYPES) among the moves of players choosing a random legal move.
+     */
+    private static double[] measureMix(BoardDefinition def) {
+        long[] counts = new long[TYPES.length];
+        long total = 0;
+        int[] moves = null;
+        SplittableRandom rng = new SplittableRandom(1);
+        for (int g = 0; g < 200; g++) {
+            Game game = new Game(new GameObserver() {
+            }, def, Rules.DEFAULT, g);
+            if (moves == null)
+                moves = new int[game.getMoveGenerator().getMaxMoves()];
+            for (int i = 0; i < 1000 && game.getWinnerId() == 0; i++) {
+                int n = game.getMoveGenerator().generate(moves);
+                int m = moves[rng.nextInt(n)];
+                game.play(m);
+                counts[MoveGenerator.typeOf(m)]++;
+                total++;
+            }
+        }
+        double[] mix = new double[TYPES.length];
+        double sum = 0;
+        for (int t = 0; t < TYPES.length; t++) {
+            sum += (double) counts[TYPES[t]] / total;
+            mix[t] = sum;
+        }
+        return mix;
+    }
+}
@@ -1,10 +1,502 @@
 package hotel;
 
+import hotel.model.BoardDefinition;
+import hotel.model.BoardFormatException;
+import hotel.model.BoardGenerator;
+import hotel.model.BoardSource;
+import hotel.model.BoardValidator;
+import hotel.model.BoardWatcher;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.MoveGenerator;
+import hotel.model.Rules;
+import hotel.net.GameServer;
+import hotel.sim.ArchiveQuery;
+import hotel.sim.ArchiveWriter;
+import hotel.sim.EndgameSolver;
+import hotel.sim.GameArchive;
+import hotel.sim.RuleSweep;
+import hotel.sim.SweepCoordinator;
+import hotel.sim.SweepWorker;
+import hotel.sim.TranspositionTable;
 import hotel.view.GameUI;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Main {
 
+    /**
+     * Starts the game, or runs the analysis command given.
+     *
+     * Usage: Main [solve board [seconds] [megabytes] [threads]]
+     * Main [sweep board [rule=value,value... ...] [option=value ...]]
+     * Main [query archive-directory rent|buyers [board=name] [hotel=id] [rounds=from-to]]
+     * Main [validate [board-directory ...]]
+     * Main [generate directory [count] [seed] [parameter=value ...]]
+     * Main [server [port] [threads] [log directory]]
+     * Main [worker host:port [threads]]
+     *
+     * A board is a board directory or the name of a board of the default
+     * board source (see BoardSource.getDefault).
+     *
+     * @param args the command line arguments
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("solve")) {
+            solve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sweep")) {
+            sweep(args);
+            return;
+        }
+        if (args.length > 2 && args[0].equals("query")) {
+            query(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("validate")) {
+            validate(args);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("generate")) {
+            generate(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(args);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("worker")) {
+            work(args);
+            return;
+        }
+        watchBoards();
         GameUI frame = new GameUI();   // this will take care of creating the model. TODO: these two should be separated completely
     }
+
+    /**
+     * Keeps the boards of the default board source up to date with their
+     * files while the game runs, if they are in a directory, so that edits
+     * to a board show up on the next start of a game.
+     */
+    private static void watchBoards() {
+        try {
+            BoardSource source = BoardSource.getDefault();
+            if (source.getRoot().getFileSystem() != FileSystems.getDefault())
+                return;
+            new BoardWatcher(source, new BoardWatcher.Listener() {
+                @Override
+                public void boardReloaded(String board, BoardDefinition def) {
+                    System.out.println("Reloaded board " + board);
+                }
+
+                @Override
+                public void boardRejected(String board, List<BoardValidator.Problem> problems) {
+                    System.err.println("Kept the previous version of board " + board + ":");
+                    for (BoardValidator.Problem p : problems)
+                        System.err.println("  " + p);
+                }
+            });
+        } catch (IOException e) {
+            // Games report the missing boards when they start
+        }
+    }
+
+    /**
+     * Reads a board given as a directory or as the name of a board of the
+     * default board source.
+     */
+    private static BoardDefinition readBoard(String board) {
+        if (new File(board).isDirectory())
+            return BoardDefinition.read(new File(board));
+        try {
+            return BoardSource.getDefault().get(board);
+        } catch (IOException e) {
+            System.err.println((e instanceof BoardFormatException) ? "Corrupted board: " + e.getMessage()
+                    : "Can't read board " + board + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Plays random moves on the board given until two players are left, then
+     * plays the rest of the game with the endgame solver's moves for both,
+     * printing its analysis of every decision.
+     */
+    private static void solve(String[] args) {
+        BoardDefinition def = readBoard((args.length > 1) ? args[1] : "default");
+        long millis = (long) (1000 * ((args.length > 2) ? Double.parseDouble(args[2]) : 1));
+        int megabytes = (args.length > 3) ? Integer.parseInt(args[3]) : 64;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        Game game = new Game(new GameObserver() {
+        }, def);
+        int[] moves = new int[game.getMoveGenerator().getMaxMoves()];
+        game.playRound();
+        while (activePlayers(game) > 2) {
+            int n = game.getMoveGenerator().generate(moves);
+            game.play(moves[ThreadLocalRandom.current().nextInt(n)]);
+        }
+
+        try (EndgameSolver solver = new EndgameSolver(new TranspositionTable(megabytes), threads)) {
+            while (game.getWinnerId() == 0) {
+                EndgameSolver.Result r = solver.solve(game, millis);
+                int p = game.getCurrentPlayerId();
+                System.out.printf("player %d (%d MLs): %s, wins with %.4f%s (depth %d, %,d positions)%n",
+                        p, game.getPlayerMoney(p), describe(r.getBestMove()), r.getWinProbability(p),
+                        r.isExact() ? " exactly" : "", r.getDepth(), r.getNodes());
+                game.play(r.getBestMove());
+            }
+        }
+        System.out.println("winner: player " + game.getWinnerId());
+    }
+
+    /**
+     * Sweeps the grid of rules given, printing a row for each combination.
+     * The rules are start (starting money), payout (bank payout), build
+     * (building chances as normal/rejected/free/double) and stay (staying
+     * multiplier), each with a comma separated list of values; the rules not
+     * given keep their default value. The options are tolerance (0.02), min
+     * (games, 500), max (games, 20000), rounds (limit, 1000), seed (1),
+     * threads (all processors), report (false; true prints the full
+     * statistics of every combination), export (none; a directory to write
+     * every game to, as GameExport files) and archive (none; a directory to
+     * record every game into, as a GameArchive).
+     *
+     * With coordinate (a port), the games are played by worker processes
+     * (see SweepCoordinator and the worker command) instead: spawn (0) is the
+     * number of workers to start on this machine, with the threads given
+     * each, and bind (the loopback address) the address to wait for workers
+     * on, such as 0.0.0.0 for workers on other machines. Export and archive
+     * are not available then.
+     */
+    private static void sweep(String[] args) {
+        BoardDefinition def = readBoard((args.length > 1) ? args[1] : "default");
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) {
+                System.err.println("Expected key=value, got " + args[i]);
+                System.exit(1);
+            }
+            opts.put(kv[0], kv[1]);
+        }
+        List<Rules> grid = new ArrayList<>(List.of(Rules.DEFAULT));
+        grid = expand(grid, opts.get("start"), (r, v) -> r.withStartingMoney(Integer.parseInt(v)));
+        grid = expand(grid, opts.get("payout"), (r, v) -> r.withBankPayout(Integer.parseInt(v)));
+        grid = expand(grid, opts.get("build"), (r, v) -> {
+            String[] c = v.split("/");
+            return r.withBuildChances(Integer.parseInt(c[0]), Integer.parseInt(c[1]),
+                    Integer.parseInt(c[2]), Integer.parseInt(c[3]));
+        });
+        grid = expand(grid, opts.get("stay"), (r, v) -> r.withStayingMultiplier(Double.parseDouble(v)));
+        double tolerance = Double.parseDouble(opts.getOrDefault("tolerance", "0.02"));
+        int min = Integer.parseInt(opts.getOrDefault("min", "500"));
+        int max = Integer.parseInt(opts.getOrDefault("max", "20000"));
+        int rounds = Integer.parseInt(opts.getOrDefault("rounds", "1000"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "1"));
+        int threads = Integer.parseInt(opts.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean report = Boolean.parseBoolean(opts.getOrDefault("report", "false"));
+        String export = opts.get("export");
+        String archive = opts.get("archive");
+
+        System.out.printf("%6s %6s %-11s %5s %6s %15s %15s %6s%n",
+                "start", "payout", "build", "stay", "games", "rounds", "1st seat wins", "cut");
+        if (opts.containsKey("coordinate")) {
+            if (export != null || archive != null) {
+                System.err.println("Export and archive need a local sweep");
+                System.exit(1);
+            }
+            List<SweepCoordinator.Job> jobs = new ArrayList<>();
+            try {
+                for (Rules r : grid)
+                    jobs.add(new SweepCoordinator.Job((args.length > 1) ? args[1] : "default", r, rounds, tolerance,
+                            min, max, seed));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bad sweep: " + e.getMessage());
+                System.exit(1);
+            }
+            int spawn = Integer.parseInt(opts.getOrDefault("spawn", "0"));
+            List<Process> spawned = new ArrayList<>();
+            try (SweepCoordinator coordinator = new SweepCoordinator(
+                    InetAddress.getByName(opts.getOrDefault("bind", "127.0.0.1")),
+                    Integer.parseInt(opts.get("coordinate")))) {
+                for (int i = 0; i < spawn; i++)
+                    spawned.add(new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                            "-cp", System.getProperty("java.class.path"), Main.class.getName(), "worker",
+                            "localhost:" + coordinator.getPort(), String.valueOf(threads)).inheritIO().start());
+                List<RuleSweep.Cell> cells = coordinator.run(jobs);
+                for (int i = 0; i < grid.size(); i++) {
+                    printCell(grid.get(i), cells.get(i));
+                    if (report)
+                        System.out.println(cells.get(i).getStats().report());
+                }
+            } catch (IOException e) {
+                System.err.println("Can't coordinate the sweep: " + e.getMessage());
+                System.exit(1);
+            } catch (InterruptedException e) {
+                // stopped
+            } finally {
+                for (Process p : spawned)
+                    p.destroy();
+            }
+            return;
+        }
+        try (RuleSweep sweep = new RuleSweep(def, rounds, threads);
+                ArchiveWriter archived = (archive != null) ? new ArchiveWriter(Paths.get(archive)) : null) {
+            if (export != null)
+                sweep.setExport(Files.createDirectories(Paths.get(export)));
+            sweep.setArchive(archived);
+            for (Rules r : grid) {
+                RuleSweep.Cell c = sweep.run(r, tolerance, min, max, seed);
+                printCell(r, c);
+                if (report)
+                    System.out.println(c.getStats().report());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad sweep: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints the row of a combination of rules swept.
+     */
+    private static void printCell(Rules r, RuleSweep.Cell c) {
+        System.out.printf("%6d %6d %-11s %5.2f %6d %7.1f +- %-4.1f %6.3f +- %.3f %5.1f%%%n",
+                r.getStartingMoney(), r.getBankPayout(),
+                r.getNormalBuildChance() + "/" + r.getRejectedBuildChance() + "/"
+                + r.getFreeBuildChance() + "/" + r.getDoubleBuildChance(),
+                r.getStayingMultiplier(), c.getGames(), c.getMeanRounds(), c.getRoundsError(),
+                c.getFirstSeatWins(), c.getFirstSeatWinsError(), 100 * c.getCutShort());
+    }
+
+    /**
+     * Answers a query over an archive of games: rent (the total paid for
+     * stays in each hotel) or buyers (how often the player who bought the
+     * hotel given first won), narrowed down by board, hotel and rounds.
+     */
+    private static void query(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 3; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) {
+                System.err.println("Expected key=value, got " + args[i]);
+                System.exit(1);
+            }
+            opts.put(kv[0], kv[1]);
+        }
+        GameArchive archive;
+        try {
+            archive = new GameArchive(Paths.get(args[1]));
+        } catch (IOException e) {
+            System.err.println("Can't read the archive: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        ArchiveQuery q = archive.query();
+        if (opts.containsKey("board"))
+            q.board(opts.get("board"));
+        if (opts.containsKey("hotel"))
+            q.hotel(Integer.parseInt(opts.get("hotel")));
+        if (opts.containsKey("rounds")) {
+            String[] r = opts.get("rounds").split("-", 2);
+            q.rounds(Integer.parseInt(r[0]), (r.length > 1) ? Integer.parseInt(r[1]) : Integer.MAX_VALUE);
+        }
+        System.out.println("games: " + q.countGames());
+        if (args[2].equals("rent")) {
+            q.rentByHotel().forEach((hid, rent) -> System.out.printf("hotel %2d: %,d%n", hid, rent));
+        } else if (args[2].equals("buyers")) {
+            try {
+                ArchiveQuery.WinRate w = q.buyerWins();
+                System.out.printf("bought in %d games, won %d (%.1f%%)%n", w.getGames(), w.getWins(),
+                        100 * w.getRate());
+            } catch (IllegalStateException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        } else {
+            System.err.println("Unknown query " + args[2]);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Validates the board directories given (all those in ./boards/ if none
+     * is), printing every problem found. Exits with 1 if there are any.
+     */
+    private static void validate(String[] args) {
+        List<Path> dirs = new ArrayList<>();
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++)
+                dirs.add(Paths.get(args[i]));
+        } else {
+            try (DirectoryStream<Path> boards = Files.newDirectoryStream(Paths.get("boards"), Files::isDirectory)) {
+                boards.forEach(dirs::add);
+            } catch (IOException e) {
+                System.err.println("Can't list the boards: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        long start = System.nanoTime();
+        Map<Path, List<BoardValidator.Problem>> problems = BoardValidator.validateAll(dirs,
+                Runtime.getRuntime().availableProcessors());
+        long count = 0;
+        for (List<BoardValidator.Problem> ps : problems.values())
+            for (BoardValidator.Problem p : ps) {
+                System.out.println(p);
+                count++;
+            }
+        System.out.printf("%d boards, %d problems (%.1f ms)%n", dirs.size(), count, (System.nanoTime() - start) / 1e6);
+        if (count > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Hosts tables on the boards of the default board source for clients on
+     * this machine (see GameServer) until killed, keeping them in the log
+     * directory given, if any, across restarts.
+     */
+    private static void serve(String[] args) {
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 7700;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path log = (args.length > 3) ? Paths.get(args[3]) : null;
+        try (GameServer server = new GameServer(BoardSource.getDefault(), port, threads, log)) {
+            if (log != null)
+                System.out.println("Recovered " + server.getTables() + " tables from " + log);
+            System.out.println("Serving " + BoardSource.getDefault().getNames() + " on port " + server.getPort());
+            server.join();
+        } catch (IOException e) {
+            System.err.println("Can't start the server: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Plays the games a sweep coordinator at host:port hands out (see
+     * SweepWorker) until it is done with the worker.
+     */
+    private static void work(String[] args) {
+        int colon = args[1].lastIndexOf(':');
+        if (colon < 0) {
+            System.err.println("Expected host:port, got " + args[1]);
+            System.exit(1);
+        }
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try {
+            SweepWorker.work(args[1].substring(0, colon), Integer.parseInt(args[1].substring(colon + 1)), threads);
+        } catch (IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates random boards into subdirectories of the directory given. The
+     * parameters are rows and columns (12 and 15), ring (the ring length, 40),
+     * hotels (8), mix (the weights of BUY and BUILD tiles as buy/build, 1/1),
+     * free (the share of free tiles away from the ring, 0.05) and costs (as
+     * base/growth/min states/max states, 2000/1.4/2/6).
+     */
+    private static void generate(String[] args) {
+        Path parent = Paths.get(args[1]);
+        int count = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+        BoardGenerator gen = BoardGenerator.DEFAULT;
+        try {
+            for (int i = 4; i < args.length; i++) {
+                String[] kv = args[i].split("=", 2);
+                String[] v = (kv.length == 2) ? kv[1].split("/") : new String[0];
+                switch (kv[0]) {
+                    case "rows":
+                        gen = gen.withDimensions(Integer.parseInt(v[0]), gen.getColumns());
+                        break;
+                    case "columns":
+                        gen = gen.withDimensions(gen.getRows(), Integer.parseInt(v[0]));
+                        break;
+                    case "ring":
+                        gen = gen.withRingLength(Integer.parseInt(v[0]));
+                        break;
+                    case "hotels":
+                        gen = gen.withHotels(Integer.parseInt(v[0]));
+                        break;
+                    case "mix":
+                        gen = gen.withTileMix(Double.parseDouble(v[0]), Double.parseDouble(v[1]));
+                        break;
+                    case "free":
+                        gen = gen.withFreeDensity(Double.parseDouble(v[0]));
+                        break;
+                    case "costs":
+                        gen = gen.withCosts(Integer.parseInt(v[0]), Double.parseDouble(v[1]),
+                                Integer.parseInt(v[2]), Integer.parseInt(v[3]));
+                        break;
+                    default:
+                        System.err.println("Unknown parameter " + args[i]);
+                        System.exit(1);
+                }
+            }
+            long start = System.nanoTime();
+            List<Path> dirs = gen.generateAll(count, seed, parent, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%d boards in %s (%.1f ms)%n", dirs.size(), parent, (System.nanoTime() - start) / 1e6);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Bad parameters: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Can't write the boards: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static List<Rules> expand(List<Rules> grid, String values, BiFunction<Rules, String, Rules> with) {
+        if (values == null)
+            return grid;
+        List<Rules> expanded = new ArrayList<>();
+        for (Rules r : grid)
+            for (String v : values.split(","))
+                expanded.add(with.apply(r, v));
+        return expanded;
+    }
+
+    private static int activePlayers(Game game) {
+        int n = 0;
+        for (int p = 1; p <= 3; p++)
+            if (game.getPlayerRingPosition(p) >= 0)
+                n++;
+        return n;
+    }
+
+    private static String describe(int move) {
+        int hid = MoveGenerator.hotelIdOf(move);
+        switch (MoveGenerator.typeOf(move)) {
+            case MoveGenerator.REQUEST_MONEY:
+                return "request money";
+            case MoveGenerator.BUY_HOTEL:
+                return "buy hotel " + hid;
+            case MoveGenerator.REQUEST_BUILDING:
+                return "request building for hotel " + hid;
+            case MoveGenerator.BUY_ENTRANCE:
+                return "buy entrance for hotel " + hid;
+            default:
+                return "pass";
+        }
+    }
 }
@@ -1,60 +1,37 @@
 package hotel.model;
 
 import java.awt.Point;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
 
+/**
+ * The board of a game. The layout of the tiles is the BoardGrid of the board
+ * definition, shared by all the games on the board; the board keeps a tile
+ * object only for each tile of the ring (they hold the entrances), and makes
+ * the others when asked for them.
+ */
 public class Board {
 
-    private final int BOARD_ROWS = 12;
-    private final int BOARD_COLUMNS = 15;
-    private final Tile[][] board = new Tile[BOARD_ROWS][BOARD_COLUMNS];
-    private final Map<Hotel, Set<PlayerTile>> hotelFronts = new HashMap<>();
-    private PlayerTile start;
-
-    Board(File f, Map<Integer, Hotel> hotels) {
-        try (Scanner s = new Scanner(new BufferedReader(new FileReader(f))).useDelimiter(",|(\\s+)")) {
-            for (int i = 0; i < BOARD_ROWS; i++)
-                for (int j = 0; j < BOARD_COLUMNS; j++)
-                    if (s.hasNextInt()) {
-                        int id = s.nextInt();
-                        board[i][j] = new HotelTile(hotels.get(id));
-                    } else
-                        switch (s.next()) {
-                            case "S":
-                                start = new PlayerTile(PlayerTile.Type.START);
-                                board[i][j] = start;
-                                break;
-                            case "C":
-                                board[i][j] = new PlayerTile(PlayerTile.Type.CITY_HALL);
-                                break;
-                            case "B":
-                                board[i][j] = new PlayerTile(PlayerTile.Type.BANK);
-                                break;
-                            case "H":
-                                board[i][j] = new PlayerTile(PlayerTile.Type.BUY);
-                                break;
-                            case "E":
-                                board[i][j] = new PlayerTile(PlayerTile.Type.BUILD);
-                                break;
-                            case "F":
-                                board[i][j] = new PlayerTile(PlayerTile.Type.FREE);
-                                break;
-                        }
-        } catch (FileNotFoundException e) {
-            System.err.println("File " + f.toString() + " not found");
-            System.exit(1);
+    private final BoardGrid grid;
+    private final Map<Integer, Hotel> hotels;
+    private final Map<Hotel, HotelTile> hotelTiles = new HashMap<>();  // made when first asked for
+    private final PlayerTile start;
+    private final PlayerTile[] ring;
+
+    Board(BoardDefinition def, Map<Integer, Hotel> hotels) {
+        grid = def.getGrid();
+        this.hotels = hotels;
+        ring = new PlayerTile[grid.getRingLength()];
+        for (int r = 0; r < ring.length; r++) {
+            ring[r] = newPlayerTile(grid.getRingRow(r), grid.getRingColumn(r));
+            ring[r].setRingIndex(r);
         }
+        for (int r = 0; r < ring.length; r++)
+            ring[r].setNext(ring[(r + 1) % ring.length]);
+        start = ring[0];
 
-        determinePath();
-        // determineHotelFronts should be called after determinePath
         determineHotelFronts();
     }
 
@@ -64,7 +41,7 @@ public class Board {
      * @return the number of rows on this board
      */
     public int getRows() {
-        return BOARD_ROWS;
+        return grid.getRows();
     }
 
     /**
@@ -73,11 +50,14 @@ public class Board {
      * @return the number of columns on this board
      */
     public int getColumns() {
-        return BOARD_COLUMNS;
+        return grid.getColumns();
     }
 
     /**
-     * Returns the tile at the specified position on this board.
+     * Returns the tile at the specified position on this board. The tiles of
+     * the ring are always the same objects; the others are made when asked
+     * for (a hotel tile once per hotel, a player tile on every call), so
+     * painting a board should rather use getType, getHotel and getEntrance.
      * 
      * @param i row of the Tile to return
      * @param j column of the Tile to return
@@ -88,7 +68,68 @@ public class Board {
     public Tile get(int i, int j) {
         if (!validIndex(i, j))
             return null;
-        return board[i][j];
+        if (grid.getType(i, j) == null)
+            return hotelTiles.computeIfAbsent(hotels.get(grid.getHotelId(i, j)), HotelTile::new);
+        int r = grid.getRingIndex(i, j);
+        return (r >= 0) ? ring[r] : newPlayerTile(i, j);
+    }
+
+    /**
+     * Returns the type of the player tile at the specified position.
+     *
+     * @param i the row
+     * @param j the column
+     *
+     * @return the type of the player tile or null if it is a hotel tile
+     */
+    public PlayerTile.Type getType(int i, int j) {
+        return grid.getType(i, j);
+    }
+
+    /**
+     * Returns the hotel of the hotel tile at the specified position.
+     *
+     * @param i the row
+     * @param j the column
+     *
+     * @return the hotel or null if it is a player tile
+     */
+    public Hotel getHotel(int i, int j) {
+        return (grid.getType(i, j) == null) ? hotels.get(grid.getHotelId(i, j)) : null;
+    }
+
+    /**
+     * Returns the entrance on the tile at the specified position.
+     *
+     * @param i the row
+     * @param j the column
+     *
+     * @return the entrance on the tile, NONE if it is not on the ring
+     */
+    public PlayerTile.Entrance getEntrance(int i, int j) {
+        int r = grid.getRingIndex(i, j);
+        return (r >= 0) ? ring[r].getEntrance() : PlayerTile.Entrance.NONE;
+    }
+
+    /**
+     * Returns the number of player tiles the players move on (the ring).
+     *
+     * @return the number of player tiles on the ring
+     */
+    public int getRingLength() {
+        return ring.length;
+    }
+
+    /**
+     * Returns a player tile on the ring. The tiles on the ring are numbered
+     * from 0 (the start tile) in the order the players visit them.
+     *
+     * @param r the index of the tile on the ring
+     *
+     * @return the player tile with the index specified
+     */
+    public PlayerTile getRingTile(int r) {
+        return ring[r];
     }
 
     PlayerTile getStart() {
@@ -96,138 +137,66 @@ public class Board {
     }
 
     Hotel getHotel(PlayerTile pt) {
-        Point p = indexOf(pt);
-        switch (pt.getEntrance()) {
-            case EAST:
-                return ((HotelTile) board[p.y][p.x + 1]).getHotel();
-            case SOUTH:
-                return ((HotelTile) board[p.y + 1][p.x]).getHotel();
-            case WEST:
-                return ((HotelTile) board[p.y][p.x - 1]).getHotel();
-            case NORTH:
-                return ((HotelTile) board[p.y - 1][p.x]).getHotel();
-            default:
-                return null;
-        }
+        return pt.getAdjacentHotel(pt.getEntrance());
     }
 
     Map<PlayerTile.Entrance, Hotel> getHotels(PlayerTile pt) {
         Map<PlayerTile.Entrance, Hotel> hotels = new HashMap<>();
-
-        Point p = indexOf(pt);
-        if (p.x + 1 < BOARD_COLUMNS) {
-            HotelTile ht;
-            try {
-                ht = (HotelTile) board[p.y][p.x + 1];
-                hotels.put(PlayerTile.Entrance.EAST, ht.getHotel());
-            } catch (ClassCastException _e) {
-                // east neighbor not a hotel, ignore it
-            }
-        }
-        if (p.y + 1 < BOARD_ROWS) {
-            HotelTile ht;
-            try {
-                ht = (HotelTile) board[p.y + 1][p.x];
-                hotels.put(PlayerTile.Entrance.SOUTH, ht.getHotel());
-            } catch (ClassCastException _e) {
-                // south neighbor not a hotel, ignore it
-            }
+        for (PlayerTile.Entrance side : PlayerTile.SIDES) {
+            Hotel h = pt.getAdjacentHotel(side);
+            if (h != null)
+                hotels.put(side, h);
         }
-        if (p.x - 1 >= 0) {
-            HotelTile ht;
-            try {
-                ht = (HotelTile) board[p.y][p.x - 1];
-                hotels.put(PlayerTile.Entrance.WEST, ht.getHotel());
-            } catch (ClassCastException _e) {
-                // west neighbor not a hotel, ignore it
-            }
-        }
-        if (p.y - 1 >= 0) {
-            HotelTile ht;
-            try {
-                ht = (HotelTile) board[p.y - 1][p.x];
-                hotels.put(PlayerTile.Entrance.NORTH, ht.getHotel());
-            } catch (ClassCastException _e) {
-                // north neighbor not a hotel, ignore it
-            }
-        }
-
         return hotels;
     }
 
-    Set<PlayerTile> getHotelFront(Hotel h) {
-        // Return a copy because we don't want modifications of hotelFronts via
-        // this interface. Moreover, returning hotelFront would sooner or later
-        // lead to ConcurrentModificationsExceptions
-        return new HashSet<>(hotelFronts.get(h));
+    boolean hasAdjacentNotBuilt(PlayerTile pt) {
+        for (PlayerTile.Entrance side : PlayerTile.SIDES) {
+            Hotel h = pt.getAdjacentHotel(side);
+            if (h != null && !h.isBuilt())
+                return true;
+        }
+        return false;
     }
 
     Point indexOf(Tile t) {
-        for (int i = 0; i < BOARD_ROWS; i++)
-            for (int j = 0; j < BOARD_COLUMNS; j++)
-                if (board[i][j] == t)
-                    return new Point(j, i);
+        if (t instanceof PlayerTile && ((PlayerTile) t).getRingIndex() >= 0) {
+            int r = ((PlayerTile) t).getRingIndex();
+            if (ring[r] == t)
+                return new Point(grid.getRingColumn(r), grid.getRingRow(r));
+        }
         return null;
     }
 
     private boolean validIndex(int i, int j) {
-        return i >= 0 && i < BOARD_ROWS && j >= 0 && j < BOARD_COLUMNS;
+        return i >= 0 && i < grid.getRows() && j >= 0 && j < grid.getColumns();
     }
 
-    private void determinePath() {
-        // Find the first PlayerTile from the top left that's not free
-        int i = 0, j = 0;
-        while (!(board[i][j] instanceof PlayerTile)
-                || (((PlayerTile) board[i][j]).getType() == PlayerTile.Type.FREE)) {
-            j = (j < BOARD_COLUMNS - 1) ? (j + 1) : 0;
-            if (j == 0)
-                i++;
-        }
+    private PlayerTile newPlayerTile(int i, int j) {
+        // Cache the neighboring hotels on the tile, so that looking them up
+        // while playing doesn't need to search the board
+        PlayerTile pt = new PlayerTile(grid.getType(i, j));
+        pt.setAdjacentHotel(PlayerTile.Entrance.EAST, hotelAt(i, j + 1));
+        pt.setAdjacentHotel(PlayerTile.Entrance.SOUTH, hotelAt(i + 1, j));
+        pt.setAdjacentHotel(PlayerTile.Entrance.WEST, hotelAt(i, j - 1));
+        pt.setAdjacentHotel(PlayerTile.Entrance.NORTH, hotelAt(i - 1, j));
+        return pt;
+    }
 
-        // The next of the found tile is the one on its right
-        PlayerTile prev = (PlayerTile) board[i][j];
-        prev.setNext((PlayerTile) board[i][j + 1]);
-
-        // Set the next for the rest of the tiles
-        PlayerTile curr = prev.getNext();
-        j++;
-        while (curr.getNext() == null) {
-            PlayerTile pt = null;
-            if ((j + 1 < BOARD_COLUMNS) && (board[i][j + 1] instanceof PlayerTile)
-                    && (pt = (PlayerTile) board[i][j + 1]).getType() != PlayerTile.Type.FREE
-                    && pt != prev) {
-                curr.setNext(pt);
-                j++;
-            } else if ((i + 1 < BOARD_ROWS) && (board[i + 1][j] instanceof PlayerTile)
-                    && (pt = (PlayerTile) board[i + 1][j]).getType() != PlayerTile.Type.FREE
-                    && pt != prev) {
-                curr.setNext(pt);
-                i++;
-            } else if ((j - 1 >= 0) && (board[i][j - 1] instanceof PlayerTile)
-                    && (pt = (PlayerTile) board[i][j - 1]).getType() != PlayerTile.Type.FREE
-                    && pt != prev) {
-                curr.setNext(pt);
-                j--;
-            } else if ((i - 1 >= 0) && (board[i - 1][j] instanceof PlayerTile)
-                    && (pt = (PlayerTile) board[i - 1][j]).getType() != PlayerTile.Type.FREE
-                    && pt != prev) {
-                curr.setNext(pt);
-                i--;
-            }
-            prev = curr;
-            curr.setNext(pt);
-            curr = pt;
-        }
+    private Hotel hotelAt(int i, int j) {
+        return validIndex(i, j) ? getHotel(i, j) : null;
     }
 
     private void determineHotelFronts() {
-        PlayerTile pt = start;
-        do {
-            for (Map.Entry<PlayerTile.Entrance, Hotel> e : getHotels(pt).entrySet()) {
-                hotelFronts.putIfAbsent(e.getValue(), new HashSet<>());
-                hotelFronts.get(e.getValue()).add(pt);
+        // Each hotel keeps its front (in ring order), so that it can be
+        // scanned without copying or looking it up
+        Map<Hotel, List<PlayerTile>> hotelFronts = new HashMap<>();
+        for (PlayerTile pt : ring)
+            for (Hotel h : getHotels(pt).values()) {
+                hotelFronts.putIfAbsent(h, new ArrayList<>());
+                if (!hotelFronts.get(h).contains(pt))
+                    hotelFronts.get(h).add(pt);
             }
-            pt = pt.getNext();
-        } while (pt != start);
+        hotelFronts.forEach((h, front) -> h.setFront(front.toArray(new PlayerTile[0])));
     }
 }
@@ -0,0 +1,394 @@
+package hotel.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The fixed description of a board configuration, as read from a directory
+ * inside ./boards/: the layout of the tiles (board.txt) and the hotel cards
+ * (one file per hotel, named after its id). The dimensions of the board are
+ * those of board.txt: a row per (non-empty) line, all with as many tiles as
+ * the first. A definition is immutable, so a board directory needs to be
+ * read only once no matter how many games are played on it.
+ *
+ * The files are parsed straight from their bytes by a BoardTokenizer, and
+ * the hotel cards of boards with many hotels are read in parallel, on a pool
+ * shared by all the boards read.
+ */
+public class BoardDefinition {
+
+    private static final int PARALLEL_CARDS = 32;   // fewer cards are read on the calling thread
+    private static ExecutorService loaders;
+
+    private final String name;
+    private final Path dir;
+    private int rows, columns;
+    private BoardGrid grid;
+    private final Map<Integer, HotelCard> cards = new HashMap<>();
+    private final Map<Integer, Path> cardFiles = new HashMap<>();     // the file of each card
+
+    private BoardDefinition(Path dir) throws IOException {
+        Path fileName = dir.getFileName();
+        name = (fileName != null) ? fileName.toString() : dir.toString();
+        this.dir = dir;
+        readHotelCards(dir);
+        readBoard(dir.resolve("board.txt"));
+    }
+
+    private BoardDefinition(BoardDefinition base) {
+        name = base.name;
+        dir = base.dir;
+        rows = base.rows;
+        columns = base.columns;
+        grid = base.grid;       // immutable
+        cards.putAll(base.cards);
+        cardFiles.putAll(base.cardFiles);
+    }
+
+    /**
+     * Reads the board configuration in the directory specified, exiting with
+     * an error message if it is malformed.
+     *
+     * @param dir the directory containing the board configuration
+     *
+     * @return the board configuration read
+     */
+    public static BoardDefinition read(File dir) {
+        try {
+            return parse(dir.toPath());
+        } catch (IOException e) {
+            System.err.println((e instanceof BoardFormatException) ? "Corrupted board: " + e.getMessage()
+                    : "Can't read board " + dir + ": " + e);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the board configuration in the directory specified.
+     *
+     * @param dir the directory containing the board configuration
+     *
+     * @return the board configuration read
+     *
+     * @throws BoardFormatException if a file is malformed, with the position
+     * of the problem
+     * @throws IOException if a file can't be read
+     */
+    public static BoardDefinition parse(Path dir) throws IOException {
+        return new BoardDefinition(dir);
+    }
+
+    /**
+     * Returns the name of this board configuration (the name of the directory
+     * it was read from).
+     *
+     * @return the name of this board configuration
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of rows on this board.
+     *
+     * @return the number of rows on this board
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns on this board.
+     *
+     * @return the number of columns on this board
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the hotel card for the hotel with the id specified.
+     *
+     * @param hid the id of the hotel
+     *
+     * @return the hotel card or null if there is no such hotel
+     */
+    public HotelCard getHotelCard(int hid) {
+        return cards.get(hid);
+    }
+
+    /**
+     * Returns the hotel cards of this board, by hotel id.
+     *
+     * @return the hotel cards of this board, by hotel id
+     */
+    public Map<Integer, HotelCard> getHotelCards() {
+        return Collections.unmodifiableMap(cards);
+    }
+
+    /**
+     * Returns a copy of this definition with one of its files read again
+     * (or, for a hotel card that was deleted, left out), sharing everything
+     * else with this one.
+     *
+     * @param file the file that changed, board.txt or a hotel card of this
+     * board
+     *
+     * @return the new definition
+     *
+     * @throws BoardFormatException if the file is malformed
+     * @throws IOException if the file can't be read
+     */
+    BoardDefinition reparse(Path file) throws IOException {
+        BoardDefinition def = new BoardDefinition(this);
+        if (file.getFileName().toString().equals("board.txt"))
+            def.readBoard(file);
+        else if (Files.exists(file)) {
+            def.cards.put(cardId(file), HotelCard.parse(file, cardId(file)));
+            def.cardFiles.put(cardId(file), file);
+        } else {
+            def.cards.remove(cardId(file));
+            def.cardFiles.remove(cardId(file));
+        }
+        return def;
+    }
+
+    /**
+     * Returns the directory this definition was read from.
+     *
+     * @return the directory this definition was read from
+     */
+    Path getDirectory() {
+        return dir;
+    }
+
+    BoardGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Returns the file each hotel card was read from, by hotel id.
+     */
+    Map<Integer, Path> getCardFiles() {
+        return Collections.unmodifiableMap(cardFiles);
+    }
+
+    /**
+     * Returns the hotel card files of a board directory: every entry but
+     * board.txt.
+     */
+    static List<Path> listCardFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (dir.getFileSystem() == FileSystems.getDefault()) {
+            // File.list is several times faster than a DirectoryStream, which
+            // makes a Path of every entry
+            String[] names = dir.toFile().list();
+            if (names == null)
+                throw new NoSuchFileException(dir.toString());
+            for (String n : names)
+                if (!n.equals("board.txt"))
+                    files.add(dir.resolve(n));
+        } else {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path f : entries)
+                    if (!f.getFileName().toString().equals("board.txt"))
+                        files.add(f);
+            }
+        }
+        return files;
+    }
+
+    private void readHotelCards(Path dir) throws IOException {
+        List<Path> files = listCardFiles(dir);
+        int[] ids = new int[files.size()];
+        for (int k = 0; k < ids.length; k++)
+            ids[k] = cardId(files.get(k));
+
+        ExecutorService pool = (files.size() >= PARALLEL_CARDS) ? loaders() : null;
+        Set<Integer> seen = new HashSet<>();
+        for (int k = 0; k < ids.length; k++)
+            if (!seen.add(ids[k]))      // 1 and 1.txt
+                throw new BoardFormatException(files.get(k), 0, 0, "another card for hotel " + ids[k]);
+        for (int k = 0; k < ids.length; k++)
+            cardFiles.put(ids[k], files.get(k));
+        if (pool == null) {
+            for (int k = 0; k < ids.length; k++)
+                cards.put(ids[k], HotelCard.parse(files.get(k), ids[k]));
+            return;
+        }
+        List<Callable<HotelCard>> tasks = new ArrayList<>();
+        for (int k = 0; k < ids.length; k++) {
+            Path f = files.get(k);
+            int id = ids[k];
+            tasks.add(() -> HotelCard.parse(f, id));
+        }
+        try {
+            for (Future<HotelCard> c : pool.invokeAll(tasks)) {
+                HotelCard card = c.get();
+                cards.put(card.getId(), card);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the id of the hotel of a hotel card file, the number it is
+     * named after (e.g. 1.txt).
+     */
+    static int cardId(Path f) throws BoardFormatException {
+        String n = f.getFileName().toString();
+        int id;
+        try {
+            id = Integer.parseInt(n.endsWith(".txt") ? n.substring(0, n.length() - 4) : n);
+        } catch (NumberFormatException e) {
+            throw new BoardFormatException(f, 0, 0, "hotel card not named after a hotel id");
+        }
+        if (id <= 0)
+            throw new BoardFormatException(f, 0, 0, "hotel id " + id + " is not positive");
+        return id;
+    }
+
+    private void readBoard(Path f) throws IOException {
+        List<BoardFormatException> problems = new ArrayList<>();
+        BoardGrid g = readGrid(f, problems);
+        if (!problems.isEmpty())
+            throw problems.get(0);
+        grid = g;
+        rows = g.getRows();
+        columns = g.getColumns();
+    }
+
+    /**
+     * Reads the layout of the tiles in board.txt, adding every problem found
+     * to the list specified instead of stopping at the first: tokens that
+     * aren't tiles are skipped (and counted as tiles, for the length of their
+     * row), and no grid is made if there is anything wrong.
+     *
+     * @return the grid, or null if a problem was found
+     */
+    static BoardGrid readGrid(Path f, List<BoardFormatException> problems) throws IOException {
+        int found = problems.size();
+        BoardTokenizer t = new BoardTokenizer(f);
+        byte[] cellTypes = new byte[256];
+        int[] cellIds = new int[256];
+        int cells = 0;
+        int rows = 0, columns = 0;
+        while (t.nextLine()) {
+            int rowStart = cells;
+            int line = t.getLine();
+            while (t.hasNextOnLine()) {
+                if (cells == cellTypes.length) {
+                    cellTypes = Arrays.copyOf(cellTypes, 2 * cells);
+                    cellIds = Arrays.copyOf(cellIds, 2 * cells);
+                }
+                char c = t.peekLetter();
+                if (c == 0) {
+                    cellTypes[cells] = BoardGrid.HOTEL;
+                    cellIds[cells++] = 0;
+                    if (!t.peekNumber()) {
+                        problems.add(t.errorHere("unknown tile " + t.nextTokenText()));
+                        t.skip();
+                        continue;
+                    }
+                    try {
+                        int hid = t.nextInt();
+                        if (hid <= 0)
+                            problems.add(t.error("hotel id " + hid + " is not positive"));
+                        else
+                            cellIds[cells - 1] = hid;
+                    } catch (BoardFormatException e) {
+                        problems.add(e);
+                        t.skip();
+                    }
+                    continue;
+                }
+                t.nextLetter();
+                PlayerTile.Type type;
+                switch (c) {
+                    case 'S':
+                        type = PlayerTile.Type.START;
+                        break;
+                    case 'C':
+                        type = PlayerTile.Type.CITY_HALL;
+                        break;
+                    case 'B':
+                        type = PlayerTile.Type.BANK;
+                        break;
+                    case 'H':
+                        type = PlayerTile.Type.BUY;
+                        break;
+                    case 'E':
+                        type = PlayerTile.Type.BUILD;
+                        break;
+                    case 'F':
+                        type = PlayerTile.Type.FREE;
+                        break;
+                    default:
+                        problems.add(t.error("unknown tile " + c));
+                        type = PlayerTile.Type.FREE;
+                }
+                cellTypes[cells] = (byte) type.ordinal();
+                cellIds[cells++] = 0;
+            }
+            int n = cells - rowStart;
+            if (rows == 0)
+                columns = n;
+            else if (n != columns)
+                problems.add(new BoardFormatException(f, line, 0, "row " + (rows + 1) + " has " + n
+                        + " tiles instead of " + columns));
+            rows++;
+        }
+        if (problems.size() > found)
+            return null;
+        try {
+            return new BoardGrid(rows, columns, Arrays.copyOf(cellTypes, cells), Arrays.copyOf(cellIds, cells));
+        } catch (IllegalArgumentException e) {
+            problems.add(new BoardFormatException(f, 0, 0, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pool to read hotel cards on, or null if there is a single
+     * processor.
+     */
+    private static synchronized ExecutorService loaders() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (threads < 2)
+            return null;
+        if (loaders == null)
+            loaders = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "loader-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        return loaders;
+    }
+}
@@ -0,0 +1,53 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Signals a malformed board or hotel card file, at a position in it.
+ */
+public class BoardFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Path file;
+    private final int line, column;
+    private final String reason;
+
+    /**
+     * Constructs an exception about a position in a file.
+     *
+     * @param file the file
+     * @param line the line, from 1 (0 if the problem isn't about a line)
+     * @param column the column, from 1 (0 if the problem isn't about a column)
+     * @param message what is wrong
+     */
+    public BoardFormatException(Path file, int line, int column, String message) {
+        super(file + ((line > 0) ? ":" + line + ((column > 0) ? ":" + column : "") : "") + ": " + message);
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        reason = message;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns what is wrong, without the position.
+     *
+     * @return what is wrong
+     */
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,505 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates random, valid board directories (board.txt and a card per
+ * hotel), for benchmarks and for fuzzing the code that reads and plays
+ * boards. A generator is immutable; the with* methods return modified
+ * copies, and the same seed always gives the same board.
+ *
+ * The ring is the outline of a random region grown cell by cell on a grid of
+ * 2x2 tiles, one tile in from the edge of the board: such an outline never
+ * touches itself, so every ring tile has exactly two ring neighbors and
+ * Board follows it unambiguously, and every ring tile has a tile off the ring
+ * next to it. The region grows until its outline is at least as long as the
+ * ring length asked for (or it can't grow any more). The start, city hall
+ * and bank tiles are placed at random on the ring and the rest of it is
+ * split between BUY and BUILD tiles in the ratio asked for. The tiles off
+ * the ring are split among the hotels, each grown from a tile next to the
+ * ring so that it has a front (at least one inside the ring and one outside
+ * it, so that they cover every tile), except for some free tiles away from
+ * the ring.
+ *
+ * A hotel's buying cost is drawn around the base cost, its obligatory buying
+ * cost is half of that and its entrance cost a tenth. Staying costs start at
+ * a twentieth of the buying cost and grow by the cost growth factor with
+ * every building state; building a state costs the buying cost times the
+ * growth factor to the state's power, give or take 25%.
+ */
+public class BoardGenerator {
+
+    /**
+     * A generator of boards the size of the default one.
+     */
+    public static final BoardGenerator DEFAULT = new BoardGenerator(12, 15, 40, 8, 1, 1, 0.05, 2000, 1.4, 2, 6);
+
+    private final int rows, columns;
+    private final int ringLength;
+    private final int hotels;
+    private final double buyWeight, buildWeight;
+    private final double freeDensity;
+    private final int baseCost;
+    private final double costGrowth;
+    private final int minStates, maxStates;
+
+    private BoardGenerator(int rows, int columns, int ringLength, int hotels, double buyWeight, double buildWeight,
+            double freeDensity, int baseCost, double costGrowth, int minStates, int maxStates) {
+        if (rows < 5 || columns < 5)
+            throw new IllegalArgumentException("A board needs at least 5 rows and columns");
+        if (hotels < 2 || ringLength < 8 || buyWeight < 0 || buildWeight < 0 || buyWeight + buildWeight <= 0
+                || freeDensity < 0 || freeDensity > 1 || baseCost < 20 || costGrowth < 1
+                || minStates < 1 || maxStates < minStates)
+            throw new IllegalArgumentException("Bad generator parameters");
+        this.rows = rows;
+        this.columns = columns;
+        this.ringLength = ringLength;
+        this.hotels = hotels;
+        this.buyWeight = buyWeight;
+        this.buildWeight = buildWeight;
+        this.freeDensity = freeDensity;
+        this.baseCost = baseCost;
+        this.costGrowth = costGrowth;
+        this.minStates = minStates;
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Returns the number of rows of the boards generated.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns of the boards generated.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns a copy of this generator that makes boards of the size
+     * specified.
+     *
+     * @param rows the number of rows, at least 5
+     * @param columns the number of columns, at least 5
+     *
+     * @return the modified copy
+     *
+     * @throws IllegalArgumentException if the board is smaller than 5x5
+     */
+    public BoardGenerator withDimensions(int rows, int columns) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buyWeight, buildWeight, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Returns a copy of this generator that makes rings of the length
+     * specified.
+     *
+     * @param ringLength the number of tiles of the ring, at least 8
+     *
+     * @return the modified copy
+     *
+     * @throws IllegalArgumentException if the ring is shorter than 8 tiles
+     */
+    public BoardGenerator withRingLength(int ringLength) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buyWeight, buildWeight, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Returns a copy of this generator that places the number of hotels
+     * specified.
+     *
+     * @param hotels the number of hotels, at least 2
+     *
+     * @return the modified copy
+     *
+     * @throws IllegalArgumentException if there are fewer than 2 hotels
+     */
+    public BoardGenerator withHotels(int hotels) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buyWeight, buildWeight, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Returns a copy of this generator that splits the ring tiles other than
+     * the start, city hall and bank tiles between BUY and BUILD tiles in the
+     * ratio specified.
+     *
+     * @param buy the weight of BUY tiles
+     * @param build the weight of BUILD tiles
+     *
+     * @return the modified copy
+     */
+    public BoardGenerator withTileMix(double buy, double build) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buy, build, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Returns a copy of this generator that makes free the share specified of
+     * the tiles off the ring that aren't next to it.
+     *
+     * @param freeDensity the share of free tiles, from 0 to 1
+     *
+     * @return the modified copy
+     */
+    public BoardGenerator withFreeDensity(double freeDensity) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buyWeight, buildWeight, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Returns a copy of this generator with the cost curve specified.
+     *
+     * @param baseCost the mean buying cost of a hotel
+     * @param costGrowth the factor costs grow by with each building state
+     * @param minStates the least number of building states of a hotel
+     * @param maxStates the most building states of a hotel
+     *
+     * @return the modified copy
+     */
+    public BoardGenerator withCosts(int baseCost, double costGrowth, int minStates, int maxStates) {
+        return new BoardGenerator(rows, columns, ringLength, hotels, buyWeight, buildWeight, freeDensity,
+                baseCost, costGrowth, minStates, maxStates);
+    }
+
+    /**
+     * Generates a board into the directory specified, creating it if needed.
+     * Hotel cards of an earlier board in the directory are not removed.
+     *
+     * @param seed the seed of the board
+     * @param dir the directory to write the board to
+     *
+     * @throws IOException if the board can't be written
+     * @throws IllegalArgumentException if the board is too small to fit the
+     * hotels
+     */
+    public void generate(long seed, Path dir) throws IOException {
+        SplittableRandom rng = new SplittableRandom(seed);
+        char[][] types = new char[rows][columns];
+        boolean[][] ring = ring(rng);
+        placeRingTiles(ring, types, rng);
+        int[][] hotelIds = placeHotels(ring, types, rng);
+
+        Files.createDirectories(dir);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (j > 0)
+                    sb.append(',');
+                if (types[i][j] != 0)
+                    sb.append(types[i][j]);
+                else
+                    sb.append(hotelIds[i][j]);
+            }
+            sb.append('\n');
+        }
+        Files.write(dir.resolve("board.txt"), sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        for (int hid = 1; hid <= hotels; hid++)
+            Files.write(dir.resolve(hid + ".txt"), card(hid, rng).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Generates boards into subdirectories of the directory specified, named
+     * board-0, board-1 and so on, in parallel. Board i is seeded with a
+     * function of the seed and i, so the boards don't depend on the number of
+     * threads.
+     *
+     * @param count the number of boards
+     * @param seed the seed of the boards
+     * @param parent the directory to write the boards to
+     * @param threads the number of threads to generate with
+     *
+     * @return the directories of the boards
+     *
+     * @throws IOException if a board can't be written
+     */
+    public List<Path> generateAll(int count, long seed, Path parent, int threads) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "generator-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Path> dirs = new ArrayList<>();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int k = 0; k < count; k++) {
+                Path dir = parent.resolve("board-" + k);
+                long boardSeed = seed ^ (k * 0x9E3779B97F4A7C15L);
+                dirs.add(dir);
+                tasks.add(() -> {
+                    generate(boardSeed, dir);
+                    return null;
+                });
+            }
+            for (Future<Void> f : workers.invokeAll(tasks))
+                f.get();
+            return dirs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Grows a region of cells (2x2 tiles each, cell (a, b) having its top left
+     * corner at tile (2a + 1, 2b + 1)) and returns its outline. A cell is
+     * added only if the region stays without holes and without two cells
+     * touching only at a corner, so the outline is a single ring that never
+     * touches itself.
+     */
+    private boolean[][] ring(SplittableRandom rng) {
+        int cellRows = (rows - 3) / 2, cellColumns = (columns - 3) / 2;
+        boolean[][] region = new boolean[cellRows][cellColumns];
+        region[rng.nextInt(cellRows)][rng.nextInt(cellColumns)] = true;
+        int perimeter = 8;      // in tiles
+        int[] frontier = new int[cellRows * cellColumns];
+        while (perimeter < ringLength) {
+            int n = 0;
+            for (int a = 0; a < cellRows; a++)
+                for (int b = 0; b < cellColumns; b++)
+                    if (!region[a][b] && regionNeighbors(region, a, b) > 0)
+                        frontier[n++] = a * cellColumns + b;
+            boolean grown = false;
+            while (n > 0 && !grown) {
+                int k = rng.nextInt(n);
+                int a = frontier[k] / cellColumns, b = frontier[k] % cellColumns;
+                frontier[k] = frontier[--n];
+                int neighbors = regionNeighbors(region, a, b);
+                region[a][b] = true;
+                if (touchesAtCorner(region, a, b) || hasHole(region)) {
+                    region[a][b] = false;
+                    continue;
+                }
+                perimeter += 2 * (4 - 2 * neighbors);
+                grown = true;
+            }
+            if (!grown)
+                break;  // the board is too small for the ring asked for
+        }
+
+        boolean[][] ring = new boolean[rows][columns];
+        for (int a = 0; a < cellRows; a++)
+            for (int b = 0; b < cellColumns; b++) {
+                if (!region[a][b])
+                    continue;
+                int i = 2 * a + 1, j = 2 * b + 1;
+                for (int d = 0; d <= 2; d++) {
+                    if (!inRegion(region, a - 1, b))
+                        ring[i][j + d] = true;
+                    if (!inRegion(region, a + 1, b))
+                        ring[i + 2][j + d] = true;
+                    if (!inRegion(region, a, b - 1))
+                        ring[i + d][j] = true;
+                    if (!inRegion(region, a, b + 1))
+                        ring[i + d][j + 2] = true;
+                }
+            }
+        return ring;
+    }
+
+    private static boolean inRegion(boolean[][] region, int a, int b) {
+        return a >= 0 && a < region.length && b >= 0 && b < region[0].length && region[a][b];
+    }
+
+    private static int regionNeighbors(boolean[][] region, int a, int b) {
+        return (inRegion(region, a - 1, b) ? 1 : 0) + (inRegion(region, a + 1, b) ? 1 : 0)
+                + (inRegion(region, a, b - 1) ? 1 : 0) + (inRegion(region, a, b + 1) ? 1 : 0);
+    }
+
+    private static boolean touchesAtCorner(boolean[][] region, int a, int b) {
+        for (int da = -1; da <= 1; da += 2)
+            for (int db = -1; db <= 1; db += 2)
+                if (inRegion(region, a + da, b + db) && !inRegion(region, a + da, b) && !inRegion(region, a, b + db))
+                    return true;
+        return false;
+    }
+
+    private static boolean hasHole(boolean[][] region) {
+        // Flood the outside from the cells on the edge; any cell left
+        // unflooded outside the region is a hole
+        int cellRows = region.length, cellColumns = region[0].length;
+        boolean[][] outside = new boolean[cellRows][cellColumns];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int a = 0; a < cellRows; a++)
+            for (int b = 0; b < cellColumns; b++)
+                if ((a == 0 || b == 0 || a == cellRows - 1 || b == cellColumns - 1) && !region[a][b]) {
+                    outside[a][b] = true;
+                    queue.add(new int[] {a, b});
+                }
+        int[] da = {-1, 1, 0, 0}, db = {0, 0, -1, 1};
+        while (!queue.isEmpty()) {
+            int[] c = queue.poll();
+            for (int d = 0; d < 4; d++) {
+                int a = c[0] + da[d], b = c[1] + db[d];
+                if (a >= 0 && a < cellRows && b >= 0 && b < cellColumns && !region[a][b] && !outside[a][b]) {
+                    outside[a][b] = true;
+                    queue.add(new int[] {a, b});
+                }
+            }
+        }
+        for (int a = 0; a < cellRows; a++)
+            for (int b = 0; b < cellColumns; b++)
+                if (!region[a][b] && !outside[a][b])
+                    return true;
+        return false;
+    }
+
+    private void placeRingTiles(boolean[][] ring, char[][] types, SplittableRandom rng) {
+        List<int[]> tiles = new ArrayList<>();
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                if (ring[i][j])
+                    tiles.add(new int[] {i, j});
+        for (int k = tiles.size() - 1; k > 0; k--) {   // shuffle
+            int r = rng.nextInt(k + 1);
+            int[] t = tiles.get(k);
+            tiles.set(k, tiles.get(r));
+            tiles.set(r, t);
+        }
+        double buyShare = buyWeight / (buyWeight + buildWeight);
+        for (int k = 0; k < tiles.size(); k++) {
+            int[] t = tiles.get(k);
+            char type;
+            if (k == 0)
+                type = 'S';
+            else if (k == 1)
+                type = 'C';
+            else if (k == 2)
+                type = 'B';
+            else
+                type = (rng.nextDouble() < buyShare) ? 'H' : 'E';
+            types[t[0]][t[1]] = type;
+        }
+    }
+
+    private int[][] placeHotels(boolean[][] ring, char[][] types, SplittableRandom rng) {
+        // Seed each hotel on a distinct tile next to the ring, the first two
+        // inside and outside it, so that every tile off the ring is reached
+        List<int[]> inside = new ArrayList<>(), outside = new ArrayList<>();
+        boolean[][] out = outside(ring);
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                if (!ring[i][j] && nextToRing(ring, i, j))
+                    (out[i][j] ? outside : inside).add(new int[] {i, j});
+        if (inside.size() + outside.size() < hotels)
+            throw new IllegalArgumentException("Not enough room for " + hotels + " hotels");
+        int[][] hotelIds = new int[rows][columns];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int hid = 1; hid <= hotels; hid++) {
+            List<int[]> candidates = (hid == 1 && !inside.isEmpty()) ? inside
+                    : (hid == 2 && !outside.isEmpty()) ? outside
+                    : (rng.nextInt(inside.size() + outside.size()) < inside.size()) ? inside : outside;
+            int k = rng.nextInt(candidates.size());
+            int[] t = candidates.get(k);
+            candidates.set(k, candidates.get(candidates.size() - 1));
+            candidates.remove(candidates.size() - 1);
+            hotelIds[t[0]][t[1]] = hid;
+            queue.add(t);
+        }
+
+        // Grow the hotels over the tiles off the ring, breadth first, in
+        // random order within each step
+        int[] di = {0, 1, 0, -1}, dj = {1, 0, -1, 0};
+        while (!queue.isEmpty()) {
+            int[] t = queue.poll();
+            int first = rng.nextInt(4);
+            for (int d = 0; d < 4; d++) {
+                int i = t[0] + di[(first + d) % 4], j = t[1] + dj[(first + d) % 4];
+                if (i >= 0 && i < rows && j >= 0 && j < columns && !ring[i][j] && hotelIds[i][j] == 0) {
+                    hotelIds[i][j] = hotelIds[t[0]][t[1]];
+                    queue.add(new int[] {i, j});
+                }
+            }
+        }
+
+        // Some of the tiles away from the ring are free (never a seed, as the
+        // seeds are next to the ring)
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                if (!ring[i][j] && !nextToRing(ring, i, j) && rng.nextDouble() < freeDensity)
+                    types[i][j] = 'F';
+        return hotelIds;
+    }
+
+    /**
+     * Returns the tiles off the ring that can be reached from the edge of
+     * the board without crossing the ring.
+     */
+    private boolean[][] outside(boolean[][] ring) {
+        boolean[][] out = new boolean[rows][columns];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                if ((i == 0 || j == 0 || i == rows - 1 || j == columns - 1) && !ring[i][j]) {
+                    out[i][j] = true;
+                    queue.add(new int[] {i, j});
+                }
+        int[] di = {0, 1, 0, -1}, dj = {1, 0, -1, 0};
+        while (!queue.isEmpty()) {
+            int[] t = queue.poll();
+            for (int d = 0; d < 4; d++) {
+                int i = t[0] + di[d], j = t[1] + dj[d];
+                if (i >= 0 && i < rows && j >= 0 && j < columns && !ring[i][j] && !out[i][j]) {
+                    out[i][j] = true;
+                    queue.add(new int[] {i, j});
+                }
+            }
+        }
+        return out;
+    }
+
+    private boolean nextToRing(boolean[][] ring, int i, int j) {
+        return (i > 0 && ring[i - 1][j]) || (i + 1 < rows && ring[i + 1][j])
+                || (j > 0 && ring[i][j - 1]) || (j + 1 < columns && ring[i][j + 1]);
+    }
+
+    private String card(int hid, SplittableRandom rng) {
+        int buying = round50(baseCost * (0.5 + rng.nextDouble()));
+        StringBuilder sb = new StringBuilder();
+        sb.append("HOTEL ").append(hid).append('\n');
+        sb.append(buying).append(',').append(round50(buying / 2.0)).append('\n');
+        sb.append(round50(buying / 10.0)).append('\n');
+        int states = minStates + rng.nextInt(maxStates - minStates + 1);
+        int stay = 0;
+        for (int s = 0; s < states; s++) {
+            double growth = Math.pow(costGrowth, s);
+            int build = round50(buying * growth * (0.75 + rng.nextDouble() / 2));
+            stay = Math.max(stay, round50(buying / 20.0 * growth));
+            sb.append(build).append(',').append(stay).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static int round50(double cost) {
+        return Math.max(50, (int) Math.round(cost / 50) * 50);
+    }
+}
@@ -0,0 +1,138 @@
+package hotel.model;
+
+import java.util.Arrays;
+
+/**
+ * The layout of the tiles of a board, one entry per cell in row-major order:
+ * a byte for the type (the ordinal of the PlayerTile.Type, or HOTEL), an int
+ * for the hotel id (0 if not a hotel tile) and an int for the index on the
+ * ring (-1 if not on the ring), nine bytes per cell in all. A grid is
+ * immutable and belongs to a BoardDefinition, so all the games played on a
+ * board share it; a Board only makes tile objects for the tiles of the ring,
+ * the only ones with state, and for the rest when asked for them.
+ */
+final class BoardGrid {
+
+    static final byte HOTEL = -1;
+
+    private static final PlayerTile.Type[] TYPES = PlayerTile.Type.values();
+
+    private final int rows, columns;
+    private final byte[] types;
+    private final int[] hotelIds;
+    private final int[] ringIndices;
+    private final int[] ringCells;      // the cell of each ring index
+
+    /**
+     * Makes a grid and finds its ring: starting from the first player tile
+     * (not FREE) from the top left, going east, each tile is followed by its
+     * first neighbor (looking east, south, west and north) that is a player
+     * tile, not FREE and not the tile before it. The ring is numbered from
+     * the START tile.
+     *
+     * @param types the type of each cell, taken over
+     * @param hotelIds the hotel id of each cell, taken over
+     *
+     * @throws IllegalArgumentException if there is no ring, or no start on it
+     */
+    BoardGrid(int rows, int columns, byte[] types, int[] hotelIds) {
+        this.rows = rows;
+        this.columns = columns;
+        this.types = types;
+        this.hotelIds = hotelIds;
+        int cells = rows * columns;
+        ringIndices = new int[cells];
+        Arrays.fill(ringIndices, -1);
+
+        int first = 0;
+        while (first < cells && !onRing(first))
+            first++;
+        if (first == cells)
+            throw new IllegalArgumentException("no player tiles to move on");
+        if (first % columns + 1 == columns || !onRing(first + 1))
+            throw new IllegalArgumentException("the ring doesn't continue east of its first tile, at "
+                    + position(first));
+        int[] walk = new int[16];
+        int length = 0;
+        int prev = first, curr = first + 1;
+        walk[length++] = first;
+        ringIndices[first] = 0;
+        while (curr != first) {
+            if (ringIndices[curr] >= 0)
+                throw new IllegalArgumentException("the ring runs into itself at " + position(curr));
+            if (length == walk.length)
+                walk = Arrays.copyOf(walk, 2 * length);
+            ringIndices[curr] = 0;
+            walk[length++] = curr;
+            int i = curr / columns, j = curr % columns;
+            int next;
+            if (j + 1 < columns && onRing(curr + 1) && curr + 1 != prev)
+                next = curr + 1;
+            else if (i + 1 < rows && onRing(curr + columns) && curr + columns != prev)
+                next = curr + columns;
+            else if (j > 0 && onRing(curr - 1) && curr - 1 != prev)
+                next = curr - 1;
+            else if (i > 0 && onRing(curr - columns) && curr - columns != prev)
+                next = curr - columns;
+            else
+                throw new IllegalArgumentException("the ring breaks off at " + position(curr));
+            prev = curr;
+            curr = next;
+        }
+
+        int start = 0;
+        while (start < length && types[walk[start]] != PlayerTile.Type.START.ordinal())
+            start++;
+        if (start == length)
+            throw new IllegalArgumentException("no start tile on the ring");
+        ringCells = new int[length];
+        for (int r = 0; r < length; r++) {
+            ringCells[r] = walk[(start + r) % length];
+            ringIndices[ringCells[r]] = r;
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the type of a player tile, or null for a hotel tile.
+     */
+    PlayerTile.Type getType(int i, int j) {
+        byte t = types[i * columns + j];
+        return (t == HOTEL) ? null : TYPES[t];
+    }
+
+    int getHotelId(int i, int j) {
+        return hotelIds[i * columns + j];
+    }
+
+    int getRingIndex(int i, int j) {
+        return ringIndices[i * columns + j];
+    }
+
+    int getRingLength() {
+        return ringCells.length;
+    }
+
+    int getRingRow(int r) {
+        return ringCells[r] / columns;
+    }
+
+    int getRingColumn(int r) {
+        return ringCells[r] % columns;
+    }
+
+    private boolean onRing(int cell) {
+        return types[cell] != HOTEL && types[cell] != PlayerTile.Type.FREE.ordinal();
+    }
+
+    private String position(int cell) {
+        return "row " + (cell / columns + 1) + ", column " + (cell % columns + 1);
+    }
+}
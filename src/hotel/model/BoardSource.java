@@ -0,0 +1,274 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of board configurations, one per directory inside the root of the
+ * source, read through a java.nio.file.FileSystem: a directory on disk, a
+ * zip archive (or jar), or the boards directory packaged on the classpath.
+ * The board names are listed when first asked for and each board is read at
+ * most once, when first asked for, and kept; the files of a board are read
+ * with bulk channel reads (see BoardDefinition.parse), whatever the file
+ * system. A source is thread safe.
+ */
+public class BoardSource implements AutoCloseable {
+
+    /**
+     * The system property naming the location of the default source (see
+     * open).
+     */
+    public static final String PROPERTY = "hotel.boards";
+
+    private static BoardSource defaultSource;
+
+    private final Path root;
+    private final FileSystem owned;     // closed with the source, null if not opened by it
+    private volatile List<String> names;
+    private final Map<String, BoardDefinition> boards = new ConcurrentHashMap<>();
+
+    private BoardSource(Path root, FileSystem owned) {
+        this.root = root;
+        this.owned = owned;
+    }
+
+    /**
+     * Returns a source of the board directories inside the directory
+     * specified.
+     *
+     * @param dir the directory
+     *
+     * @return the source
+     */
+    public static BoardSource directory(Path dir) {
+        return new BoardSource(dir, null);
+    }
+
+    /**
+     * Returns a source of the board directories inside a directory of a zip
+     * archive (or jar).
+     *
+     * @param zip the zip archive
+     * @param dir the directory inside the archive, "/" for its root
+     *
+     * @return the source
+     *
+     * @throws IOException if the archive can't be opened
+     */
+    public static BoardSource zip(Path zip, String dir) throws IOException {
+        FileSystem fs = FileSystems.newFileSystem(zip, (ClassLoader) null);
+        return new BoardSource(fs.getPath(dir), fs);
+    }
+
+    /**
+     * Returns a source of the board directories inside a directory on the
+     * classpath, exploded or in a jar.
+     *
+     * @param resource the name of the directory, such as "boards"
+     *
+     * @return the source or null if there is no such directory on the
+     * classpath
+     *
+     * @throws IOException if the jar can't be opened
+     */
+    public static BoardSource classpath(String resource) throws IOException {
+        URL url = BoardSource.class.getClassLoader().getResource(resource + "/");
+        if (url == null)
+            return null;
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Bad classpath location " + url, e);
+        }
+        if (!uri.getScheme().equals("jar"))
+            return directory(Paths.get(uri));
+        // jar:file:/.../Hotel.jar!/boards/
+        String spec = uri.toString();
+        int separator = spec.indexOf("!/");
+        URI jar = URI.create(spec.substring(0, separator + 2));
+        FileSystem fs;
+        FileSystem owned;
+        try {
+            fs = owned = FileSystems.newFileSystem(jar, Collections.emptyMap());
+        } catch (FileSystemAlreadyExistsException e) {
+            fs = FileSystems.getFileSystem(jar);
+            owned = null;
+        }
+        return new BoardSource(fs.getPath(spec.substring(separator + 1)), owned);
+    }
+
+    /**
+     * Returns a source for a location: a directory, a zip archive or jar
+     * (whose root holds the boards, or a boards directory), or "classpath:"
+     * followed by the name of a directory on the classpath.
+     *
+     * @param location the location
+     *
+     * @return the source
+     *
+     * @throws IOException if there is no such location or it can't be opened
+     */
+    public static BoardSource open(String location) throws IOException {
+        if (location.startsWith("classpath:")) {
+            BoardSource s = classpath(location.substring("classpath:".length()));
+            if (s == null)
+                throw new IOException("No " + location + " found");
+            return s;
+        }
+        Path p = Paths.get(location);
+        if (Files.isDirectory(p))
+            return directory(p);
+        if (!Files.isRegularFile(p))
+            throw new IOException("No " + location + " found");
+        BoardSource s = zip(p, "/");
+        if (Files.isDirectory(s.root.resolve("boards")) && !Files.exists(s.root.resolve("boards/board.txt")))
+            return new BoardSource(s.root.resolve("boards"), s.owned);
+        return s;
+    }
+
+    /**
+     * Returns the source games are played from by default: the location named
+     * by the system property PROPERTY if set, else the ./boards directory if
+     * there is one, else the boards directory on the classpath (packaged in
+     * the jar). It is opened once and never closed.
+     *
+     * @return the default source
+     *
+     * @throws IOException if there is no such source or it can't be opened
+     */
+    public static synchronized BoardSource getDefault() throws IOException {
+        if (defaultSource == null) {
+            String location = System.getProperty(PROPERTY);
+            if (location != null)
+                defaultSource = open(location);
+            else if (Files.isDirectory(Paths.get("boards")))
+                defaultSource = directory(Paths.get("boards"));
+            else if ((defaultSource = classpath("boards")) == null)
+                throw new IOException("No \"boards\" directory found, in the working directory or the classpath");
+        }
+        return defaultSource;
+    }
+
+    /**
+     * Returns the root of this source, the directory holding the board
+     * directories.
+     *
+     * @return the root of this source
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the names of the boards of this source, in name order.
+     *
+     * @return the names of the boards of this source
+     *
+     * @throws IOException if the source can't be listed
+     */
+    public List<String> getNames() throws IOException {
+        List<String> n = names;
+        if (n == null) {
+            List<String> found = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path p : entries) {
+                    String name = p.getFileName().toString();
+                    found.add(name.endsWith("/") ? name.substring(0, name.length() - 1) : name);
+                }
+            }
+            Collections.sort(found);
+            names = n = Collections.unmodifiableList(found);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the board with the name specified, reading it if it hasn't been
+     * read yet.
+     *
+     * @param name the name of the board
+     *
+     * @return the board
+     *
+     * @throws BoardFormatException if a file of the board is malformed
+     * @throws IOException if the board can't be read
+     */
+    public BoardDefinition get(String name) throws IOException {
+        BoardDefinition def = boards.get(name);
+        if (def == null) {
+            def = BoardDefinition.parse(root.resolve(name));
+            BoardDefinition raced = boards.putIfAbsent(name, def);
+            if (raced != null)
+                def = raced;
+        }
+        return def;
+    }
+
+    /**
+     * Returns a board picked in random.
+     *
+     * @return a board picked in random
+     *
+     * @throws IOException if there are no boards or the board can't be read
+     */
+    public BoardDefinition random() throws IOException {
+        List<String> n = getNames();
+        if (n.isEmpty())
+            throw new IOException("No boards in " + root);
+        return get(n.get(Utils.randomInt(0, n.size() - 1)));
+    }
+
+    /**
+     * Returns the board with the name specified if it has been read, else
+     * null.
+     */
+    BoardDefinition getCached(String name) {
+        return boards.get(name);
+    }
+
+    /**
+     * Replaces a board read with a new definition of it, unless it has been
+     * replaced or forgotten in the meantime.
+     *
+     * @return whether the board was replaced
+     */
+    boolean swap(String name, BoardDefinition old, BoardDefinition def) {
+        return boards.replace(name, old, def);
+    }
+
+    /**
+     * Forgets a board read, so that it is read again when next asked for,
+     * and the names of the boards, so that they are listed again.
+     */
+    void forget(String name) {
+        if (name != null)
+            boards.remove(name);
+        names = null;
+    }
+
+    /**
+     * Closes the archive this source reads from, if it opened one.
+     *
+     * @throws IOException if the archive can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (owned != null)
+            owned.close();
+    }
+}
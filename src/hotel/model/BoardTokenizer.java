@@ -0,0 +1,229 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Splits the bytes of a board or hotel card file into tokens separated by
+ * commas and whitespace, keeping track of the line and column of each, so
+ * that errors can point at them. Numbers are parsed straight from the bytes,
+ * without making strings of them; text, such as the name of a hotel, is
+ * decoded with the platform charset, as the files are written in it. Files are read whole (they are small) into
+ * a buffer of the calling thread's, so a tokenizer must not outlive the
+ * parse of its file.
+ */
+class BoardTokenizer {
+
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[1 << 16]);
+
+    private final Path file;
+    private final byte[] bytes;
+    private final int length;
+    private int position;
+    private int line = 1, lineStart;
+    private int tokenLine, tokenColumn;     // of the latest token
+
+    BoardTokenizer(Path file) throws IOException {
+        this.file = file;
+        byte[] b = BUFFERS.get();
+        int n = 0;
+        try (SeekableByteChannel in = Files.newByteChannel(file)) {
+            while (true) {
+                if (n == b.length) {
+                    b = Arrays.copyOf(b, 2 * n);
+                    BUFFERS.set(b);
+                }
+                int read = in.read(ByteBuffer.wrap(b, n, b.length - n));
+                if (read < 0)
+                    break;
+                n += read;
+            }
+        }
+        bytes = b;
+        length = n;
+    }
+
+    /**
+     * Skips separators on the current line and returns whether a token
+     * follows on it.
+     */
+    boolean hasNextOnLine() {
+        while (position < length) {
+            byte b = bytes[position];
+            if (b == '\n')
+                return false;
+            if (b != ',' && b != ' ' && b != '\t' && b != '\r')
+                return true;
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * Skips to the start of the next line with a token on it and returns
+     * whether there is one.
+     */
+    boolean nextLine() {
+        while (true) {
+            if (hasNextOnLine())
+                return true;
+            if (position == length)
+                return false;
+            position++;     // the '\n'
+            line++;
+            lineStart = position;
+        }
+    }
+
+    /**
+     * Skips separators, across lines, and returns whether a token follows.
+     */
+    boolean hasNext() {
+        return nextLine();
+    }
+
+    /**
+     * Returns the rest of the current line, without surrounding whitespace,
+     * and moves to the next line.
+     */
+    String restOfLine() {
+        int start = position;
+        while (position < length && bytes[position] != '\n')
+            position++;
+        int end = position;
+        while (end > start && (bytes[end - 1] == '\r' || bytes[end - 1] == ' ' || bytes[end - 1] == '\t'))
+            end--;
+        while (start < end && (bytes[start] == ' ' || bytes[start] == '\t'))
+            start++;
+        tokenLine = line;
+        tokenColumn = start - lineStart + 1;
+        if (position < length) {
+            position++;
+            line++;
+            lineStart = position;
+        }
+        return new String(bytes, start, end - start, Charset.defaultCharset());
+    }
+
+    /**
+     * Returns the next token if it is a single letter, else 0 (without
+     * consuming it).
+     */
+    char peekLetter() {
+        int end = tokenEnd();
+        if (end - position == 1) {
+            byte b = bytes[position];
+            if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z'))
+                return (char) b;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns whether the next token starts like a number (without consuming
+     * it).
+     */
+    boolean peekNumber() {
+        if (position == length)
+            return false;
+        byte b = bytes[position];
+        return (b >= '0' && b <= '9') || b == '-';
+    }
+
+    /**
+     * Consumes the next token, whatever it is.
+     */
+    void skip() {
+        position = tokenEnd();
+    }
+
+    /**
+     * Consumes the next token, a single letter.
+     */
+    char nextLetter() {
+        mark();
+        return (char) bytes[position++];
+    }
+
+    /**
+     * Consumes the next token, which must be an integer.
+     */
+    int nextInt() throws BoardFormatException {
+        if (!hasNext())
+            throw errorHere("expected a number, reached the end of the file");
+        mark();
+        int end = tokenEnd();
+        int p = position;
+        boolean negative = bytes[p] == '-';
+        if (negative)
+            p++;
+        if (p == end)
+            throw error("expected a number, got \"" + token(end) + "\"");
+        long v = 0;
+        for (; p < end; p++) {
+            int d = bytes[p] - '0';
+            if (d < 0 || d > 9)
+                throw error("expected a number, got \"" + token(end) + "\"");
+            v = 10 * v + d;
+            if (v > (long) Integer.MAX_VALUE + 1)
+                throw error("number out of range: " + token(end));
+        }
+        if (!negative && v > Integer.MAX_VALUE)
+            throw error("number out of range: " + token(end));
+        position = end;
+        return (int) (negative ? -v : v);
+    }
+
+    /**
+     * Returns an error at the latest token.
+     */
+    BoardFormatException error(String message) {
+        return new BoardFormatException(file, tokenLine, tokenColumn, message);
+    }
+
+    /**
+     * Returns an error at the next token (or the current position).
+     */
+    BoardFormatException errorHere(String message) {
+        return new BoardFormatException(file, line, position - lineStart + 1, message);
+    }
+
+    /**
+     * Returns the line the tokenizer is at.
+     */
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the text of the next token (without consuming it).
+     */
+    String nextTokenText() {
+        return token(tokenEnd());
+    }
+
+    private void mark() {
+        tokenLine = line;
+        tokenColumn = position - lineStart + 1;
+    }
+
+    private int tokenEnd() {
+        int end = position;
+        while (end < length) {
+            byte b = bytes[end];
+            if (b == ',' || b == ' ' || b == '\t' || b == '\r' || b == '\n')
+                break;
+            end++;
+        }
+        return end;
+    }
+
+    private String token(int end) {
+        return new String(bytes, position, end - position, Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,277 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks boards for everything Board and Game take for granted, reporting
+ * every problem found instead of stopping at the first. The files are read
+ * by the parser BoardDefinition reads them with, so a board passes the
+ * validator exactly when BoardDefinition can read it and the checks that
+ * follow find nothing: every tile of board.txt is known and every row is as
+ * long as the first, the ring closes from the first tile through a start
+ * tile (see BoardGrid), there is a single start tile and every non-free
+ * player tile is on the ring, every hotel on the board has a card and every
+ * card is on the board, every hotel has a front on the ring, every BUY and
+ * BUILD tile is next to a hotel, and the cost tables are complete, positive
+ * and staying never gets cheaper as a hotel is built. Of a malformed hotel
+ * card only the first problem is reported, as the costs after it can't be
+ * told apart; the layout checks need a ring.
+ *
+ * Validating a board takes time linear in its size: the ring is walked once
+ * by BoardGrid, which stops at the first tile it visits twice.
+ */
+public class BoardValidator {
+
+    private static final int[] DI = {0, 1, 0, -1};  // east, south, west, north
+    private static final int[] DJ = {1, 0, -1, 0};
+
+    /**
+     * A problem with a board: the file it is in, the line (0 if it isn't
+     * about a line) and a description.
+     */
+    public static class Problem {
+
+        private final Path file;
+        private final int line;
+        private final String message;
+
+        Problem(Path file, int line, String message) {
+            this.file = file;
+            this.line = line;
+            this.message = message;
+        }
+
+        Problem(BoardFormatException e) {
+            this(e.getFile(), e.getLine(),
+                    e.getReason() + ((e.getColumn() > 0) ? " (column " + e.getColumn() + ")" : ""));
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return file + ((line > 0) ? ":" + line : "") + ": " + message;
+        }
+    }
+
+    private final Path boardFile;
+    private final List<Problem> problems = new ArrayList<>();
+
+    private BoardValidator(Path dir) {
+        boardFile = dir.resolve("board.txt");
+    }
+
+    /**
+     * Validates the board directory specified.
+     *
+     * @param dir the board directory
+     *
+     * @return the problems found, in no particular order (empty if the board
+     * is valid)
+     */
+    public static List<Problem> validate(Path dir) {
+        BoardValidator v = new BoardValidator(dir);
+        if (!Files.isDirectory(dir)) {
+            v.problems.add(new Problem(dir, 0, "not a directory"));
+            return v.problems;
+        }
+        Map<Integer, HotelCard> cards = new TreeMap<>();
+        Map<Integer, Path> files = new TreeMap<>();
+        try {
+            for (Path f : BoardDefinition.listCardFiles(dir)) {
+                int id;
+                try {
+                    id = BoardDefinition.cardId(f);
+                } catch (BoardFormatException e) {
+                    v.problems.add(new Problem(e));
+                    continue;
+                }
+                if (files.put(id, f) != null) {
+                    v.problems.add(new Problem(f, 0, "another card for hotel " + id));
+                    continue;
+                }
+                try {
+                    cards.put(id, HotelCard.parse(f, id));
+                } catch (IOException e) {
+                    v.problem(f, e);
+                }
+            }
+        } catch (IOException e) {
+            v.problems.add(new Problem(dir, 0, "can't list the directory: " + e.getMessage()));
+        }
+        BoardGrid grid = null;
+        List<BoardFormatException> found = new ArrayList<>();
+        try {
+            grid = BoardDefinition.readGrid(v.boardFile, found);
+        } catch (IOException e) {
+            v.problem(v.boardFile, e);
+        }
+        for (BoardFormatException e : found)
+            v.problems.add(new Problem(e));
+        v.check(grid, cards, files);
+        return v.problems;
+    }
+
+    /**
+     * Validates a board already read, such as one BoardDefinition.reparse
+     * returned after a file of it changed: all the checks but those of the
+     * parser, which it passed.
+     *
+     * @param def the board
+     *
+     * @return the problems found, in no particular order (empty if the board
+     * is valid)
+     */
+    public static List<Problem> validate(BoardDefinition def) {
+        BoardValidator v = new BoardValidator(def.getDirectory());
+        v.check(def.getGrid(), def.getHotelCards(), new TreeMap<>(def.getCardFiles()));
+        return v.problems;
+    }
+
+    /**
+     * Validates the board directories specified in parallel.
+     *
+     * @param dirs the board directories
+     * @param threads the number of threads to validate with
+     *
+     * @return the problems found in each directory, in the order the
+     * directories were given
+     */
+    public static Map<Path, List<Problem>> validateAll(List<Path> dirs, int threads) {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "validator-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Callable<List<Problem>>> tasks = new ArrayList<>();
+            for (Path dir : dirs)
+                tasks.add(() -> validate(dir));
+            List<Future<List<Problem>>> results = workers.invokeAll(tasks);
+            Map<Path, List<Problem>> problems = new LinkedHashMap<>();
+            for (int i = 0; i < dirs.size(); i++)
+                problems.put(dirs.get(i), results.get(i).get());
+            return problems;
+        } catch (InterruptedException _e) {
+            Thread.currentThread().interrupt();
+            return new LinkedHashMap<>();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Validator failed", e.getCause());  // a bug, problems are reported
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Runs the checks on what was parsed: the cards, and the layout if there
+     * is a grid.
+     */
+    private void check(BoardGrid grid, Map<Integer, HotelCard> cards, Map<Integer, Path> files) {
+        cards.forEach((id, card) -> checkCard(files.get(id), card));
+        if (grid == null)
+            return;
+        Map<Integer, Boolean> fronts = new TreeMap<>();     // hotel id -> has a front
+        for (int i = 0; i < grid.getRows(); i++)
+            for (int j = 0; j < grid.getColumns(); j++)
+                if (grid.getType(i, j) == null)
+                    fronts.putIfAbsent(grid.getHotelId(i, j), false);
+        for (int hid : fronts.keySet())
+            if (!files.containsKey(hid))
+                problem(boardFile, 0, "hotel " + hid + " has no card (" + hid + ".txt)");
+        for (Map.Entry<Integer, Path> f : files.entrySet())
+            if (!fronts.containsKey(f.getKey()))
+                problem(f.getValue(), 0, "hotel " + f.getKey() + " is not on the board");
+
+        boolean start = false;
+        for (int i = 0; i < grid.getRows(); i++)
+            for (int j = 0; j < grid.getColumns(); j++) {
+                PlayerTile.Type type = grid.getType(i, j);
+                if (type == null || type == PlayerTile.Type.FREE)
+                    continue;
+                if (type == PlayerTile.Type.START) {
+                    if (start)
+                        problem(boardFile, 0, "another start tile, at " + position(i, j));
+                    start = true;
+                }
+                if (grid.getRingIndex(i, j) < 0)
+                    problem(boardFile, 0, "the tile at " + position(i, j) + " is not on the ring");
+                boolean nextToHotel = false;
+                for (int side = 0; side < DI.length; side++) {
+                    int ti = i + DI[side], tj = j + DJ[side];
+                    if (ti >= 0 && ti < grid.getRows() && tj >= 0 && tj < grid.getColumns()
+                            && grid.getType(ti, tj) == null) {
+                        fronts.put(grid.getHotelId(ti, tj), true);
+                        nextToHotel = true;
+                    }
+                }
+                if (!nextToHotel && (type == PlayerTile.Type.BUY || type == PlayerTile.Type.BUILD))
+                    problem(boardFile, 0, type + " tile at " + position(i, j) + " is not next to a hotel");
+            }
+        fronts.forEach((hid, front) -> {
+            if (!front)
+                problem(boardFile, 0, "hotel " + hid + " has no front (no non-free player tile next to it)");
+        });
+    }
+
+    private void checkCard(Path f, HotelCard card) {
+        if (card.getBuyingCost() <= 0)
+            problem(f, 0, "buying cost is not positive");
+        if (card.getObligBuyingCost() <= 0)
+            problem(f, 0, "obligatory buying cost is not positive");
+        if (card.getEntranceCost() <= 0)
+            problem(f, 0, "entrance cost is not positive");
+        int[] builds = card.buildingCosts(), stays = card.stayingCosts();
+        if (builds.length == 0)
+            problem(f, 0, "no building states");
+        int previousStay = 0;
+        for (int s = 0; s < builds.length; s++) {
+            if (builds[s] <= 0)
+                problem(f, 0, "building cost of state " + (s + 1) + " is not positive");
+            if (stays[s] <= 0)
+                problem(f, 0, "staying cost of state " + (s + 1) + " is not positive");
+            else if (stays[s] < previousStay)
+                problem(f, 0, "staying cost of state " + (s + 1) + " is lower than that of state " + s);
+            previousStay = stays[s];
+        }
+    }
+
+    private void problem(Path f, IOException e) {
+        if (e instanceof BoardFormatException)
+            problems.add(new Problem((BoardFormatException) e));
+        else if (e instanceof NoSuchFileException)
+            problem(f, 0, "missing");
+        else
+            problem(f, 0, "can't be read: " + e);
+    }
+
+    private void problem(Path file, int line, String message) {
+        problems.add(new Problem(file, line, message));
+    }
+
+    private static String position(int i, int j) {
+        return "row " + (i + 1) + ", column " + (j + 1);
+    }
+}
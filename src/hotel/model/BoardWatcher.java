@@ -0,0 +1,204 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the boards of a BoardSource (on a file system with a WatchService,
+ * such as a directory on disk) and keeps the boards the source has read up to
+ * date: when board.txt or a hotel card of such a board changes, only the
+ * files that changed are read again (see BoardDefinition.reparse), the new
+ * definition is validated as it was read (see BoardValidator.validate), and
+ * it atomically replaces the old one in the source, so the games started
+ * after that play on it. A board that fails to parse or validate keeps its
+ * old definition. Boards not read yet are
+ * left alone, as they are read from scratch when first asked for; new and
+ * deleted board directories are picked up the next time the source lists
+ * its boards.
+ *
+ * Events are handled on a daemon thread of the watcher's; editors save in
+ * bursts of events, so a change is handled once no event has come for
+ * SETTLE_MILLIS.
+ */
+public class BoardWatcher implements AutoCloseable {
+
+    static final long SETTLE_MILLIS = 50;
+
+    /**
+     * Receives the outcome of every change handled, on the watcher's thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a board has been replaced with a new definition.
+         *
+         * @param board the name of the board
+         * @param def the new definition of the board
+         */
+        default void boardReloaded(String board, BoardDefinition def) {
+        }
+
+        /**
+         * Called when a board changed but the change was not taken, as the
+         * board is invalid now. The old definition is kept.
+         *
+         * @param board the name of the board
+         * @param problems the problems with the board
+         */
+        default void boardRejected(String board, List<BoardValidator.Problem> problems) {
+        }
+    }
+
+    private final BoardSource source;
+    private final Listener listener;
+    private final WatchService watcher;
+    private final Map<WatchKey, String> boards = new HashMap<>();  // the board of each key, null for the root
+    private final Thread thread;
+
+    /**
+     * Starts watching the boards of the source specified.
+     *
+     * @param source the source
+     * @param listener the listener of the changes handled
+     *
+     * @throws IOException if the boards can't be watched
+     * @throws UnsupportedOperationException if the file system of the source
+     * can't be watched (a zip archive, for example)
+     */
+    public BoardWatcher(BoardSource source, Listener listener) throws IOException {
+        this.source = source;
+        this.listener = listener;
+        Path root = source.getRoot();
+        watcher = root.getFileSystem().newWatchService();
+        try {
+            register(root, null);
+            for (String name : source.getNames())
+                register(root.resolve(name), name);
+        } catch (IOException e) {
+            watcher.close();
+            throw e;
+        }
+        thread = new Thread(this::run, "board-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException if the watch service can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+        thread.interrupt();
+    }
+
+    private void register(Path dir, String board) throws IOException {
+        boards.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY), board);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Map<String, Set<Path>> changed = new LinkedHashMap<>();  // null set -> read the board again
+                boolean relist = false;
+                while (key != null) {
+                    String board = boards.get(key);
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> e : key.pollEvents()) {
+                        if (board == null) {
+                            relist = true;
+                            if (e.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                Path p = dir.resolve((Path) e.context());
+                                if (Files.isDirectory(p))
+                                    register(p, p.getFileName().toString());
+                            }
+                        } else if (e.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed.put(board, null);
+                        } else if (!changed.containsKey(board) || changed.get(board) != null) {
+                            Path p = dir.resolve((Path) e.context());
+                            if (isBoardFile(p))
+                                changed.computeIfAbsent(board, _b -> new LinkedHashSet<>()).add(p);
+                        }
+                    }
+                    if (!key.reset()) {     // the directory is gone
+                        boards.remove(key);
+                        if (board != null) {
+                            source.forget(board);
+                            changed.remove(board);
+                        }
+                    }
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (relist)
+                    source.forget(null);
+                for (Map.Entry<String, Set<Path>> c : changed.entrySet())
+                    reload(c.getKey(), c.getValue());
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            System.err.println("Stopped watching boards: " + e);
+        }
+    }
+
+    /**
+     * Returns whether a file is one BoardDefinition reads, leaving out the
+     * backup and swap files of editors.
+     */
+    private static boolean isBoardFile(Path p) {
+        String n = p.getFileName().toString();
+        if (n.equals("board.txt"))
+            return true;
+        int end = n.endsWith(".txt") ? n.length() - 4 : n.length();
+        if (end == 0)
+            return false;
+        for (int i = 0; i < end; i++)
+            if (n.charAt(i) < '0' || n.charAt(i) > '9')
+                return false;
+        return true;
+    }
+
+    private void reload(String board, Set<Path> files) {
+        BoardDefinition old = source.getCached(board);
+        if (old == null)
+            return;     // not read yet, it will be read as it is when asked for
+        try {
+            BoardDefinition def;
+            if (files == null) {
+                def = BoardDefinition.parse(old.getDirectory());
+            } else {
+                def = old;
+                for (Path f : files)
+                    def = def.reparse(f);
+            }
+            List<BoardValidator.Problem> problems = BoardValidator.validate(def);   // what was parsed, not the files
+            if (!problems.isEmpty()) {
+                listener.boardRejected(board, problems);
+                return;
+            }
+            if (source.swap(board, old, def))
+                listener.boardReloaded(board, def);
+        } catch (BoardFormatException e) {
+            listener.boardRejected(board, List.of(new BoardValidator.Problem(e)));
+        } catch (IOException e) {
+            listener.boardRejected(board, List.of(new BoardValidator.Problem(old.getDirectory(), 0, e.toString())));
+        }
+    }
+}
@@ -1,63 +1,122 @@
 package hotel.model;
 
-import hotel.view.GameUI;
 import java.awt.Point;
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 public class Game {
 
-    /**
-     * NOTE: it would be better to implement the observer pattern (this as the
-     * observable, GAMEUI as the observer, either directly or using JavaBeans.
-     */
-    private final GameUI view;
+    private final GameObserver view;
+    private final BoardDefinition def;
+    private final Rules rules;
+    private final SplittableRandom rng;
     private final Board board;
     private final Map<Integer, Hotel> hotels = new HashMap<>();
     private final int PLAYERS = 3;
+    private static final PlayerTile.Entrance[] ENTRANCES = PlayerTile.Entrance.values();
     private final List<Player> players = new ArrayList<>();
     private final Map<Player, PlayerTile> positions = new HashMap<>();
     private Player current;
     private final Player bank = null;
+    private int availableHotels;
+    private Player winner;
+    private boolean requestMoneyEnabled, buyHotelEnabled, requestBuildingEnabled, buyEntranceEnabled;
+    private final MoveGenerator moveGenerator = new MoveGenerator(this);
+    private final int[] moves;
+    private final ZobristHash hash;
+    private final Hotel[] hotelsByIndex;    // in ascending id order, as hashed
+    private final UndoJournal journal = new UndoJournal();
 
     /**
      * Constructs a game model from a random configuration, linked with the
      * view specified. The configuration is picked in random among the ones
-     * available, lying in directories inside ./board/. The players' turns are
-     * also determined randomly.
+     * of the default board source (see BoardSource.getDefault). The players'
+     * turns are also determined randomly.
      * 
      * @param view the view this game model is paired with
      */
-    public Game(GameUI view) {
-        this.view = view;
-        view.setRequestMoneyEnabled(false);
-        view.setBuyHotelEnabled(false);
-        view.setRequestBuildingEnabled(false);
-        view.setBuyEntranceEnabled(false);
+    public Game(GameObserver view) {
+        this(view, randomBoard());
+    }
 
-        // Read game configuration (pick a random one)
-        File[] boardsDirs = new File("boards").listFiles(f -> f.isDirectory());
-        if (boardsDirs == null) {
-            System.err.println("No \"boards\" directory found");
-            System.exit(1);
+    /**
+     * Constructs a game model from the configuration specified, linked with
+     * the view specified. The players' turns are determined randomly.
+     *
+     * @param view the view this game model is paired with
+     * @param def the board configuration to play on
+     */
+    public Game(GameObserver view, BoardDefinition def) {
+        this(view, def, Rules.DEFAULT, new SplittableRandom());
+    }
+
+    /**
+     * Constructs a game model from the configuration specified, linked with
+     * the view specified, played by the rules specified. All the randomness
+     * in the game (the players' turns, the dice and the outcomes of requests
+     * to build) comes from a generator seeded with the seed specified, so
+     * games with the same seed and the same actions play out the same.
+     *
+     * @param view the view this game model is paired with
+     * @param def the board configuration to play on
+     * @param rules the rules to play by
+     * @param seed the seed of the game's random generator
+     */
+    public Game(GameObserver view, BoardDefinition def, Rules rules, long seed) {
+        this(view, def, rules, new SplittableRandom(seed));
+    }
+
+    private Game(GameObserver view, BoardDefinition def, Rules rules, SplittableRandom rng) {
+        this.view = view;
+        this.def = def;
+        this.rules = rules;
+        this.rng = rng;
+        int maxLevels = 0;
+        for (HotelCard card : def.getHotelCards().values())
+            maxLevels = Math.max(maxLevels, card.buildingCosts().length);
+        hash = new ZobristHash(def.getHotelCards().size(), maxLevels, def.getGrid().getRingLength());
+        setRequestMoneyEnabled(false);
+        setBuyHotelEnabled(false);
+        setRequestBuildingEnabled(false);
+        setBuyEntranceEnabled(false);
+
+        // Set up the board from the configuration
+        for (HotelCard card : def.getHotelCards().values())
+            hotels.put(card.getId(), new Hotel(card));
+        board = new Board(def, hotels);
+        int[] hids = getHotelIds();
+        Arrays.sort(hids);
+        hotelsByIndex = new Hotel[hids.length];
+        for (int i = 0; i < hids.length; i++) {
+            hotelsByIndex[i] = hotels.get(hids[i]);
+            hotelsByIndex[i].setHash(hash, i);
         }
-        File boardDir = boardsDirs[Utils.randomInt(0, boardsDirs.length - 1)];
-        readHotels(boardDir);
-        board = new Board(new File(boardDir, "board.txt"), hotels);
-        view.setAvailableHotels(hotels.size());
+        for (int r = 0; r < board.getRingLength(); r++)
+            board.getRingTile(r).setHash(hash);
+        moves = new int[moveGenerator.getMaxMoves()];
+        availableHotels = hotels.size();
+        view.setAvailableHotels(availableHotels);
 
         // Create players, randomly pick their turns and position them on the start
         for (int i = 1; i <= PLAYERS; i++)
-            players.add(new Player(i));
-        Collections.shuffle(players);
-        current = players.get(players.size() - 1);  // current will be set to the next player in playRound
-        players.forEach(p -> positions.put(p, board.getStart()));
+            players.add(new Player(i, rules.getStartingMoney()));
+        for (int i = players.size() - 1; i > 0; i--)
+            Collections.swap(players, i, rng.nextInt(i + 1));
+        setCurrent(players.get(players.size() - 1));  // current will be set to the next player in playRound
+        for (Player p : players) {
+            positions.put(p, board.getStart());
+            hash.togglePosition(p.getId(), board.getStart().getRingIndex());
+            hash.toggleMoney(p.getId(), p.getMoney());
+        }
         view.setPlayerTurns(players.stream().mapToInt(p -> p.getId()).toArray());
         players.stream().forEach(p -> view.setPlayerMoney(p.getId(), p.getMoney()));
+        notifyActions();
     }
 
     /**
@@ -75,65 +134,86 @@ public class Game {
      * player's remaining money.
      */
     public void playRound() {
-        view.setRequestMoneyEnabled(false);    // a player can only get money from the bank on the round he goes through it
-        view.setBuyHotelEnabled(false);
-        view.setRequestBuildingEnabled(false);
-        view.setBuyEntranceEnabled(false);
+        playRound(rng.nextInt(1, 7));
+    }
+
+    /**
+     * Proceed to the next round in this game, as playRound does, with the
+     * dice result specified instead of a random one.
+     *
+     * @param dice the dice result, from 1 to 6
+     */
+    public void playRound(int dice) {
+        setRequestMoneyEnabled(false);    // a player can only get money from the bank on the round he goes through it
+        setBuyHotelEnabled(false);
+        setRequestBuildingEnabled(false);
+        setBuyEntranceEnabled(false);
 
         // Determine next player
-        current = nextPlayer();
+        setCurrent(nextPlayer());
         view.setCurrentPlayer(current.getId());
 
-        // Roll dice
-        int dice = Utils.rollDice();
         view.setDiceResult(dice);
 
-        // Move player
-        List<PlayerTile> path = playerMovement(dice);
-        PlayerTile dest = path.get(path.size() - 1);
-        positions.put(current, dest);
+        // Move player, keeping track of the tiles passed through (only the
+        // new tiles the player visits count). Nothing here should allocate, as
+        // this is the hot path of every simulation.
+        boolean passedBank = false;
+        boolean passedCityHall = false;
+        PlayerTile dest = positions.get(current);
+        for (int i = 0; (i < dice) || (playerInTile(dest) != null); i++) {
+            dest = dest.getNext();
+            passedBank |= dest.getType() == PlayerTile.Type.BANK;
+            passedCityHall |= dest.getType() == PlayerTile.Type.CITY_HALL;
+        }
+        setPosition(current, dest);
         view.setPlayerMoved();
 
         // Determine what the player can do in this round
-        boolean passedBank = path.subList(1, path.size()).stream().anyMatch(pt -> pt.getType() == PlayerTile.Type.BANK);    // only search in new tiles the player visits
-        view.setRequestMoneyEnabled(passedBank);
-        boolean passedCityHall = path.subList(1, path.size()).stream().anyMatch(pt -> pt.getType() == PlayerTile.Type.CITY_HALL);    // only search in new tiles the player visits
-        view.setBuyEntranceEnabled(passedCityHall);
+        setRequestMoneyEnabled(passedBank);
+        setBuyEntranceEnabled(passedCityHall);
         if (dest.getType() == PlayerTile.Type.BUY) {
-            boolean adjacentNotBuilt = board.getHotels(dest).values().stream().anyMatch(h -> !h.isBuilt());
-            if (adjacentNotBuilt)
-                view.setBuyHotelEnabled(true);
+            if (board.hasAdjacentNotBuilt(dest))
+                setBuyHotelEnabled(true);
         } else if (dest.getType() == PlayerTile.Type.BUILD) {
-            view.setBuyEntranceEnabled(true);
-            view.setRequestBuildingEnabled(true);
+            setBuyEntranceEnabled(true);
+            setRequestBuildingEnabled(true);
         }
 
         // If there is an entrance on dest, pay for the stay
         if (dest.getEntrance() != PlayerTile.Entrance.NONE) {
             // Determine how much to pay and to whom
             Hotel h = board.getHotel(dest);
-            int cost = h.getStayingCost() * dice;
+            int cost = rules.stayingCost(h.getStayingCost(), dice);
             Player owner = h.getOwner(); // owner != null because there is an entrance
             if (owner != current)
                 if (current.getMoney() < cost) {
                     if (passedBank) // Current is eligible for money from the bank, that might save him
 
                         requestMoney();
-                    if (current.getMoney() < cost) // Current is going bankrupt
-
+                    if (current.getMoney() < cost) { // Current is going bankrupt
+                        view.setStayPaid(current.getId(), h.getId(), current.getMoney());
                         goBankrupt(owner);
-                } else
+                    }
+                } else {
                     moveMoney(current, owner, cost);
+                    view.setStayPaid(current.getId(), h.getId(), cost);
+                }
         }
+
+        notifyActions();
     }
 
     /**
-     * Awards 1000 MLs to the current player.
+     * Awards the bank payout of the rules (1000 MLs by default) to the
+     * current player.
      */
     public void requestMoney() {
-        // Check for the precondition here? (to not rely on the view)
-        moveMoney(bank, current, 1000);
-        view.setRequestMoneyEnabled(false);
+        if (!requestMoneyEnabled)
+            return; // the player didn't pass through the bank in this round
+        moveMoney(bank, current, rules.getBankPayout());
+        setRequestMoneyEnabled(false);
+        notifyActions();
     }
 
     /**
@@ -158,21 +238,16 @@ public class Game {
         Hotel h = hotels.get(hid);
         if (h == null)
             return false; // hid is not a valid hotel id
-        Map<PlayerTile.Entrance, Hotel> adjacentHotels = board.getHotels(positions.get(current));
-        if (!adjacentHotels.containsValue(h))
-            return false; // h is not adjacent to current player's tile
+        if (!canBuyHotel(h))
+            return false;
         Player owner = h.getOwner();
-        if (owner == current)
-            return false; // h already owned by current
-        else if (owner != null && h.isBuilt())
-            return false; // h is owned by another player and already built
         int cost = (owner == null) ? h.getBuyingCost() : h.getObligBuyingCost();
-        if (current.getMoney() < cost)
-            return false; // current can't afford it
 
         moveMoney(current, owner, cost);
         moveHotel(owner, current, h);
-        view.setBuyHotelEnabled(false);    // the player can buy only 1 hotel per round
+        view.setHotelBought(current.getId(), hid, cost);
+        setBuyHotelEnabled(false);    // the player can buy only 1 hotel per round
+        notifyActions();
         return true;
     }
 
@@ -180,7 +255,8 @@ public class Game {
      * Processes a request to build for the hotel specified. For this to proceed
      * the id specified should be a valid hotel id and the hotel should be owned
      * by the current player and it should not already be fully built. If all of
-     * the above hold true, the process advances as follows: with a 50% chance
+     * the above hold true, the process advances as follows (with the default
+     * rules, see Rules for the chances): with a 50% chance
      * the cost is the building cost for the next available upgrade for the
      * specified hotel, with a 15% chance it is zero, with a 15% chance it is
      * double the building cost mentioned earlier and with a 20% chance the
@@ -195,21 +271,37 @@ public class Game {
      * @return true if the upgrade was completed successfully, false otherwise
      */
     public boolean requestBuilding(int hid) {
-        // Check here that the player is on the right tile? (to not rely on the view)
+        return requestBuilding(hid, rng.nextInt(1, 101));
+    }
+
+    /**
+     * Processes a request to build for the hotel specified, as
+     * requestBuilding(hid) does, with the outcome determined by the roll
+     * specified instead of a random one. The outcomes take consecutive ranges
+     * of rolls as large as their chances in the rules, in the order normal
+     * cost, rejection, no cost and double cost: by default 1 to 50 means the
+     * normal cost, 51 to 70 a rejection, 71 to 85 no cost and 86 to 100
+     * double the cost.
+     *
+     * @param hid the hotel id of the hotel to build for
+     * @param roll the roll determining the outcome, from 1 to 100
+     *
+     * @return true if the upgrade was completed successfully, false otherwise
+     */
+    public boolean requestBuilding(int hid, int roll) {
         Hotel h = hotels.get(hid);
         if (h == null)
             return false; // hid is not a valid hotel id
-        if (h.getOwner() != current)
-            return false; // h not owned by current
-        if (h.getBuildingCost() == 0)
-            return false; // h can't be further upgraded
+        if (!canRequestBuilding(h))
+            return false;
         int cost;
-        int rand = Utils.randomInt(1, 100);
-        if (rand <= 50)
+        int normal = rules.getNormalBuildChance();
+        int rejected = normal + rules.getRejectedBuildChance();
+        if (roll <= normal)
             cost = h.getBuildingCost();
-        else if (rand <= 70)
+        else if (roll <= rejected)
             return false; // request rejected
-        else if (rand <= 85)
+        else if (roll <= rejected + rules.getFreeBuildChance())
             cost = 0;
         else
             cost = 2 * h.getBuildingCost();
@@ -218,8 +310,9 @@ public class Game {
             return false; // current can't afford it
 
         moveMoney(current, bank, cost);
-        h.upgrade();
-        view.setRequestBuildingEnabled(false);    // the player can build only once per round
+        upgrade(h);
+        setRequestBuildingEnabled(false);    // the player can build only once per round
+        notifyActions();
         // notify the view of the upgrade? for now, it keeps track and updates itself if the request is granted
         return true;
     }
@@ -241,31 +334,103 @@ public class Game {
      * @return true if the entrance was purchased successfully, false otherwise
      */
     public boolean buyEntrance(int hid) {
-        // Check here that the player is on the right tile? (to not rely on the view)
         Hotel h = hotels.get(hid);
         if (h == null)
             return false; // hid is not a valid hotel id
-        if (h.getOwner() != current)
-            return false; // h not owned by current
-        if (!h.isBuilt())
-            return false; // h not built
-        int cost = h.getEntranceCost();
-        if (current.getMoney() < cost)
-            return false; // current can't afford it
-        for (PlayerTile pt : board.getHotelFront(h))
-            if (pt.getEntrance() == PlayerTile.Entrance.NONE
-                    && (pt.getType() == PlayerTile.Type.BUILD
-                    || pt.getType() == PlayerTile.Type.BUY)) {
-                moveMoney(current, bank, cost);
-                // Need to determine on which side of the tile the hotel lies
-                for (Map.Entry<PlayerTile.Entrance, Hotel> e : board.getHotels(pt).entrySet())
-                    if (e.getValue() == h) {
-                        pt.setEntrance(e.getKey());
-                        view.setBuyEntranceEnabled(false);    // the player can buy only 1 entrance per round
-                        return true;
-                    }
+        if (!canBuyEntrance(h))
+            return false;
+        PlayerTile pt = freeFrontTile(h);
+        moveMoney(current, bank, h.getEntranceCost());
+        // Need to determine on which side of the tile the hotel lies
+        for (PlayerTile.Entrance side : PlayerTile.SIDES)
+            if (pt.getAdjacentHotel(side) == h) {
+                setEntrance(pt, side);
+                break;
             }
-        return false;   // no empty tile in h's front
+        setBuyEntranceEnabled(false);    // the player can buy only 1 entrance per round
+        notifyActions();
+        return true;
+    }
+
+    /**
+     * Takes the action a move generated by the MoveGenerator stands for,
+     * with random dice and building outcomes.
+     *
+     * @param move the move
+     *
+     * @return true if the action succeeded, false otherwise
+     */
+    public boolean play(int move) {
+        int hid = MoveGenerator.hotelIdOf(move);
+        switch (MoveGenerator.typeOf(move)) {
+            case MoveGenerator.PASS:
+                playRound();
+                return true;
+            case MoveGenerator.REQUEST_MONEY:
+                if (!requestMoneyEnabled)
+                    return false;
+                requestMoney();
+                return true;
+            case MoveGenerator.BUY_HOTEL:
+                return buyHotel(hid);
+            case MoveGenerator.REQUEST_BUILDING:
+                return requestBuilding(hid);
+            case MoveGenerator.BUY_ENTRANCE:
+                return buyEntrance(hid);
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of this game in its current state, linked with the view
+     * specified. The copy shares nothing mutable with this game, so the two
+     * can be played independently (and in different threads). The journal
+     * is not copied.
+     *
+     * @param view the view the copy is paired with
+     *
+     * @return the copy
+     */
+    public Game fork(GameObserver view) {
+        Game g = new Game(view, def, rules, new SplittableRandom());     // don't draw from this game's generator
+        Player[] turns = new Player[players.size()];
+        for (int i = 0; i < turns.length; i++)
+            turns[i] = g.getPlayer(players.get(i).getId());
+        for (int i = 0; i < turns.length; i++)
+            g.players.set(i, turns[i]);
+        view.setPlayerTurns(g.players.stream().mapToInt(p -> p.getId()).toArray());
+        for (Player p : players) {
+            Player q = g.getPlayer(p.getId());
+            g.setMoney(q, p.getMoney(), p.getMaxMoney());
+            q.setActive(p.isActive());
+            PlayerTile pt = positions.get(p);
+            g.setPosition(q, (pt != null) ? g.board.getRingTile(pt.getRingIndex()) : null);
+            for (int i = 0; i < p.getHotelCount(); i++)
+                g.moveHotel(null, q, g.hotels.get(p.getHotel(i).getId()));
+            view.setPlayerMoney(q.getId(), q.getMoney());
+        }
+        for (int i = 0; i < hotelsByIndex.length; i++)
+            g.hotelsByIndex[i].setState(hotelsByIndex[i].getCurrentBuild());
+        for (int r = 0; r < board.getRingLength(); r++)
+            g.board.getRingTile(r).setEntrance(board.getRingTile(r).getEntrance());
+        g.setCurrent(g.getPlayer(current.getId()));
+        g.setRequestMoneyEnabled(requestMoneyEnabled);
+        g.setBuyHotelEnabled(buyHotelEnabled);
+        g.setRequestBuildingEnabled(requestBuildingEnabled);
+        g.setBuyEntranceEnabled(buyEntranceEnabled);
+        g.winner = g.getPlayer(getWinnerId());
+        g.notifyActions();
+        return g;
+    }
+
+    /**
+     * Returns the generator of the moves that are legal for the current
+     * player at any point of this game.
+     *
+     * @return the move generator of this game
+     */
+    public MoveGenerator getMoveGenerator() {
+        return moveGenerator;
     }
 
     /**
@@ -294,7 +459,7 @@ public class Game {
         int[] entrances = new int[PLAYERS]; // report even for bankrupt players
         for (Player p : players)
             for (Hotel h : p.getHotels())
-                for (PlayerTile pt : board.getHotelFront(h))
+                for (PlayerTile pt : h.getFront())
                     if (board.getHotel(pt) == h)
                         entrances[p.getId() - 1]++;
         return entrances;
@@ -316,6 +481,107 @@ public class Game {
         return pos;
     }
 
+    /**
+     * Returns the id of the player whose turn it is. Before the first round
+     * this is the player who plays last.
+     *
+     * @return the id of the current player
+     */
+    public int getCurrentPlayerId() {
+        return current.getId();
+    }
+
+    /**
+     * Returns the position of the player specified in the order of play.
+     *
+     * @param p the id of the player
+     *
+     * @return the seat of the player, 0 for the one who plays first
+     */
+    public int getPlayerSeat(int p) {
+        return players.indexOf(getPlayer(p));
+    }
+
+    /**
+     * Returns the money of the player specified.
+     *
+     * @param p the id of the player
+     *
+     * @return the money of the player
+     */
+    public int getPlayerMoney(int p) {
+        return getPlayer(p).getMoney();
+    }
+
+    /**
+     * Returns the position of the player specified, as an index on the ring
+     * of the board (see Board.getRingTile).
+     *
+     * @param p the id of the player
+     *
+     * @return the index of the player's tile on the ring or -1 if the player
+     * is bankrupt
+     */
+    public int getPlayerRingPosition(int p) {
+        PlayerTile pt = positions.get(getPlayer(p));
+        return (pt != null) ? pt.getRingIndex() : -1;
+    }
+
+    /**
+     * Returns the id of the winner of this game.
+     *
+     * @return the id of the winner or 0 if the game is not over
+     */
+    public int getWinnerId() {
+        return (winner != null) ? winner.getId() : 0;
+    }
+
+    /**
+     * Returns whether the current player can request money from the bank in
+     * this round.
+     *
+     * @return true if the action is available, false otherwise
+     */
+    public boolean canRequestMoney() {
+        return requestMoneyEnabled;
+    }
+
+    /**
+     * Returns whether the current player can buy a hotel in this round.
+     *
+     * @return true if the action is available, false otherwise
+     */
+    public boolean canBuyHotel() {
+        return buyHotelEnabled;
+    }
+
+    /**
+     * Returns whether the current player can request building in this round.
+     *
+     * @return true if the action is available, false otherwise
+     */
+    public boolean canRequestBuilding() {
+        return requestBuildingEnabled;
+    }
+
+    /**
+     * Returns whether the current player can buy an entrance in this round.
+     *
+     * @return true if the action is available, false otherwise
+     */
+    public boolean canBuyEntrance() {
+        return buyEntranceEnabled;
+    }
+
+    /**
+     * Returns the rules this game is played by.
+     *
+     * @return the rules of this game
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
     /**
      * Returns the hotel with the id specified.
      * 
@@ -345,6 +611,279 @@ public class Game {
         return hotels.keySet().stream().mapToInt(hid -> hid).toArray();
     }
 
+    /**
+     * Returns the Zobrist hash of the current state of this game. The hash
+     * covers the owner and building state of every hotel, the entrances, the
+     * positions of the players, their money (in buckets of
+     * ZobristHash.MONEY_BUCKET MLs), the current player and the actions
+     * still available in this round. Games on the same board hash equal
+     * states to equal values.
+     *
+     * @return the hash of the current state
+     */
+    public long getHash() {
+        return hash.get();
+    }
+
+    /**
+     * Marks the current state of this game, so that it can be restored with
+     * undo. From the first mark on, every change to the state is recorded in
+     * a journal, which is kept until clearJournal is called. Marks can be
+     * nested: undoing to a mark invalidates the marks taken after it.
+     *
+     * @return the mark
+     */
+    public int mark() {
+        journal.setRecording(true);
+        return journal.size();
+    }
+
+    /**
+     * Restores the state of this game to the mark specified, in time
+     * proportional to the number of changes made since. The view is not
+     * notified of the changes undone, so this is meant for games searched
+     * without a view.
+     *
+     * @param mark a mark returned by mark
+     */
+    public void undo(int mark) {
+        journal.setRecording(false);    // the setters below would record the undoing
+        while (journal.size() > mark) {
+            journal.pop();
+            switch (journal.kind()) {
+                case UndoJournal.MONEY: {
+                    Player p = getPlayer(journal.arg(0));
+                    setMoney(p, p.getMoney() - journal.arg(1), journal.arg(2));
+                    break;
+                }
+                case UndoJournal.OWNER: {
+                    Hotel h = hotelsByIndex[journal.arg(0)];
+                    Player from = getPlayer(journal.arg(1)), to = getPlayer(journal.arg(2));
+                    if (to != null)
+                        to.loseHotel(h);
+                    else
+                        availableHotels--;
+                    if (from != null)
+                        from.acquireHotel(journal.arg(3), h);
+                    else
+                        availableHotels++;
+                    h.setOwner(from);
+                    break;
+                }
+                case UndoJournal.STATE:
+                    hotelsByIndex[journal.arg(0)].setState(journal.arg(1));
+                    break;
+                case UndoJournal.ENTRANCE:
+                    board.getRingTile(journal.arg(0)).setEntrance(ENTRANCES[journal.arg(1)]);
+                    break;
+                case UndoJournal.POSITION: {
+                    int r = journal.arg(1);
+                    setPosition(getPlayer(journal.arg(0)), (r >= 0) ? board.getRingTile(r) : null);
+                    break;
+                }
+                case UndoJournal.ACTIVE:
+                    getPlayer(journal.arg(0)).setActive(journal.arg(1) != 0);
+                    break;
+                case UndoJournal.CURRENT:
+                    setCurrent(getPlayer(journal.arg(0)));
+                    break;
+                case UndoJournal.FLAG:
+                    setFlag(journal.arg(0), journal.arg(1) != 0);
+                    break;
+                case UndoJournal.WINNER:
+                    winner = getPlayer(journal.arg(0));
+                    break;
+            }
+        }
+        journal.setRecording(true);
+    }
+
+    /**
+     * Stops recording changes to the state of this game and discards the
+     * journal. Any marks taken are invalidated.
+     */
+    public void clearJournal() {
+        journal.setRecording(false);
+        journal.clear();
+    }
+
+    Player getCurrent() {
+        return current;
+    }
+
+    PlayerTile getCurrentTile() {
+        return positions.get(current);
+    }
+
+    boolean isOver() {
+        return winner != null;
+    }
+
+    boolean canBuyHotel(Hotel h) {
+        if (!buyHotelEnabled)
+            return false; // the player is not on a tile to buy from or already bought
+        if (!positions.get(current).isAdjacentTo(h))
+            return false; // h is not adjacent to current player's tile
+        Player owner = h.getOwner();
+        if (owner == current)
+            return false; // h already owned by current
+        else if (owner != null && h.isBuilt())
+            return false; // h is owned by another player and already built
+        int cost = (owner == null) ? h.getBuyingCost() : h.getObligBuyingCost();
+        return current.getMoney() >= cost; // else current can't afford it
+    }
+
+    boolean canRequestBuilding(Hotel h) {
+        if (!requestBuildingEnabled)
+            return false; // the player is not on a tile to build from or already built
+        if (h.getOwner() != current)
+            return false; // h not owned by current
+        return h.getBuildingCost() != 0; // else h can't be further upgraded
+    }
+
+    boolean canBuyEntrance(Hotel h) {
+        if (!buyEntranceEnabled)
+            return false; // the player didn't pass through the city hall or already bought
+        if (h.getOwner() != current)
+            return false; // h not owned by current
+        if (!h.isBuilt())
+            return false; // h not built
+        if (current.getMoney() < h.getEntranceCost())
+            return false; // current can't afford it
+        return freeFrontTile(h) != null; // else no empty tile in h's front
+    }
+
+    private PlayerTile freeFrontTile(Hotel h) {
+        PlayerTile[] front = h.getFront();
+        for (int i = 0; i < front.length; i++)
+            if (front[i].getEntrance() == PlayerTile.Entrance.NONE
+                    && (front[i].getType() == PlayerTile.Type.BUILD
+                    || front[i].getType() == PlayerTile.Type.BUY))
+                return front[i];
+        return null;
+    }
+
+    /**
+     * Notifies the view about which actions the current player can take, i.e.
+     * which ones have at least one legal move.
+     */
+    private void notifyActions() {
+        int n = moveGenerator.generate(moves);
+        boolean requestMoney = false, buyHotel = false, requestBuilding = false, buyEntrance = false;
+        for (int i = 0; i < n; i++)
+            switch (MoveGenerator.typeOf(moves[i])) {
+                case MoveGenerator.REQUEST_MONEY:
+                    requestMoney = true;
+                    break;
+                case MoveGenerator.BUY_HOTEL:
+                    buyHotel = true;
+                    break;
+                case MoveGenerator.REQUEST_BUILDING:
+                    requestBuilding = true;
+                    break;
+                case MoveGenerator.BUY_ENTRANCE:
+                    buyEntrance = true;
+                    break;
+            }
+        view.setRequestMoneyEnabled(requestMoney);
+        view.setBuyHotelEnabled(buyHotel);
+        view.setRequestBuildingEnabled(requestBuilding);
+        view.setBuyEntranceEnabled(buyEntrance);
+    }
+
+    private Player getPlayer(int p) {
+        for (int i = 0; i < players.size(); i++)
+            if (players.get(i).getId() == p)
+                return players.get(i);
+        return null;
+    }
+
+    private void setRequestMoneyEnabled(boolean e) {
+        if (requestMoneyEnabled != e) {
+            journal.record(UndoJournal.FLAG, 0, requestMoneyEnabled ? 1 : 0);
+            hash.toggleFlag(0);
+        }
+        requestMoneyEnabled = e;
+    }
+
+    private void setBuyHotelEnabled(boolean e) {
+        if (buyHotelEnabled != e) {
+            journal.record(UndoJournal.FLAG, 1, buyHotelEnabled ? 1 : 0);
+            hash.toggleFlag(1);
+        }
+        buyHotelEnabled = e;
+    }
+
+    private void setRequestBuildingEnabled(boolean e) {
+        if (requestBuildingEnabled != e) {
+            journal.record(UndoJournal.FLAG, 2, requestBuildingEnabled ? 1 : 0);
+            hash.toggleFlag(2);
+        }
+        requestBuildingEnabled = e;
+    }
+
+    private void setBuyEntranceEnabled(boolean e) {
+        if (buyEntranceEnabled != e) {
+            journal.record(UndoJournal.FLAG, 3, buyEntranceEnabled ? 1 : 0);
+            hash.toggleFlag(3);
+        }
+        buyEntranceEnabled = e;
+    }
+
+    private void setFlag(int flag, boolean e) {
+        switch (flag) {
+            case 0:
+                setRequestMoneyEnabled(e);
+                break;
+            case 1:
+                setBuyHotelEnabled(e);
+                break;
+            case 2:
+                setRequestBuildingEnabled(e);
+                break;
+            case 3:
+                setBuyEntranceEnabled(e);
+                break;
+        }
+    }
+
+    private void setCurrent(Player p) {
+        journal.record(UndoJournal.CURRENT, (current != null) ? current.getId() : 0, 0);
+        if (current != null)
+            hash.toggleCurrent(current.getId());
+        hash.toggleCurrent(p.getId());
+        current = p;
+    }
+
+    private void setPosition(Player p, PlayerTile pt) {
+        int old = (positions.get(p) != null) ? positions.get(p).getRingIndex() : -1;
+        journal.record(UndoJournal.POSITION, p.getId(), old);
+        hash.togglePosition(p.getId(), old);
+        hash.togglePosition(p.getId(), (pt != null) ? pt.getRingIndex() : -1);
+        positions.put(p, pt);
+    }
+
+    private void setMoney(Player p, int money, int maxMoney) {
+        hash.toggleMoney(p.getId(), p.getMoney());
+        p.setMoney(money, maxMoney);
+        hash.toggleMoney(p.getId(), money);
+    }
+
+    private void upgrade(Hotel h) {
+        journal.record(UndoJournal.STATE, h.getIndex(), h.getCurrentBuild());
+        h.upgrade();
+    }
+
+    private void tearDown(Hotel h) {
+        journal.record(UndoJournal.STATE, h.getIndex(), h.getCurrentBuild());
+        h.tearDown();
+    }
+
+    private void setEntrance(PlayerTile pt, PlayerTile.Entrance e) {
+        journal.record(UndoJournal.ENTRANCE, pt.getRingIndex(), pt.getEntrance().ordinal());
+        pt.setEntrance(e);
+    }
+
     private Player nextPlayer() {
         int turn = players.indexOf(current);
         Player next;
@@ -356,73 +895,84 @@ public class Game {
         return next;
     }
 
-    private List<PlayerTile> playerMovement(int steps) {
-        List<PlayerTile> path = new ArrayList<>();
-        PlayerTile dest = positions.get(current);
-        path.add(dest);
-        for (int i = 0; (i < steps) || (playerInTile(dest) != null); i++) {
-            dest = dest.getNext();
-            path.add(dest);
-        }
-
-        return path;
-    }
-
     private void goBankrupt(Player creditor) {
         moveMoney(current, creditor, current.getMoney());
         for (Hotel ch : current.getHotels()) {
-            for (PlayerTile pt : board.getHotelFront(ch))
+            for (PlayerTile pt : ch.getFront())
                 if (board.getHotel(pt) == ch)
-                    pt.setEntrance(PlayerTile.Entrance.NONE);
-            ch.tearDown();
+                    setEntrance(pt, PlayerTile.Entrance.NONE);
+            tearDown(ch);
             moveHotel(current, bank, ch);
         }
+        journal.record(UndoJournal.ACTIVE, current.getId(), 1);
         current.setActive(false);
-        positions.put(current, null);
+        setPosition(current, null);
 
         view.setPlayerBankrupt(current.getId());
-        view.setRequestMoneyEnabled(false);
-        view.setBuyHotelEnabled(false);
-        view.setRequestBuildingEnabled(false);
-        view.setBuyEntranceEnabled(false);
+        setRequestMoneyEnabled(false);
+        setBuyHotelEnabled(false);
+        setRequestBuildingEnabled(false);
+        setBuyEntranceEnabled(false);
 
         // Check if the game is over
         if (players.stream().filter(p -> p.isActive()).count() == 1) {
             // Game over
-            Player winner = players.stream().filter(p -> p.isActive()).findFirst().get();
+            journal.record(UndoJournal.WINNER, getWinnerId(), 0);
+            winner = players.stream().filter(p -> p.isActive()).findFirst().get();
             view.setWinner(winner.getId());
         }
     }
 
-    private void readHotels(File hd) {
-        File[] hotelFiles = hd.listFiles((_f, n) -> !n.equals("board.txt"));
-        for (File f : hotelFiles) {
-            int id = Integer.parseInt(f.getName().replaceFirst("\\.txt", ""));
-            hotels.put(id, new Hotel(f, id));
-        }
-    }
-
     private Player playerInTile(PlayerTile pt) {
-        return players.stream().filter(p -> positions.get(p) == pt).findFirst().orElse(null);
+        for (int i = 0; i < players.size(); i++) {
+            Player p = players.get(i);
+            if (positions.get(p) == pt)
+                return p;
+        }
+        return null;
     }
 
     private void moveMoney(Player from, Player to, int money) {
         if (from != null) {
+            journal.record(UndoJournal.MONEY, from.getId(), -money, from.getMaxMoney(), 0);
+            hash.toggleMoney(from.getId(), from.getMoney());
             from.pay(money);
+            hash.toggleMoney(from.getId(), from.getMoney());
             view.setPlayerMoney(from.getId(), from.getMoney());
         }
         if (to != null) {
+            journal.record(UndoJournal.MONEY, to.getId(), money, to.getMaxMoney(), 0);
+            hash.toggleMoney(to.getId(), to.getMoney());
             to.earn(money);
+            hash.toggleMoney(to.getId(), to.getMoney());
             view.setPlayerMoney(to.getId(), to.getMoney());
         }
     }
 
     private void moveHotel(Player from, Player to, Hotel h) {
+        journal.record(UndoJournal.OWNER, h.getIndex(), (from != null) ? from.getId() : 0,
+                (to != null) ? to.getId() : 0, (from != null) ? from.indexOfHotel(h) : 0);
         if (from != null)
             from.loseHotel(h);
+        else
+            availableHotels--;
         if (to != null)
             to.acquireHotel(h);
+        else
+            availableHotels++;
         h.setOwner(to);
-        view.setAvailableHotels((int) hotels.entrySet().stream().filter(e -> e.getValue().getOwner() == null).count());
+        view.setAvailableHotels(availableHotels);
+    }
+
+    private static BoardDefinition randomBoard() {
+        // Read game configuration (pick a random one)
+        try {
+            return BoardSource.getDefault().random();
+        } catch (IOException e) {
+            System.err.println((e instanceof BoardFormatException) ? "Corrupted board: " + e.getMessage()
+                    : e.getMessage());
+            System.exit(1);
+            return null;
+        }
     }
 }
@@ -0,0 +1,126 @@
+package hotel.model;
+
+/**
+ * Receives notifications about the changes happening in a game. All the
+ * methods do nothing by default, so a headless game (e.g. one driven by a
+ * benchmark or a simulation) can simply use {@code new GameObserver() {}}.
+ */
+public interface GameObserver {
+
+    /**
+     * Notifies that the money of a player changed.
+     *
+     * @param p the id of the player
+     * @param money the new amount of money of the player
+     */
+    default void setPlayerMoney(int p, int money) {
+    }
+
+    /**
+     * Notifies about the order the players will play in.
+     *
+     * @param turns the ids of the players in the order they will play
+     */
+    default void setPlayerTurns(int[] turns) {
+    }
+
+    /**
+     * Notifies that it's the turn of another player.
+     *
+     * @param p the id of the player whose turn it is
+     */
+    default void setCurrentPlayer(int p) {
+    }
+
+    /**
+     * Notifies that the current player moved.
+     */
+    default void setPlayerMoved() {
+    }
+
+    /**
+     * Notifies that a player went bankrupt.
+     *
+     * @param p the id of the player
+     */
+    default void setPlayerBankrupt(int p) {
+    }
+
+    /**
+     * Notifies that the number of hotels not owned by any player changed.
+     *
+     * @param available the number of hotels not owned by any player
+     */
+    default void setAvailableHotels(int available) {
+    }
+
+    /**
+     * Notifies about the result of the latest dice roll.
+     *
+     * @param dice the result of the dice roll
+     */
+    default void setDiceResult(int dice) {
+    }
+
+    /**
+     * Notifies whether the current player can request money from the bank.
+     *
+     * @param e true if the action is available, false otherwise
+     */
+    default void setRequestMoneyEnabled(boolean e) {
+    }
+
+    /**
+     * Notifies whether the current player can buy a hotel.
+     *
+     * @param e true if the action is available, false otherwise
+     */
+    default void setBuyHotelEnabled(boolean e) {
+    }
+
+    /**
+     * Notifies whether the current player can request building.
+     *
+     * @param e true if the action is available, false otherwise
+     */
+    default void setRequestBuildingEnabled(boolean e) {
+    }
+
+    /**
+     * Notifies whether the current player can buy an entrance.
+     *
+     * @param e true if the action is available, false otherwise
+     */
+    default void setBuyEntranceEnabled(boolean e) {
+    }
+
+    /**
+     * Notifies that the current player paid for a stay in a hotel (all of
+     * his money, if he couldn't afford it and went bankrupt).
+     *
+     * @param p the id of the player who paid
+     * @param hid the id of the hotel
+     * @param cost the amount paid
+     */
+    default void setStayPaid(int p, int hid, int cost) {
+    }
+
+    /**
+     * Notifies that the current player bought a hotel, from the bank or
+     * (obligatorily) from its owner.
+     *
+     * @param p the id of the player who bought the hotel
+     * @param hid the id of the hotel
+     * @param cost the amount paid
+     */
+    default void setHotelBought(int p, int hid, int cost) {
+    }
+
+    /**
+     * Notifies that the game is over.
+     *
+     * @param p the id of the winner
+     */
+    default void setWinner(int p) {
+    }
+}
@@ -1,42 +1,28 @@
 package hotel.model;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
-
 public class Hotel {
 
     private final int id;
-    private String name;
-    private int buyingCost, obligBuyingCost;
-    private int entranceCost;
-    private ArrayList<Integer> buildingCosts = new ArrayList<>();
-    private ArrayList<Integer> stayingCosts = new ArrayList<>();
+    private final String name;
+    private final int buyingCost, obligBuyingCost;
+    private final int entranceCost;
+    private final int[] buildingCosts;
+    private final int[] stayingCosts;
     private Player owner;
     private int state = -1;     // -1 -> not built, >= 0 -> built
+    private PlayerTile[] front = new PlayerTile[0];
+    private ZobristHash hash;   // null -> the hotel is not part of a game
+    private int index;          // index of the hotel in the hash
 
-    Hotel(File f, int id) {
-        this.id = id;
-        try (Scanner s = new Scanner(new BufferedReader(new FileReader(f))).useDelimiter(",|(\\s+)")) {
-            name = s.nextLine();
-            buyingCost = s.nextInt();
-            obligBuyingCost = s.nextInt();
-            entranceCost = s.nextInt();
-            while (s.hasNextInt()) {
-                buildingCosts.add(s.nextInt());
-                stayingCosts.add(s.nextInt());
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("File " + f.toString() + " not found");
-            System.exit(1);
-        } catch (NoSuchElementException e) {
-            System.err.println("Corrupted hotel description file " + f.toString());
-            System.exit(1);
-        }
+    Hotel(HotelCard card) {
+        // The cost arrays are never modified, so they are shared with the card
+        id = card.getId();
+        name = card.getName();
+        buyingCost = card.getBuyingCost();
+        obligBuyingCost = card.getObligBuyingCost();
+        entranceCost = card.getEntranceCost();
+        buildingCosts = card.buildingCosts();
+        stayingCosts = card.stayingCosts();
     }
 
     /**
@@ -92,7 +78,7 @@ public class Hotel {
      * @return
      */
     public int[] getBuildingCosts() {
-        return buildingCosts.stream().mapToInt(c -> c).toArray();
+        return buildingCosts.clone();
     }
 
     /**
@@ -100,7 +86,7 @@ public class Hotel {
      * @return
      */
     public int[] getStayingCosts() {
-        return stayingCosts.stream().mapToInt(c -> c).toArray();
+        return stayingCosts.clone();
     }
 
     /**
@@ -116,19 +102,42 @@ public class Hotel {
     }
 
     void setOwner(Player owner) {
+        if (hash != null) {
+            hash.toggleOwner(index, getOwnerId());
+            hash.toggleOwner(index, (owner != null) ? owner.getId() : 0);
+        }
         this.owner = owner;
     }
 
     int getBuildingCost() {
-        if (state + 1 == buildingCosts.size())
+        if (state + 1 == buildingCosts.length)
             return 0;
-        return buildingCosts.get(state + 1);
+        return buildingCosts[state + 1];
     }
 
     int getStayingCost() {
         if (state == -1)
             return 0;
-        return stayingCosts.get(state);
+        return stayingCosts[state];
+    }
+
+    PlayerTile[] getFront() {
+        return front;   // no copy, it is never modified after the board is set up
+    }
+
+    void setFront(PlayerTile[] front) {
+        this.front = front;
+    }
+
+    void setHash(ZobristHash hash, int index) {
+        this.hash = hash;
+        this.index = index;
+        hash.toggleOwner(index, getOwnerId());
+        hash.toggleLevel(index, state);
+    }
+
+    int getIndex() {
+        return index;
     }
 
     boolean isBuilt() {
@@ -136,11 +145,19 @@ public class Hotel {
     }
 
     void upgrade() {
-        if (state + 1 < buildingCosts.size())
-            state++;
+        if (state + 1 < buildingCosts.length)
+            setState(state + 1);
     }
 
     void tearDown() {
-        state = -1;
+        setState(-1);
+    }
+
+    void setState(int state) {
+        if (hash != null) {
+            hash.toggleLevel(index, this.state);
+            hash.toggleLevel(index, state);
+        }
+        this.state = state;
     }
 }
@@ -0,0 +1,141 @@
+package hotel.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The fixed description of a hotel, as read from its hotel card file: the
+ * name of the hotel on the first line, then its buying cost, obligatory
+ * buying cost and entrance cost, then a building cost and a staying cost per
+ * building state. A card is immutable, so it can be shared among all the
+ * games played on a board.
+ */
+public class HotelCard {
+
+    private final int id;
+    private final String name;
+    private final int buyingCost, obligBuyingCost;
+    private final int entranceCost;
+    private final int[] buildingCosts;
+    private final int[] stayingCosts;
+
+    private HotelCard(int id, String name, int buyingCost, int obligBuyingCost, int entranceCost,
+            int[] buildingCosts, int[] stayingCosts) {
+        this.id = id;
+        this.name = name;
+        this.buyingCost = buyingCost;
+        this.obligBuyingCost = obligBuyingCost;
+        this.entranceCost = entranceCost;
+        this.buildingCosts = buildingCosts;
+        this.stayingCosts = stayingCosts;
+    }
+
+    /**
+     * Reads a hotel card file.
+     *
+     * @param f the hotel card file
+     * @param id the id of the hotel
+     *
+     * @return the hotel card read
+     *
+     * @throws BoardFormatException if the file is malformed, at the position
+     * of the problem
+     * @throws IOException if the file can't be read
+     */
+    static HotelCard parse(Path f, int id) throws IOException {
+        BoardTokenizer t = new BoardTokenizer(f);
+        if (!t.nextLine())
+            throw new BoardFormatException(f, 0, 0, "empty hotel card");
+        String name = t.restOfLine();
+        int buyingCost = t.nextInt();
+        int obligBuyingCost = t.nextInt();
+        int entranceCost = t.nextInt();
+        // Keep the costs unboxed, they are looked up on every stay
+        int[] bcs = new int[8], scs = new int[8];
+        int states = 0;
+        while (t.hasNext()) {
+            if (states == bcs.length) {
+                bcs = Arrays.copyOf(bcs, 2 * states);
+                scs = Arrays.copyOf(scs, 2 * states);
+            }
+            bcs[states] = t.nextInt();
+            if (!t.hasNext())
+                throw t.error("building cost without a staying cost");
+            scs[states++] = t.nextInt();
+        }
+        return new HotelCard(id, name, buyingCost, obligBuyingCost, entranceCost, Arrays.copyOf(bcs, states),
+                Arrays.copyOf(scs, states));
+    }
+
+    /**
+     * Returns the id of the hotel.
+     *
+     * @return the id of the hotel
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the name of the hotel.
+     *
+     * @return the name of the hotel
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the cost to buy the hotel when no one owns it.
+     *
+     * @return the cost to buy the hotel when no one owns it
+     */
+    public int getBuyingCost() {
+        return buyingCost;
+    }
+
+    /**
+     * Returns the cost to buy the hotel from another player.
+     *
+     * @return the cost to buy the hotel from another player
+     */
+    public int getObligBuyingCost() {
+        return obligBuyingCost;
+    }
+
+    /**
+     * Returns the cost of an entrance for the hotel.
+     *
+     * @return the cost of an entrance for the hotel
+     */
+    public int getEntranceCost() {
+        return entranceCost;
+    }
+
+    /**
+     * Returns the cost of each building state of the hotel.
+     *
+     * @return the cost of each building state of the hotel
+     */
+    public int[] getBuildingCosts() {
+        return buildingCosts.clone();
+    }
+
+    /**
+     * Returns the cost per night of each building state of the hotel.
+     *
+     * @return the cost per night of each building state of the hotel
+     */
+    public int[] getStayingCosts() {
+        return stayingCosts.clone();
+    }
+
+    int[] buildingCosts() {
+        return buildingCosts;   // no copy, for use inside the model only
+    }
+
+    int[] stayingCosts() {
+        return stayingCosts;    // no copy, for use inside the model only
+    }
+}
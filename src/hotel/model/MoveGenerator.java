@@ -0,0 +1,141 @@
+package hotel.model;
+
+/**
+ * Generates the moves that are legal for the current player of a game, i.e.
+ * the actions that would succeed if taken right now, each with the hotel it
+ * targets. Moves are encoded as ints (see moveOf, typeOf and hotelIdOf), and
+ * are written into a buffer provided by the caller, so that generating them
+ * never allocates. The work done is proportional to the number of moves
+ * checked: the (at most four) hotels next to the current player's tile and
+ * the hotels he owns.
+ */
+public class MoveGenerator {
+
+    /**
+     * End the turn. Always legal while the game is not over.
+     */
+    public static final int PASS = 0;
+    /**
+     * Request money from the bank (Game.requestMoney).
+     */
+    public static final int REQUEST_MONEY = 1;
+    /**
+     * Buy a hotel (Game.buyHotel).
+     */
+    public static final int BUY_HOTEL = 2;
+    /**
+     * Request building for a hotel (Game.requestBuilding). Legal when the
+     * request may be granted; the outcome is still up to chance.
+     */
+    public static final int REQUEST_BUILDING = 3;
+    /**
+     * Buy an entrance for a hotel (Game.buyEntrance).
+     */
+    public static final int BUY_ENTRANCE = 4;
+
+    private static final int TYPE_BITS = 3;
+
+    private final Game game;
+
+    MoveGenerator(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Encodes a move.
+     *
+     * @param type the type of the move (one of PASS, REQUEST_MONEY, BUY_HOTEL,
+     * REQUEST_BUILDING, BUY_ENTRANCE)
+     * @param hid the id of the hotel the move targets or 0 if it targets none
+     *
+     * @return the move
+     */
+    public static int moveOf(int type, int hid) {
+        return (hid << TYPE_BITS) | type;
+    }
+
+    /**
+     * Returns the type of a move.
+     *
+     * @param move the move
+     *
+     * @return the type of the move
+     */
+    public static int typeOf(int move) {
+        return move & ((1 << TYPE_BITS) - 1);
+    }
+
+    /**
+     * Returns the id of the hotel a move targets.
+     *
+     * @param move the move
+     *
+     * @return the id of the hotel or 0 if the move targets none
+     */
+    public static int hotelIdOf(int move) {
+        return move >>> TYPE_BITS;
+    }
+
+    /**
+     * Returns the maximum number of moves that can be legal at once, i.e. the
+     * size of a buffer that can hold any result of generate.
+     *
+     * @return the maximum number of legal moves
+     */
+    public int getMaxMoves() {
+        // pass, request money, buying one of the 4 neighbors, building and
+        // an entrance for every hotel
+        return 2 + PlayerTile.SIDES.length + 2 * game.getHotelIds().length;
+    }
+
+    /**
+     * Writes every move that is legal for the current player into the buffer
+     * specified.
+     *
+     * @param moves the buffer to write to, at least getMaxMoves() long
+     *
+     * @return the number of moves written
+     */
+    public int generate(int[] moves) {
+        if (game.isOver())
+            return 0;
+        int n = 0;
+        moves[n++] = PASS;
+        Player current = game.getCurrent();
+        if (!current.isActive())
+            return n;   // went bankrupt in this round
+
+        if (game.canRequestMoney())
+            moves[n++] = REQUEST_MONEY;
+
+        if (game.canBuyHotel()) {
+            PlayerTile pt = game.getCurrentTile();
+            for (int i = 0; i < PlayerTile.SIDES.length; i++) {
+                Hotel h = pt.getAdjacentHotel(PlayerTile.SIDES[i]);
+                if (h != null && !adjacentOnEarlierSide(pt, h, i) && game.canBuyHotel(h))
+                    moves[n++] = moveOf(BUY_HOTEL, h.getId());
+            }
+        }
+
+        boolean build = game.canRequestBuilding();
+        boolean entrance = game.canBuyEntrance();
+        if (build || entrance)
+            for (int i = 0; i < current.getHotelCount(); i++) {
+                Hotel h = current.getHotel(i);
+                if (build && game.canRequestBuilding(h))
+                    moves[n++] = moveOf(REQUEST_BUILDING, h.getId());
+                if (entrance && game.canBuyEntrance(h))
+                    moves[n++] = moveOf(BUY_ENTRANCE, h.getId());
+            }
+
+        return n;
+    }
+
+    private static boolean adjacentOnEarlierSide(PlayerTile pt, Hotel h, int side) {
+        // A hotel wrapping around a tile is adjacent on more than one side
+        for (int i = 0; i < side; i++)
+            if (pt.getAdjacentHotel(PlayerTile.SIDES[i]) == h)
+                return true;
+        return false;
+    }
+}
@@ -1,18 +1,20 @@
 package hotel.model;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 class Player {
 
     private final int id;
-    private int money = 12000;
-    private int maxMoney = money;
+    private int money;
+    private int maxMoney;
     private boolean active = true;
-    private final Set<Hotel> hotels = new HashSet<>();
+    private final List<Hotel> hotels = new ArrayList<>();     // a list, to be scanned without allocating
 
-    Player(int id) {
+    Player(int id, int money) {
         this.id = id;
+        this.money = money;
+        maxMoney = money;
     }
 
     int getId() {
@@ -33,6 +35,11 @@ class Player {
             maxMoney = this.money;
     }
 
+    void setMoney(int money, int maxMoney) {
+        this.money = money;
+        this.maxMoney = maxMoney;
+    }
+
     void pay(int money) {
         this.money -= money;
     }
@@ -49,15 +56,33 @@ class Player {
         return hotels.contains(h);
     }
 
-    Set<Hotel> getHotels() {
+    List<Hotel> getHotels() {
         // Return a copy because we don't want modifications of hotels via this
         // interface. Moreover, returning hotels would sooner or later lead to
         // ConcurrentModificationsExceptions
-        return new HashSet<>(hotels);
+        return new ArrayList<>(hotels);
+    }
+
+    int getHotelCount() {
+        return hotels.size();
+    }
+
+    Hotel getHotel(int i) {
+        return hotels.get(i);
+    }
+
+    int indexOfHotel(Hotel h) {
+        return hotels.indexOf(h);
     }
 
     void acquireHotel(Hotel h) {
-        hotels.add(h);
+        if (!hotels.contains(h))
+            hotels.add(h);
+    }
+
+    void acquireHotel(int i, Hotel h) {
+        if (!hotels.contains(h))
+            hotels.add(i, h);
     }
 
     void loseHotel(Hotel h) {
@@ -4,7 +4,16 @@ public class PlayerTile extends Tile {
 
     private final Type type;
     private PlayerTile next;    // move to Board?
+    private int ringIndex = -1;
     private Entrance entrance = Entrance.NONE;
+    private final Hotel[] adjacentHotels = new Hotel[SIDES.length];
+    private ZobristHash hash;   // null -> the tile is not on the ring of a game
+
+    /**
+     * The sides of a tile an entrance can be on (Entrance.values() would
+     * allocate a new array on every call).
+     */
+    static final Entrance[] SIDES = {Entrance.EAST, Entrance.SOUTH, Entrance.WEST, Entrance.NORTH};
 
     /**
      *
@@ -49,7 +58,39 @@ public class PlayerTile extends Tile {
     }
 
     void setEntrance(Entrance entrance) {
+        if (hash != null) {
+            hash.toggleEntrance(ringIndex, this.entrance);
+            hash.toggleEntrance(ringIndex, entrance);
+        }
         this.entrance = entrance;
     }
 
+    void setHash(ZobristHash hash) {
+        this.hash = hash;
+        hash.toggleEntrance(ringIndex, entrance);
+    }
+
+    int getRingIndex() {
+        return ringIndex;
+    }
+
+    void setRingIndex(int ringIndex) {
+        this.ringIndex = ringIndex;
+    }
+
+    Hotel getAdjacentHotel(Entrance side) {
+        return (side == Entrance.NONE) ? null : adjacentHotels[side.ordinal() - 1];
+    }
+
+    boolean isAdjacentTo(Hotel h) {
+        for (int i = 0; i < adjacentHotels.length; i++)
+            if (adjacentHotels[i] == h)
+                return true;
+        return false;
+    }
+
+    void setAdjacentHotel(Entrance side, Hotel h) {
+        adjacentHotels[side.ordinal() - 1] = h;
+    }
+
 }
@@ -0,0 +1,299 @@
+package hotel.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flat, primitive description of a board, for engines that don't use the
+ * object model. The player tiles the players move on (the ring) are numbered
+ * from 0 (the start tile) in the order the players visit them, and the hotels
+ * are numbered densely from 0 in ascending id order. The sides of a tile are
+ * numbered from 0 to 3 in the order east, south, west, north (i.e. the
+ * ordinal of the corresponding PlayerTile.Entrance minus 1).
+ */
+public class RingLayout {
+
+    /**
+     * The number of sides of a tile.
+     */
+    public static final int SIDES = 4;
+
+    private final int ringLength;
+    private final byte[] types;
+    private final int[] adjacent;
+    private final int[] hotelIds;
+    private final int[] buyingCosts, obligBuyingCosts, entranceCosts;
+    private final int[] levels;
+    private final int maxLevels;
+    private final int[] buildingCosts, stayingCosts;
+    private final int[] frontOffsets;
+    private final int[] frontTiles, frontSides;
+
+    /**
+     * Constructs the layout of the board configuration specified.
+     *
+     * @param def the board configuration
+     */
+    public RingLayout(BoardDefinition def) {
+        // Number the hotels
+        hotelIds = def.getHotelCards().keySet().stream().mapToInt(hid -> hid).sorted().toArray();
+        int hotelCount = hotelIds.length;
+        Map<Integer, Hotel> hotels = new HashMap<>();
+        Map<Hotel, Integer> hotelIndex = new IdentityHashMap<>();
+        for (int h = 0; h < hotelCount; h++) {
+            Hotel hotel = new Hotel(def.getHotelCard(hotelIds[h]));
+            hotels.put(hotelIds[h], hotel);
+            hotelIndex.put(hotel, h);
+        }
+
+        // Number the ring
+        Board board = new Board(def, hotels);
+        ringLength = board.getRingLength();
+
+        types = new byte[ringLength];
+        adjacent = new int[ringLength * SIDES];
+        List<List<Integer>> fronts = new ArrayList<>();
+        for (int h = 0; h < hotelCount; h++)
+            fronts.add(new ArrayList<>());
+        for (int r = 0; r < ringLength; r++) {
+            types[r] = (byte) board.getRingTile(r).getType().ordinal();
+            for (int side = 0; side < SIDES; side++) {
+                Hotel hotel = board.getRingTile(r).getAdjacentHotel(PlayerTile.SIDES[side]);
+                int h = (hotel == null) ? -1 : hotelIndex.get(hotel);
+                adjacent[r * SIDES + side] = h;
+                if (h >= 0)
+                    fronts.get(h).add(r * SIDES + side);
+            }
+        }
+
+        // Flatten the hotel fronts, in ring order
+        frontOffsets = new int[hotelCount + 1];
+        for (int h = 0; h < hotelCount; h++)
+            frontOffsets[h + 1] = frontOffsets[h] + fronts.get(h).size();
+        frontTiles = new int[frontOffsets[hotelCount]];
+        frontSides = new int[frontOffsets[hotelCount]];
+        for (int h = 0; h < hotelCount; h++)
+            for (int k = 0; k < fronts.get(h).size(); k++) {
+                frontTiles[frontOffsets[h] + k] = fronts.get(h).get(k) / SIDES;
+                frontSides[frontOffsets[h] + k] = fronts.get(h).get(k) % SIDES;
+            }
+
+        // Flatten the cost tables, one row of maxLevels per hotel
+        buyingCosts = new int[hotelCount];
+        obligBuyingCosts = new int[hotelCount];
+        entranceCosts = new int[hotelCount];
+        levels = new int[hotelCount];
+        int max = 0;
+        for (int h = 0; h < hotelCount; h++)
+            max = Math.max(max, hotels.get(hotelIds[h]).getBuildingCosts().length);
+        maxLevels = max;
+        buildingCosts = new int[hotelCount * maxLevels];
+        stayingCosts = new int[hotelCount * maxLevels];
+        for (int h = 0; h < hotelCount; h++) {
+            Hotel hotel = hotels.get(hotelIds[h]);
+            buyingCosts[h] = hotel.getBuyingCost();
+            obligBuyingCosts[h] = hotel.getObligBuyingCost();
+            entranceCosts[h] = hotel.getEntranceCost();
+            int[] bcs = hotel.getBuildingCosts();
+            int[] scs = hotel.getStayingCosts();
+            levels[h] = bcs.length;
+            System.arraycopy(bcs, 0, buildingCosts, h * maxLevels, bcs.length);
+            System.arraycopy(scs, 0, stayingCosts, h * maxLevels, scs.length);
+        }
+    }
+
+    /**
+     * Returns the number of tiles on the ring.
+     *
+     * @return the number of tiles on the ring
+     */
+    public int getRingLength() {
+        return ringLength;
+    }
+
+    /**
+     * Returns the type of a tile on the ring.
+     *
+     * @param r the index of the tile on the ring
+     *
+     * @return the type of the tile
+     */
+    public PlayerTile.Type getType(int r) {
+        return PlayerTile.Type.values()[types[r]];
+    }
+
+    /**
+     * Returns whether a tile on the ring is of the type specified. Unlike
+     * getType, this never allocates.
+     *
+     * @param r the index of the tile on the ring
+     * @param type the type to check for
+     *
+     * @return true if the tile is of the type specified, false otherwise
+     */
+    public boolean isType(int r, PlayerTile.Type type) {
+        return types[r] == type.ordinal();
+    }
+
+    /**
+     * Returns the hotel on a side of a tile on the ring.
+     *
+     * @param r the index of the tile on the ring
+     * @param side the side of the tile
+     *
+     * @return the index of the hotel or -1 if there is no hotel on that side
+     */
+    public int getAdjacentHotel(int r, int side) {
+        return adjacent[r * SIDES + side];
+    }
+
+    /**
+     * Returns the number of hotels.
+     *
+     * @return the number of hotels
+     */
+    public int getHotelCount() {
+        return hotelIds.length;
+    }
+
+    /**
+     * Returns the id of a hotel.
+     *
+     * @param h the index of the hotel
+     *
+     * @return the id of the hotel
+     */
+    public int getHotelId(int h) {
+        return hotelIds[h];
+    }
+
+    /**
+     * Returns the index of the hotel with the id specified.
+     *
+     * @param hid the id of the hotel
+     *
+     * @return the index of the hotel or a negative number if there is no
+     * such hotel
+     */
+    public int indexOfHotel(int hid) {
+        return Arrays.binarySearch(hotelIds, hid);
+    }
+
+    /**
+     * Returns the cost to buy a hotel when no one owns it.
+     *
+     * @param h the index of the hotel
+     *
+     * @return the cost to buy the hotel when no one owns it
+     */
+    public int getBuyingCost(int h) {
+        return buyingCosts[h];
+    }
+
+    /**
+     * Returns the cost to buy a hotel from another player.
+     *
+     * @param h the index of the hotel
+     *
+     * @return the cost to buy the hotel from another player
+     */
+    public int getObligBuyingCost(int h) {
+        return obligBuyingCosts[h];
+    }
+
+    /**
+     * Returns the cost of an entrance for a hotel.
+     *
+     * @param h the index of the hotel
+     *
+     * @return the cost of an entrance for the hotel
+     */
+    public int getEntranceCost(int h) {
+        return entranceCosts[h];
+    }
+
+    /**
+     * Returns the number of building states of a hotel.
+     *
+     * @param h the index of the hotel
+     *
+     * @return the number of building states of the hotel
+     */
+    public int getLevels(int h) {
+        return levels[h];
+    }
+
+    /**
+     * Returns the maximum number of building states among all hotels, i.e.
+     * the length of each hotel's row in the flat cost tables.
+     *
+     * @return the maximum number of building states among all hotels
+     */
+    public int getMaxLevels() {
+        return maxLevels;
+    }
+
+    /**
+     * Returns the cost to build a building state of a hotel.
+     *
+     * @param h the index of the hotel
+     * @param level the building state
+     *
+     * @return the cost to build the building state
+     */
+    public int getBuildingCost(int h, int level) {
+        return buildingCosts[h * maxLevels + level];
+    }
+
+    /**
+     * Returns the cost per night at a building state of a hotel.
+     *
+     * @param h the index of the hotel
+     * @param level the building state
+     *
+     * @return the cost per night at the building state
+     */
+    public int getStayingCost(int h, int level) {
+        return stayingCosts[h * maxLevels + level];
+    }
+
+    /**
+     * Returns the number of tiles in the front of a hotel (the tiles on the
+     * ring next to it).
+     *
+     * @param h the index of the hotel
+     *
+     * @return the number of tiles in the front of the hotel
+     */
+    public int getFrontSize(int h) {
+        return frontOffsets[h + 1] - frontOffsets[h];
+    }
+
+    /**
+     * Returns a tile in the front of a hotel. The tiles are in ring order.
+     *
+     * @param h the index of the hotel
+     * @param k the index of the tile in the front of the hotel
+     *
+     * @return the index of the tile on the ring
+     */
+    public int getFrontTile(int h, int k) {
+        return frontTiles[frontOffsets[h] + k];
+    }
+
+    /**
+     * Returns the side of a tile in the front of a hotel the hotel is on.
+     *
+     * @param h the index of the hotel
+     * @param k the index of the tile in the front of the hotel
+     *
+     * @return the side of the tile the hotel is on
+     */
+    public int getFrontSide(int h, int k) {
+        return frontSides[frontOffsets[h] + k];
+    }
+}
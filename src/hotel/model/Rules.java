@@ -0,0 +1,197 @@
+package hotel.model;
+
+/**
+ * The economic rules of a game: the money every player starts with, the
+ * money the bank pays, the chances of the outcomes of a request to build and
+ * what staying in a hotel costs. Rules are immutable; the with* methods
+ * return modified copies.
+ */
+public class Rules {
+
+    /**
+     * The rules of the board game.
+     */
+    public static final Rules DEFAULT = new Rules(12000, 1000, 50, 20, 15, 15, 1);
+
+    private final int startingMoney;
+    private final int bankPayout;
+    private final int normalBuildChance, rejectedBuildChance, freeBuildChance, doubleBuildChance;
+    private final double stayingMultiplier;
+
+    /**
+     * Constructs a set of rules.
+     *
+     * @param startingMoney the money each player starts with
+     * @param bankPayout the money the bank pays on a request
+     * @param normalBuildChance the chance (%) that building costs as much as
+     * the hotel's card says
+     * @param rejectedBuildChance the chance (%) that a request to build is
+     * rejected
+     * @param freeBuildChance the chance (%) that building costs nothing
+     * @param doubleBuildChance the chance (%) that building costs double
+     * @param stayingMultiplier the factor of the staying cost times the dice
+     * a player pays for a stay
+     *
+     * @throws IllegalArgumentException if the chances don't add up to 100 or
+     * any value is negative
+     */
+    public Rules(int startingMoney, int bankPayout, int normalBuildChance, int rejectedBuildChance,
+            int freeBuildChance, int doubleBuildChance, double stayingMultiplier) {
+        if (startingMoney < 0 || bankPayout < 0 || normalBuildChance < 0 || rejectedBuildChance < 0
+                || freeBuildChance < 0 || doubleBuildChance < 0 || stayingMultiplier < 0)
+            throw new IllegalArgumentException("Negative rule value");
+        if (normalBuildChance + rejectedBuildChance + freeBuildChance + doubleBuildChance != 100)
+            throw new IllegalArgumentException("Building chances don't add up to 100");
+        this.startingMoney = startingMoney;
+        this.bankPayout = bankPayout;
+        this.normalBuildChance = normalBuildChance;
+        this.rejectedBuildChance = rejectedBuildChance;
+        this.freeBuildChance = freeBuildChance;
+        this.doubleBuildChance = doubleBuildChance;
+        this.stayingMultiplier = stayingMultiplier;
+    }
+
+    /**
+     * Returns the money each player starts with.
+     *
+     * @return the money each player starts with
+     */
+    public int getStartingMoney() {
+        return startingMoney;
+    }
+
+    /**
+     * Returns the money the bank pays on a request.
+     *
+     * @return the money the bank pays on a request
+     */
+    public int getBankPayout() {
+        return bankPayout;
+    }
+
+    /**
+     * Returns the chance that building costs as much as the hotel's card
+     * says.
+     *
+     * @return the chance (%) of a normal build
+     */
+    public int getNormalBuildChance() {
+        return normalBuildChance;
+    }
+
+    /**
+     * Returns the chance that a request to build is rejected.
+     *
+     * @return the chance (%) of a rejection
+     */
+    public int getRejectedBuildChance() {
+        return rejectedBuildChance;
+    }
+
+    /**
+     * Returns the chance that building costs nothing.
+     *
+     * @return the chance (%) of a free build
+     */
+    public int getFreeBuildChance() {
+        return freeBuildChance;
+    }
+
+    /**
+     * Returns the chance that building costs double.
+     *
+     * @return the chance (%) of a build at double the cost
+     */
+    public int getDoubleBuildChance() {
+        return doubleBuildChance;
+    }
+
+    /**
+     * Returns the factor of the staying cost times the dice a player pays
+     * for a stay.
+     *
+     * @return the staying multiplier
+     */
+    public double getStayingMultiplier() {
+        return stayingMultiplier;
+    }
+
+    /**
+     * Returns a copy of these rules with another starting money.
+     *
+     * @param startingMoney the money each player starts with
+     *
+     * @return the modified rules
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public Rules withStartingMoney(int startingMoney) {
+        return new Rules(startingMoney, bankPayout, normalBuildChance, rejectedBuildChance,
+                freeBuildChance, doubleBuildChance, stayingMultiplier);
+    }
+
+    /**
+     * Returns a copy of these rules with another bank payout.
+     *
+     * @param bankPayout the money the bank pays on a request
+     *
+     * @return the modified rules
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public Rules withBankPayout(int bankPayout) {
+        return new Rules(startingMoney, bankPayout, normalBuildChance, rejectedBuildChance,
+                freeBuildChance, doubleBuildChance, stayingMultiplier);
+    }
+
+    /**
+     * Returns a copy of these rules with other building chances.
+     *
+     * @param normal the chance (%) that building costs as much as the
+     * hotel's card says
+     * @param rejected the chance (%) that a request to build is rejected
+     * @param free the chance (%) that building costs nothing
+     * @param doubled the chance (%) that building costs double
+     *
+     * @return the modified rules
+     *
+     * @throws IllegalArgumentException if the chances don't add up to 100 or
+     * any is negative
+     */
+    public Rules withBuildChances(int normal, int rejected, int free, int doubled) {
+        return new Rules(startingMoney, bankPayout, normal, rejected, free, doubled, stayingMultiplier);
+    }
+
+    /**
+     * Returns a copy of these rules with another staying multiplier.
+     *
+     * @param stayingMultiplier the factor of the staying cost times the dice
+     * a player pays for a stay
+     *
+     * @return the modified rules
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public Rules withStayingMultiplier(double stayingMultiplier) {
+        return new Rules(startingMoney, bankPayout, normalBuildChance, rejectedBuildChance,
+                freeBuildChance, doubleBuildChance, stayingMultiplier);
+    }
+
+    /**
+     * Returns the cost of a stay.
+     *
+     * @param stayingCost the staying cost of the hotel
+     * @param dice the dice result of the round
+     *
+     * @return the cost of the stay
+     */
+    int stayingCost(int stayingCost, int dice) {
+        return (stayingMultiplier == 1) ? stayingCost * dice : (int) Math.round(stayingCost * dice * stayingMultiplier);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("start %d, payout %d, build %d/%d/%d/%d, stay x%s", startingMoney, bankPayout,
+                normalBuildChance, rejectedBuildChance, freeBuildChance, doubleBuildChance, stayingMultiplier);
+    }
+}
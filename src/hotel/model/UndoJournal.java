@@ -0,0 +1,78 @@
+package hotel.model;
+
+import java.util.Arrays;
+
+/**
+ * A journal of the primitive changes made to the state of a game, so that
+ * they can be rolled back (see Game.mark and Game.undo). Each change is an
+ * entry of ENTRY_SIZE ints: the kind of the change and up to three
+ * arguments, enough to restore the state before it. The journal only
+ * records while it is on, and then grows as needed; it never shrinks, so
+ * that rolling back and replaying a branch doesn't allocate.
+ */
+class UndoJournal {
+
+    static final int MONEY = 0;     // player id, money delta, previous max money
+    static final int OWNER = 1;     // hotel index, previous owner id, new owner id, index in the previous owner's hotels
+    static final int STATE = 2;     // hotel index, previous state
+    static final int ENTRANCE = 3;  // ring index, previous entrance ordinal
+    static final int POSITION = 4;  // player id, previous ring index (-1 -> none)
+    static final int ACTIVE = 5;    // player id, previous active flag (0 or 1)
+    static final int CURRENT = 6;   // previous current player id (0 -> none)
+    static final int FLAG = 7;      // flag index, previous value (0 or 1)
+    static final int WINNER = 8;    // previous winner id (0 -> none)
+
+    private static final int ENTRY_SIZE = 4;
+
+    private int[] entries = new int[64 * ENTRY_SIZE];
+    private int size;       // in entries
+    private boolean recording;
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void record(int kind, int a, int b) {
+        record(kind, a, b, 0, 0);
+    }
+
+    void record(int kind, int a, int b, int c, int d) {
+        if (!recording)
+            return;
+        if ((size + 1) * ENTRY_SIZE > entries.length)
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        int i = size++ * ENTRY_SIZE;
+        entries[i] = (a << 4) | kind;   // kinds fit in 4 bits
+        entries[i + 1] = b;
+        entries[i + 2] = c;
+        entries[i + 3] = d;
+    }
+
+    /**
+     * Removes the latest entry. Its fields can be read with kind, arg(0..3)
+     * until the next one is recorded.
+     */
+    void pop() {
+        size--;
+    }
+
+    int kind() {
+        return entries[size * ENTRY_SIZE] & 0xF;
+    }
+
+    int arg(int k) {
+        return (k == 0) ? entries[size * ENTRY_SIZE] >> 4 : entries[size * ENTRY_SIZE + k];
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
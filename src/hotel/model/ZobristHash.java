@@ -0,0 +1,93 @@
+package hotel.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * The Zobrist hash of the state of a game, updated incrementally by the model
+ * whenever a part of the state changes: hotel owners and building states,
+ * entrances, player positions, player money (in buckets of MONEY_BUCKET MLs),
+ * the current player and the actions still enabled in the round. Each part is
+ * XORed in and out of the hash with a random key per (part, value). The keys
+ * only depend on the hotels and the ring of the board, so games on the same
+ * board hash equal states to equal values and can share a transposition
+ * table.
+ */
+class ZobristHash {
+
+    /**
+     * The width of the money buckets, in MLs.
+     */
+    static final int MONEY_BUCKET = 500;
+    private static final int MONEY_BUCKETS = 64;
+    private static final int PLAYERS = 3;
+    private static final int FLAGS = 4;
+
+    private final int maxLevels;
+    private final int cells;
+    private final long[] ownerKeys;     // hotel * (PLAYERS + 1) + owner id
+    private final long[] levelKeys;     // hotel * (maxLevels + 1) + state + 1
+    private final long[] entranceKeys;  // tile * 5 + entrance ordinal
+    private final long[] positionKeys;  // (player id - 1) * (cells + 1) + tile + 1
+    private final long[] moneyKeys;     // (player id - 1) * MONEY_BUCKETS + bucket
+    private final long[] currentKeys;   // player id
+    private final long[] flagKeys;
+    private long value;
+
+    /**
+     * @param hotels the number of hotels
+     * @param maxLevels the maximum number of building states of a hotel
+     * @param cells the number of tiles on the ring
+     */
+    ZobristHash(int hotels, int maxLevels, int cells) {
+        this.maxLevels = maxLevels;
+        this.cells = cells;
+        SplittableRandom rng = new SplittableRandom(0x5EED_407E1L);    // fixed, see above
+        ownerKeys = keys(rng, hotels * (PLAYERS + 1));
+        levelKeys = keys(rng, hotels * (maxLevels + 1));
+        entranceKeys = keys(rng, cells * (PlayerTile.SIDES.length + 1));
+        positionKeys = keys(rng, PLAYERS * (cells + 1));
+        moneyKeys = keys(rng, PLAYERS * MONEY_BUCKETS);
+        currentKeys = keys(rng, PLAYERS + 1);
+        flagKeys = keys(rng, FLAGS);
+    }
+
+    long get() {
+        return value;
+    }
+
+    void toggleOwner(int hotel, int ownerId) {
+        value ^= ownerKeys[hotel * (PLAYERS + 1) + ownerId];
+    }
+
+    void toggleLevel(int hotel, int state) {
+        value ^= levelKeys[hotel * (maxLevels + 1) + state + 1];
+    }
+
+    void toggleEntrance(int ringIndex, PlayerTile.Entrance entrance) {
+        value ^= entranceKeys[ringIndex * (PlayerTile.SIDES.length + 1) + entrance.ordinal()];
+    }
+
+    void togglePosition(int playerId, int ringIndex) { // ringIndex -1 -> bankrupt
+        value ^= positionKeys[(playerId - 1) * (cells + 1) + ringIndex + 1];
+    }
+
+    void toggleMoney(int playerId, int money) {
+        int bucket = Math.min(Math.max(money, 0) / MONEY_BUCKET, MONEY_BUCKETS - 1);
+        value ^= moneyKeys[(playerId - 1) * MONEY_BUCKETS + bucket];
+    }
+
+    void toggleCurrent(int playerId) {
+        value ^= currentKeys[playerId];
+    }
+
+    void toggleFlag(int flag) {
+        value ^= flagKeys[flag];
+    }
+
+    private static long[] keys(SplittableRandom rng, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = rng.nextLong();
+        return keys;
+    }
+}
@@ -0,0 +1,281 @@
+package hotel.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A client of a GameServer on the same machine. Requests are sent as they
+ * are made and their responses complete futures, so a client can keep many
+ * requests in flight over its one connection (pipelining); the synchronous
+ * methods send one and wait for its response. A client can also watch
+ * tables, mirroring each in a TableView.
+ */
+public class GameClient implements AutoCloseable {
+
+    /**
+     * The response to a request.
+     */
+    public static class Response {
+
+        private final int status;
+        private final int value;
+        private final TableState state;
+
+        Response(int status, int value, TableState state) {
+            this.status = status;
+            this.value = value;
+            this.state = state;
+        }
+
+        /**
+         * Returns the status of the response (Protocol.OK, ...).
+         *
+         * @return the status of the response
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the value of the response, which depends on the op (see
+         * Protocol).
+         *
+         * @return the value of the response
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the state of the table a STATE request returned.
+         *
+         * @return the state of the table, or null if the response has none
+         */
+        public TableState getState() {
+            return state;
+        }
+    }
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final ByteBuffer request = ByteBuffer.allocate(Protocol.REQUEST_BYTES);
+    private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, TableView> views = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Thread reader;
+    private volatile UncheckedIOException failure;     // set once the connection is gone
+
+    /**
+     * Connects to a server on the loopback interface.
+     *
+     * @param port the port of the server
+     *
+     * @throws IOException if the server can't be connected to
+     */
+    public GameClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        reader = new Thread(this::read, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request without waiting for its response. Requests are
+     * buffered until flush is called or a synchronous method is.
+     *
+     * @param op the op (Protocol.CREATE, ...)
+     * @param table the id of the table, ignored by CREATE
+     * @param arg the argument of the op
+     * @param flush whether to send the requests buffered right away
+     *
+     * @return the response to come
+     *
+     * @throws IOException if the request can't be sent
+     */
+    public CompletableFuture<Response> send(int op, int table, int arg, boolean flush) throws IOException {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        synchronized (request) {
+            int id = nextId.getAndIncrement();
+            pending.put(id, response);
+            if (failure != null) {
+                pending.remove(id);
+                throw failure.getCause();
+            }
+            request.clear();
+            request.putInt(id).put((byte) op).putInt(table).putInt(arg);
+            out.write(request.array(), 0, Protocol.REQUEST_BYTES);
+            if (flush)
+                out.flush();
+        }
+        return response;
+    }
+
+    /**
+     * Sends the requests buffered.
+     *
+     * @throws IOException if the requests can't be sent
+     */
+    public void flush() throws IOException {
+        synchronized (request) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Opens a new table.
+     *
+     * @param board the index of the board among those of the server's source
+     *
+     * @return the id of the table, or -1 if there is no such board
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public int createTable(int board) throws IOException {
+        Response r = call(Protocol.CREATE, 0, board);
+        return (r.getStatus() == Protocol.OK) ? r.getValue() : -1;
+    }
+
+    /**
+     * Plays a move for the current player of a table.
+     *
+     * @param table the id of the table
+     * @param move the move (see MoveGenerator.moveOf)
+     *
+     * @return the response: its status says whether the move was played and
+     * its value is the current player after it
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public Response play(int table, int move) throws IOException {
+        return call(Protocol.PLAY, table, move);
+    }
+
+    /**
+     * Returns the state of a table.
+     *
+     * @param table the id of the table
+     *
+     * @return the state of the table, or null if there is no such table
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public TableState getState(int table) throws IOException {
+        return call(Protocol.STATE, table, 0).getState();
+    }
+
+    /**
+     * Closes a table.
+     *
+     * @param table the id of the table
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public void closeTable(int table) throws IOException {
+        call(Protocol.CLOSE, table, 0);
+    }
+
+    /**
+     * Starts watching a table: the state of its game is pushed to the client
+     * as it changes, and mirrored in a view.
+     *
+     * @param table the id of the table
+     * @param listener called on the client's reader thread after every frame
+     * applied to the view, or null
+     *
+     * @return the view of the table, or null if there is no such table
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public TableView watch(int table, Consumer<TableView> listener) throws IOException {
+        TableView view = new TableView(listener);
+        views.put(table, view);     // before the keyframe comes
+        if (call(Protocol.WATCH, table, 0).getStatus() != Protocol.OK) {
+            views.remove(table, view);
+            return null;
+        }
+        return view;
+    }
+
+    /**
+     * Stops watching a table.
+     *
+     * @param table the id of the table
+     *
+     * @throws IOException if the server can't be talked to
+     */
+    public void unwatch(int table) throws IOException {
+        call(Protocol.UNWATCH, table, 0);
+        views.remove(table);
+    }
+
+    /**
+     * Disconnects. The requests not answered yet fail.
+     *
+     * @throws IOException if the connection can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private Response call(int op, int table, int arg) throws IOException {
+        try {
+            return send(op, table, arg, true).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof UncheckedIOException)
+                throw ((UncheckedIOException) c).getCause();
+            throw new IOException(c);
+        }
+    }
+
+    private void read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            byte[] payload = new byte[1 << 12];
+            while (true) {
+                int id = in.readInt();
+                int status = in.readByte();
+                int value = in.readInt();
+                int length = in.readUnsignedShort();
+                if (length > payload.length)
+                    payload = new byte[Protocol.MAX_PAYLOAD_BYTES];
+                in.readFully(payload, 0, length);
+                if (id == Protocol.PUSH) {
+                    TableView view = views.get(value);
+                    if (view != null && view.apply(ByteBuffer.wrap(payload, 0, length)) && view.listener != null)
+                        view.listener.accept(view);
+                    continue;
+                }
+                TableState state = (length > 0) ? TableState.read(ByteBuffer.wrap(payload, 0, length)) : null;
+                CompletableFuture<Response> r = pending.remove(id);
+                if (r != null)
+                    r.complete(new Response(status, value, state));
+            }
+        } catch (IOException e) {
+            failure = new UncheckedIOException("connection closed", e);
+        }
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Response> r = pending.remove(id);
+            if (r != null)
+                r.completeExceptionally(failure);
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package hotel.net;
+
+import hotel.model.BoardDefinition;
+import hotel.model.BoardSource;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.MoveGenerator;
+import hotel.model.Rules;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent games (tables) for clients connecting over the
+ * loopback interface, speaking the Protocol. Each table is a Game with a
+ * queue of the requests sent to it, handled in order on a pool of worker
+ * threads shared by all the tables: a table takes a thread only while it has
+ * requests queued, so an idle table costs no more than its game, and
+ * thousands of tables share a few threads. Each connection has a thread of
+ * its own reading its requests; a client may play any number of tables over
+ * one connection.
+ *
+ * Clients may also watch tables (spectators): after every batch of requests
+ * a watched table handles, the changes to its game are encoded once as a
+ * delta (see TableSync) and the same bytes are pushed to all its spectators,
+ * each within the bandwidth set with setSpectatorBandwidth. A table holds no
+ * sync state while nobody watches it.
+ *
+ * Given a log directory, the server logs the commands that change its
+ * tables (see TableLog) and answers each only once it is on disk; a server
+ * started on the same directory plays the tables logged again, so a crash
+ * loses no table nor any move that was answered.
+ */
+public class GameServer implements AutoCloseable {
+
+    private static final int BATCH = 64;   // requests a table handles before letting other tables have the thread
+
+    private static final GameObserver HEADLESS = new GameObserver() {
+    };
+
+    private final BoardSource source;
+    private final List<String> boards;
+    private final ServerSocket socket;
+    private final ExecutorService workers;
+    private final Thread acceptor;
+    private final ScheduledExecutorService timer;
+    private final TableLog log;     // null if the tables are not kept
+    private final Map<Integer, Table> tables = new ConcurrentHashMap<>();
+    private final Map<Connection, Boolean> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTable = new AtomicInteger(1);
+    private final SplittableRandom seeds = new SplittableRandom();
+    private volatile int spectatorBandwidth = 1 << 15;
+    private volatile boolean closed;
+
+    /**
+     * A request queued on a table.
+     */
+    private static final class Request {
+
+        final Connection from;
+        final int id, op, arg;
+        Request next;
+
+        Request(Connection from, int id, int op, int arg) {
+            this.from = from;
+            this.id = id;
+            this.op = op;
+            this.arg = arg;
+        }
+    }
+
+    /**
+     * A connection watching a table, with its token bucket of bytes.
+     */
+    private static final class Spectator {
+
+        final Connection to;
+        private double budget;
+        private long refilled = System.nanoTime();
+        boolean behind;     // missed a frame, needs a keyframe
+
+        Spectator(Connection to, int bandwidth) {
+            this.to = to;
+            budget = bandwidth;
+        }
+
+        /**
+         * Returns the nanoseconds until there is budget left again.
+         */
+        long refillNanos(int bandwidth) {
+            return (long) (Math.max(0, -budget) * 1e9 / bandwidth) + 1;
+        }
+
+        /**
+         * Takes the bytes of a frame from the budget, if it has any left:
+         * a frame larger than what is left is still sent, and paid for by
+         * the frames after it, so that no frame is too large to ever send.
+         */
+        boolean spend(int bytes, long now, int bandwidth) {
+            budget = Math.min(bandwidth, budget + (now - refilled) * 1e-9 * bandwidth);
+            refilled = now;
+            if (budget <= 0)
+                return false;
+            budget -= bytes;
+            return true;
+        }
+    }
+
+    /**
+     * A table: a game and the requests queued on it, handled by one worker
+     * at a time.
+     */
+    private final class Table implements Runnable {
+
+        final int id;
+        final Game game;
+        private Request head, tail;     // a linked queue, so an idle table holds no buffer
+        private boolean scheduled;
+        private List<Spectator> spectators;     // null if not watched, like sync
+        private TableSync sync;
+        private boolean catchingUp;
+
+        Table(int id, Game game) {
+            this.id = id;
+            this.game = game;
+        }
+
+        void submit(Request r) {
+            synchronized (this) {
+                if (tail == null)
+                    head = tail = r;
+                else
+                    tail = tail.next = r;
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int n = 0; n < BATCH; n++) {
+                Request r;
+                synchronized (this) {
+                    r = head;
+                    if (r == null && spectators == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (r != null) {
+                        head = r.next;
+                        if (head == null)
+                            tail = null;
+                    }
+                }
+                if (r == null) {
+                    publish();  // before letting another worker have the table
+                    synchronized (this) {
+                        if (head == null) {
+                            scheduled = false;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                if (r.from != null)
+                    handle(this, r);
+                else
+                    catchingUp = false;     // and publish
+            }
+            if (spectators != null)
+                publish();
+            schedule();     // more queued, go to the back of the line
+        }
+
+        /**
+         * Pushes the changes to the game since the last frame to the
+         * spectators.
+         */
+        void publish() {
+            ByteBuffer frame = null;
+            if (sync.update())
+                frame = (sync.getVersion() % Protocol.KEYFRAME_INTERVAL == 0) ? sync.keyframe() : sync.delta();
+            long now = System.nanoTime();
+            int bandwidth = spectatorBandwidth;
+            long wait = -1;
+            for (int i = spectators.size() - 1; i >= 0; i--) {
+                Spectator s = spectators.get(i);
+                if (s.to.isClosed()) {
+                    spectators.remove(i);
+                    continue;
+                }
+                ByteBuffer f = s.behind ? sync.keyframe() : frame;
+                if (f == null)
+                    continue;
+                s.behind = !s.spend(f.limit(), now, bandwidth);
+                if (!s.behind)
+                    s.to.push(id, f);
+                else
+                    wait = Math.max(wait, s.refillNanos(bandwidth));
+            }
+            if (spectators.isEmpty()) {
+                spectators = null;
+                sync = null;
+            } else if (wait >= 0 && !catchingUp) {
+                // the game may sit idle, so come back for the spectators left behind
+                catchingUp = true;
+                try {
+                    timer.schedule(() -> submit(new Request(null, 0, 0, 0)), wait, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // closed
+                }
+            }
+        }
+
+        void watch(Request r) {
+            if (spectators == null) {
+                try {
+                    sync = new TableSync(game);
+                } catch (IllegalArgumentException e) {
+                    r.from.respond(r.id, Protocol.BAD_REQUEST, 0);
+                    return;
+                }
+                spectators = new ArrayList<>(2);
+            } else {
+                publish();  // the others see the changes up to now as a delta
+                if (spectators == null) {   // they were all gone
+                    watch(r);
+                    return;
+                }
+            }
+            int bandwidth = spectatorBandwidth;
+            Spectator s = new Spectator(r.from, bandwidth);
+            spectators.add(s);
+            r.from.respond(r.id, Protocol.OK, sync.getVersion());
+            ByteBuffer f = sync.keyframe();
+            s.spend(f.limit(), System.nanoTime(), bandwidth);
+            s.to.push(id, f);
+        }
+
+        void unwatch(Request r) {
+            if (spectators != null) {
+                spectators.removeIf(s -> s.to == r.from);
+                if (spectators.isEmpty()) {
+                    spectators = null;
+                    sync = null;
+                }
+            }
+            r.from.respond(r.id, Protocol.OK, 0);
+        }
+    }
+
+    /**
+     * A client connection: reads requests on its own thread and writes the
+     * responses of any thread, flushing once no response is due.
+     */
+    private final class Connection implements Runnable {
+
+        private final Socket client;
+        private final OutputStream out;
+        private final ByteBuffer response = ByteBuffer.allocate(Protocol.RESPONSE_HEADER_BYTES + Protocol.STATE_BYTES);
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean closed;
+
+        Connection(Socket client) throws IOException {
+            this.client = client;
+            client.setTcpNoDelay(true);
+            out = new BufferedOutputStream(client.getOutputStream(), 1 << 16);
+        }
+
+        @Override
+        public void run() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream(), 1 << 16))) {
+                while (true) {
+                    int id = in.readInt();
+                    int op = in.readByte();
+                    int table = in.readInt();
+                    int arg = in.readInt();
+                    pending.incrementAndGet();
+                    request(this, id, op, table, arg);
+                }
+            } catch (EOFException e) {
+                // the client hung up
+            } catch (IOException e) {
+                if (!closed)
+                    System.err.println("Connection failed: " + e);
+            } finally {
+                connections.remove(this);
+                close();
+            }
+        }
+
+        void respond(int id, int status, int value) {
+            respond(id, status, value, null, null);
+        }
+
+        void respond(int id, int status, int value, Game state) {
+            respond(id, status, value, state, null);
+        }
+
+        void respond(int id, int status, int value, byte[] state) {
+            respond(id, status, value, null, state);
+        }
+
+        private void respond(int id, int status, int value, Game state, byte[] encoded) {
+            synchronized (this) {
+                response.clear();
+                response.putInt(id).put((byte) status).putInt(value);
+                if (state != null) {
+                    response.putShort((short) Protocol.STATE_BYTES);
+                    TableState.write(state, response);
+                } else if (encoded != null) {
+                    response.putShort((short) encoded.length).put(encoded);
+                } else {
+                    response.putShort((short) 0);
+                }
+                try {
+                    out.write(response.array(), 0, response.position());
+                    if (pending.decrementAndGet() == 0)
+                        out.flush();
+                } catch (IOException e) {
+                    close();    // the reader will notice
+                }
+            }
+        }
+
+        /**
+         * Writes a sync frame of a table, read from position 0 to its limit.
+         */
+        void push(int table, ByteBuffer frame) {
+            synchronized (this) {
+                response.clear();
+                response.putInt(Protocol.PUSH).put((byte) Protocol.OK).putInt(table).putShort((short) frame.limit());
+                try {
+                    out.write(response.array(), 0, response.position());
+                    out.write(frame.array(), 0, frame.limit());
+                    if (pending.get() == 0)
+                        out.flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void close() {
+            closed = true;
+            try {
+                client.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param source the boards the tables can be played on
+     * @param port the port to listen on, 0 for any free port
+     * @param threads the number of worker threads
+     *
+     * @throws IOException if the boards can't be listed or the port can't be
+     * listened on
+     */
+    public GameServer(BoardSource source, int port, int threads) throws IOException {
+        this(source, port, threads, null);
+    }
+
+    /**
+     * Starts a server on the loopback interface that keeps its tables in a
+     * log (see TableLog), so that a server started on the same log after a
+     * crash has them all as they were after the last command answered.
+     *
+     * @param source the boards the tables can be played on
+     * @param port the port to listen on, 0 for any free port
+     * @param threads the number of worker threads
+     * @param logDir the directory of the log, null for none
+     *
+     * @throws IOException if the boards can't be listed, the log can't be
+     * read or the port can't be listened on
+     */
+    public GameServer(BoardSource source, int port, int threads, Path logDir) throws IOException {
+        this.source = source;
+        boards = source.getNames();
+        if (logDir != null) {
+            TableLog.Recovery recovered = TableLog.recover(logDir);
+            restore(recovered);
+            log = new TableLog(logDir, recovered, this::close);
+        } else {
+            log = null;
+        }
+        socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "server-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "server-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        acceptor = new Thread(this::accept, "server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of tables open.
+     *
+     * @return the number of tables open
+     */
+    public int getTables() {
+        return tables.size();
+    }
+
+    /**
+     * Sets the bytes per second pushed to each spectator of a table at most.
+     * The frames beyond that are skipped, and a spectator that missed one
+     * gets a keyframe instead of the next delta.
+     *
+     * @param bytesPerSecond the bandwidth of each spectator
+     */
+    public void setSpectatorBandwidth(int bytesPerSecond) {
+        spectatorBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Waits until the server is closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Stops accepting connections, closes the ones open and drops all the
+     * tables.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Connection c : connections.keySet())
+            c.close();
+        workers.shutdown();
+        timer.shutdownNow();
+        if (log != null)
+            log.close();
+        tables.clear();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Connection c = new Connection(socket.accept());
+                connections.put(c, Boolean.TRUE);
+                Thread t = new Thread(c, "server-connection");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!closed)
+                    System.err.println("Accepting failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Handles a request on the connection's thread if it needs no table,
+     * else queues it on its table.
+     */
+    private void request(Connection from, int id, int op, int table, int arg) {
+        if (op == Protocol.CREATE) {
+            if (arg < 0 || arg >= boards.size()) {
+                from.respond(id, Protocol.BAD_REQUEST, 0);
+                return;
+            }
+            BoardDefinition def;
+            try {
+                def = source.get(boards.get(arg));
+            } catch (IOException e) {
+                from.respond(id, Protocol.BAD_REQUEST, 0);
+                return;
+            }
+            long seed;
+            synchronized (seeds) {
+                seed = seeds.nextLong();
+            }
+            int t = nextTable.getAndIncrement();
+            Table created = new Table(t, new Game(HEADLESS, def, Rules.DEFAULT, seed));
+            if (log == null) {
+                tables.put(t, created);
+                from.respond(id, Protocol.OK, t);
+            } else {
+                log.create(t, boards.get(arg), seed, () -> from.respond(id, Protocol.OK, t));
+                tables.put(t, created);     // after the record, so its moves are logged after it
+            }
+            return;
+        }
+        Table t = tables.get(table);
+        if (t == null)
+            from.respond(id, Protocol.NO_SUCH_TABLE, 0);
+        else
+            t.submit(new Request(from, id, op, arg));
+    }
+
+    /**
+     * Handles a request queued on a table, on a worker thread.
+     */
+    private void handle(Table t, Request r) {
+        Game g = t.game;
+        switch (r.op) {
+            case Protocol.PLAY: {
+                int hid = MoveGenerator.hotelIdOf(r.arg);
+                int type = MoveGenerator.typeOf(r.arg);
+                if (type > MoveGenerator.BUY_ENTRANCE || (type >= MoveGenerator.BUY_HOTEL && g.getHotel(hid) == null)) {
+                    reply(r, Protocol.BAD_REQUEST, 0, null);
+                } else if (g.getWinnerId() != 0) {
+                    reply(r, Protocol.GAME_OVER, g.getWinnerId(), null);
+                } else {
+                    int status = g.play(r.arg) ? Protocol.OK : Protocol.FAILED;
+                    int current = g.getCurrentPlayerId();
+                    if (log == null)
+                        r.from.respond(r.id, status, current);
+                    else
+                        log.play(t.id, r.arg, () -> r.from.respond(r.id, status, current));
+                }
+                break;
+            }
+            case Protocol.STATE:
+                reply(r, Protocol.OK, g.getCurrentPlayerId(), g);
+                break;
+            case Protocol.WATCH:
+                t.watch(r);
+                break;
+            case Protocol.UNWATCH:
+                t.unwatch(r);
+                break;
+            case Protocol.CLOSE:
+                tables.remove(t.id);
+                if (log == null)
+                    r.from.respond(r.id, Protocol.OK, 0);
+                else
+                    log.close(t.id, () -> r.from.respond(r.id, Protocol.OK, 0));
+                break;
+            default:
+                reply(r, Protocol.BAD_REQUEST, 0, null);
+        }
+    }
+
+    /**
+     * Answers a request that changed nothing; with a log, once the changes
+     * to the table before it are on disk, so that the answers to the
+     * requests of a table keep their order.
+     */
+    private void reply(Request r, int status, int value, Game state) {
+        if (log == null) {
+            r.from.respond(r.id, status, value, state);
+            return;
+        }
+        byte[] encoded = (state != null) ? TableState.encode(state) : null;
+        log.sync(() -> {
+            if (encoded != null)
+                r.from.respond(r.id, status, value, encoded);
+            else
+                r.from.respond(r.id, status, value);
+        });
+    }
+
+    /**
+     * Plays the tables recovered from the log again.
+     */
+    private void restore(TableLog.Recovery recovered) {
+        for (TableLog.Recipe t : recovered.tables.values()) {
+            BoardDefinition def;
+            try {
+                def = source.get(t.board);
+            } catch (IOException e) {
+                System.err.println("Dropped table " + t.id + ", can't read board " + t.board + ": " + e.getMessage());
+                continue;
+            }
+            Game g = new Game(HEADLESS, def, Rules.DEFAULT, t.seed);
+            for (int i = 0; i < t.getMoveCount(); i++)
+                g.play(t.getMove(i));
+            tables.put(t.id, new Table(t.id, g));
+        }
+        nextTable.set(recovered.nextTable);
+    }
+}
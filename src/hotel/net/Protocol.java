@@ -0,0 +1,103 @@
+package hotel.net;
+
+/**
+ * The binary protocol between a GameServer and its clients, over TCP. All
+ * numbers are big endian. A client sends requests of REQUEST_BYTES:
+ * <pre>
+ * id (int), op (byte), table (int), argument (int)
+ * </pre>
+ * and the server answers each with a response:
+ * <pre>
+ * id (int), status (byte), value (int), payload length (short), payload
+ * </pre>
+ * echoing the id of the request. Requests to the same table are handled in
+ * the order they were sent, but requests to different tables may be handled
+ * concurrently, so the responses on a connection can come in any order. The
+ * ops are:
+ * <pre>
+ * CREATE  argument: the index of the board (see BoardSource.getNames); value: the id of the new table
+ * PLAY    argument: a move (see MoveGenerator.moveOf); value: the id of the current player after it
+ * STATE   value: the id of the current player; payload: STATE_BYTES (see TableState)
+ * CLOSE   removes the table
+ * WATCH   value: the version of the table's state; then the state is pushed as it changes (see below)
+ * UNWATCH stops the pushes of WATCH
+ * </pre>
+ *
+ * A watching client (a spectator) receives responses it did not ask for,
+ * with the id PUSH, the value the id of the table and a sync frame as the
+ * payload, so a remote view can mirror the game without polling. A frame is
+ * a kind (byte: KEYFRAME or DELTA) and the version of the state (varint),
+ * then records, each a tag (byte) and its fields (players, owners, builds
+ * and entrances as bytes, the rest as varints, money zigzag encoded):
+ * <pre>
+ * CURRENT   player
+ * WINNER    player
+ * MONEY     player, money (zigzag)
+ * POSITION  player, ring position + 1 (0 if bankrupt)
+ * HOTEL     hotel id, owner, current build
+ * ENTRANCE  ring position, entrance (PlayerTile.Entrance ordinal)
+ * </pre>
+ * A keyframe holds the whole state (every hotel and entrance not in its
+ * initial state, owner 0, build -1 (not built) and no entrance); a delta
+ * holds only what changed since the frame of the version before it. The
+ * server sends a keyframe when a client starts watching, every
+ * KEYFRAME_INTERVAL versions, and to a client that missed a delta, as it
+ * sends each spectator at most the bytes per second it was given and skips
+ * the frames beyond that.
+ */
+public final class Protocol {
+
+    public static final int CREATE = 1;
+    public static final int PLAY = 2;
+    public static final int STATE = 3;
+    public static final int CLOSE = 4;
+    public static final int WATCH = 5;
+    public static final int UNWATCH = 6;
+
+    /**
+     * The request was carried out.
+     */
+    public static final int OK = 0;
+    /**
+     * The move was legal to send but could not be carried out (the game
+     * refused it: a hotel already owned, not enough money, a building
+     * request turned down...).
+     */
+    public static final int FAILED = 1;
+    /**
+     * There is no table with the id given.
+     */
+    public static final int NO_SUCH_TABLE = 2;
+    /**
+     * The game of the table is over.
+     */
+    public static final int GAME_OVER = 3;
+    /**
+     * The request is malformed (an unknown op, board or hotel).
+     */
+    public static final int BAD_REQUEST = 4;
+
+    /**
+     * The id of the responses pushed to spectators.
+     */
+    public static final int PUSH = -1;
+
+    public static final int DELTA = 0;
+    public static final int KEYFRAME = 1;
+    public static final int KEYFRAME_INTERVAL = 64;
+
+    public static final int CURRENT = 1;
+    public static final int WINNER = 2;
+    public static final int MONEY = 3;
+    public static final int POSITION = 4;
+    public static final int HOTEL = 5;
+    public static final int ENTRANCE = 6;
+
+    public static final int MAX_PAYLOAD_BYTES = 0xFFFF;
+    public static final int REQUEST_BYTES = 2 * Integer.BYTES + 1 + Integer.BYTES;
+    public static final int RESPONSE_HEADER_BYTES = 2 * Integer.BYTES + 1 + Short.BYTES;
+    public static final int STATE_BYTES = 2 + 3 * 2 * Integer.BYTES;
+
+    private Protocol() {
+    }
+}
@@ -0,0 +1,444 @@
+package hotel.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The write-ahead log of the tables of a GameServer, so that they survive the
+ * process. A game is determined by its board, its seed and the moves played
+ * on it, so the log records just those: a record when a table is created,
+ * one per move played and one when the table is closed. Records are appended
+ * by any thread and written by the log's thread in batches, each followed by
+ * a single fsync (group commit): the callback of a record runs once it is
+ * on disk, after the callbacks of the records before it, so the server
+ * answers a command only once it would survive a crash.
+ *
+ * The log is a series of segments, log-N. Once a segment grows past
+ * SEGMENT_BYTES, or SNAPSHOT_MILLIS have passed, a new one is started and a
+ * background thread compacts the previous snapshot and the segments before
+ * the new one into snapshot-N: the tables still open, each with its seed and
+ * its moves as varints. Recovery reads the last snapshot and replays the
+ * segments after it, up to the first batch that didn't make it to the disk
+ * whole.
+ */
+final class TableLog implements AutoCloseable {
+
+    static final long SEGMENT_BYTES = 4 << 20;
+    static final long SNAPSHOT_MILLIS = 60_000;
+
+    private static final int MAGIC = 0x484F544C;    // HOTL
+    private static final byte CREATE = 1, PLAY = 2, CLOSE = 3;
+    private static final int BATCH_HEADER_BYTES = 2 * Integer.BYTES;   // length, CRC-32C
+
+    /**
+     * What a table is made of: enough to play its game again.
+     */
+    static final class Recipe {
+
+        final int id;
+        final String board;
+        final long seed;
+        private int[] moves = new int[16];
+        private int count;
+
+        Recipe(int id, String board, long seed) {
+            this.id = id;
+            this.board = board;
+            this.seed = seed;
+        }
+
+        void add(int move) {
+            if (count == moves.length)
+                moves = Arrays.copyOf(moves, 2 * count);
+            moves[count++] = move;
+        }
+
+        int getMoveCount() {
+            return count;
+        }
+
+        int getMove(int i) {
+            return moves[i];
+        }
+    }
+
+    /**
+     * The tables found in a log directory.
+     */
+    static final class Recovery {
+
+        final Map<Integer, Recipe> tables = new TreeMap<>();
+        int nextTable = 1;
+        int snapshot = -1;      // the number of the snapshot read, -1 if none
+        int segment;            // the number of the next segment
+    }
+
+    private final Path dir;
+    private final Runnable failed;
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16), writing = ByteBuffer.allocate(1 << 16);
+    private List<Runnable> callbacks = new ArrayList<>(), running = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private final Thread writer;
+    private final ExecutorService snapshots;
+    private FileChannel channel;
+    private int segment, snapshot;
+    private long segmentBytes, segmentStarted;
+    private boolean closing;
+
+    /**
+     * Starts logging after what was recovered, in a new segment.
+     *
+     * @param failed called on the log's thread if the log can't be written,
+     * after which no callback runs
+     */
+    TableLog(Path dir, Recovery recovered, Runnable failed) throws IOException {
+        this.dir = dir;
+        this.failed = failed;
+        segment = recovered.segment;
+        snapshot = recovered.snapshot;
+        channel = open(segment);
+        segmentStarted = System.currentTimeMillis();
+        snapshots = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "log-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        if (segment > Math.max(snapshot, 0))
+            compact(segment);   // what the last run left, so that the next recovery reads less
+        writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void create(int table, String board, long seed, Runnable done) {
+        byte[] name = board.getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            reserve(1 + Integer.BYTES + Long.BYTES + Short.BYTES + name.length);
+            pending.put(CREATE).putInt(table).putLong(seed).putShort((short) name.length).put(name);
+            added(done);
+        }
+    }
+
+    void play(int table, int move, Runnable done) {
+        synchronized (lock) {
+            reserve(1 + 2 * Integer.BYTES);
+            pending.put(PLAY).putInt(table).putInt(move);
+            added(done);
+        }
+    }
+
+    void close(int table, Runnable done) {
+        synchronized (lock) {
+            reserve(1 + Integer.BYTES);
+            pending.put(CLOSE).putInt(table);
+            added(done);
+        }
+    }
+
+    /**
+     * Runs a callback once the records appended before it are on disk.
+     */
+    void sync(Runnable done) {
+        synchronized (lock) {
+            added(done);
+        }
+    }
+
+    /**
+     * Writes what was appended and stops.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            if (Thread.currentThread() != writer)
+                writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshots.shutdown();
+    }
+
+    private void reserve(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer b = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + bytes));
+            pending.flip();
+            pending = b.put(pending);
+        }
+    }
+
+    private void added(Runnable done) {
+        callbacks.add(done);
+        if (callbacks.size() == 1)
+            lock.notifyAll();
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (callbacks.isEmpty() && !closing && !snapshotDue())
+                        lock.wait(SNAPSHOT_MILLIS);
+                    if (callbacks.isEmpty() && closing)
+                        break;
+                    ByteBuffer b = pending;
+                    pending = writing;
+                    writing = b;
+                    List<Runnable> c = callbacks;
+                    callbacks = running;
+                    running = c;
+                }
+                if (writing.position() > 0) {
+                    writing.flip();
+                    crc.reset();
+                    crc.update(writing.array(), 0, writing.limit());
+                    header.clear();
+                    header.putInt(writing.limit()).putInt((int) crc.getValue()).flip();
+                    ByteBuffer[] batch = {header, writing};
+                    while (writing.hasRemaining())
+                        channel.write(batch);
+                    channel.force(false);
+                    segmentBytes += BATCH_HEADER_BYTES + writing.limit();
+                }
+                writing.clear();
+                for (Runnable r : running)
+                    r.run();
+                running.clear();
+                if (snapshotDue())
+                    roll();
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Can't write the table log: " + e);
+            failed.run();
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private boolean snapshotDue() {
+        return segmentBytes >= SEGMENT_BYTES
+                || (segmentBytes > 0 && System.currentTimeMillis() - segmentStarted >= SNAPSHOT_MILLIS);
+    }
+
+    /**
+     * Starts a new segment and compacts the ones before it in the background.
+     */
+    private void roll() throws IOException {
+        channel.close();
+        channel = open(++segment);
+        segmentBytes = 0;
+        segmentStarted = System.currentTimeMillis();
+        compact(segment);
+    }
+
+    private void compact(int upTo) {
+        snapshots.execute(() -> {
+            try {
+                snapshot(upTo);
+            } catch (IOException e) {
+                System.err.println("Can't snapshot the table log: " + e);
+            }
+        });
+    }
+
+    private FileChannel open(int n) throws IOException {
+        return FileChannel.open(dir.resolve(String.format("log-%08d", n)), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes snapshot-N of the previous snapshot and the segments before N,
+     * then deletes them.
+     */
+    private void snapshot(int n) throws IOException {
+        Recovery r = new Recovery();
+        if (snapshot >= 0)
+            readSnapshot(dir.resolve(String.format("snapshot-%08d", snapshot)), r);
+        for (int s = Math.max(snapshot, 0); s < n; s++) {
+            Path p = dir.resolve(String.format("log-%08d", s));
+            if (Files.exists(p))
+                readSegment(p, r);
+        }
+        Path tmp = dir.resolve(String.format("snapshot-%08d.tmp", n));
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch),
+                    1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(r.nextTable);
+            out.writeInt(r.tables.size());
+            for (Recipe t : r.tables.values()) {
+                out.writeInt(t.id);
+                out.writeUTF(t.board);
+                out.writeLong(t.seed);
+                out.writeInt(t.count);
+                for (int i = 0; i < t.count; i++)
+                    writeVarint(out, t.moves[i]);
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(String.format("snapshot-%08d", n)), StandardCopyOption.ATOMIC_MOVE);
+        if (snapshot >= 0)
+            Files.deleteIfExists(dir.resolve(String.format("snapshot-%08d", snapshot)));
+        for (int s = Math.max(snapshot, 0); s < n; s++)
+            Files.deleteIfExists(dir.resolve(String.format("log-%08d", s)));
+        snapshot = n;
+    }
+
+    /**
+     * Reads the tables a log directory holds, creating it if it doesn't
+     * exist.
+     *
+     * @throws IOException if the directory can't be read, or its snapshot is
+     * corrupt
+     */
+    static Recovery recover(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Recovery r = new Recovery();
+        List<Integer> snapshots = new ArrayList<>(), segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".tmp"))
+                    Files.delete(p);    // a snapshot that was not finished
+                else if (name.startsWith("snapshot-"))
+                    snapshots.add(Integer.parseInt(name.substring(9)));
+                else if (name.startsWith("log-"))
+                    segments.add(Integer.parseInt(name.substring(4)));
+            }
+        }
+        for (int n : snapshots)
+            r.snapshot = Math.max(r.snapshot, n);
+        for (int n : snapshots)
+            if (n < r.snapshot)
+                Files.delete(dir.resolve(String.format("snapshot-%08d", n)));
+        if (r.snapshot >= 0)
+            readSnapshot(dir.resolve(String.format("snapshot-%08d", r.snapshot)), r);
+        segments.sort(null);
+        r.segment = Math.max(r.snapshot, 0);
+        for (int s : segments) {
+            if (s < r.snapshot) {   // compacted, but not deleted before the crash
+                Files.delete(dir.resolve(String.format("log-%08d", s)));
+                continue;
+            }
+            readSegment(dir.resolve(String.format("log-%08d", s)), r);
+            r.segment = s + 1;
+        }
+        return r;
+    }
+
+    private static void readSnapshot(Path p, Recovery r) throws IOException {
+        try (InputStream in = Files.newInputStream(p)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in, 1 << 16), new CRC32C());
+            DataInputStream data = new DataInputStream(checked);
+            if (data.readInt() != MAGIC)
+                throw new IOException(p + " is not a table snapshot");
+            r.nextTable = data.readInt();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                Recipe t = new Recipe(data.readInt(), data.readUTF(), data.readLong());
+                int moves = data.readInt();
+                t.moves = new int[Math.max(moves, 16)];
+                for (int m = 0; m < moves; m++)
+                    t.moves[m] = readVarint(data);
+                t.count = moves;
+                r.tables.put(t.id, t);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (data.readInt() != expected)
+                throw new IOException(p + " is corrupt");
+        } catch (EOFException e) {
+            throw new IOException(p + " is truncated", e);
+        }
+    }
+
+    /**
+     * Applies the batches of a segment, up to the first one not written
+     * whole.
+     */
+    private static void readSegment(Path p, Recovery r) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(p));
+        CRC32C crc = new CRC32C();
+        while (b.remaining() >= BATCH_HEADER_BYTES) {
+            int length = b.getInt();
+            int sum = b.getInt();
+            if (length < 0 || length > b.remaining())
+                return;
+            crc.reset();
+            crc.update(b.array(), b.position(), length);
+            if ((int) crc.getValue() != sum)
+                return;
+            int end = b.position() + length;
+            while (b.position() < end) {
+                byte type = b.get();
+                int id = b.getInt();
+                if (type == CREATE) {
+                    long seed = b.getLong();
+                    byte[] name = new byte[b.getShort()];
+                    b.get(name);
+                    r.tables.put(id, new Recipe(id, new String(name, StandardCharsets.UTF_8), seed));
+                    r.nextTable = Math.max(r.nextTable, id + 1);
+                } else if (type == PLAY) {
+                    int move = b.getInt();
+                    Recipe t = r.tables.get(id);
+                    if (t != null)
+                        t.add(move);
+                } else {
+                    r.tables.remove(id);
+                }
+            }
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = in.readByte();
+            v |= (x & 0x7F) << shift;
+            if (x >= 0)
+                return v;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package hotel.net;
+
+import hotel.model.Game;
+import java.nio.ByteBuffer;
+
+/**
+ * The state of a table as a client sees it: the current player, the winner,
+ * and the money and ring position of every player. On the wire (the payload
+ * of a STATE response) it is the current player id (byte), the winner id
+ * (byte, 0 while the game goes on), then the money and the ring position (-1
+ * if bankrupt) of players 1 to 3 (ints).
+ */
+public class TableState {
+
+    private final int currentPlayer;
+    private final int winner;
+    private final int[] money = new int[3];
+    private final int[] positions = new int[3];
+
+    private TableState(ByteBuffer b) {
+        currentPlayer = b.get();
+        winner = b.get();
+        for (int p = 0; p < 3; p++) {
+            money[p] = b.getInt();
+            positions[p] = b.getInt();
+        }
+    }
+
+    static TableState read(ByteBuffer b) {
+        return new TableState(b);
+    }
+
+    static byte[] encode(Game g) {
+        ByteBuffer b = ByteBuffer.allocate(Protocol.STATE_BYTES);
+        write(g, b);
+        return b.array();
+    }
+
+    static void write(Game g, ByteBuffer b) {
+        b.put((byte) g.getCurrentPlayerId()).put((byte) g.getWinnerId());
+        for (int p = 1; p <= 3; p++)
+            b.putInt(g.getPlayerMoney(p)).putInt(g.getPlayerRingPosition(p));
+    }
+
+    /**
+     * Returns the id of the current player.
+     *
+     * @return the id of the current player
+     */
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Returns the id of the winner.
+     *
+     * @return the id of the winner or 0 if the game is not over
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * Returns the money of a player.
+     *
+     * @param p the id of the player
+     *
+     * @return the money of the player
+     */
+    public int getMoney(int p) {
+        return money[p - 1];
+    }
+
+    /**
+     * Returns the position of a player on the ring.
+     *
+     * @param p the id of the player
+     *
+     * @return the index of the player's tile on the ring or -1 if the player
+     * is bankrupt
+     */
+    public int getPosition(int p) {
+        return positions[p - 1];
+    }
+}
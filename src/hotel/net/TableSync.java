@@ -0,0 +1,180 @@
+package hotel.net;
+
+import hotel.model.Board;
+import hotel.model.Game;
+import hotel.model.Hotel;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The sync frames of a watched table (see Protocol). Keeps a shadow of the
+ * state last sent and diffs the game against it, so a delta holds only what
+ * changed and costs a pass over the hotels and the ring, not an encoding of
+ * the board. Used only by the worker playing the table's game.
+ */
+final class TableSync {
+
+    private final Game game;
+    private final Board board;
+    private final Hotel[] hotels;
+    private final int[] money = new int[3];
+    private final int[] positions = new int[3];
+    private int current, winner;
+    private final byte[] owners, builds;    // per index in hotels
+    private final byte[] entrances;         // per ring position
+    private final ByteBuffer delta, keyframe;
+    private int version;
+    private int keyframeVersion = -1;
+
+    /**
+     * Starts syncing a game from its current state.
+     *
+     * @throws IllegalArgumentException if a keyframe of the game would not
+     * fit in a response
+     */
+    TableSync(Game game) {
+        this.game = game;
+        board = game.getBoard();
+        int[] hids = game.getHotelIds();
+        hotels = new Hotel[hids.length];
+        for (int h = 0; h < hids.length; h++)
+            hotels[h] = game.getHotel(hids[h]);
+        owners = new byte[hotels.length];
+        builds = new byte[hotels.length];
+        Arrays.fill(builds, (byte) -1);     // not built
+        entrances = new byte[board.getRingLength()];
+        int max = 6 + 2 * 2 + 3 * 2 * 6 + hotels.length * 8 + entrances.length * 7;
+        if (max > Protocol.MAX_PAYLOAD_BYTES)
+            throw new IllegalArgumentException("the board is too large to sync");
+        delta = ByteBuffer.allocate(max);
+        keyframe = ByteBuffer.allocate(max);
+        update();
+        version = 0;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Brings the shadow up to date with the game, encoding the changes as the
+     * delta of the next version.
+     *
+     * @return whether anything changed (else the version stays the same)
+     */
+    boolean update() {
+        ByteBuffer b = delta;
+        b.clear();
+        b.put((byte) Protocol.DELTA);
+        putVarint(b, version + 1);
+        int header = b.position();
+        int c = game.getCurrentPlayerId();
+        if (c != current) {
+            current = c;
+            b.put((byte) Protocol.CURRENT).put((byte) c);
+        }
+        int w = game.getWinnerId();
+        if (w != winner) {
+            winner = w;
+            b.put((byte) Protocol.WINNER).put((byte) w);
+        }
+        for (int p = 1; p <= 3; p++) {
+            int m = game.getPlayerMoney(p);
+            if (m != money[p - 1]) {
+                money[p - 1] = m;
+                putMoney(b, p, m);
+            }
+            int r = game.getPlayerRingPosition(p);
+            if (r != positions[p - 1]) {
+                positions[p - 1] = r;
+                putPosition(b, p, r);
+            }
+        }
+        for (int h = 0; h < hotels.length; h++) {
+            Hotel hotel = hotels[h];
+            byte o = (byte) hotel.getOwnerId(), u = (byte) hotel.getCurrentBuild();
+            if (o != owners[h] || u != builds[h]) {
+                owners[h] = o;
+                builds[h] = u;
+                putHotel(b, hotel.getId(), o, u);
+            }
+        }
+        for (int r = 0; r < entrances.length; r++) {
+            byte e = (byte) board.getRingTile(r).getEntrance().ordinal();
+            if (e != entrances[r]) {
+                entrances[r] = e;
+                putEntrance(b, r, e);
+            }
+        }
+        b.flip();
+        if (b.limit() == header)
+            return false;
+        version++;
+        return true;
+    }
+
+    /**
+     * Returns the delta the last update encoded, to be read from position 0.
+     */
+    ByteBuffer delta() {
+        return delta;
+    }
+
+    /**
+     * Returns a keyframe of the shadow (the state of the last update), to be
+     * read from position 0.
+     */
+    ByteBuffer keyframe() {
+        if (keyframeVersion == version)
+            return keyframe;
+        ByteBuffer b = keyframe;
+        b.clear();
+        b.put((byte) Protocol.KEYFRAME);
+        putVarint(b, version);
+        b.put((byte) Protocol.CURRENT).put((byte) current);
+        b.put((byte) Protocol.WINNER).put((byte) winner);
+        for (int p = 1; p <= 3; p++) {
+            putMoney(b, p, money[p - 1]);
+            putPosition(b, p, positions[p - 1]);
+        }
+        for (int h = 0; h < hotels.length; h++)
+            if (owners[h] != 0 || builds[h] != -1)
+                putHotel(b, hotels[h].getId(), owners[h], builds[h]);
+        for (int r = 0; r < entrances.length; r++)
+            if (entrances[r] != 0)
+                putEntrance(b, r, entrances[r]);
+        b.flip();
+        keyframeVersion = version;
+        return b;
+    }
+
+    private static void putMoney(ByteBuffer b, int p, int m) {
+        b.put((byte) Protocol.MONEY).put((byte) p);
+        putVarint(b, (m << 1) ^ (m >> 31));
+    }
+
+    private static void putPosition(ByteBuffer b, int p, int r) {
+        b.put((byte) Protocol.POSITION).put((byte) p);
+        putVarint(b, r + 1);
+    }
+
+    private static void putHotel(ByteBuffer b, int hid, int owner, int build) {
+        b.put((byte) Protocol.HOTEL);
+        putVarint(b, hid);
+        b.put((byte) owner).put((byte) build);
+    }
+
+    private static void putEntrance(ByteBuffer b, int r, int e) {
+        b.put((byte) Protocol.ENTRANCE);
+        putVarint(b, r);
+        b.put((byte) e);
+    }
+
+    private static void putVarint(ByteBuffer b, int v) {
+        while ((v & ~0x7F) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+}
@@ -0,0 +1,215 @@
+package hotel.net;
+
+import hotel.model.PlayerTile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A mirror of a watched table, kept up to date by the sync frames the server
+ * pushes (see Protocol and GameClient.watch): what a remote view needs to
+ * draw a game on a board it has read itself. Deltas that don't follow the
+ * version mirrored are dropped until the next keyframe.
+ */
+public class TableView {
+
+    private static final PlayerTile.Entrance[] ENTRANCES = PlayerTile.Entrance.values();
+
+    final Consumer<TableView> listener;
+    private int version = -1;
+    private boolean synced;
+    private int current, winner;
+    private final int[] money = new int[3];
+    private final int[] positions = {-1, -1, -1};
+    private byte[] owners = new byte[16], builds = filled(16, (byte) -1);  // per hotel id
+    private byte[] entrances = new byte[64];                        // per ring position
+
+    TableView(Consumer<TableView> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Applies a frame.
+     *
+     * @return whether the frame was applied (a malformed one unsyncs the
+     * view)
+     */
+    synchronized boolean apply(ByteBuffer b) {
+        try {
+            return read(b);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            synced = false;
+            return false;
+        }
+    }
+
+    private boolean read(ByteBuffer b) {
+        int kind = b.get();
+        int v = getVarint(b);
+        if (kind == Protocol.KEYFRAME) {
+            Arrays.fill(owners, (byte) 0);
+            Arrays.fill(builds, (byte) -1);
+            Arrays.fill(entrances, (byte) 0);
+            synced = true;
+        } else if (!synced || v != version + 1) {
+            synced = false;
+            return false;
+        }
+        version = v;
+        while (b.hasRemaining()) {
+            int tag = b.get();
+            switch (tag) {
+                case Protocol.CURRENT:
+                    current = b.get();
+                    break;
+                case Protocol.WINNER:
+                    winner = b.get();
+                    break;
+                case Protocol.MONEY: {
+                    int p = b.get();
+                    int m = getVarint(b);
+                    money[p - 1] = (m >>> 1) ^ -(m & 1);
+                    break;
+                }
+                case Protocol.POSITION: {
+                    int p = b.get();
+                    positions[p - 1] = getVarint(b) - 1;
+                    break;
+                }
+                case Protocol.HOTEL: {
+                    int hid = getVarint(b);
+                    if (hid >= owners.length) {
+                        owners = Arrays.copyOf(owners, Math.max(hid + 1, 2 * owners.length));
+                        byte[] grown = filled(owners.length, (byte) -1);
+                        System.arraycopy(builds, 0, grown, 0, builds.length);
+                        builds = grown;
+                    }
+                    owners[hid] = b.get();
+                    builds[hid] = b.get();
+                    break;
+                }
+                case Protocol.ENTRANCE: {
+                    int r = getVarint(b);
+                    if (r >= entrances.length)
+                        entrances = Arrays.copyOf(entrances, Math.max(r + 1, 2 * entrances.length));
+                    entrances[r] = b.get();
+                    break;
+                }
+                default:
+                    synced = false;
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the version of the state mirrored.
+     *
+     * @return the version of the state mirrored, -1 before the first keyframe
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns whether the view mirrors the table, or is waiting for a
+     * keyframe after missing a delta.
+     *
+     * @return true if the view is up to date with the frames received
+     */
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Returns the id of the current player.
+     *
+     * @return the id of the current player
+     */
+    public synchronized int getCurrentPlayer() {
+        return current;
+    }
+
+    /**
+     * Returns the id of the winner.
+     *
+     * @return the id of the winner or 0 if the game is not over
+     */
+    public synchronized int getWinner() {
+        return winner;
+    }
+
+    /**
+     * Returns the money of a player.
+     *
+     * @param p the id of the player
+     *
+     * @return the money of the player
+     */
+    public synchronized int getMoney(int p) {
+        return money[p - 1];
+    }
+
+    /**
+     * Returns the position of a player on the ring.
+     *
+     * @param p the id of the player
+     *
+     * @return the index of the player's tile on the ring or -1 if the player
+     * is bankrupt
+     */
+    public synchronized int getPosition(int p) {
+        return positions[p - 1];
+    }
+
+    /**
+     * Returns the owner of a hotel.
+     *
+     * @param hid the id of the hotel
+     *
+     * @return the id of the owner or 0 if the hotel is not owned
+     */
+    public synchronized int getOwner(int hid) {
+        return (hid < owners.length) ? owners[hid] : 0;
+    }
+
+    /**
+     * Returns the current build of a hotel.
+     *
+     * @param hid the id of the hotel
+     *
+     * @return the current build of the hotel or -1 if it is not built
+     */
+    public synchronized int getBuild(int hid) {
+        return (hid < builds.length) ? builds[hid] : -1;
+    }
+
+    /**
+     * Returns the entrance of a tile of the ring.
+     *
+     * @param r the index of the tile on the ring
+     *
+     * @return the entrance of the tile
+     */
+    public synchronized PlayerTile.Entrance getEntrance(int r) {
+        return ENTRANCES[(r < entrances.length) ? entrances[r] : 0];
+    }
+
+    private static byte[] filled(int n, byte v) {
+        byte[] a = new byte[n];
+        Arrays.fill(a, v);
+        return a;
+    }
+
+    private static int getVarint(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = b.get();
+            v |= (x & 0x7F) << shift;
+            if (x >= 0)
+                return v;
+        }
+    }
+}
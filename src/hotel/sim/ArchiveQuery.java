@@ -0,0 +1,204 @@
+package hotel.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An aggregate query over a GameArchive, narrowed down to a board, a hotel
+ * and a range of rounds. For example, the hotel of board "default" that
+ * collects the most for stays by round 50:
+ * <pre>
+ * archive.query().board("default").rounds(1, 50).rentByHotel()
+ * </pre>
+ * and how often the player who buys hotel 3 in the first 10 rounds wins:
+ * <pre>
+ * archive.query().board("default").hotel(3).rounds(1, 10).buyerWins()
+ * </pre>
+ * A query goes through the index entries and reads only the event blocks of
+ * the board, hotel, kind and round buckets it asks for. Blocks whose rounds
+ * all fall in the range are summed up from the index without reading their
+ * events at all.
+ */
+public class ArchiveQuery {
+
+    private final GameArchive archive;
+    private int board = -1;     // -1 -> any
+    private int hid = -1;       // -1 -> any
+    private int fromRound = 1, toRound = Integer.MAX_VALUE;
+    private boolean empty;      // the board isn't in the archive
+
+    /**
+     * The share of the games won by the players who did something, such as
+     * buying a hotel.
+     */
+    public static class WinRate {
+
+        private final long games, wins;
+
+        WinRate(long games, long wins) {
+            this.games = games;
+            this.wins = wins;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getWins() {
+            return wins;
+        }
+
+        public double getRate() {
+            return (games > 0) ? (double) wins / games : 0;
+        }
+    }
+
+    ArchiveQuery(GameArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Narrows the query down to the games played on a board.
+     *
+     * @param name the name of the board
+     *
+     * @return this query
+     */
+    public ArchiveQuery board(String name) {
+        board = archive.boardCode(name);
+        empty = board < 0;
+        return this;
+    }
+
+    /**
+     * Narrows the query down to the events of a hotel.
+     *
+     * @param hid the hotel id
+     *
+     * @return this query
+     */
+    public ArchiveQuery hotel(int hid) {
+        this.hid = hid;
+        return this;
+    }
+
+    /**
+     * Narrows the query down to the events of a range of rounds.
+     *
+     * @param from the first round, from 1
+     * @param to the last round
+     *
+     * @return this query
+     */
+    public ArchiveQuery rounds(int from, int to) {
+        fromRound = from;
+        toRound = to;
+        return this;
+    }
+
+    /**
+     * Returns the number of games played on the board of the query (any
+     * board if none is set).
+     *
+     * @return the number of games
+     */
+    public long countGames() {
+        if (empty)
+            return 0;
+        long n = 0;
+        for (int i = 0; i < archive.entries(); i++)
+            if (archive.entryKind(i) == ArchiveWriter.GAMES && (board < 0 || archive.entryBoard(i) == board))
+                n += archive.entryCount(i);
+        return n;
+    }
+
+    /**
+     * Returns the total paid for stays in each hotel.
+     *
+     * @return the total paid for stays, by hotel id
+     */
+    public SortedMap<Integer, Long> rentByHotel() {
+        SortedMap<Integer, Long> rent = new TreeMap<>();
+        for (int i = 0; i < archive.entries(); i++) {
+            int bucket = matches(i, ArchiveWriter.STAY);
+            if (bucket < 0)
+                continue;
+            long sum;
+            if (fromRound <= firstRound(bucket) && lastRound(bucket) <= toRound) {
+                sum = archive.entrySum(i);
+            } else {
+                sum = 0;
+                long first = archive.entryFirst(i);
+                for (long e = first; e < first + archive.entryCount(i); e++) {
+                    int round = archive.eventRound(e);
+                    if (fromRound <= round && round <= toRound)
+                        sum += archive.eventAmount(e);
+                }
+            }
+            rent.merge(archive.entryHotel(i), sum, Long::sum);
+        }
+        return rent;
+    }
+
+    /**
+     * Returns how often the player who first bought the hotel of the query in
+     * the range of rounds won the game, over the games it was bought in.
+     *
+     * @return the share of the games won by the buyer of the hotel
+     *
+     * @throws IllegalStateException if the query has no hotel set
+     */
+    public WinRate buyerWins() {
+        if (hid < 0)
+            throw new IllegalStateException("No hotel to query the buyers of");
+        Map<Integer, long[]> buyers = new HashMap<>();     // game -> first round bought in, buyer
+        for (int i = 0; i < archive.entries(); i++) {
+            if (matches(i, ArchiveWriter.BUY) < 0)
+                continue;
+            long first = archive.entryFirst(i);
+            for (long e = first; e < first + archive.entryCount(i); e++) {
+                int round = archive.eventRound(e);
+                if (round < fromRound || round > toRound)
+                    continue;
+                long[] b = buyers.computeIfAbsent(archive.eventGame(e), g -> new long[] {Long.MAX_VALUE, 0});
+                if (round < b[0]) {
+                    b[0] = round;
+                    b[1] = archive.eventPlayer(e);
+                }
+            }
+        }
+        long wins = 0;
+        for (Map.Entry<Integer, long[]> b : buyers.entrySet())
+            if (archive.gameWinner(b.getKey()) == b.getValue()[1])
+                wins++;
+        return new WinRate(buyers.size(), wins);
+    }
+
+    /**
+     * Returns the round bucket of index entry i if it is a block of events of
+     * the kind specified that the query covers, -1 otherwise.
+     */
+    private int matches(int i, int kind) {
+        if (empty || archive.entryKind(i) != kind)
+            return -1;
+        if (board >= 0 && archive.entryBoard(i) != board)
+            return -1;
+        if (hid >= 0 && archive.entryHotel(i) != hid)
+            return -1;
+        int bucket = archive.entryBucket(i);
+        if (lastRound(bucket) < fromRound || firstRound(bucket) > toRound)
+            return -1;
+        return bucket;
+    }
+
+    private static int firstRound(int bucket) {
+        return bucket * ArchiveWriter.ROUND_BUCKET;
+    }
+
+    private static int lastRound(int bucket) {
+        return (bucket == ArchiveWriter.MAX_BUCKET) ? Integer.MAX_VALUE
+                : (bucket + 1) * ArchiveWriter.ROUND_BUCKET - 1;
+    }
+}
@@ -0,0 +1,342 @@
+package hotel.sim;
+
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records games into an archive directory that GameArchive maps and queries
+ * without replaying the games. An archive has four files:
+ * <pre>
+ * games.bin   per game: board code, rounds, winner id (0 if cut short), winner seat (0 if cut short)
+ * events.bin  per event: game number, round, player id, amount
+ * index.bin   per block: board code, hotel id, kind, round bucket, first event, event count, sum of amounts
+ * boards.txt  the name of each board code, one per line
+ * </pre>
+ * Events are stays paid (kind STAY, the amount paid) and hotels bought
+ * (kind BUY, the price). Events are buffered until there are SEGMENT of them,
+ * sorted by board, hotel, kind and round bucket (ROUND_BUCKET rounds each)
+ * and written as a segment: a contiguous block of events, in game order,
+ * per group, each with an index entry. GAMES index entries (hotel id -1) give
+ * the range of game numbers played on a board. A round is a player's turn,
+ * as in GameStats.
+ *
+ * Each thread records games through a Recorder of its own; the recorders
+ * hand whole games to the writer, which is thread safe.
+ */
+public class ArchiveWriter implements AutoCloseable {
+
+    static final int STAY = 0, BUY = 1, GAMES = 2;
+    static final int ROUND_BUCKET = 16;
+    static final int MAX_BUCKET = (1 << 8) - 1;  // the last bucket holds all the later rounds
+    static final int GAME_BYTES = 4 * Integer.BYTES;
+    static final int EVENT_BYTES = 4 * Integer.BYTES;
+    static final int INDEX_BYTES = 6 * Integer.BYTES + 2 * Long.BYTES;
+
+    private static final int SEGMENT = 1 << 20;    // events
+    private static final int MAX_BOARDS = 1 << 9;
+    private static final int MAX_HID = 1 << 12;
+
+    private final Path dir;
+    private final FileChannel games, events, index;
+    private final ByteBuffer gamesOut = ByteBuffer.allocateDirect(1 << 16);
+    private final ByteBuffer eventsOut = ByteBuffer.allocateDirect(1 << 16);
+    private final List<String> boards = new ArrayList<>();
+    private int[] buffer = new int[4 * 1024];     // per event: board, hid, kind, round, game, player, amount
+    private int buffered;
+    private long eventsWritten;
+    private int gameCount;
+    private int runBoard = -1, runStart;          // the current run of games on the same board
+
+    /**
+     * Records games played on the same board, handing them to the writer as
+     * they end. It is the observer of the games it records (forwarding every
+     * notification to the observer it was created with): play each game with
+     * a recorder as its observer, call startGame before it starts and endGame
+     * once it ends.
+     */
+    public class Recorder implements GameObserver {
+
+        private final GameObserver next;
+        private final int board;
+        private int[] game = new int[256];          // per event: hid, kind, round, player, amount
+        private int n;
+        private int round;
+
+        private Recorder(GameObserver next, int board) {
+            this.next = next;
+            this.board = board;
+        }
+
+        /**
+         * Marks the start of a new game.
+         */
+        public void startGame() {
+            n = 0;
+            round = 0;
+        }
+
+        /**
+         * Writes a game, over or cut short, into the archive.
+         *
+         * @param g the game
+         *
+         * @throws IOException if the archive can't be written
+         */
+        public void endGame(Game g) throws IOException {
+            int winner = g.getWinnerId();
+            add(board, round, winner, (winner != 0) ? g.getPlayerSeat(winner) + 1 : 0, game, n);
+        }
+
+        private void event(int p, int hid, int kind, int amount) {
+            if (hid >= MAX_HID)
+                throw new IllegalStateException("Hotel id " + hid + " too large for an archive");
+            if (n + 5 > game.length)
+                game = Arrays.copyOf(game, 2 * game.length);
+            game[n++] = hid;
+            game[n++] = kind;
+            game[n++] = round;
+            game[n++] = p;
+            game[n++] = amount;
+        }
+
+        @Override
+        public void setPlayerMoney(int p, int money) {
+            next.setPlayerMoney(p, money);
+        }
+
+        @Override
+        public void setPlayerTurns(int[] turns) {
+            next.setPlayerTurns(turns);
+        }
+
+        @Override
+        public void setCurrentPlayer(int p) {
+            round++;
+            next.setCurrentPlayer(p);
+        }
+
+        @Override
+        public void setPlayerMoved() {
+            next.setPlayerMoved();
+        }
+
+        @Override
+        public void setPlayerBankrupt(int p) {
+            next.setPlayerBankrupt(p);
+        }
+
+        @Override
+        public void setAvailableHotels(int available) {
+            next.setAvailableHotels(available);
+        }
+
+        @Override
+        public void setDiceResult(int dice) {
+            next.setDiceResult(dice);
+        }
+
+        @Override
+        public void setRequestMoneyEnabled(boolean e) {
+            next.setRequestMoneyEnabled(e);
+        }
+
+        @Override
+        public void setBuyHotelEnabled(boolean e) {
+            next.setBuyHotelEnabled(e);
+        }
+
+        @Override
+        public void setRequestBuildingEnabled(boolean e) {
+            next.setRequestBuildingEnabled(e);
+        }
+
+        @Override
+        public void setBuyEntranceEnabled(boolean e) {
+            next.setBuyEntranceEnabled(e);
+        }
+
+        @Override
+        public void setStayPaid(int p, int hid, int cost) {
+            event(p, hid, STAY, cost);
+            next.setStayPaid(p, hid, cost);
+        }
+
+        @Override
+        public void setHotelBought(int p, int hid, int cost) {
+            event(p, hid, BUY, cost);
+            next.setHotelBought(p, hid, cost);
+        }
+
+        @Override
+        public void setWinner(int p) {
+            next.setWinner(p);
+        }
+    }
+
+    /**
+     * Creates an empty archive in the directory specified, replacing any
+     * archive there.
+     *
+     * @param dir the directory of the archive, created if needed
+     *
+     * @throws IOException if the archive can't be created
+     */
+    public ArchiveWriter(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        games = create(dir.resolve("games.bin"));
+        events = create(dir.resolve("events.bin"));
+        index = create(dir.resolve("index.bin"));
+    }
+
+    /**
+     * Returns a new recorder, for the calling thread to record games played
+     * on the board specified with.
+     *
+     * @param next the observer to forward the notifications of the games to
+     * @param board the name of the board the games are played on
+     *
+     * @return a new recorder
+     */
+    public synchronized Recorder newRecorder(GameObserver next, String board) {
+        int code = boards.indexOf(board);
+        if (code < 0) {
+            if (boards.size() == MAX_BOARDS)
+                throw new IllegalStateException("Too many boards for an archive");
+            code = boards.size();
+            boards.add(board);
+        }
+        return new Recorder(next, code);
+    }
+
+    /**
+     * Returns the number of games recorded so far.
+     *
+     * @return the number of games recorded so far
+     */
+    public synchronized int getGames() {
+        return gameCount;
+    }
+
+    /**
+     * Writes the games buffered and the board names, and closes the archive.
+     *
+     * @throws IOException if the archive can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flushSegment();
+            Files.write(dir.resolve("boards.txt"), boards, StandardCharsets.UTF_8);
+        } finally {
+            games.close();
+            events.close();
+            index.close();
+        }
+    }
+
+    private synchronized void add(int board, int rounds, int winner, int seat, int[] game, int n)
+            throws IOException {
+        if (board != runBoard) {
+            writeRun();
+            runBoard = board;
+            runStart = gameCount;
+        }
+        if (gamesOut.remaining() < GAME_BYTES)
+            drain(games, gamesOut);
+        gamesOut.putInt(board).putInt(rounds).putInt(winner).putInt(seat);
+
+        int number = gameCount++;
+        int needed = 7 * (buffered + n / 5);
+        if (needed > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, needed));
+        for (int i = 0; i < n; i += 5) {
+            int k = 7 * buffered++;
+            buffer[k] = board;
+            buffer[k + 1] = game[i];
+            buffer[k + 2] = game[i + 1];
+            buffer[k + 3] = game[i + 2];
+            buffer[k + 4] = number;
+            buffer[k + 5] = game[i + 3];
+            buffer[k + 6] = game[i + 4];
+        }
+        if (buffered >= SEGMENT)
+            flushSegment();
+    }
+
+    private void flushSegment() throws IOException {
+        writeRun();
+        runBoard = -1;
+        drain(games, gamesOut);
+
+        // Sort the events by group, keeping the order of the events within a
+        // group, with the group key in the high bits and the position in the
+        // low ones
+        long[] keys = new long[buffered];
+        for (int e = 0; e < buffered; e++) {
+            int k = 7 * e;
+            long group = ((long) buffer[k] << 22) | ((long) buffer[k + 1] << 10) | ((long) buffer[k + 2] << 8)
+                    | Math.min(buffer[k + 3] / ROUND_BUCKET, MAX_BUCKET);
+            keys[e] = (group << 32) | e;
+        }
+        Arrays.sort(keys);
+
+        int start = 0;
+        long sum = 0;
+        for (int i = 0; i < buffered; i++) {
+            int k = 7 * (int) keys[i];
+            if (eventsOut.remaining() < EVENT_BYTES)
+                drain(events, eventsOut);
+            eventsOut.putInt(buffer[k + 4]).putInt(buffer[k + 3]).putInt(buffer[k + 5]).putInt(buffer[k + 6]);
+            sum += buffer[k + 6];
+            if (i + 1 == buffered || (keys[i + 1] >>> 32) != (keys[i] >>> 32)) {
+                long group = keys[i] >>> 32;
+                writeIndex((int) (group >>> 22), (int) (group >>> 10) & (MAX_HID - 1), (int) (group >>> 8) & 3,
+                        (int) group & MAX_BUCKET, eventsWritten + start, i + 1 - start, sum);
+                start = i + 1;
+                sum = 0;
+            }
+        }
+        drain(events, eventsOut);
+        eventsWritten += buffered;
+        buffered = 0;
+    }
+
+    private void writeRun() throws IOException {
+        if (runBoard >= 0 && gameCount > runStart)
+            writeIndex(runBoard, -1, GAMES, 0, runStart, gameCount - runStart, 0);
+        runStart = gameCount;
+    }
+
+    private void writeIndex(int board, int hid, int kind, int bucket, long first, int count, long sum)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(INDEX_BYTES);
+        b.putInt(board).putInt(hid).putInt(kind).putInt(bucket).putLong(first).putInt(count).putInt(0).putLong(sum);
+        write(index, b.flip());
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer b) throws IOException {
+        b.flip();
+        write(channel, b);
+        b.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer b) throws IOException {
+        while (b.hasRemaining())
+            channel.write(b);
+    }
+
+    private static FileChannel create(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,262 @@
+package hotel.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by a ColumnarWriter. A column is scanned block by
+ * block: the directory at the start of each block gives the lengths of its
+ * columns, so the reader reads and inflates only the column asked for and
+ * seeks past the others.
+ */
+public class ColumnarReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final String[] names;
+    private final ColumnarWriter.Type[] types;
+    private final String[][] dictionaries;
+    private final long blocksStart;
+    private final ByteBuffer header = ByteBuffer.allocate(1 << 12);
+    private final Inflater inflater = new Inflater(true);
+    private ByteBuffer compressed = ByteBuffer.allocate(1 << 16);
+    private byte[] raw = new byte[1 << 16];
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param path the file to read
+     *
+     * @throws IOException if the file can't be read or isn't a columnar file
+     */
+    public ColumnarReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer b = read(0, 3 * Integer.BYTES);
+            if (b.getInt() != ColumnarWriter.MAGIC || size < 3 * Integer.BYTES + Long.BYTES + Integer.BYTES)
+                throw new IOException(path + " is not a columnar file");
+            if (b.getInt() != ColumnarWriter.VERSION)
+                throw new IOException(path + " is of an unknown version");
+            int n = b.getInt();
+            names = new String[n];
+            types = new ColumnarWriter.Type[n];
+            long position = 3 * Integer.BYTES;
+            for (int c = 0; c < n; c++) {
+                b = read(position, 1 + Integer.BYTES);
+                types[c] = ColumnarWriter.Type.values()[b.get()];
+                int length = b.getInt();
+                names[c] = new String(read(position + 1 + Integer.BYTES, length).array(), 0, length,
+                        StandardCharsets.UTF_8);
+                position += 1 + Integer.BYTES + length;
+            }
+            blocksStart = position;
+
+            b = read(size - Long.BYTES - Integer.BYTES, Long.BYTES + Integer.BYTES);
+            position = b.getLong();
+            if (b.getInt() != ColumnarWriter.MAGIC)
+                throw new IOException(path + " is incomplete");
+            dictionaries = new String[n][];
+            for (int c = 0; c < n; c++)
+                if (types[c] == ColumnarWriter.Type.DICT) {
+                    int count = read(position, Integer.BYTES).getInt();
+                    position += Integer.BYTES;
+                    dictionaries[c] = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        int length = read(position, Integer.BYTES).getInt();
+                        dictionaries[c][i] = new String(read(position + Integer.BYTES, length).array(), 0, length,
+                                StandardCharsets.UTF_8);
+                        position += Integer.BYTES + length;
+                    }
+                }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of the columns.
+     *
+     * @return the names of the columns
+     */
+    public String[] getColumns() {
+        return names.clone();
+    }
+
+    /**
+     * Returns the type of the column specified.
+     *
+     * @param column the name of the column
+     *
+     * @return the type of the column
+     */
+    public ColumnarWriter.Type getType(String column) {
+        return types[indexOf(column)];
+    }
+
+    /**
+     * Returns the dictionary of the DICT column specified: the value of code i
+     * is element i.
+     *
+     * @param column the name of the column
+     *
+     * @return the dictionary of the column
+     */
+    public String[] getDictionary(String column) {
+        int c = indexOf(column);
+        if (types[c] != ColumnarWriter.Type.DICT)
+            throw new IllegalArgumentException(column + " is not a DICT column");
+        return dictionaries[c].clone();
+    }
+
+    /**
+     * Passes every value of the column specified to the consumer, in row
+     * order. The values of a DICT column are the codes of its dictionary.
+     *
+     * @param column the name of the column
+     * @param consumer the consumer of the values
+     *
+     * @throws IOException if the file can't be read
+     */
+    public void scan(String column, IntConsumer consumer) throws IOException {
+        int c = indexOf(column);
+        boolean delta = types[c] == ColumnarWriter.Type.INT;
+        int directory = 2 * Integer.BYTES * types.length;
+        long position = blocksStart;
+        while (true) {
+            ByteBuffer b = read(position, Integer.BYTES);
+            int rows = b.getInt();
+            if (rows == 0)
+                return;
+            position += Integer.BYTES;
+            b = read(position, directory);
+            long offset = position + directory, end = offset;
+            int rawLength = 0, length = 0;
+            for (int k = 0; k < types.length; k++) {
+                int r = b.getInt(), l = b.getInt();
+                if (k < c)
+                    offset += l;
+                else if (k == c) {
+                    rawLength = r;
+                    length = l;
+                }
+                end += l;
+            }
+            decode(offset, length, rawLength, rows, delta, consumer);
+            position = end;
+        }
+    }
+
+    /**
+     * Returns all the values of the INT column specified.
+     *
+     * @param column the name of the column
+     *
+     * @return the values of the column, in row order
+     *
+     * @throws IOException if the file can't be read
+     */
+    public int[] readInts(String column) throws IOException {
+        int[][] values = {new int[1024]};
+        int[] n = {0};
+        scan(column, v -> {
+            if (n[0] == values[0].length)
+                values[0] = Arrays.copyOf(values[0], 2 * n[0]);
+            values[0][n[0]++] = v;
+        });
+        return Arrays.copyOf(values[0], n[0]);
+    }
+
+    /**
+     * Returns all the values of the DICT column specified.
+     *
+     * @param column the name of the column
+     *
+     * @return the values of the column, in row order
+     *
+     * @throws IOException if the file can't be read
+     */
+    public List<String> readStrings(String column) throws IOException {
+        String[] dictionary = getDictionary(column);
+        List<String> values = new ArrayList<>();
+        scan(column, code -> values.add(dictionary[code]));
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private int indexOf(String column) {
+        for (int c = 0; c < names.length; c++)
+            if (names[c].equals(column))
+                return c;
+        throw new IllegalArgumentException("No column " + column);
+    }
+
+    private void decode(long offset, int length, int rawLength, int rows, boolean delta, IntConsumer consumer)
+            throws IOException {
+        if (compressed.capacity() < length)
+            compressed = ByteBuffer.allocate(Math.max(length, 2 * compressed.capacity()));
+        compressed.clear().limit(length);
+        readFully(offset, compressed);
+        if (raw.length < rawLength)
+            raw = new byte[Math.max(rawLength, 2 * raw.length)];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, length);
+        try {
+            int n = 0;
+            while (n < rawLength) {
+                int k = inflater.inflate(raw, n, rawLength - n);
+                if (k == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new IOException("Truncated column at " + offset);
+                n += k;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column at " + offset, e);
+        }
+
+        int p = 0, previous = 0;
+        for (int r = 0; r < rows; r++) {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = raw[p++];
+                v |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    break;
+            }
+            if (delta) {
+                previous += (v >>> 1) ^ -(v & 1);
+                v = previous;
+            }
+            consumer.accept(v);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = (length <= header.capacity()) ? header.clear().limit(length) : ByteBuffer.allocate(length);
+        readFully(position, b);
+        return b.flip();
+    }
+
+    private void readFully(long position, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            int n = channel.read(b, position);
+            if (n < 0)
+                throw new IOException("Unexpected end of file at " + position);
+            position += n;
+        }
+    }
+}
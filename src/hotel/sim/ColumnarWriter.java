@@ -0,0 +1,253 @@
+package hotel.sim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes rows of values into a file column by column, compressed. Columns
+ * are either INT (int values) or DICT (strings, stored as codes into a
+ * dictionary of the column's distinct values). Rows are buffered in blocks
+ * of BLOCK_ROWS; each column of a block is encoded on its own (INT values as
+ * the zigzag varint of their difference from the previous value, DICT codes
+ * as varints), deflated, and written after a directory of the lengths of all
+ * the columns of the block, so that a ColumnarReader can scan one column and
+ * skip the rest. The dictionaries are written at the end of the file.
+ *
+ * File layout (all numbers big endian):
+ * <pre>
+ * header: MAGIC, VERSION, column count, (type, name length, name bytes) per column
+ * block:  row count (> 0), (raw length, compressed length) per column, compressed columns
+ * end:    0, (value count, (length, bytes) per value) per DICT column, footer offset (long), MAGIC
+ * </pre>
+ *
+ * A writer is not thread safe: parallel producers should each write a file
+ * of their own.
+ */
+public class ColumnarWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x48434F4C;    // "HCOL"
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1 << 16;
+
+    /**
+     * The type of a column.
+     */
+    public enum Type {
+        INT, DICT
+    }
+
+    private final FileChannel channel;
+    private final Type[] types;
+    private final byte[][] columns;         // the encoded values of the current block
+    private final int[] lengths;
+    private final int[] previous;           // the previous INT value of each column
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final List<List<String>> dictionaryValues = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private byte[] compressed = new byte[1 << 16];
+    private ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+    private int rows;
+    private long rowsWritten;
+    private int column;     // the next column to set in the current row
+
+    /**
+     * Creates a file with the columns specified, replacing any existing one.
+     *
+     * @param path the file to write
+     * @param names the names of the columns
+     * @param types the types of the columns
+     *
+     * @throws IOException if the file can't be written
+     */
+    public ColumnarWriter(Path path, String[] names, Type[] types) throws IOException {
+        if (names.length != types.length)
+            throw new IllegalArgumentException("A type is needed for every column");
+        this.types = types.clone();
+        columns = new byte[types.length][1024];
+        lengths = new int[types.length];
+        previous = new int[types.length];
+        for (Type type : types) {
+            dictionaries.add((type == Type.DICT) ? new HashMap<>() : null);
+            dictionaryValues.add((type == Type.DICT) ? new ArrayList<>() : null);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(types.length);
+        for (int c = 0; c < types.length; c++) {
+            byte[] name = names[c].getBytes(StandardCharsets.UTF_8);
+            out.put((byte) types[c].ordinal()).putInt(name.length).put(name);
+        }
+    }
+
+    /**
+     * Sets the value of the next column of the current row, an INT column.
+     *
+     * @param v the value
+     *
+     * @return this writer
+     */
+    public ColumnarWriter add(int v) {
+        if (types[column] != Type.INT)
+            throw new IllegalStateException("Column " + column + " is not an INT column");
+        int delta = v - previous[column];
+        previous[column] = v;
+        putVarint(column++, (delta << 1) ^ (delta >> 31));
+        return this;
+    }
+
+    /**
+     * Sets the value of the next column of the current row, a DICT column.
+     *
+     * @param v the value
+     *
+     * @return this writer
+     */
+    public ColumnarWriter add(String v) {
+        if (types[column] != Type.DICT)
+            throw new IllegalStateException("Column " + column + " is not a DICT column");
+        Map<String, Integer> dictionary = dictionaries.get(column);
+        Integer code = dictionary.get(v);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(v, code);
+            dictionaryValues.get(column).add(v);
+        }
+        putVarint(column++, code);
+        return this;
+    }
+
+    /**
+     * Ends the current row. Every column must have been set.
+     *
+     * @throws IOException if the file can't be written
+     */
+    public void endRow() throws IOException {
+        if (column != types.length)
+            throw new IllegalStateException("Row ended after " + column + " of " + types.length + " columns");
+        column = 0;
+        if (++rows == BLOCK_ROWS)
+            flushBlock();
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return the number of rows written so far
+     */
+    public long getRows() {
+        return rowsWritten + rows;
+    }
+
+    /**
+     * Writes the rows buffered and the dictionaries, and closes the file.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            ensure(Integer.BYTES);
+            out.putInt(0);
+            long footer = channel.position() + out.position();
+            for (int c = 0; c < types.length; c++)
+                if (types[c] == Type.DICT) {
+                    List<String> values = dictionaryValues.get(c);
+                    ensure(Integer.BYTES);
+                    out.putInt(values.size());
+                    for (String v : values) {
+                        byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+                        ensure(Integer.BYTES + bytes.length);
+                        out.putInt(bytes.length).put(bytes);
+                    }
+                }
+            ensure(Long.BYTES + Integer.BYTES);
+            out.putLong(footer).putInt(MAGIC);
+            drain();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == 0)
+            return;
+        ensure(Integer.BYTES * (1 + 2 * types.length));
+        out.putInt(rows);
+        int directory = out.position();
+        out.position(directory + 2 * Integer.BYTES * types.length);     // filled in below
+        for (int c = 0; c < types.length; c++) {
+            deflater.reset();
+            deflater.setInput(columns[c], 0, lengths[c]);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == compressed.length)
+                    compressed = Arrays.copyOf(compressed, 2 * n);
+                n += deflater.deflate(compressed, n, compressed.length - n);
+            }
+            out.putInt(directory + 2 * Integer.BYTES * c, lengths[c]);
+            out.putInt(directory + 2 * Integer.BYTES * c + Integer.BYTES, n);
+            ensureAfterDirectory(n);
+            out.put(compressed, 0, n);
+            lengths[c] = 0;
+            previous[c] = 0;
+        }
+        rowsWritten += rows;
+        rows = 0;
+    }
+
+    /**
+     * Makes room for n more bytes in the output buffer, growing it: a block
+     * is written as a whole, as its directory is filled in after the block
+     * header is in the buffer.
+     */
+    private void ensureAfterDirectory(int n) {
+        if (out.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(2 * out.capacity(), out.position() + n));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        if (out.remaining() < n) {
+            drain();
+            ensureAfterDirectory(n);
+        }
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+    }
+
+    private void putVarint(int c, int v) {
+        byte[] bytes = columns[c];
+        int n = lengths[c];
+        if (n + 5 > bytes.length)
+            columns[c] = bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        while ((v & ~0x7F) != 0) {
+            bytes[n++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        bytes[n++] = (byte) v;
+        lengths[c] = n;
+    }
+}
@@ -0,0 +1,422 @@
+package hotel.sim;
+
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.Hotel;
+import hotel.model.MoveGenerator;
+import hotel.model.Rules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves positions with two players left by expectiminimax: the current
+ * player picks the move that maximizes his probability to win, passing rolls
+ * the dice (six equally likely outcomes) and requesting building draws one
+ * of the outcomes of Game.requestBuilding with the chances of the game's
+ * Rules (by default normal cost 50%, free 15%, double cost 15%; a rejection,
+ * 20%, leaves the position as it was, so the request can just be repeated
+ * and the other outcomes are weighted by 1 / 0.8).
+ *
+ * The game has no bound on its length, so the search is iteratively
+ * deepened by rounds within a time budget. Lines that don't end within the
+ * depth searched are estimated by the players' net worth (money plus what
+ * was paid for their hotels); when every line ends in a bankruptcy the
+ * result is exact. Results are memoized in a TranspositionTable, which can
+ * be shared with other solvers playing on the same board (the positions of
+ * games under different Rules are told apart), and the moves at the root
+ * are searched in parallel, each on its own fork of the game.
+ */
+public class EndgameSolver implements AutoCloseable {
+
+    private static final GameObserver HEADLESS = new GameObserver() {
+    };
+    private static final int EXACT = 0xFF;      // depth stored for exact results
+    private static final int MAX_DEPTH = EXACT - 1;
+    private static final int CHECK_INTERVAL = 1024;     // nodes between checks of the clock
+
+    private final TranspositionTable table;
+    private final int threads;
+    private final ExecutorService workers;
+
+    /**
+     * The outcome of solving a position.
+     */
+    public static class Result {
+
+        private final int[] players;
+        private final double firstWins;
+        private final int bestMove;
+        private final int depth;
+        private final boolean exact;
+        private final long nodes;
+
+        Result(int[] players, double firstWins, int bestMove, int depth, boolean exact, long nodes) {
+            this.players = players;
+            this.firstWins = firstWins;
+            this.bestMove = bestMove;
+            this.depth = depth;
+            this.exact = exact;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns the probability that the player specified wins, if both
+         * players play optimally from the position solved.
+         *
+         * @param p the id of the player
+         *
+         * @return the probability that the player wins (0 if he is bankrupt)
+         */
+        public double getWinProbability(int p) {
+            if (p == players[0])
+                return firstWins;
+            if (p == players[1])
+                return 1 - firstWins;
+            return 0;
+        }
+
+        /**
+         * Returns the optimal move of the current player (a MoveGenerator
+         * move).
+         *
+         * @return the optimal move
+         */
+        public int getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Returns the number of rounds searched.
+         *
+         * @return the number of rounds searched
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns whether the result is exact, i.e. every line searched ended
+         * with a winner.
+         *
+         * @return true if the result is exact, false if it is an estimate
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * Returns the number of positions visited.
+         *
+         * @return the number of positions visited
+         */
+        public long getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * Constructs a solver.
+     *
+     * @param table the table to memoize results in (its size is the memory
+     * budget of the solver)
+     * @param threads the number of threads to search with
+     */
+    public EndgameSolver(TranspositionTable table, int threads) {
+        this.table = table;
+        this.threads = Math.max(1, threads);
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "solver-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Solves the position of the game specified, which is left untouched.
+     *
+     * @param game a game with two players left and no winner yet
+     * @param millis the time budget, in milliseconds (the first round is
+     * always searched)
+     *
+     * @return the result of the deepest search completed
+     */
+    public Result solve(Game game, long millis) {
+        if (game.getWinnerId() != 0 || countActive(game) != 2)
+            throw new IllegalArgumentException("Not a position with two players left");
+        int[] players = new int[2];
+        int n = 0;
+        for (int p = 1; p <= 3; p++)
+            if (game.getPlayerRingPosition(p) >= 0)
+                players[n++] = p;
+        int[] rootMoves = new int[game.getMoveGenerator().getMaxMoves()];
+        rootMoves = Arrays.copyOf(rootMoves, game.getMoveGenerator().generate(rootMoves));
+        double[] worth = hotelWorth(game);
+
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        table.newSearch();
+        Result result = null;
+        long nodes = 0;
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            long limit = (result == null) ? Long.MAX_VALUE : deadline;
+            int d = depth;
+            List<Callable<double[]>> tasks = new ArrayList<>();
+            for (int move : rootMoves)
+                tasks.add(() -> new Search(game.fork(HEADLESS), players[0], worth, limit).root(move, d));
+            double[][] values = new double[rootMoves.length][];
+            boolean timedOut = false;
+            try {
+                List<Future<double[]>> futures = workers.invokeAll(tasks);
+                for (int i = 0; i < values.length; i++)
+                    values[i] = futures.get(i).get();
+            } catch (InterruptedException _e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof Timeout))
+                    throw new IllegalStateException(e.getCause());
+                timedOut = true;
+            }
+            if (timedOut)
+                break;
+
+            // Pick the best move for the current player
+            boolean maximize = game.getCurrentPlayerId() == players[0];
+            int best = -1;
+            boolean exact = true;
+            for (int i = 0; i < values.length; i++) {
+                nodes += (long) values[i][2];
+                if (Double.isNaN(values[i][0]))
+                    continue;   // the move changes nothing
+                exact &= values[i][1] != 0;
+                if (best < 0 || (maximize ? values[i][0] > values[best][0] : values[i][0] < values[best][0]))
+                    best = i;
+            }
+            result = new Result(players, values[best][0], rootMoves[best], depth, exact, nodes);
+            if (exact || System.nanoTime() >= deadline)
+                break;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    private static int countActive(Game game) {
+        int n = 0;
+        for (int p = 1; p <= 3; p++)
+            if (game.getPlayerRingPosition(p) >= 0)
+                n++;
+        return n;
+    }
+
+    /**
+     * Returns, for each hotel id and building state, what was paid for the
+     * hotel: its buying cost and the building costs up to that state. Indexed
+     * by hid * (maximum states + 1) + state + 1.
+     */
+    private static double[] hotelWorth(Game game) {
+        int[] hids = game.getHotelIds();
+        int maxHid = Arrays.stream(hids).max().orElse(0);
+        int maxStates = 0;
+        for (int hid : hids)
+            maxStates = Math.max(maxStates, game.getHotel(hid).getBuildingCosts().length);
+        double[] worth = new double[(maxHid + 1) * (maxStates + 1)];
+        for (int hid : hids) {
+            Hotel h = game.getHotel(hid);
+            int[] costs = h.getBuildingCosts();
+            double w = h.getBuyingCost();
+            worth[hid * (maxStates + 1)] = w;
+            for (int s = 0; s < costs.length; s++)
+                worth[hid * (maxStates + 1) + s + 1] = w += costs[s];
+        }
+        return worth;
+    }
+
+    /**
+     * Thrown when a search runs out of time.
+     */
+    private static class Timeout extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Timeout TIMEOUT = new Timeout();
+
+    /**
+     * A search on a game of its own, rolled back with the game's journal.
+     */
+    private class Search {
+
+        private final Game g;
+        private final int first;    // values are the probability that first wins
+        private final double[] worth;
+        private final int states;
+        private final long deadline;
+        private final int[] hids;
+        private final int[] buildRolls;     // a roll for each outcome that changes the position
+        private final double[] buildChances;
+        private final long rulesKey;        // mixed into the keys of positions
+        private int[][] moves = new int[16][];
+        private int ply;
+        private boolean exact;      // whether the latest value computed is exact
+        private long nodes;
+
+        Search(Game g, int first, double[] worth, long deadline) {
+            this.g = g;
+            this.first = first;
+            this.worth = worth;
+            this.deadline = deadline;
+            hids = g.getHotelIds();
+            Rules rules = g.getRules();
+            int rejected = rules.getNormalBuildChance() + rules.getRejectedBuildChance();
+            buildRolls = new int[]{1, rejected + 1, rejected + rules.getFreeBuildChance() + 1};
+            buildChances = new double[]{rules.getNormalBuildChance() / 100.0,
+                rules.getFreeBuildChance() / 100.0, rules.getDoubleBuildChance() / 100.0};
+            long r = 0;
+            for (long v : new long[]{rules.getStartingMoney(), rules.getBankPayout(), rules.getNormalBuildChance(),
+                    rules.getRejectedBuildChance(), rules.getFreeBuildChance(), rules.getDoubleBuildChance(),
+                    Double.doubleToLongBits(rules.getStayingMultiplier())})
+                r = Long.rotateLeft((r ^ v) * 0x9E3779B97F4A7C15L, 31);
+            rulesKey = r;
+            states = worth.length / (Arrays.stream(hids).max().orElse(0) + 1);
+        }
+
+        /**
+         * Returns the value of a move at the root, whether it is exact (1 or
+         * 0) and the number of nodes visited; the value is NaN if the move
+         * changes nothing.
+         */
+        double[] root(int move, int depth) {
+            g.mark();
+            double v = moveValue(move, depth);
+            return new double[]{v, exact ? 1 : 0, nodes};
+        }
+
+        private double value(int depth) {
+            if (++nodes % CHECK_INTERVAL == 0 && System.nanoTime() >= deadline)
+                throw TIMEOUT;
+            int winner = g.getWinnerId();
+            if (winner != 0) {
+                exact = true;
+                return (winner == first) ? 1 : 0;
+            }
+            if (depth == 0) {
+                exact = false;
+                return estimate();
+            }
+            long key = key();
+            long data = table.probe(key);
+            if (data != TranspositionTable.MISS && TranspositionTable.depthOf(data) >= depth) {
+                exact = TranspositionTable.depthOf(data) == EXACT;
+                return TranspositionTable.valueOf(data);
+            }
+
+            if (ply == moves.length)
+                moves = Arrays.copyOf(moves, 2 * ply);
+            if (moves[ply] == null)
+                moves[ply] = new int[g.getMoveGenerator().getMaxMoves()];
+            int[] buf = moves[ply++];
+            int n = g.getMoveGenerator().generate(buf);
+            boolean maximize = g.getCurrentPlayerId() == first;
+            double best = Double.NaN;
+            int bestMove = MoveGenerator.PASS;
+            boolean allExact = true;
+            for (int i = 0; i < n; i++) {
+                double v = moveValue(buf[i], depth);
+                if (Double.isNaN(v))
+                    continue;
+                allExact &= exact;
+                if (Double.isNaN(best) || (maximize ? v > best : v < best)) {
+                    best = v;
+                    bestMove = buf[i];
+                }
+            }
+            ply--;
+            exact = allExact;
+            table.store(key, (float) best, exact ? EXACT : depth, bestMove);
+            return best;
+        }
+
+        private double moveValue(int move, int depth) {
+            int mark = g.mark();
+            int hid = MoveGenerator.hotelIdOf(move);
+            double v = 0;
+            boolean allExact = true;
+            switch (MoveGenerator.typeOf(move)) {
+                case MoveGenerator.PASS:
+                    for (int dice = 1; dice <= 6; dice++) {
+                        g.playRound(dice);
+                        v += value(depth - 1) / 6;
+                        allExact &= exact;
+                        g.undo(mark);
+                    }
+                    break;
+                case MoveGenerator.REQUEST_BUILDING:
+                    double chance = 0;
+                    for (int i = 0; i < buildRolls.length; i++)
+                        if (buildChances[i] > 0 && g.requestBuilding(hid, buildRolls[i])) {
+                            v += buildChances[i] * value(depth);
+                            chance += buildChances[i];
+                            allExact &= exact;
+                            g.undo(mark);
+                        }
+                    if (chance == 0)
+                        return Double.NaN;  // never granted: same as not asking
+                    v /= chance;
+                    break;
+                default:
+                    if (!g.play(move))
+                        return Double.NaN;
+                    v = value(depth);
+                    allExact = exact;
+                    g.undo(mark);
+            }
+            exact = allExact;
+            return v;
+        }
+
+        private double estimate() {
+            double mine = 0, total = 0;
+            for (int p = 1; p <= 3; p++) {
+                if (g.getPlayerRingPosition(p) < 0)
+                    continue;
+                double w = Math.max(0, g.getPlayerMoney(p));
+                mine += (p == first) ? w : 0;
+                total += w;
+            }
+            for (int hid : hids) {
+                Hotel h = g.getHotel(hid);
+                int owner = h.getOwnerId();
+                if (owner == 0)
+                    continue;
+                double w = worth[hid * states + h.getCurrentBuild() + 1];
+                mine += (owner == first) ? w : 0;
+                total += w;
+            }
+            return (total > 0) ? mine / total : 0.5;
+        }
+
+        private long key() {
+            // The hash buckets money, but the value of a position depends on
+            // the exact amounts, and on the rules
+            long x = g.getHash() ^ rulesKey;
+            for (int p = 1; p <= 3; p++) {
+                x ^= (g.getPlayerMoney(p) + 1L) * 0x9E3779B97F4A7C15L * p;
+                x = Long.rotateLeft(x, 23);
+            }
+            return x ^ (x >>> 29);
+        }
+    }
+}
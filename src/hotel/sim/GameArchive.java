@@ -0,0 +1,165 @@
+package hotel.sim;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An archive of recorded games (see ArchiveWriter), memory mapped for
+ * querying. The game and event files are mapped in chunks of 1 GiB, so they
+ * can grow past the 2 GiB a single mapping is limited to; the index is
+ * mapped whole. Queries (see ArchiveQuery) go through the index and touch
+ * only the event blocks they need. An archive is immutable once written, so
+ * it can be queried from any number of threads.
+ */
+public class GameArchive {
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final List<String> boards;
+    private final MappedByteBuffer[] games, events;
+    private final MappedByteBuffer index;
+    private final int gameCount;
+    private final int entries;
+
+    /**
+     * Opens the archive in the directory specified.
+     *
+     * @param dir the directory of the archive
+     *
+     * @throws IOException if the archive can't be read
+     */
+    public GameArchive(Path dir) throws IOException {
+        boards = Collections.unmodifiableList(Files.readAllLines(dir.resolve("boards.txt"), StandardCharsets.UTF_8));
+        games = map(dir.resolve("games.bin"));
+        events = map(dir.resolve("events.bin"));
+        MappedByteBuffer[] i = map(dir.resolve("index.bin"));
+        if (i.length > 1)
+            throw new IOException("Index of " + dir + " too large");
+        index = i[0];
+        long size = Files.size(dir.resolve("games.bin"));
+        gameCount = (int) (size / ArchiveWriter.GAME_BYTES);
+        entries = index.capacity() / ArchiveWriter.INDEX_BYTES;
+    }
+
+    /**
+     * Returns the number of games in the archive.
+     *
+     * @return the number of games in the archive
+     */
+    public int getGames() {
+        return gameCount;
+    }
+
+    /**
+     * Returns the names of the boards the games of the archive were played
+     * on.
+     *
+     * @return the names of the boards
+     */
+    public List<String> getBoards() {
+        return boards;
+    }
+
+    /**
+     * Returns a new query over all the games of the archive.
+     *
+     * @return a new query
+     */
+    public ArchiveQuery query() {
+        return new ArchiveQuery(this);
+    }
+
+    int boardCode(String board) {
+        return boards.indexOf(board);
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    int entryBoard(int i) {
+        return index.getInt(i * ArchiveWriter.INDEX_BYTES);
+    }
+
+    int entryHotel(int i) {
+        return index.getInt(i * ArchiveWriter.INDEX_BYTES + 4);
+    }
+
+    int entryKind(int i) {
+        return index.getInt(i * ArchiveWriter.INDEX_BYTES + 8);
+    }
+
+    int entryBucket(int i) {
+        return index.getInt(i * ArchiveWriter.INDEX_BYTES + 12);
+    }
+
+    long entryFirst(int i) {
+        return index.getLong(i * ArchiveWriter.INDEX_BYTES + 16);
+    }
+
+    int entryCount(int i) {
+        return index.getInt(i * ArchiveWriter.INDEX_BYTES + 24);
+    }
+
+    long entrySum(int i) {
+        return index.getLong(i * ArchiveWriter.INDEX_BYTES + 32);
+    }
+
+    int gameBoard(int g) {
+        return get(games, (long) g * ArchiveWriter.GAME_BYTES);
+    }
+
+    int gameRounds(int g) {
+        return get(games, (long) g * ArchiveWriter.GAME_BYTES + 4);
+    }
+
+    int gameWinner(int g) {
+        return get(games, (long) g * ArchiveWriter.GAME_BYTES + 8);
+    }
+
+    int gameWinnerSeat(int g) {
+        return get(games, (long) g * ArchiveWriter.GAME_BYTES + 12);
+    }
+
+    int eventGame(long e) {
+        return get(events, e * ArchiveWriter.EVENT_BYTES);
+    }
+
+    int eventRound(long e) {
+        return get(events, e * ArchiveWriter.EVENT_BYTES + 4);
+    }
+
+    int eventPlayer(long e) {
+        return get(events, e * ArchiveWriter.EVENT_BYTES + 8);
+    }
+
+    int eventAmount(long e) {
+        return get(events, e * ArchiveWriter.EVENT_BYTES + 12);
+    }
+
+    private static int get(MappedByteBuffer[] chunks, long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    private static MappedByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int n = (int) Math.max(1, (size + CHUNK_MASK) >>> CHUNK_SHIFT);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[n];
+            for (int c = 0; c < n; c++) {
+                long position = (long) c << CHUNK_SHIFT;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(size - position, 1L << CHUNK_SHIFT));
+            }
+            return chunks;
+        }
+    }
+}
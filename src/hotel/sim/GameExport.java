@@ -0,0 +1,119 @@
+package hotel.sim;
+
+import hotel.model.Game;
+import hotel.model.Hotel;
+import hotel.model.Rules;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes a row per game played into a columnar file: the board, the rules,
+ * the number of the game in its run, the rounds played, the winner and his
+ * seat (0 if the game was cut short), each player's final money, maximum
+ * money and entrances, and the winner's most valuable hotel (by staying
+ * cost; empty if he has none or there is no winner). The board, rules and
+ * hotel columns are dictionary encoded. Not thread safe, like the
+ * ColumnarWriter it wraps.
+ */
+public class GameExport implements AutoCloseable {
+
+    private static final int PLAYERS = 3;
+
+    /**
+     * The names of the columns of the file.
+     */
+    public static final String[] COLUMNS = {
+        "board", "rules", "game", "rounds", "winner", "winnerSeat",
+        "money1", "money2", "money3", "maxMoney1", "maxMoney2", "maxMoney3",
+        "entrances1", "entrances2", "entrances3", "topHotel"
+    };
+    private static final ColumnarWriter.Type[] TYPES = new ColumnarWriter.Type[COLUMNS.length];
+
+    static {
+        Arrays.fill(TYPES, ColumnarWriter.Type.INT);
+        TYPES[0] = TYPES[1] = TYPES[COLUMNS.length - 1] = ColumnarWriter.Type.DICT;
+    }
+
+    private final ColumnarWriter writer;
+    private final String board;
+    private String[] hotelNames = new String[0];    // String.valueOf(hid), by hid
+    private Rules rules;
+    private String rulesName;
+
+    /**
+     * Creates a file to export the games played on a board to.
+     *
+     * @param path the file to write
+     * @param board the name of the board
+     *
+     * @throws IOException if the file can't be written
+     */
+    public GameExport(Path path, String board) throws IOException {
+        writer = new ColumnarWriter(path, COLUMNS, TYPES);
+        this.board = board;
+    }
+
+    /**
+     * Writes the row of a game that is over or was cut short.
+     *
+     * @param game the game
+     * @param number the number of the game in its run
+     * @param rounds the rounds played
+     *
+     * @throws IOException if the file can't be written
+     */
+    public void write(Game game, int number, int rounds) throws IOException {
+        if (game.getRules() != rules) {
+            rules = game.getRules();
+            rulesName = rules.toString();
+        }
+        int winner = game.getWinnerId();
+        writer.add(board).add(rulesName).add(number).add(rounds).add(winner)
+                .add((winner != 0) ? game.getPlayerSeat(winner) + 1 : 0);
+        for (int p = 1; p <= PLAYERS; p++)
+            writer.add(game.getPlayerMoney(p));
+        for (int m : game.getPlayersMaxMoney())
+            writer.add(m);
+        for (int e : game.getPlayersEntrances())
+            writer.add(e);
+        writer.add(topHotel(game, winner));
+        writer.endRow();
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return the number of rows written so far
+     */
+    public long getRows() {
+        return writer.getRows();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private String topHotel(Game game, int winner) {
+        int best = -1, bestCost = -1;
+        if (winner != 0)
+            for (int hid : game.getHotelIds()) {
+                Hotel h = game.getHotel(hid);
+                if (h.getOwnerId() != winner)
+                    continue;
+                int cost = (h.getCurrentBuild() >= 0) ? h.getStayingCosts()[h.getCurrentBuild()] : 0;
+                if (cost > bestCost) {
+                    best = hid;
+                    bestCost = cost;
+                }
+            }
+        if (best < 0)
+            return "";
+        if (best >= hotelNames.length)
+            hotelNames = Arrays.copyOf(hotelNames, best + 1);
+        if (hotelNames[best] == null)
+            hotelNames[best] = String.valueOf(best);
+        return hotelNames[best];
+    }
+}
@@ -0,0 +1,358 @@
+package hotel.sim;
+
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of many games played in parallel: game lengths, the seats of
+ * the winners, the rounds players go bankrupt in, the players' maximum money,
+ * the payments for stays in each hotel and the entrances of each player.
+ *
+ * Totals are kept in striped counters (LongAdder), which threads add to
+ * without contending. Distributions are kept in LogHistograms, which are
+ * not thread safe: each thread records into a Recorder of its own, and the
+ * recorders' histograms are merged when they are read. Reading while games
+ * are still being recorded gives an approximate, but consistent enough,
+ * picture. The statistics of games played elsewhere, such as by a
+ * SweepWorker, are written and read whole, and added to those here.
+ */
+public class GameStats {
+
+    private static final int PLAYERS = 3;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder cutShort = new LongAdder();
+    private final LongAdder[] seatWins = adders(PLAYERS);
+    private final LongAdder[] hotelStays;       // by hotel id
+    private final LongAdder[] hotelPayments;    // by hotel id
+    private final LongAdder[] playerEntrances = adders(PLAYERS);   // by player id - 1
+    private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+    private Recorder added;     // the histograms of the statistics added
+
+    /**
+     * Records the games of a single thread. It is the observer of the games it
+     * records: play each game with a recorder as its observer, call startGame
+     * before it starts and endGame once it ends.
+     */
+    public class Recorder implements GameObserver {
+
+        private final LogHistogram rounds = new LogHistogram();
+        private final LogHistogram bankruptcyRounds = new LogHistogram();
+        private final LogHistogram maxMoney = new LogHistogram();
+        private final LogHistogram payments = new LogHistogram();
+        private int round;
+
+        private Recorder() {
+        }
+
+        /**
+         * Marks the start of a new game.
+         */
+        public void startGame() {
+            round = 0;
+        }
+
+        /**
+         * Records the outcome of a game, over or cut short.
+         *
+         * @param game the game
+         */
+        public void endGame(Game game) {
+            games.increment();
+            rounds.record(round);
+            int winner = game.getWinnerId();
+            if (winner != 0)
+                seatWins[game.getPlayerSeat(winner)].increment();
+            else
+                cutShort.increment();
+            for (int m : game.getPlayersMaxMoney())
+                maxMoney.record(m);
+            int[] entrances = game.getPlayersEntrances();
+            for (int p = 0; p < PLAYERS; p++)
+                playerEntrances[p].add(entrances[p]);
+        }
+
+        @Override
+        public void setCurrentPlayer(int p) {
+            round++;
+        }
+
+        @Override
+        public void setPlayerBankrupt(int p) {
+            bankruptcyRounds.record(round);
+        }
+
+        @Override
+        public void setStayPaid(int p, int hid, int cost) {
+            payments.record(cost);
+            if (hid < hotelStays.length) {
+                hotelStays[hid].increment();
+                hotelPayments[hid].add(cost);
+            }
+        }
+    }
+
+    /**
+     * Constructs an empty set of statistics.
+     *
+     * @param maxHotelId the largest hotel id to keep payments for
+     */
+    public GameStats(int maxHotelId) {
+        hotelStays = adders(maxHotelId + 1);
+        hotelPayments = adders(maxHotelId + 1);
+    }
+
+    /**
+     * Returns a new recorder, for the calling thread to record games with.
+     * Recorders are kept, and merged on every read, as long as the
+     * statistics: take one per thread, not one per game or batch.
+     *
+     * @return a new recorder
+     */
+    public Recorder newRecorder() {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        return r;
+    }
+
+    /**
+     * Returns the number of games recorded.
+     *
+     * @return the number of games recorded
+     */
+    public long getGames() {
+        return games.sum();
+    }
+
+    /**
+     * Returns the number of games cut short at the round limit, without a
+     * winner.
+     *
+     * @return the number of games cut short
+     */
+    public long getCutShort() {
+        return cutShort.sum();
+    }
+
+    /**
+     * Returns the number of games won by the player in the seat specified.
+     *
+     * @param seat the seat, 0 for the player who plays first
+     *
+     * @return the number of games won from the seat
+     */
+    public long getSeatWins(int seat) {
+        return seatWins[seat].sum();
+    }
+
+    /**
+     * Returns the number of stays paid for in the hotel specified.
+     *
+     * @param hid the hotel id
+     *
+     * @return the number of stays paid for in the hotel
+     */
+    public long getHotelStays(int hid) {
+        return (hid < hotelStays.length) ? hotelStays[hid].sum() : 0;
+    }
+
+    /**
+     * Returns the total paid for stays in the hotel specified.
+     *
+     * @param hid the hotel id
+     *
+     * @return the total paid for stays in the hotel
+     */
+    public long getHotelPayments(int hid) {
+        return (hid < hotelPayments.length) ? hotelPayments[hid].sum() : 0;
+    }
+
+    /**
+     * Returns the total number of entrances the player specified had at the
+     * end of the games.
+     *
+     * @param p the id of the player
+     *
+     * @return the total number of entrances of the player
+     */
+    public long getPlayerEntrances(int p) {
+        return playerEntrances[p - 1].sum();
+    }
+
+    /**
+     * Returns the distribution of the length of the games, in rounds.
+     *
+     * @return the distribution of the length of the games
+     */
+    public LogHistogram getRounds() {
+        return merge(0);
+    }
+
+    /**
+     * Returns the distribution of the rounds players went bankrupt in.
+     *
+     * @return the distribution of the bankruptcy rounds
+     */
+    public LogHistogram getBankruptcyRounds() {
+        return merge(1);
+    }
+
+    /**
+     * Returns the distribution of the maximum money of each player in each
+     * game.
+     *
+     * @return the distribution of the players' maximum money
+     */
+    public LogHistogram getMaxMoney() {
+        return merge(2);
+    }
+
+    /**
+     * Returns the distribution of the payments for stays.
+     *
+     * @return the distribution of the payments for stays
+     */
+    public LogHistogram getPayments() {
+        return merge(3);
+    }
+
+    /**
+     * Returns a text report of all the statistics.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        long n = getGames();
+        sb.append(String.format("games %d, won from seat 1/2/3: %d/%d/%d, cut short: %d%n",
+                n, getSeatWins(0), getSeatWins(1), getSeatWins(2), getCutShort()));
+        appendDistribution(sb, "rounds", getRounds());
+        appendDistribution(sb, "bankrupt in round", getBankruptcyRounds());
+        appendDistribution(sb, "max money", getMaxMoney());
+        appendDistribution(sb, "stay payment", getPayments());
+        sb.append("hotel stays/paid:");
+        for (int hid = 0; hid < hotelStays.length; hid++)
+            if (getHotelStays(hid) > 0)
+                sb.append(String.format(" %d:%d/%d", hid, getHotelStays(hid), getHotelPayments(hid)));
+        sb.append(String.format("%nentrances per game of players 1/2/3: %.2f/%.2f/%.2f%n",
+                (double) getPlayerEntrances(1) / Math.max(1, n), (double) getPlayerEntrances(2) / Math.max(1, n),
+                (double) getPlayerEntrances(3) / Math.max(1, n)));
+        return sb.toString();
+    }
+
+    /**
+     * Adds the statistics specified to these. Not thread safe with other
+     * calls of add.
+     */
+    void add(GameStats other) {
+        games.add(other.getGames());
+        cutShort.add(other.getCutShort());
+        for (int seat = 0; seat < PLAYERS; seat++)
+            seatWins[seat].add(other.getSeatWins(seat));
+        for (int hid = 0; hid < hotelStays.length; hid++) {
+            hotelStays[hid].add(other.getHotelStays(hid));
+            hotelPayments[hid].add(other.getHotelPayments(hid));
+        }
+        for (int p = 1; p <= PLAYERS; p++)
+            playerEntrances[p - 1].add(other.getPlayerEntrances(p));
+        if (added == null)
+            added = newRecorder();
+        added.rounds.merge(other.getRounds());
+        added.bankruptcyRounds.merge(other.getBankruptcyRounds());
+        added.maxMoney.merge(other.getMaxMoney());
+        added.payments.merge(other.getPayments());
+    }
+
+    /**
+     * Writes the statistics, once the games are recorded.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(getGames());
+        out.writeLong(getCutShort());
+        for (int seat = 0; seat < PLAYERS; seat++)
+            out.writeLong(getSeatWins(seat));
+        out.writeInt(hotelStays.length);
+        for (int hid = 0; hid < hotelStays.length; hid++) {
+            out.writeLong(getHotelStays(hid));
+            out.writeLong(getHotelPayments(hid));
+        }
+        for (int p = 1; p <= PLAYERS; p++)
+            out.writeLong(getPlayerEntrances(p));
+        getRounds().write(out);
+        getBankruptcyRounds().write(out);
+        getMaxMoney().write(out);
+        getPayments().write(out);
+    }
+
+    /**
+     * Reads statistics written by write.
+     */
+    static GameStats read(DataInput in) throws IOException {
+        long games = in.readLong(), cutShort = in.readLong();
+        long[] seatWins = new long[PLAYERS];
+        for (int seat = 0; seat < PLAYERS; seat++)
+            seatWins[seat] = in.readLong();
+        int hotels = in.readInt();
+        if (hotels < 1 || hotels > Short.MAX_VALUE)
+            throw new IOException("bad number of hotels " + hotels);
+        GameStats s = new GameStats(hotels - 1);
+        s.games.add(games);
+        s.cutShort.add(cutShort);
+        for (int seat = 0; seat < PLAYERS; seat++)
+            s.seatWins[seat].add(seatWins[seat]);
+        for (int hid = 0; hid < hotels; hid++) {
+            s.hotelStays[hid].add(in.readLong());
+            s.hotelPayments[hid].add(in.readLong());
+        }
+        for (int p = 0; p < PLAYERS; p++)
+            s.playerEntrances[p].add(in.readLong());
+        Recorder r = s.newRecorder();
+        r.rounds.merge(LogHistogram.read(in));
+        r.bankruptcyRounds.merge(LogHistogram.read(in));
+        r.maxMoney.merge(LogHistogram.read(in));
+        r.payments.merge(LogHistogram.read(in));
+        return s;
+    }
+
+    private static void appendDistribution(StringBuilder sb, String name, LogHistogram h) {
+        sb.append(String.format("%-17s mean %9.1f", name, h.getMean()));
+        for (double p : PERCENTILES)
+            sb.append(String.format(", p%s %7d", (p == (int) p) ? String.valueOf((int) p) : String.valueOf(p),
+                    h.getValueAtPercentile(p)));
+        sb.append(String.format(", max %7d%n", h.getMax()));
+    }
+
+    private LogHistogram merge(int which) {
+        LogHistogram merged = new LogHistogram();
+        for (Recorder r : recorders)
+            switch (which) {
+                case 0:
+                    merged.merge(r.rounds);
+                    break;
+                case 1:
+                    merged.merge(r.bankruptcyRounds);
+                    break;
+                case 2:
+                    merged.merge(r.maxMoney);
+                    break;
+                case 3:
+                    merged.merge(r.payments);
+                    break;
+            }
+        return merged;
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+}
@@ -0,0 +1,219 @@
+package hotel.sim;
+
+import hotel.model.Board;
+import hotel.model.BoardDefinition;
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.Hotel;
+import hotel.model.MoveGenerator;
+import java.util.Arrays;
+
+/**
+ * A reset/step environment around a Game, for training strategy policies.
+ * The agent plays every player in turn (self-play): each step is a decision
+ * of the current player, and passing ends his turn and plays the next
+ * player's round (dice, movement, payment) up to his next decision.
+ *
+ * Actions are integers: PASS, REQUEST_MONEY, then for the hotel with index h
+ * (hotels are indexed in ascending id order) BUY_HOTEL + 3 * h,
+ * REQUEST_BUILDING + 3 * h and BUY_ENTRANCE + 3 * h. The legal actions are
+ * the moves of the game's MoveGenerator; an action that is not legal leaves
+ * the game as it is.
+ *
+ * Observations are flat int arrays of getObservationSize() values:
+ * <pre>
+ * current player id                          1
+ * money of players 1..3                      3
+ * ring position of players 1..3 (-1 = out)   3
+ * owner id of each hotel (0 = none)          H
+ * current build of each hotel (-1 = none)    H
+ * entrance on each ring tile (0 = none, else PlayerTile.Entrance ordinal)
+ * legal action mask (1 = legal)              getActionCount()
+ * </pre>
+ */
+public class HotelEnv {
+
+    /**
+     * End the turn of the current player.
+     */
+    public static final int PASS = MoveGenerator.PASS;
+    /**
+     * Request money from the bank.
+     */
+    public static final int REQUEST_MONEY = MoveGenerator.REQUEST_MONEY;
+    /**
+     * Buy a hotel (add 3 * the hotel's index).
+     */
+    public static final int BUY_HOTEL = MoveGenerator.BUY_HOTEL;
+    /**
+     * Request building for a hotel (add 3 * the hotel's index).
+     */
+    public static final int REQUEST_BUILDING = MoveGenerator.REQUEST_BUILDING;
+    /**
+     * Buy an entrance for a hotel (add 3 * the hotel's index).
+     */
+    public static final int BUY_ENTRANCE = MoveGenerator.BUY_ENTRANCE;
+
+    private static final int PLAYERS = 3;
+    private static final GameObserver HEADLESS = new GameObserver() {
+    };
+
+    private final BoardDefinition def;
+    private final int[] hids;
+    private final int maxRounds;
+    private Game game;
+    private int rounds;
+    private int[] moves;
+    private final boolean[] legal;
+
+    /**
+     * Constructs an environment playing on the board specified.
+     *
+     * @param def the board to play on
+     * @param maxRounds the number of rounds after which a game is cut short
+     */
+    public HotelEnv(BoardDefinition def, int maxRounds) {
+        this.def = def;
+        this.maxRounds = maxRounds;
+        hids = def.getHotelCards().keySet().stream().mapToInt(hid -> hid).sorted().toArray();
+        legal = new boolean[getActionCount()];
+        reset();
+    }
+
+    /**
+     * Returns the number of values in an observation.
+     *
+     * @return the number of values in an observation
+     */
+    public int getObservationSize() {
+        return 1 + 2 * PLAYERS + 2 * hids.length + game.getBoard().getRingLength() + getActionCount();
+    }
+
+    /**
+     * Returns the number of actions.
+     *
+     * @return the number of actions
+     */
+    public int getActionCount() {
+        return BUY_HOTEL + 3 * hids.length;
+    }
+
+    /**
+     * Returns the game being played.
+     *
+     * @return the game being played
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Starts a new game and plays up to the first decision.
+     */
+    public void reset() {
+        game = new Game(HEADLESS, def);
+        moves = new int[game.getMoveGenerator().getMaxMoves()];
+        game.playRound();
+        rounds = 1;
+        updateLegal();
+    }
+
+    /**
+     * Returns whether the game is over, either because there is a winner or
+     * because it was cut short.
+     *
+     * @return true if the game is over, false otherwise
+     */
+    public boolean isDone() {
+        return game.getWinnerId() != 0 || rounds >= maxRounds;
+    }
+
+    /**
+     * Performs an action of the current player.
+     *
+     * @param action the action
+     *
+     * @return the reward: the change in the money of the player who acted
+     */
+    public float step(int action) {
+        int p = game.getCurrentPlayerId();
+        int before = game.getPlayerMoney(p);
+        if (action == PASS) {
+            game.playRound();
+            rounds++;
+        } else if (isLegal(action)) {
+            if (action == REQUEST_MONEY)
+                game.requestMoney();
+            else {
+                int hid = hids[(action - BUY_HOTEL) / 3];
+                switch ((action - BUY_HOTEL) % 3) {
+                    case 0:
+                        game.buyHotel(hid);
+                        break;
+                    case 1:
+                        game.requestBuilding(hid);
+                        break;
+                    case 2:
+                        game.buyEntrance(hid);
+                        break;
+                }
+            }
+        }
+        updateLegal();
+        return game.getPlayerMoney(p) - before;
+    }
+
+    /**
+     * Returns whether an action is legal for the current player.
+     *
+     * @param action the action
+     *
+     * @return true if the action is legal, false otherwise
+     */
+    public boolean isLegal(int action) {
+        return action >= 0 && action < legal.length && legal[action];
+    }
+
+    /**
+     * Writes the current observation into the array specified.
+     *
+     * @param out the array to write to
+     * @param offset the index in out to start writing at
+     */
+    public void observe(int[] out, int offset) {
+        int k = offset;
+        out[k++] = game.getCurrentPlayerId();
+        for (int p = 1; p <= PLAYERS; p++)
+            out[k++] = game.getPlayerMoney(p);
+        for (int p = 1; p <= PLAYERS; p++)
+            out[k++] = game.getPlayerRingPosition(p);
+        for (int hid : hids)
+            out[k++] = game.getHotel(hid).getOwnerId();
+        for (int hid : hids) {
+            Hotel h = game.getHotel(hid);
+            out[k++] = h.getCurrentBuild();
+        }
+        Board board = game.getBoard();
+        for (int r = 0; r < board.getRingLength(); r++)
+            out[k++] = board.getRingTile(r).getEntrance().ordinal();
+        for (int a = 0; a < getActionCount(); a++)
+            out[k++] = legal[a] ? 1 : 0;
+    }
+
+    private void updateLegal() {
+        Arrays.fill(legal, false);
+        int n = game.getMoveGenerator().generate(moves);
+        for (int i = 0; i < n; i++) {
+            int type = MoveGenerator.typeOf(moves[i]);
+            if (type == MoveGenerator.PASS)
+                legal[PASS] = true;
+            else if (type == MoveGenerator.REQUEST_MONEY)
+                legal[REQUEST_MONEY] = true;
+            else {
+                int h = Arrays.binarySearch(hids, MoveGenerator.hotelIdOf(moves[i]));
+                legal[type + 3 * h] = true;
+            }
+        }
+        legal[PASS] = true; // passing on a finished game just starts a new round
+    }
+}
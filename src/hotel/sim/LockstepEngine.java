@@ -0,0 +1,401 @@
+package hotel.sim;
+
+import hotel.model.PlayerTile;
+import hotel.model.RingLayout;
+import hotel.model.Rules;
+
+/**
+ * Advances a batch of games played on the same board in lockstep: every call
+ * to step plays one round in each game (lane) of the batch. The state is kept
+ * in primitive arrays with one slot per lane (structure of arrays), so that
+ * the uniform parts of a round (dice, movement on the ring, passing the bank
+ * or the city hall, looking up the staying cost and paying it) are tight
+ * loops over the lanes that walk the per-lane state sequentially, with few
+ * branches and no object per game. These loops are not SIMD: the lookups
+ * they do (the bank counts, the staying costs and the entrances of the tile
+ * landed on) are gathers, which the JIT does not vectorize. The rare cases
+ * (landing on an occupied tile, not being able to pay, going bankrupt) and
+ * the players' decisions are handled per lane. The rules, and the greedy
+ * policy the players follow, are the ones of OffHeapEngine.playGreedyRound.
+ * A lane whose game is over starts a new game in the next step.
+ */
+public class LockstepEngine {
+
+    private static final int PLAYERS = OffHeapGameStore.PLAYERS;
+
+    private final RingLayout layout;
+    private final Rules rules;
+    private final int lanes;
+    private final int n;
+    private final int hotels;
+    private final int maxLevels;
+    private final int[] adjacent;
+    private final int[] stayingCosts;
+    private final int[] banksUpTo, cityHallsUpTo;    // number of such tiles in [0, r]
+    private final int banks, cityHalls;
+
+    // Game state, index player * lanes + lane or hotel * lanes + lane or
+    // tile * lanes + lane
+    private final long[] seeds;
+    private final int[] money;
+    private final int[] position;
+    private final int[] turn;
+    private final int[] owner;
+    private final int[] level;
+    private final int[] entrance;   // the side of the entrance on a tile or -1
+
+    // Per round scratch space, index lane
+    private final int[] dice;
+    private final int[] dest;
+    private final int[] passedBank, passedCityHall;
+    private final int[] payment;
+
+    private long rounds;
+    private long games;
+
+    /**
+     * Constructs an engine for a batch of games on the board specified,
+     * played by the default rules.
+     *
+     * @param layout the board the games are played on
+     * @param lanes the number of games in the batch
+     * @param seed the seed of the dice of all the games
+     */
+    public LockstepEngine(RingLayout layout, int lanes, long seed) {
+        this(layout, lanes, seed, Rules.DEFAULT);
+    }
+
+    /**
+     * Constructs an engine for a batch of games on the board specified.
+     *
+     * @param layout the board the games are played on
+     * @param lanes the number of games in the batch
+     * @param seed the seed of the dice of all the games
+     * @param rules the rules the games are played by
+     */
+    public LockstepEngine(RingLayout layout, int lanes, long seed, Rules rules) {
+        this.layout = layout;
+        this.rules = rules;
+        this.lanes = lanes;
+        n = layout.getRingLength();
+        hotels = layout.getHotelCount();
+        maxLevels = layout.getMaxLevels();
+
+        adjacent = new int[n * RingLayout.SIDES];
+        for (int r = 0; r < n; r++)
+            for (int side = 0; side < RingLayout.SIDES; side++)
+                adjacent[r * RingLayout.SIDES + side] = layout.getAdjacentHotel(r, side);
+        stayingCosts = new int[hotels * maxLevels];
+        for (int h = 0; h < hotels; h++)
+            for (int l = 0; l < layout.getLevels(h); l++)
+                stayingCosts[h * maxLevels + l] = layout.getStayingCost(h, l);
+        banksUpTo = new int[n];
+        cityHallsUpTo = new int[n];
+        int b = 0, c = 0;
+        for (int r = 0; r < n; r++) {
+            b += layout.isType(r, PlayerTile.Type.BANK) ? 1 : 0;
+            c += layout.isType(r, PlayerTile.Type.CITY_HALL) ? 1 : 0;
+            banksUpTo[r] = b;
+            cityHallsUpTo[r] = c;
+        }
+        banks = b;
+        cityHalls = c;
+
+        seeds = new long[lanes];
+        money = new int[PLAYERS * lanes];
+        position = new int[PLAYERS * lanes];
+        turn = new int[lanes];
+        owner = new int[hotels * lanes];
+        level = new int[hotels * lanes];
+        entrance = new int[n * lanes];
+        dice = new int[lanes];
+        dest = new int[lanes];
+        passedBank = new int[lanes];
+        passedCityHall = new int[lanes];
+        payment = new int[lanes];
+
+        long s = seed;
+        for (int lane = 0; lane < lanes; lane++) {
+            s += 0x9E3779B97F4A7C15L;   // SplitMix64, to spread the seeds
+            long z = s;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            seeds[lane] = (z ^ (z >>> 31)) | 1;
+            reset(lane);
+        }
+    }
+
+    /**
+     * Returns the number of games in the batch.
+     *
+     * @return the number of games in the batch
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Returns the number of rounds played in all lanes so far.
+     *
+     * @return the number of rounds played in all lanes so far
+     */
+    public long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the number of games finished in all lanes so far.
+     *
+     * @return the number of games finished in all lanes so far
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Plays a round in every game of the batch.
+     */
+    public void step() {
+        // Determine next player
+        for (int lane = 0; lane < lanes; lane++) {
+            int p = turn[lane];
+            do
+                p = (p + 1 == PLAYERS) ? 0 : p + 1;
+            while (position[p * lanes + lane] < 0);
+            turn[lane] = p;
+        }
+
+        // Roll dice (xorshift64 per lane, scaled to [1, 6] without division)
+        for (int lane = 0; lane < lanes; lane++) {
+            long s = seeds[lane];
+            s ^= s << 13;
+            s ^= s >>> 7;
+            s ^= s << 17;
+            seeds[lane] = s;
+            dice[lane] = 1 + (int) (((s >>> 32) * 6) >>> 32);
+        }
+
+        // Move, counting the banks and city halls in (from, to] on the ring
+        for (int lane = 0; lane < lanes; lane++) {
+            int from = position[turn[lane] * lanes + lane];
+            int to = from + dice[lane];
+            int wrap = to / n;      // more than once on rings shorter than the dice
+            to -= wrap * n;
+            dest[lane] = to;
+            passedBank[lane] = banksUpTo[to] - banksUpTo[from] + wrap * banks;
+            passedCityHall[lane] = cityHallsUpTo[to] - cityHallsUpTo[from] + wrap * cityHalls;
+        }
+
+        // Skip occupied tiles (scalar, rare)
+        for (int lane = 0; lane < lanes; lane++)
+            while (occupied(lane, dest[lane])) {
+                int to = (dest[lane] + 1 == n) ? 0 : dest[lane] + 1;
+                dest[lane] = to;
+                passedBank[lane] += layout.isType(to, PlayerTile.Type.BANK) ? 1 : 0;
+                passedCityHall[lane] += layout.isType(to, PlayerTile.Type.CITY_HALL) ? 1 : 0;
+            }
+
+        // Look up the cost of the stay, if there is an entrance on dest
+        for (int lane = 0; lane < lanes; lane++) {
+            int p = turn[lane];
+            int to = dest[lane];
+            position[p * lanes + lane] = to;
+            int side = entrance[to * lanes + lane];
+            int h = (side < 0) ? -1 : adjacent[to * RingLayout.SIDES + side];
+            int hh = Math.max(h, 0);
+            int cost = stayingCost(stayingCosts[hh * maxLevels + Math.max(level[hh * lanes + lane], 0)], dice[lane]);
+            payment[lane] = (h >= 0 && owner[hh * lanes + lane] != p) ? cost : 0;
+        }
+
+        // Pay for the stay when possible
+        for (int lane = 0; lane < lanes; lane++) {
+            int p = turn[lane];
+            int cost = payment[lane];
+            if (cost == 0 || money[p * lanes + lane] < cost)
+                continue;   // nothing to pay or can't pay (handled below)
+            int side = entrance[dest[lane] * lanes + lane];
+            int o = owner[adjacent[dest[lane] * RingLayout.SIDES + side] * lanes + lane];
+            money[p * lanes + lane] -= cost;
+            money[o * lanes + lane] += cost;
+            payment[lane] = 0;
+        }
+
+        // Scalar: payments that need the bank or bankrupt, decisions, game over
+        for (int lane = 0; lane < lanes; lane++) {
+            int p = turn[lane];
+            int actions = actions(lane);
+            if (payment[lane] > 0) {
+                int side = entrance[dest[lane] * lanes + lane];
+                int o = owner[adjacent[dest[lane] * RingLayout.SIDES + side] * lanes + lane];
+                if (passedBank[lane] > 0) {
+                    money[p * lanes + lane] += rules.getBankPayout();
+                    actions &= ~OffHeapEngine.CAN_REQUEST_MONEY;
+                }
+                if (money[p * lanes + lane] < payment[lane]) {
+                    if (goBankrupt(lane, p, o)) {
+                        games++;
+                        reset(lane);
+                    }
+                    continue;
+                }
+                money[p * lanes + lane] -= payment[lane];
+                money[o * lanes + lane] += payment[lane];
+            }
+            decide(lane, actions);
+        }
+
+        rounds += lanes;
+    }
+
+    private int actions(int lane) {
+        int to = dest[lane];
+        int actions = 0;
+        if (passedBank[lane] > 0)
+            actions |= OffHeapEngine.CAN_REQUEST_MONEY;
+        if (passedCityHall[lane] > 0)
+            actions |= OffHeapEngine.CAN_BUY_ENTRANCE;
+        if (layout.isType(to, PlayerTile.Type.BUY)) {
+            for (int side = 0; side < RingLayout.SIDES; side++) {
+                int h = adjacent[to * RingLayout.SIDES + side];
+                if (h >= 0 && level[h * lanes + lane] < 0)
+                    actions |= OffHeapEngine.CAN_BUY_HOTEL;
+            }
+        } else if (layout.isType(to, PlayerTile.Type.BUILD))
+            actions |= OffHeapEngine.CAN_BUY_ENTRANCE | OffHeapEngine.CAN_REQUEST_BUILDING;
+        return actions;
+    }
+
+    private void decide(int lane, int actions) {
+        if (actions == 0)
+            return;
+        for (int h = 0; h < hotels; h++)
+            if (((actions & OffHeapEngine.CAN_BUY_HOTEL) != 0 && buyHotel(lane, h))
+                    || ((actions & OffHeapEngine.CAN_REQUEST_BUILDING) != 0 && requestBuilding(lane, h))
+                    || ((actions & OffHeapEngine.CAN_BUY_ENTRANCE) != 0 && buyEntrance(lane, h)))
+                return;
+    }
+
+    private boolean buyHotel(int lane, int h) {
+        int p = turn[lane];
+        int r = dest[lane];
+        boolean isAdjacent = false;
+        for (int side = 0; side < RingLayout.SIDES; side++)
+            isAdjacent |= adjacent[r * RingLayout.SIDES + side] == h;
+        if (!isAdjacent)
+            return false;
+        int o = owner[h * lanes + lane];
+        if (o == p || (o >= 0 && level[h * lanes + lane] >= 0))
+            return false;
+        int cost = (o < 0) ? layout.getBuyingCost(h) : layout.getObligBuyingCost(h);
+        if (money[p * lanes + lane] < cost)
+            return false;
+        money[p * lanes + lane] -= cost;
+        if (o >= 0)
+            money[o * lanes + lane] += cost;
+        owner[h * lanes + lane] = p;
+        return true;
+    }
+
+    private boolean requestBuilding(int lane, int h) {
+        int p = turn[lane];
+        if (owner[h * lanes + lane] != p)
+            return false;
+        int l = level[h * lanes + lane];
+        if (l + 1 == layout.getLevels(h))
+            return false;
+        int buildingCost = layout.getBuildingCost(h, l + 1);
+        long s = seeds[lane];
+        s ^= s << 13;
+        s ^= s >>> 7;
+        s ^= s << 17;
+        seeds[lane] = s;
+        int rand = 1 + (int) (((s >>> 32) * 100) >>> 32);
+        int normal = rules.getNormalBuildChance();
+        int rejected = normal + rules.getRejectedBuildChance();
+        int cost;
+        if (rand <= normal)
+            cost = buildingCost;
+        else if (rand <= rejected)
+            return false;
+        else if (rand <= rejected + rules.getFreeBuildChance())
+            cost = 0;
+        else
+            cost = 2 * buildingCost;
+        if (money[p * lanes + lane] < cost)
+            return false;
+        money[p * lanes + lane] -= cost;
+        level[h * lanes + lane] = l + 1;
+        return true;
+    }
+
+    private boolean buyEntrance(int lane, int h) {
+        int p = turn[lane];
+        if (owner[h * lanes + lane] != p || level[h * lanes + lane] < 0)
+            return false;
+        int cost = layout.getEntranceCost(h);
+        if (money[p * lanes + lane] < cost)
+            return false;
+        for (int k = 0; k < layout.getFrontSize(h); k++) {
+            int r = layout.getFrontTile(h, k);
+            if (entrance[r * lanes + lane] < 0
+                    && (layout.isType(r, PlayerTile.Type.BUILD) || layout.isType(r, PlayerTile.Type.BUY))) {
+                money[p * lanes + lane] -= cost;
+                entrance[r * lanes + lane] = layout.getFrontSide(h, k);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the game is over
+     */
+    private boolean goBankrupt(int lane, int p, int creditor) {
+        money[creditor * lanes + lane] += money[p * lanes + lane];
+        money[p * lanes + lane] = 0;
+        for (int h = 0; h < hotels; h++) {
+            if (owner[h * lanes + lane] != p)
+                continue;
+            for (int k = 0; k < layout.getFrontSize(h); k++) {
+                int r = layout.getFrontTile(h, k);
+                if (entrance[r * lanes + lane] == layout.getFrontSide(h, k))
+                    entrance[r * lanes + lane] = -1;
+            }
+            level[h * lanes + lane] = -1;
+            owner[h * lanes + lane] = -1;
+        }
+        position[p * lanes + lane] = -1;
+
+        int active = 0;
+        for (int q = 0; q < PLAYERS; q++)
+            if (position[q * lanes + lane] >= 0)
+                active++;
+        return active == 1;
+    }
+
+    private int stayingCost(int stayingCost, int dice) {
+        double m = rules.getStayingMultiplier();
+        return (m == 1) ? stayingCost * dice : (int) Math.round(stayingCost * dice * m);
+    }
+
+    private boolean occupied(int lane, int r) {
+        for (int p = 0; p < PLAYERS; p++)
+            if (position[p * lanes + lane] == r)
+                return true;
+        return false;
+    }
+
+    private void reset(int lane) {
+        for (int p = 0; p < PLAYERS; p++) {
+            money[p * lanes + lane] = rules.getStartingMoney();
+            position[p * lanes + lane] = 0;
+        }
+        turn[lane] = PLAYERS - 1;
+        for (int h = 0; h < hotels; h++) {
+            owner[h * lanes + lane] = -1;
+            level[h * lanes + lane] = -1;
+        }
+        for (int r = 0; r < n; r++)
+            entrance[r * lanes + lane] = -1;
+    }
+}
@@ -0,0 +1,143 @@
+package hotel.sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A histogram of non-negative values in a fixed amount of memory. Values
+ * below 32 get a bucket each; above that, every power of two is split in 16
+ * buckets, so a value is known to within about 6% of itself (3% on
+ * average), however large it is. A histogram is not thread safe: each
+ * thread records into its own, and they are merged afterwards.
+ */
+public class LogHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS - 1) * HALF + 2 * HALF;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a value.
+     *
+     * @param v the value (negative values count as 0)
+     */
+    public void record(long v) {
+        v = Math.max(v, 0);
+        counts[indexOf(v)]++;
+        count++;
+        sum += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Adds the values recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void merge(LogHistogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Writes the histogram, the buckets that aren't empty only.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        int used = 0;
+        for (long c : counts)
+            if (c != 0)
+                used++;
+        out.writeShort(used);
+        for (int i = 0; i < BUCKETS; i++)
+            if (counts[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+    }
+
+    /**
+     * Reads a histogram written by write.
+     */
+    static LogHistogram read(DataInput in) throws IOException {
+        LogHistogram h = new LogHistogram();
+        h.count = in.readLong();
+        h.sum = in.readLong();
+        h.min = in.readLong();
+        h.max = in.readLong();
+        for (int n = in.readUnsignedShort(); n > 0; n--) {
+            int i = in.readUnsignedShort();
+            if (i >= BUCKETS)
+                throw new IOException("bad histogram bucket " + i);
+            h.counts[i] = in.readLong();
+        }
+        return h;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return (count > 0) ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return (count > 0) ? (double) sum / count : 0;
+    }
+
+    /**
+     * Returns the value below which the percentage specified of the values
+     * recorded lie, rounded up to the bucket it falls in.
+     *
+     * @param percentile the percentage, from 0 to 100
+     *
+     * @return the value at the percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    private static int indexOf(long v) {
+        if (v < 2 * HALF)
+            return (int) v;
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(v)) - SUB_BITS + 1;
+        return shift * HALF + (int) (v >>> shift);
+    }
+
+    private static long upperBoundOf(int i) {
+        if (i < 2 * HALF)
+            return i;
+        int shift = i / HALF - 1;
+        long m = i - shift * HALF;
+        return ((m + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,319 @@
+package hotel.sim;
+
+import hotel.model.PlayerTile;
+import hotel.model.RingLayout;
+import hotel.model.Rules;
+import java.util.SplittableRandom;
+
+/**
+ * Advances the games of an OffHeapGameStore directly on their records, with
+ * the same rules as Game (see Game.playRound, Game.requestMoney,
+ * Game.buyHotel, Game.requestBuilding and Game.buyEntrance). Nothing here
+ * allocates. The only difference is that when buying an entrance, the tile
+ * is the first available one in ring order instead of an arbitrary one.
+ */
+public class OffHeapEngine {
+
+    /**
+     * The current player can request money from the bank.
+     */
+    public static final int CAN_REQUEST_MONEY = 1;
+    /**
+     * The current player can buy a hotel.
+     */
+    public static final int CAN_BUY_HOTEL = 2;
+    /**
+     * The current player can request building.
+     */
+    public static final int CAN_REQUEST_BUILDING = 4;
+    /**
+     * The current player can buy an entrance.
+     */
+    public static final int CAN_BUY_ENTRANCE = 8;
+
+    private final OffHeapGameStore store;
+    private final RingLayout layout;
+    private final Rules rules;
+
+    /**
+     * Constructs an engine for the games in the store specified, played by
+     * the default rules.
+     *
+     * @param store the store of the games to advance
+     */
+    public OffHeapEngine(OffHeapGameStore store) {
+        this(store, Rules.DEFAULT);
+    }
+
+    /**
+     * Constructs an engine for the games in the store specified.
+     *
+     * @param store the store of the games to advance
+     * @param rules the rules the games are played by
+     */
+    public OffHeapEngine(OffHeapGameStore store, Rules rules) {
+        this.store = store;
+        this.rules = rules;
+        layout = store.getLayout();
+    }
+
+    /**
+     * Sets up a game for a fresh start.
+     *
+     * @param g the index of the game
+     */
+    public void reset(long g) {
+        store.reset(g, rules.getStartingMoney());
+    }
+
+    /**
+     * Proceeds to the next round in a game, as Game.playRound does.
+     *
+     * @param g the index of the game
+     * @param rng the source of the dice rolls
+     *
+     * @return the actions the current player can do in this round, as a
+     * combination of the CAN_* flags
+     */
+    public int playRound(long g, SplittableRandom rng) {
+        int p = nextPlayer(g);
+        store.setTurn(g, p);
+        store.setRound(g, store.getRound(g) + 1);
+
+        // Roll dice and move player
+        int dice = rng.nextInt(1, 7);
+        int n = layout.getRingLength();
+        int dest = store.getPosition(g, p);
+        boolean passedBank = false;
+        boolean passedCityHall = false;
+        for (int i = 0; (i < dice) || occupied(g, dest); i++) {
+            dest = (dest + 1 == n) ? 0 : dest + 1;
+            passedBank |= layout.isType(dest, PlayerTile.Type.BANK);
+            passedCityHall |= layout.isType(dest, PlayerTile.Type.CITY_HALL);
+        }
+        store.setPosition(g, p, dest);
+
+        // Determine what the player can do in this round
+        int actions = 0;
+        if (passedBank)
+            actions |= CAN_REQUEST_MONEY;
+        if (passedCityHall)
+            actions |= CAN_BUY_ENTRANCE;
+        if (layout.isType(dest, PlayerTile.Type.BUY)) {
+            if (hasAdjacentNotBuilt(g, dest))
+                actions |= CAN_BUY_HOTEL;
+        } else if (layout.isType(dest, PlayerTile.Type.BUILD))
+            actions |= CAN_BUY_ENTRANCE | CAN_REQUEST_BUILDING;
+
+        // If there is an entrance on dest, pay for the stay
+        int side = store.getEntrance(g, dest);
+        if (side >= 0) {
+            int h = layout.getAdjacentHotel(dest, side);
+            int cost = stayingCost(layout.getStayingCost(h, store.getLevel(g, h)), dice);
+            int owner = store.getOwner(g, h);
+            if (owner != p)
+                if (store.getMoney(g, p) < cost) {
+                    if (passedBank) {
+                        requestMoney(g);
+                        actions &= ~CAN_REQUEST_MONEY;
+                    }
+                    if (store.getMoney(g, p) < cost) {
+                        goBankrupt(g, p, owner);
+                        actions = 0;
+                    }
+                } else
+                    moveMoney(g, p, owner, cost);
+        }
+
+        return actions;
+    }
+
+    /**
+     * Awards the bank's money to the current player of a game.
+     *
+     * @param g the index of the game
+     */
+    public void requestMoney(long g) {
+        moveMoney(g, -1, store.getTurn(g), rules.getBankPayout());
+    }
+
+    /**
+     * Purchases a hotel for the current player of a game, as Game.buyHotel
+     * does.
+     *
+     * @param g the index of the game
+     * @param h the index of the hotel
+     *
+     * @return true if the hotel was purchased successfully, false otherwise
+     */
+    public boolean buyHotel(long g, int h) {
+        int p = store.getTurn(g);
+        int r = store.getPosition(g, p);
+        boolean adjacent = false;
+        for (int side = 0; side < RingLayout.SIDES; side++)
+            adjacent |= layout.getAdjacentHotel(r, side) == h;
+        if (!adjacent)
+            return false; // h is not adjacent to current player's tile
+        int owner = store.getOwner(g, h);
+        if (owner == p)
+            return false; // h already owned by current
+        else if (owner >= 0 && store.getLevel(g, h) >= 0)
+            return false; // h is owned by another player and already built
+        int cost = (owner < 0) ? layout.getBuyingCost(h) : layout.getObligBuyingCost(h);
+        if (store.getMoney(g, p) < cost)
+            return false; // current can't afford it
+
+        moveMoney(g, p, owner, cost);
+        store.setOwner(g, h, p);
+        return true;
+    }
+
+    /**
+     * Processes a request to build for a hotel of the current player of a
+     * game, as Game.requestBuilding does.
+     *
+     * @param g the index of the game
+     * @param h the index of the hotel
+     * @param rng the source of the outcome of the request
+     *
+     * @return true if the upgrade was completed successfully, false otherwise
+     */
+    public boolean requestBuilding(long g, int h, SplittableRandom rng) {
+        int p = store.getTurn(g);
+        if (store.getOwner(g, h) != p)
+            return false; // h not owned by current
+        int level = store.getLevel(g, h);
+        if (level + 1 == layout.getLevels(h))
+            return false; // h can't be further upgraded
+        int buildingCost = layout.getBuildingCost(h, level + 1);
+        int cost;
+        int normal = rules.getNormalBuildChance();
+        int rejected = normal + rules.getRejectedBuildChance();
+        int rand = rng.nextInt(1, 101);
+        if (rand <= normal)
+            cost = buildingCost;
+        else if (rand <= rejected)
+            return false; // request rejected
+        else if (rand <= rejected + rules.getFreeBuildChance())
+            cost = 0;
+        else
+            cost = 2 * buildingCost;
+
+        if (store.getMoney(g, p) < cost)
+            return false; // current can't afford it
+
+        moveMoney(g, p, -1, cost);
+        store.setLevel(g, h, level + 1);
+        return true;
+    }
+
+    /**
+     * Purchases an entrance for a hotel of the current player of a game, as
+     * Game.buyEntrance does.
+     *
+     * @param g the index of the game
+     * @param h the index of the hotel
+     *
+     * @return true if the entrance was purchased successfully, false otherwise
+     */
+    public boolean buyEntrance(long g, int h) {
+        int p = store.getTurn(g);
+        if (store.getOwner(g, h) != p)
+            return false; // h not owned by current
+        if (store.getLevel(g, h) < 0)
+            return false; // h not built
+        int cost = layout.getEntranceCost(h);
+        if (store.getMoney(g, p) < cost)
+            return false; // current can't afford it
+        for (int k = 0; k < layout.getFrontSize(h); k++) {
+            int r = layout.getFrontTile(h, k);
+            if (store.getEntrance(g, r) < 0
+                    && (layout.isType(r, PlayerTile.Type.BUILD)
+                    || layout.isType(r, PlayerTile.Type.BUY))) {
+                moveMoney(g, p, -1, cost);
+                store.setEntrance(g, r, layout.getFrontSide(h, k));
+                return true;
+            }
+        }
+        return false;   // no empty tile in h's front
+    }
+
+    /**
+     * Plays a round of a game where the current player greedily takes the
+     * first action possible on the hotels in index order: buying, building or
+     * buying an entrance. This is the policy the benchmarks play with.
+     *
+     * @param g the index of the game
+     * @param rng the source of randomness
+     */
+    public void playGreedyRound(long g, SplittableRandom rng) {
+        int actions = playRound(g, rng);
+        if (actions == 0)
+            return;
+        for (int h = 0; h < layout.getHotelCount(); h++)
+            if (((actions & CAN_BUY_HOTEL) != 0 && buyHotel(g, h))
+                    || ((actions & CAN_REQUEST_BUILDING) != 0 && requestBuilding(g, h, rng))
+                    || ((actions & CAN_BUY_ENTRANCE) != 0 && buyEntrance(g, h)))
+                return;
+    }
+
+    private int stayingCost(int stayingCost, int dice) {
+        double m = rules.getStayingMultiplier();
+        return (m == 1) ? stayingCost * dice : (int) Math.round(stayingCost * dice * m);
+    }
+
+    private int nextPlayer(long g) {
+        int p = store.getTurn(g);
+        do
+            p = (p + 1) % OffHeapGameStore.PLAYERS;
+        while (store.getPosition(g, p) < 0);
+        return p;
+    }
+
+    private boolean occupied(long g, int r) {
+        for (int p = 0; p < OffHeapGameStore.PLAYERS; p++)
+            if (store.getPosition(g, p) == r)
+                return true;
+        return false;
+    }
+
+    private boolean hasAdjacentNotBuilt(long g, int r) {
+        for (int side = 0; side < RingLayout.SIDES; side++) {
+            int h = layout.getAdjacentHotel(r, side);
+            if (h >= 0 && store.getLevel(g, h) < 0)
+                return true;
+        }
+        return false;
+    }
+
+    private void goBankrupt(long g, int p, int creditor) {
+        moveMoney(g, p, creditor, store.getMoney(g, p));
+        for (int h = 0; h < layout.getHotelCount(); h++) {
+            if (store.getOwner(g, h) != p)
+                continue;
+            for (int k = 0; k < layout.getFrontSize(h); k++)
+                store.clearEntrance(g, layout.getFrontTile(h, k), layout.getFrontSide(h, k));
+            store.setLevel(g, h, -1);
+            store.setOwner(g, h, -1);
+        }
+        store.setPosition(g, p, -1);
+
+        // Check if the game is over
+        int active = 0;
+        int winner = -1;
+        for (int q = 0; q < OffHeapGameStore.PLAYERS; q++)
+            if (store.getPosition(g, q) >= 0) {
+                active++;
+                winner = q;
+            }
+        if (active == 1)
+            store.setWinner(g, winner);
+    }
+
+    private void moveMoney(long g, int from, int to, int money) {
+        if (from >= 0)
+            store.setMoney(g, from, store.getMoney(g, from) - money);
+        if (to >= 0)
+            store.setMoney(g, to, store.getMoney(g, to) + money);
+    }
+}
@@ -0,0 +1,236 @@
+package hotel.sim;
+
+import hotel.model.RingLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Holds the state of many games played on the same board outside of the Java
+ * heap, as fixed-layout records in direct buffers, so that millions of games
+ * in flight put no pressure on the garbage collector. The players of a game
+ * are identified by their seat (0 to PLAYERS - 1), in turn order.
+ *
+ * Each record is laid out as follows (sizes in bytes, W = ringLength / 64
+ * rounded up, H = the number of hotels):
+ * <pre>
+ * entrances  8 * W * 4  one bitmap over the ring per side of a tile
+ * money      4 * 3      per seat
+ * round      4          the number of rounds played
+ * position   2 * 3      per seat, index on the ring or -1 if bankrupt
+ * turn       1          the seat of the current player
+ * winner     1          0 while the game is on, else the winner's seat + 1
+ * owner      H          per hotel, 0 if not owned, else the owner's seat + 1
+ * level      H          per hotel, the building state or -1 if not built
+ * </pre>
+ * padded to a multiple of 8 bytes. Records are split among direct buffers of
+ * at most CHUNK_GAMES records each, since a buffer can't exceed 2GB.
+ */
+public class OffHeapGameStore {
+
+    /**
+     * The number of players in each game.
+     */
+    public static final int PLAYERS = 3;
+
+    private static final int CHUNK_GAMES = 1 << 16;
+
+    private final RingLayout layout;
+    private final long games;
+    private final int words;
+    private final int moneyOffset, roundOffset, positionOffset, turnOffset, winnerOffset;
+    private final int ownerOffset, levelOffset;
+    private final int recordSize;
+    private final ByteBuffer[] chunks;
+
+    /**
+     * Constructs a store for the number of games specified, all played on the
+     * board specified. The records are not initialized; call reset on each
+     * game before playing it.
+     *
+     * @param layout the board the games are played on
+     * @param games the number of games
+     *
+     * @throws IllegalArgumentException if the ring is longer than
+     * Short.MAX_VALUE tiles or the records too large to fit CHUNK_GAMES of
+     * them in a buffer
+     */
+    public OffHeapGameStore(RingLayout layout, long games) {
+        if (layout.getRingLength() > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Ring too long for an off-heap record: " + layout.getRingLength());
+        this.layout = layout;
+        this.games = games;
+        words = (layout.getRingLength() + 63) / 64;
+        moneyOffset = 8 * words * RingLayout.SIDES;
+        roundOffset = moneyOffset + 4 * PLAYERS;
+        positionOffset = roundOffset + 4;
+        turnOffset = positionOffset + 2 * PLAYERS;
+        winnerOffset = turnOffset + 1;
+        ownerOffset = winnerOffset + 1;
+        levelOffset = ownerOffset + layout.getHotelCount();
+        long size = ((long) levelOffset + layout.getHotelCount() + 7) & ~7;
+        if (size * CHUNK_GAMES > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Off-heap record too large: " + size + " bytes");
+        recordSize = (int) size;
+
+        int chunkCount = (int) ((games + CHUNK_GAMES - 1) / CHUNK_GAMES);
+        chunks = new ByteBuffer[chunkCount];
+        for (int c = 0; c < chunkCount; c++) {
+            long chunkGames = Math.min(CHUNK_GAMES, games - (long) c * CHUNK_GAMES);
+            chunks[c] = ByteBuffer.allocateDirect((int) (chunkGames * recordSize)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Returns the board the games are played on.
+     *
+     * @return the board the games are played on
+     */
+    public RingLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the number of games in this store.
+     *
+     * @return the number of games in this store
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the size of each game record in bytes.
+     *
+     * @return the size of each game record in bytes
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Returns the total off-heap memory used by this store in bytes.
+     *
+     * @return the total off-heap memory used by this store in bytes
+     */
+    public long getMemoryUsed() {
+        return games * recordSize;
+    }
+
+    /**
+     * Sets up a game for a fresh start: every player has the money specified
+     * and stands on the start tile, no hotel is owned and there are no
+     * entrances. The first player to play will be the one in seat 0.
+     *
+     * @param g the index of the game
+     * @param startingMoney the money each player starts with
+     */
+    public void reset(long g, int startingMoney) {
+        ByteBuffer b = chunk(g);
+        int base = base(g);
+        for (int i = 0; i < recordSize; i += 8)
+            b.putLong(base + i, 0);
+        for (int p = 0; p < PLAYERS; p++)
+            b.putInt(base + moneyOffset + 4 * p, startingMoney);
+        b.put(base + turnOffset, (byte) (PLAYERS - 1));    // the turn passes to the next player first
+        for (int h = 0; h < layout.getHotelCount(); h++)
+            b.put(base + levelOffset + h, (byte) -1);
+    }
+
+    int getMoney(long g, int p) {
+        return chunk(g).getInt(base(g) + moneyOffset + 4 * p);
+    }
+
+    void setMoney(long g, int p, int money) {
+        chunk(g).putInt(base(g) + moneyOffset + 4 * p, money);
+    }
+
+    int getRound(long g) {
+        return chunk(g).getInt(base(g) + roundOffset);
+    }
+
+    void setRound(long g, int round) {
+        chunk(g).putInt(base(g) + roundOffset, round);
+    }
+
+    int getPosition(long g, int p) {
+        return chunk(g).getShort(base(g) + positionOffset + 2 * p);
+    }
+
+    void setPosition(long g, int p, int r) {
+        chunk(g).putShort(base(g) + positionOffset + 2 * p, (short) r);
+    }
+
+    int getTurn(long g) {
+        return chunk(g).get(base(g) + turnOffset);
+    }
+
+    void setTurn(long g, int p) {
+        chunk(g).put(base(g) + turnOffset, (byte) p);
+    }
+
+    /**
+     * Returns the winner of a game.
+     *
+     * @param g the index of the game
+     *
+     * @return the seat of the winner or -1 if the game is not over
+     */
+    public int getWinner(long g) {
+        return chunk(g).get(base(g) + winnerOffset) - 1;
+    }
+
+    void setWinner(long g, int p) {
+        chunk(g).put(base(g) + winnerOffset, (byte) (p + 1));
+    }
+
+    int getOwner(long g, int h) {
+        return chunk(g).get(base(g) + ownerOffset + h) - 1;
+    }
+
+    void setOwner(long g, int h, int p) {
+        chunk(g).put(base(g) + ownerOffset + h, (byte) (p + 1));
+    }
+
+    int getLevel(long g, int h) {
+        return chunk(g).get(base(g) + levelOffset + h);
+    }
+
+    void setLevel(long g, int h, int level) {
+        chunk(g).put(base(g) + levelOffset + h, (byte) level);
+    }
+
+    /**
+     * Returns the side of a tile on the ring its entrance is on.
+     *
+     * @return the side of the entrance or -1 if there is no entrance
+     */
+    int getEntrance(long g, int r) {
+        ByteBuffer b = chunk(g);
+        int base = base(g) + 8 * (r >>> 6);
+        long bit = 1L << r;     // shifts only use the low 6 bits
+        for (int side = 0; side < RingLayout.SIDES; side++)
+            if ((b.getLong(base + 8 * words * side) & bit) != 0)
+                return side;
+        return -1;
+    }
+
+    void setEntrance(long g, int r, int side) {
+        ByteBuffer b = chunk(g);
+        int offset = base(g) + 8 * words * side + 8 * (r >>> 6);
+        b.putLong(offset, b.getLong(offset) | (1L << r));
+    }
+
+    void clearEntrance(long g, int r, int side) {
+        ByteBuffer b = chunk(g);
+        int offset = base(g) + 8 * words * side + 8 * (r >>> 6);
+        b.putLong(offset, b.getLong(offset) & ~(1L << r));
+    }
+
+    private ByteBuffer chunk(long g) {
+        return chunks[(int) (g / CHUNK_GAMES)];
+    }
+
+    private int base(long g) {
+        return (int) (g % CHUNK_GAMES) * recordSize;
+    }
+}
@@ -0,0 +1,406 @@
+package hotel.sim;
+
+import hotel.model.BoardDefinition;
+import hotel.model.Game;
+import hotel.model.MoveGenerator;
+import hotel.model.Rules;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Simulates games under different rules, to see how the rules shape the
+ * games. Every player plays greedily: he takes every action available to him
+ * (in the order the MoveGenerator lists them), each once per round, and then
+ * passes. Games are played in batches, in parallel, until the 95% confidence
+ * intervals of the measures are tight enough or the number of games runs
+ * out. Game i of a run is seeded with a function of the run's seed and i, so
+ * runs are reproducible regardless of the number of threads. Besides the
+ * measures the stopping rule looks at, every game is recorded in GameStats,
+ * and, if an export directory is set, written as a row of a GameExport: each
+ * thread writes its own file, cell-c-t.hcol for the c-th run of the sweep.
+ * Games can also be recorded into an ArchiveWriter, shared by all the runs.
+ */
+public class RuleSweep implements AutoCloseable {
+
+    private static final double Z = 1.96;   // 95% confidence
+    static final int BATCH = 256;
+
+    private final BoardDefinition def;
+    private final int maxRounds;
+    private final int threads;
+    private final ExecutorService workers;
+    private final int maxHotelId;
+    private Path exportDir;
+    private ArchiveWriter archive;
+    private int cells;
+
+    /**
+     * The measures of the games played under a set of rules.
+     */
+    public static class Cell {
+
+        private final Rules rules;
+        private final int games;
+        private final double meanRounds, roundsError;
+        private final double firstSeatWins, firstSeatWinsError;
+        private final double cutShort;
+        private final GameStats stats;
+
+        Cell(Rules rules, int games, double meanRounds, double roundsError,
+                double firstSeatWins, double firstSeatWinsError, double cutShort, GameStats stats) {
+            this.rules = rules;
+            this.games = games;
+            this.meanRounds = meanRounds;
+            this.roundsError = roundsError;
+            this.firstSeatWins = firstSeatWins;
+            this.firstSeatWinsError = firstSeatWinsError;
+            this.cutShort = cutShort;
+            this.stats = stats;
+        }
+
+        /**
+         * Returns the rules the games were played by.
+         *
+         * @return the rules the games were played by
+         */
+        public Rules getRules() {
+            return rules;
+        }
+
+        /**
+         * Returns the number of games played.
+         *
+         * @return the number of games played
+         */
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Returns the mean length of the games, in rounds (games cut short
+         * count as long as the limit).
+         *
+         * @return the mean length of the games
+         */
+        public double getMeanRounds() {
+            return meanRounds;
+        }
+
+        /**
+         * Returns the half-width of the 95% confidence interval of the mean
+         * length of the games.
+         *
+         * @return the error of the mean length of the games
+         */
+        public double getRoundsError() {
+            return roundsError;
+        }
+
+        /**
+         * Returns the share of the games won by the player who plays first.
+         *
+         * @return the share of the games won by the first player
+         */
+        public double getFirstSeatWins() {
+            return firstSeatWins;
+        }
+
+        /**
+         * Returns the half-width of the 95% confidence interval of the share
+         * of the games won by the player who plays first.
+         *
+         * @return the error of the share of the games won by the first player
+         */
+        public double getFirstSeatWinsError() {
+            return firstSeatWinsError;
+        }
+
+        /**
+         * Returns the share of the games cut short.
+         *
+         * @return the share of the games cut short
+         */
+        public double getCutShort() {
+            return cutShort;
+        }
+
+        /**
+         * Returns the statistics of the games played.
+         *
+         * @return the statistics of the games played
+         */
+        public GameStats getStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * Constructs a sweep on the board specified.
+     *
+     * @param def the board to play on
+     * @param maxRounds the number of rounds after which a game is cut short
+     * @param threads the number of threads to play with
+     */
+    public RuleSweep(BoardDefinition def, int maxRounds, int threads) {
+        this.def = def;
+        this.maxRounds = maxRounds;
+        maxHotelId = def.getHotelCards().keySet().stream().mapToInt(hid -> hid).max().orElse(0);
+        this.threads = Math.max(1, threads);
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "sweep-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets the directory to export the games of the following runs to.
+     *
+     * @param dir the directory, or null to stop exporting
+     */
+    public void setExport(Path dir) {
+        exportDir = dir;
+    }
+
+    /**
+     * Sets the archive to record the games of the following runs into.
+     *
+     * @param archive the archive, or null to stop recording
+     */
+    public void setArchive(ArchiveWriter archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Plays games under the rules specified until the half-width of the 95%
+     * confidence interval of the mean game length is at most tolerance times
+     * the mean and that of the first player's share of wins is at most
+     * tolerance, or until maxGames games are played.
+     *
+     * @param rules the rules to play by
+     * @param tolerance the precision to stop at
+     * @param minGames the number of games to play at least
+     * @param maxGames the number of games to play at most
+     * @param seed the seed of the run
+     *
+     * @return the measures of the games played
+     *
+     * @throws IllegalArgumentException if maxGames is less than 1 or than
+     * minGames
+     * @throws UncheckedIOException if the games can't be exported or archived
+     */
+    public Cell run(Rules rules, double tolerance, int minGames, int maxGames, long seed) {
+        checkGames(minGames, maxGames);
+        GameExport[] exports = new GameExport[threads];
+        int cell = cells++;
+        IOException failure = null;
+        Cell c = null;
+        try {
+            if (exportDir != null)
+                for (int t = 0; t < threads; t++)
+                    exports[t] = new GameExport(exportDir.resolve("cell-" + cell + "-" + t + ".hcol"), def.getName());
+            c = run(rules, tolerance, minGames, maxGames, seed, exports);
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (GameExport e : exports)
+                if (e != null)
+                    try {
+                        e.close();
+                    } catch (IOException ce) {
+                        if (failure == null)
+                            failure = ce;
+                        else
+                            failure.addSuppressed(ce);
+                    }
+        }
+        if (failure != null)
+            throw new UncheckedIOException(failure);
+        return c;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    /**
+     * Returns empty statistics for the games of this sweep.
+     */
+    GameStats newStats() {
+        return new GameStats(maxHotelId);
+    }
+
+    private Cell run(Rules rules, double tolerance, int minGames, int maxGames, long seed, GameExport[] exports)
+            throws IOException {
+        long[] totals = new long[5];
+        GameStats stats = newStats();
+        GameStats.Recorder[] recorders = recorders(stats);
+        while (totals[0] < maxGames) {
+            long[] r = play(rules, seed, totals[0], Math.min(totals[0] + BATCH, maxGames), recorders, exports);
+            if (r == null)
+                break;  // interrupted
+            for (int i = 0; i < totals.length; i++)
+                totals[i] += r[i];
+            if (isPrecise(totals, tolerance, minGames))
+                break;
+        }
+        return cellOf(rules, totals, stats);
+    }
+
+    /**
+     * Plays the games of a run with index from to to (exclusive) in
+     * parallel, as run does, and returns their totals: the number of games,
+     * the sum of their rounds and of their squared rounds, the number won by
+     * the first seat and the number cut short. Totals of disjoint ranges add
+     * up, so the games of a run can be played in pieces anywhere (see
+     * SweepWorker) and the totals merged.
+     *
+     * @param rules the rules to play by
+     * @param seed the seed of the run
+     * @param from the index of the first game
+     * @param to the index after the last game
+     * @param stats the statistics to record the games into, with a new
+     * recorder per thread
+     *
+     * @return the totals of the games, or null if interrupted
+     */
+    public long[] play(Rules rules, long seed, long from, long to, GameStats stats) {
+        try {
+            return play(rules, seed, from, to, recorders(stats), new GameExport[threads]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // not exporting
+        }
+    }
+
+    /**
+     * Returns a recorder per thread, the same for every batch of a run so
+     * that the statistics take the same memory however many games are
+     * played.
+     */
+    private GameStats.Recorder[] recorders(GameStats stats) {
+        GameStats.Recorder[] recorders = new GameStats.Recorder[threads];
+        for (int t = 0; t < threads; t++)
+            recorders[t] = stats.newRecorder();
+        return recorders;
+    }
+
+    private long[] play(Rules rules, long seed, long from, long to, GameStats.Recorder[] recorders,
+            GameExport[] exports) throws IOException {
+        IOException[] failure = new IOException[1];
+        long[][] results = new long[threads][];     // games, rounds, rounds^2, first seat wins, cut short
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int task = t;
+            long start = from + (to - from) * t / threads;
+            long end = from + (to - from) * (t + 1) / threads;
+            workers.execute(() -> {
+                try {
+                    results[task] = play(rules, seed, start, end, recorders[task], exports[task]);
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    results[task] = new long[5];
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException _e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        synchronized (failure) {
+            if (failure[0] != null)
+                throw failure[0];
+        }
+        long[] totals = new long[5];
+        for (long[] r : results)
+            for (int i = 0; i < totals.length; i++)
+                totals[i] += r[i];
+        return totals;
+    }
+
+    /**
+     * Checks the numbers of games of a run, as the measures of no games are
+     * undefined.
+     */
+    static void checkGames(int minGames, int maxGames) {
+        if (maxGames < 1)
+            throw new IllegalArgumentException("A run needs at least 1 game");
+        if (minGames > maxGames)
+            throw new IllegalArgumentException("More games at least (" + minGames + ") than at most (" + maxGames
+                    + ")");
+    }
+
+    /**
+     * Returns whether the totals of the games played meet the stopping rule
+     * of run.
+     */
+    static boolean isPrecise(long[] totals, double tolerance, int minGames) {
+        long n = totals[0];
+        double mean = (double) totals[1] / n;
+        double p = (double) totals[3] / n;
+        return n >= minGames && roundsError(n, totals[1], totals[2]) <= tolerance * mean
+                && Z * Math.sqrt(p * (1 - p) / n) <= tolerance;
+    }
+
+    static Cell cellOf(Rules rules, long[] totals, GameStats stats) {
+        long n = totals[0];
+        double p = (double) totals[3] / n;
+        return new Cell(rules, (int) n, (double) totals[1] / n, roundsError(n, totals[1], totals[2]),
+                p, Z * Math.sqrt(p * (1 - p) / n), (double) totals[4] / n, stats);
+    }
+
+    private static double roundsError(long n, double sum, double sumSquares) {
+        double mean = sum / n;
+        double variance = Math.max(0, (sumSquares - n * mean * mean) / Math.max(1, n - 1));
+        return Z * Math.sqrt(variance / n);
+    }
+
+    private long[] play(Rules rules, long seed, long from, long to, GameStats.Recorder recorder,
+            GameExport export) throws IOException {
+        long[] r = new long[5];
+        int[] moves = null;
+        ArchiveWriter.Recorder archived = (archive != null) ? archive.newRecorder(recorder, def.getName()) : null;
+        for (long i = from; i < to; i++) {
+            recorder.startGame();
+            if (archived != null)
+                archived.startGame();
+            Game g = new Game((archived != null) ? archived : recorder, def, rules, seed ^ (i * 0x9E3779B97F4A7C15L));
+            if (moves == null)
+                moves = new int[g.getMoveGenerator().getMaxMoves()];
+            g.playRound();
+            int first = g.getCurrentPlayerId();
+            int rounds = 1;
+            while (g.getWinnerId() == 0 && rounds < maxRounds) {
+                int n = g.getMoveGenerator().generate(moves);
+                for (int k = 0; k < n; k++)
+                    if (moves[k] != MoveGenerator.PASS)
+                        g.play(moves[k]);
+                g.playRound();
+                rounds++;
+            }
+            recorder.endGame(g);
+            if (export != null)
+                export.write(g, (int) i, rounds);
+            if (archived != null)
+                archived.endGame(g);
+            r[0]++;
+            r[1] += rounds;
+            r[2] += (long) rounds * rounds;
+            if (g.getWinnerId() == first)
+                r[3]++;
+            if (g.getWinnerId() == 0)
+                r[4]++;
+        }
+        return r;
+    }
+}
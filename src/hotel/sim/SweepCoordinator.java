@@ -0,0 +1,404 @@
+package hotel.sim;
+
+import hotel.model.Rules;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs a sweep on SweepWorkers in other processes (or machines) instead of
+ * threads. The sweep is a list of jobs, each a cell of the sweep on a board;
+ * the games of a job are handed out to the workers connected in chunks of
+ * CHUNK games, WINDOW chunks per worker at a time, and the totals and
+ * statistics the workers send back (see RuleSweep.play) are merged in the
+ * order of the games, checking the stopping rule of RuleSweep.run every RuleSweep.BATCH
+ * games. A job is thus played exactly as RuleSweep.run plays it, with the
+ * same games and the same result, however many workers play it and whatever
+ * happens to them: when a worker fails (its connection breaks, or it sends
+ * nothing for the timeout set), the games it was given but didn't report
+ * are handed out again. Workers may connect and leave at any time.
+ */
+public class SweepCoordinator implements AutoCloseable {
+
+    static final int CHUNK = 8 * RuleSweep.BATCH;
+    static final int WINDOW = 2;
+
+    private final ServerSocket socket;
+    private final Thread acceptor;
+    private final Object lock = new Object();
+    private final List<JobState> jobs = new ArrayList<>();
+    private final Deque<Chunk> orphans = new ArrayDeque<>();   // chunks whose worker failed
+    private int workers;
+    private int timeoutMillis = 600_000;
+    private volatile boolean closed;
+
+    /**
+     * A cell of a sweep: the games to play on a board under a set of rules.
+     */
+    public static class Job {
+
+        private final String board;
+        private final Rules rules;
+        private final int maxRounds;
+        private final double tolerance;
+        private final int minGames, maxGames;
+        private final long seed;
+
+        /**
+         * Constructs a job, with the arguments of RuleSweep and
+         * RuleSweep.run.
+         *
+         * @param board the board, as a directory or the name of a board of
+         * the default board source, as the workers see it
+         * @param rules the rules to play by
+         * @param maxRounds the number of rounds after which a game is cut
+         * short
+         * @param tolerance the precision to stop at
+         * @param minGames the number of games to play at least
+         * @param maxGames the number of games to play at most
+         * @param seed the seed of the run
+         *
+         * @throws IllegalArgumentException if maxGames is less than 1 or
+         * than minGames
+         */
+        public Job(String board, Rules rules, int maxRounds, double tolerance, int minGames, int maxGames,
+                long seed) {
+            RuleSweep.checkGames(minGames, maxGames);
+            this.board = board;
+            this.rules = rules;
+            this.maxRounds = maxRounds;
+            this.tolerance = tolerance;
+            this.minGames = minGames;
+            this.maxGames = maxGames;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * A job being played.
+     */
+    private static final class JobState {
+
+        final int id;
+        final Job job;
+        long issued;                // the games before this have been handed out
+        long merged;                // the games before this have been merged into totals
+        final long[] totals = new long[5];
+        GameStats stats;            // null until a slice is merged
+        final TreeMap<Long, Slice> reported = new TreeMap<>();     // slices not merged yet, by first game
+        boolean done;
+        boolean failed;             // the coordinator was closed first
+
+        JobState(int id, Job job) {
+            this.id = id;
+            this.job = job;
+        }
+    }
+
+    /**
+     * The totals and statistics of a slice of games reported by a worker.
+     */
+    private static final class Slice {
+
+        final long[] totals;
+        final GameStats stats;
+
+        Slice(long[] totals, GameStats stats) {
+            this.totals = totals;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Games of a job handed out to a worker.
+     */
+    private static final class Chunk {
+
+        final JobState job;
+        long from;      // the games before this have been reported
+        final long to;
+
+        Chunk(JobState job, long from, long to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Starts accepting workers.
+     *
+     * @param bind the address to listen on, such as the loopback address for
+     * workers on this machine only
+     * @param port the port to listen on, 0 for any free port
+     *
+     * @throws IOException if the port can't be listened on
+     */
+    public SweepCoordinator(InetAddress bind, int port) throws IOException {
+        socket = new ServerSocket(port, 64, bind);
+        acceptor = new Thread(this::accept, "sweep-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the coordinator listens on.
+     *
+     * @return the port the coordinator listens on
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of workers connected.
+     *
+     * @return the number of workers connected
+     */
+    public int getWorkers() {
+        synchronized (lock) {
+            return workers;
+        }
+    }
+
+    /**
+     * Sets how long a worker may send nothing while it has games to play
+     * before it is taken for dead (10 minutes by default).
+     *
+     * @param millis the timeout
+     */
+    public void setTimeout(int millis) {
+        timeoutMillis = millis;
+    }
+
+    /**
+     * Plays the jobs specified on the workers connected (and those that
+     * connect while they are played), waiting for workers if there are none.
+     *
+     * @param sweep the jobs
+     *
+     * @return the measures and statistics of the games played for each
+     * job, in order
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws CancellationException if the coordinator is closed before the
+     * jobs are done
+     */
+    public List<RuleSweep.Cell> run(List<Job> sweep) throws InterruptedException {
+        List<JobState> states = new ArrayList<>();
+        synchronized (lock) {
+            for (Job j : sweep) {
+                JobState s = new JobState(jobs.size(), j);
+                s.done = closed;
+                s.failed = closed;
+                jobs.add(s);
+                states.add(s);
+            }
+            lock.notifyAll();
+            for (JobState s : states) {
+                while (!s.done)
+                    lock.wait();
+                if (s.failed)
+                    throw new CancellationException("Coordinator closed");
+            }
+        }
+        List<RuleSweep.Cell> cells = new ArrayList<>();
+        for (JobState s : states)
+            cells.add(RuleSweep.cellOf(s.job.rules, s.totals, s.stats));
+        return cells;
+    }
+
+    /**
+     * Stops the workers and stops accepting more. The jobs not done yet
+     * fail: run throws instead of waiting for them.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (JobState j : jobs)
+                if (!j.done) {
+                    j.done = true;
+                    j.failed = true;
+                    j.reported.clear();
+                }
+            lock.notifyAll();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            try {
+                Socket s = socket.accept();
+                Thread t = new Thread(() -> serve(s), "sweep-connection");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                return;     // closed
+            }
+        }
+    }
+
+    /**
+     * Keeps a worker busy until it fails or the coordinator is closed.
+     */
+    private void serve(Socket s) {
+        List<Chunk> given = new ArrayList<>();
+        Set<Integer> known = new HashSet<>();     // the jobs the worker has been told about
+        boolean counted = false;
+        try (s) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(timeoutMillis);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            if (in.readInt() != SweepWorker.MAGIC)
+                return;
+            in.readInt();   // its threads
+            synchronized (lock) {
+                workers++;
+                counted = true;
+            }
+            List<Chunk> send = new ArrayList<>();
+            while (true) {
+                synchronized (lock) {
+                    while (true) {
+                        given.removeIf(c -> c.job.done);
+                        while (given.size() < WINDOW) {
+                            Chunk c = next();
+                            if (c == null)
+                                break;
+                            given.add(c);
+                            send.add(c);
+                        }
+                        if (closed || !given.isEmpty())
+                            break;
+                        lock.wait();
+                    }
+                }
+                if (given.isEmpty()) {  // closed
+                    out.writeByte(SweepWorker.STOP);
+                    out.flush();
+                    return;
+                }
+                for (Chunk c : send) {
+                    if (known.add(c.job.id)) {
+                        Job j = c.job.job;
+                        out.writeByte(SweepWorker.JOB);
+                        out.writeInt(c.job.id);
+                        out.writeUTF(j.board);
+                        out.writeInt(j.maxRounds);
+                        out.writeLong(j.seed);
+                        SweepWorker.writeRules(out, j.rules);
+                    }
+                    out.writeByte(SweepWorker.CHUNK);
+                    out.writeInt(c.job.id);
+                    out.writeLong(c.from);
+                    out.writeLong(c.to);
+                }
+                send.clear();
+                out.flush();
+
+                if (in.readByte() != SweepWorker.RESULT)
+                    throw new IOException("unexpected message");
+                int id = in.readInt();
+                long from = in.readLong();
+                long to = in.readLong();
+                long[] totals = new long[5];
+                for (int i = 0; i < totals.length; i++)
+                    totals[i] = in.readLong();
+                GameStats stats = GameStats.read(in);
+                synchronized (lock) {
+                    for (Chunk c : given)
+                        if (c.job.id == id && c.from == from) {
+                            c.from = to;
+                            report(c.job, from, new Slice(totals, stats));
+                            break;
+                        }
+                    given.removeIf(c -> c.from >= c.to);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed)
+                System.err.println("Lost a worker: " + e);
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            synchronized (lock) {
+                for (Chunk c : given)
+                    if (!c.job.done && c.from < c.to)
+                        orphans.add(c);
+                if (counted)
+                    workers--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the next games to hand out, if any: first those of failed
+     * workers, then those of the first job that is not done, running at most
+     * a few chunks per worker ahead of the games merged, as the games past
+     * the point a job turns out precise enough are wasted.
+     */
+    private Chunk next() {
+        while (!orphans.isEmpty()) {
+            Chunk c = orphans.poll();
+            if (!c.job.done)
+                return c;
+        }
+        long ahead = (long) Math.max(1, workers) * WINDOW * CHUNK;
+        for (JobState j : jobs) {
+            if (j.done || j.issued >= j.job.maxGames || j.issued - j.merged >= ahead)
+                continue;
+            long from = j.issued;
+            j.issued = Math.min(from + CHUNK, j.job.maxGames);
+            return new Chunk(j, from, j.issued);
+        }
+        return null;
+    }
+
+    /**
+     * Merges the totals and statistics of a slice of games, and those after
+     * it that were waiting for it, stopping the job as RuleSweep.run would.
+     */
+    private void report(JobState j, long from, Slice slice) {
+        if (j.done)
+            return;
+        j.reported.put(from, slice);
+        while (!j.reported.isEmpty() && j.reported.firstKey() == j.merged) {
+            Slice sl = j.reported.pollFirstEntry().getValue();
+            long[] t = sl.totals;
+            for (int i = 0; i < t.length; i++)
+                j.totals[i] += t[i];
+            if (j.stats == null)
+                j.stats = sl.stats;
+            else
+                j.stats.add(sl.stats);
+            j.merged += t[0];
+            if (j.merged >= j.job.maxGames || RuleSweep.isPrecise(j.totals, j.job.tolerance, j.job.minGames)) {
+                j.done = true;
+                j.reported.clear();
+                break;
+            }
+        }
+        lock.notifyAll();
+    }
+}
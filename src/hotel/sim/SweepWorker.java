@@ -0,0 +1,151 @@
+package hotel.sim;
+
+import hotel.model.BoardDefinition;
+import hotel.model.BoardSource;
+import hotel.model.Rules;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plays the games a SweepCoordinator hands out, in a process of its own,
+ * possibly on another machine. A worker is given the jobs of a sweep (a
+ * board, rules, a seed and a round limit each) and chunks of their games,
+ * plays each chunk with a RuleSweep of its own, and sends the totals and
+ * statistics back a slice of RuleSweep.BATCH games at a time, as they are
+ * played, so that the coordinator can stop a job as soon as it is precise
+ * enough and loses only the slice being played if the worker dies. Boards are read by the worker:
+ * a board is a board directory or the name of a board of the default board
+ * source, so workers must have the boards the coordinator names.
+ */
+public class SweepWorker {
+
+    static final int MAGIC = 0x48535750;    // HSWP
+    static final byte JOB = 1, CHUNK = 2, STOP = 3, RESULT = 4;
+
+    private SweepWorker() {
+    }
+
+    /**
+     * A job as the worker plays it.
+     */
+    private static final class Job {
+
+        final RuleSweep sweep;
+        final Rules rules;
+        final long seed;
+
+        Job(RuleSweep sweep, Rules rules, long seed) {
+            this.sweep = sweep;
+            this.rules = rules;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Connects to a coordinator and plays the chunks it hands out until it
+     * stops the worker.
+     *
+     * @param host the host of the coordinator
+     * @param port the port of the coordinator
+     * @param threads the number of threads to play with
+     *
+     * @throws IOException if the coordinator can't be talked to, or a board
+     * can't be read
+     */
+    public static void work(String host, int port, int threads) throws IOException {
+        Map<Integer, Job> jobs = new HashMap<>();
+        Map<String, RuleSweep> sweeps = new HashMap<>();    // by board and round limit
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(threads);
+            out.flush();
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    return;     // the coordinator is gone
+                }
+                if (type == STOP)
+                    return;
+                if (type == JOB) {
+                    int id = in.readInt();
+                    String board = in.readUTF();
+                    int maxRounds = in.readInt();
+                    long seed = in.readLong();
+                    Rules rules = readRules(in);
+                    RuleSweep sweep = sweeps.get(board + "\0" + maxRounds);
+                    if (sweep == null) {
+                        sweep = new RuleSweep(readBoard(board), maxRounds, threads);
+                        sweeps.put(board + "\0" + maxRounds, sweep);
+                    }
+                    jobs.put(id, new Job(sweep, rules, seed));
+                } else if (type == CHUNK) {
+                    int id = in.readInt();
+                    long from = in.readLong();
+                    long to = in.readLong();
+                    Job job = jobs.get(id);
+                    if (job == null)
+                        throw new IOException("chunk of unknown job " + id);
+                    for (long slice = from; slice < to; slice += RuleSweep.BATCH) {
+                        long end = Math.min(slice + RuleSweep.BATCH, to);
+                        GameStats stats = job.sweep.newStats();
+                        long[] totals = job.sweep.play(job.rules, job.seed, slice, end, stats);
+                        if (totals == null)
+                            return;     // interrupted
+                        out.writeByte(RESULT);
+                        out.writeInt(id);
+                        out.writeLong(slice);
+                        out.writeLong(end);
+                        for (long t : totals)
+                            out.writeLong(t);
+                        stats.write(out);
+                        out.flush();
+                    }
+                } else {
+                    throw new IOException("unknown message " + type);
+                }
+            }
+        } finally {
+            for (RuleSweep s : sweeps.values())
+                s.close();
+        }
+    }
+
+    static void writeRules(DataOutputStream out, Rules r) throws IOException {
+        out.writeInt(r.getStartingMoney());
+        out.writeInt(r.getBankPayout());
+        out.writeInt(r.getNormalBuildChance());
+        out.writeInt(r.getRejectedBuildChance());
+        out.writeInt(r.getFreeBuildChance());
+        out.writeInt(r.getDoubleBuildChance());
+        out.writeDouble(r.getStayingMultiplier());
+    }
+
+    private static Rules readRules(DataInputStream in) throws IOException {
+        try {
+            return new Rules(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readDouble());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad rules: " + e.getMessage());
+        }
+    }
+
+    private static BoardDefinition readBoard(String board) throws IOException {
+        Path dir = Paths.get(board);
+        return Files.isDirectory(dir) ? BoardDefinition.parse(dir) : BoardSource.getDefault().get(board);
+    }
+}
@@ -0,0 +1,153 @@
+package hotel.sim;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size table of search results keyed by game state hashes (see
+ * Game.getHash), which any number of searching threads can share without
+ * locking. Each entry keeps a value, the depth it was searched to, the best
+ * move found (a MoveGenerator move) and the search it was stored in.
+ *
+ * Entries are two longs, the data and the key XORed with the data, written
+ * and read independently: a reader that sees the halves of two different
+ * writes finds that they don't decode to the key probed and treats it as a
+ * miss. Entries are grouped in buckets of two: the first slot keeps the
+ * deepest result and is only replaced by one at least as deep or when it is
+ * left over from an older search, the second slot always takes the newest.
+ */
+public class TranspositionTable {
+
+    /**
+     * Returned by probe when the table holds no entry for the key.
+     */
+    public static final long MISS = -1L;   // never valid: its value bits are not a canonical float
+
+    private static final int SLOTS = 2;
+    private static final int LONGS_PER_ENTRY = 2;
+
+    private final AtomicLongArray entries;
+    private final int bucketMask;
+    private volatile int generation = 1;    // 0 -> empty slot
+
+    /**
+     * Constructs a table taking up to the memory specified.
+     *
+     * @param megabytes the memory to use, in MBs
+     */
+    public TranspositionTable(int megabytes) {
+        long longs = (long) megabytes * 1024 * 1024 / Long.BYTES;
+        int buckets = Integer.highestOneBit((int) Math.min(longs / (SLOTS * LONGS_PER_ENTRY), 1 << 28));
+        entries = new AtomicLongArray(Math.max(buckets, 1) * SLOTS * LONGS_PER_ENTRY);
+        bucketMask = Math.max(buckets, 1) - 1;
+    }
+
+    /**
+     * Returns the number of entries this table can hold.
+     *
+     * @return the number of entries
+     */
+    public int getCapacity() {
+        return entries.length() / LONGS_PER_ENTRY;
+    }
+
+    /**
+     * Marks the start of a new search. Entries stored in earlier searches are
+     * still found, but they are the first to be replaced.
+     */
+    public void newSearch() {
+        int g = (generation + 1) & 0xFF;
+        generation = (g == 0) ? 1 : g;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++)
+            entries.set(i, 0);
+    }
+
+    /**
+     * Looks up the entry for the key specified.
+     *
+     * @param key the hash of the state
+     *
+     * @return the data of the entry (see valueOf, depthOf, moveOf) or MISS
+     */
+    public long probe(long key) {
+        int base = bucket(key);
+        for (int s = 0; s < SLOTS; s++) {
+            int i = base + s * LONGS_PER_ENTRY;
+            long data = entries.get(i + 1);
+            if (generationOf(data) != 0 && (entries.get(i) ^ data) == key)
+                return data;
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores a result for the key specified.
+     *
+     * @param key the hash of the state
+     * @param value the value of the state
+     * @param depth the depth the state was searched to (0 to 255)
+     * @param move the best move found or 0 (PASS) if there is none
+     */
+    public void store(long key, float value, int depth, int move) {
+        int g = generation;
+        long data = ((long) Float.floatToIntBits(value) << 32)
+                | ((long) (Math.min(Math.max(depth, 0), 0xFF)) << 24)
+                | (g << 16)
+                | (move & 0xFFFF);
+        int i = bucket(key);
+        long old = entries.get(i + 1);
+        boolean deepSlot = generationOf(old) != g
+                || depthOf(old) <= depthOf(data)
+                || (entries.get(i) ^ old) == key;
+        if (!deepSlot)
+            i += LONGS_PER_ENTRY;  // the always-replace slot
+        entries.set(i + 1, data);
+        entries.set(i, key ^ data);
+    }
+
+    /**
+     * Returns the value of an entry.
+     *
+     * @param data the data of the entry, as returned by probe
+     *
+     * @return the value of the entry
+     */
+    public static float valueOf(long data) {
+        return Float.intBitsToFloat((int) (data >>> 32));
+    }
+
+    /**
+     * Returns the depth of an entry.
+     *
+     * @param data the data of the entry, as returned by probe
+     *
+     * @return the depth of the entry
+     */
+    public static int depthOf(long data) {
+        return (int) (data >>> 24) & 0xFF;
+    }
+
+    /**
+     * Returns the best move of an entry.
+     *
+     * @param data the data of the entry, as returned by probe
+     *
+     * @return the best move of the entry
+     */
+    public static int moveOf(long data) {
+        return (int) data & 0xFFFF;
+    }
+
+    private static int generationOf(long data) {
+        return (int) (data >>> 16) & 0xFF;
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * SLOTS * LONGS_PER_ENTRY;
+    }
+}
@@ -0,0 +1,209 @@
+package hotel.sim;
+
+import hotel.model.BoardDefinition;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A batch of HotelEnv environments stepped together, split among worker
+ * threads. The observations, rewards and done flags of all the environments
+ * are written into buffers allocated once and reused by every call; an
+ * environment whose game is over is reset automatically, and its observation
+ * is the first one of the new game.
+ */
+public class VectorHotelEnv implements AutoCloseable {
+
+    private final HotelEnv[] envs;
+    private final int observationSize;
+    private final int[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final int[] winners;
+    private final int threads;
+    private final ExecutorService workers;
+    private int[] actions;
+
+    /**
+     * Constructs a batch of environments playing on the board specified.
+     *
+     * @param def the board to play on
+     * @param count the number of environments
+     * @param maxRounds the number of rounds after which a game is cut short
+     * @param threads the number of worker threads
+     */
+    public VectorHotelEnv(BoardDefinition def, int count, int maxRounds, int threads) {
+        envs = new HotelEnv[count];
+        for (int e = 0; e < count; e++)
+            envs[e] = new HotelEnv(def, maxRounds);
+        observationSize = envs[0].getObservationSize();
+        observations = new int[count * observationSize];
+        rewards = new float[count];
+        dones = new boolean[count];
+        winners = new int[count];
+        this.threads = Math.max(1, Math.min(threads, count));
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "env-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the number of environments.
+     *
+     * @return the number of environments
+     */
+    public int getCount() {
+        return envs.length;
+    }
+
+    /**
+     * Returns the number of values in the observation of each environment.
+     *
+     * @return the number of values in the observation of each environment
+     */
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    /**
+     * Returns the number of actions.
+     *
+     * @return the number of actions
+     */
+    public int getActionCount() {
+        return envs[0].getActionCount();
+    }
+
+    /**
+     * Returns the observations of all the environments, one after the other.
+     * The array is reused by every call to reset and stepBatch.
+     *
+     * @return the observations of all the environments
+     */
+    public int[] getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the rewards of the latest step of each environment. The array is
+     * reused by every call to stepBatch.
+     *
+     * @return the rewards of the latest step of each environment
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * Returns whether the game of each environment ended in the latest step.
+     * The array is reused by every call to stepBatch.
+     *
+     * @return whether the game of each environment ended in the latest step
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Returns the winner of the game of each environment that ended in the
+     * latest step (0 if it didn't end or it was cut short). The array is
+     * reused by every call to stepBatch.
+     *
+     * @return the winner of the game of each environment
+     */
+    public int[] getWinners() {
+        return winners;
+    }
+
+    /**
+     * Starts a new game in every environment.
+     *
+     * @throws IllegalStateException if an environment fails
+     */
+    public void reset() {
+        run(-1);
+    }
+
+    /**
+     * Performs an action in every environment.
+     *
+     * @param actions the action for each environment
+     *
+     * @throws IllegalStateException if an environment fails (such as with
+     * an action out of range), leaving the buffers partly written
+     */
+    public void stepBatch(int[] actions) {
+        this.actions = actions;
+        run(1);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    /**
+     * Resets (mode < 0) or steps every environment, returning once all the
+     * workers are done with the buffers, even if interrupted (the interrupt
+     * is kept), and failing with the first failure of a worker.
+     */
+    private void run(int mode) {
+        int count = envs.length;
+        Throwable[] failure = new Throwable[1];
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) count * t / threads);
+            int to = (int) ((long) count * (t + 1) / threads);
+            workers.execute(() -> {
+                try {
+                    for (int e = from; e < to; e++)
+                        if (mode < 0)
+                            resetOne(e);
+                        else
+                            stepOne(e);
+                } catch (RuntimeException | Error e) {
+                    synchronized (failure) {
+                        if (failure[0] == null)
+                            failure[0] = e;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        boolean interrupted = false;
+        while (true)
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException _e) {
+                interrupted = true;     // the workers are still writing the buffers
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        synchronized (failure) {
+            if (failure[0] != null)
+                throw new IllegalStateException("Environment failed", failure[0]);
+        }
+    }
+
+    private void resetOne(int e) {
+        envs[e].reset();
+        rewards[e] = 0;
+        dones[e] = false;
+        winners[e] = 0;
+        envs[e].observe(observations, e * observationSize);
+    }
+
+    private void stepOne(int e) {
+        HotelEnv env = envs[e];
+        rewards[e] = env.step(actions[e]);
+        dones[e] = env.isDone();
+        winners[e] = env.getGame().getWinnerId();
+        if (dones[e])
+            env.reset();
+        env.observe(observations, e * observationSize);
+    }
+}
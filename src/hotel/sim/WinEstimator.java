@@ -0,0 +1,153 @@
+package hotel.sim;
+
+import hotel.model.Game;
+import hotel.model.GameObserver;
+import hotel.model.MoveGenerator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Estimates the probability of each player to win a game, by playing random
+ * continuations (playouts) of its current state in background threads. Every
+ * call to estimate cancels the work for the previous one, so the estimates
+ * follow the game as it is played. The estimates are reported a few times
+ * while they converge, and a final time when the time budget runs out.
+ */
+public class WinEstimator implements AutoCloseable {
+
+    private static final GameObserver HEADLESS = new GameObserver() {
+    };
+    private static final int PLAYERS = 3;
+    private static final int MAX_ROUNDS = 500;      // playouts longer than this are cut short
+    private static final long REPORT_INTERVAL = 50_000_000;     // in ns
+
+    private final int threads;
+    private final long budget;      // in ns
+    private final ExecutorService workers;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Constructs an estimator.
+     *
+     * @param threads the number of threads to play with
+     * @param millis the time to spend on every estimate, in milliseconds
+     */
+    public WinEstimator(int threads, long millis) {
+        this.threads = Math.max(1, threads);
+        budget = millis * 1_000_000;
+        workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "estimator-worker");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);     // stay out of the way of the UI
+            return t;
+        });
+    }
+
+    /**
+     * Starts estimating the win probabilities of the players in the current
+     * state of the game specified, cancelling any estimate in progress. The
+     * game is forked in the background, so that a large game doesn't hold up
+     * the caller, while holding the lock of the game: a caller that goes on
+     * playing the game must hold its lock while it changes it. The fork is
+     * skipped if another estimate is started first.
+     *
+     * @param game the game
+     * @param listener receives the estimated win probability of each player,
+     * ordered by ascending player id, from a background thread
+     */
+    public void estimate(Game game, Consumer<double[]> listener) {
+        int g = generation.incrementAndGet();
+        workers.execute(() -> {
+            Game snapshot;
+            synchronized (game) {
+                if (generation.get() != g || game.getWinnerId() != 0)
+                    return;
+                snapshot = game.fork(HEADLESS);
+            }
+            play(g, snapshot, listener);
+        });
+    }
+
+    /**
+     * Plays out a snapshot on every thread until the time is up or the
+     * estimate is cancelled, reporting as it goes.
+     */
+    private void play(int g, Game snapshot, Consumer<double[]> listener) {
+        AtomicIntegerArray wins = new AtomicIntegerArray(PLAYERS);
+        AtomicInteger playouts = new AtomicInteger();
+        long deadline = System.nanoTime() + budget;
+        AtomicInteger running = new AtomicInteger(threads);
+        for (int t = 0; t < threads; t++) {
+            boolean reporter = t == 0;
+            workers.execute(() -> {
+                Game copy = snapshot.fork(HEADLESS);
+                int[] moves = new int[copy.getMoveGenerator().getMaxMoves()];
+                int start = copy.mark();
+                long nextReport = System.nanoTime() + REPORT_INTERVAL;
+                while (generation.get() == g) {
+                    wins.incrementAndGet(playout(copy, moves) - 1);
+                    playouts.incrementAndGet();
+                    copy.undo(start);
+                    long now = System.nanoTime();
+                    if (now >= deadline)
+                        break;
+                    if (reporter && now >= nextReport) {
+                        report(g, wins, playouts, listener);
+                        nextReport = now + REPORT_INTERVAL;
+                    }
+                }
+                if (running.decrementAndGet() == 0)
+                    report(g, wins, playouts, listener);    // the last one out reports the final estimate
+            });
+        }
+    }
+
+    /**
+     * Cancels the estimate in progress, if any.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        workers.shutdown();
+    }
+
+    private void report(int g, AtomicIntegerArray wins, AtomicInteger playouts, Consumer<double[]> listener) {
+        int n = playouts.get();
+        if (n == 0 || generation.get() != g)
+            return;
+        double[] p = new double[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++)
+            p[i] = (double) wins.get(i) / n;
+        listener.accept(p);
+    }
+
+    /**
+     * Plays random moves until the game is over and returns the winner. A
+     * game cut short is won by the richest player.
+     */
+    private static int playout(Game game, int[] moves) {
+        ThreadLocalRandom rng = ThreadLocalRandom.current();
+        for (int rounds = 0; rounds < MAX_ROUNDS && game.getWinnerId() == 0;) {
+            int n = game.getMoveGenerator().generate(moves);
+            int move = moves[rng.nextInt(n)];
+            game.play(move);
+            if (move == MoveGenerator.PASS)
+                rounds++;
+        }
+        if (game.getWinnerId() != 0)
+            return game.getWinnerId();
+        int richest = 1;
+        for (int p = 2; p <= PLAYERS; p++)
+            if (game.getPlayerMoney(p) > game.getPlayerMoney(richest))
+                richest = p;
+        return richest;
+    }
+}
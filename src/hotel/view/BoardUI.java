@@ -3,14 +3,13 @@ package hotel.view;
 import hotel.model.Board;
 import hotel.model.Game;
 import hotel.model.Hotel;
-import hotel.model.HotelTile;
 import hotel.model.PlayerTile;
-import hotel.model.Tile;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -27,6 +26,8 @@ class BoardUI extends javax.swing.JPanel {
         super.paintComponent(g);
 
         Game model = getFrame().getModel();
+        if (model == null)
+            return;     // the first game is still loading
         Board board = model.getBoard();
 
         // Determine size for each tile
@@ -36,16 +37,25 @@ class BoardUI extends javax.swing.JPanel {
         int width = getWidth();
         int tileSize = Math.min(height / rows, width / cols);
 
-        // Draw tiles
-        for (int i = 0; i < rows; i++)
-            for (int j = 0; j < cols; j++) {
-                Tile t = board.get(i, j);
+        // Draw tiles, from the compact layout of the board (only the ones in
+        // the clip, which matters on huge boards)
+        Rectangle clip = g.getClipBounds();
+        int firstRow = 0, lastRow = rows - 1, firstColumn = 0, lastColumn = cols - 1;
+        if (clip != null && tileSize > 0) {
+            firstRow = Math.max(0, clip.y / tileSize);
+            lastRow = Math.min(rows - 1, (clip.y + clip.height) / tileSize);
+            firstColumn = Math.max(0, clip.x / tileSize);
+            lastColumn = Math.min(cols - 1, (clip.x + clip.width) / tileSize);
+        }
+        for (int i = firstRow; i <= lastRow; i++)
+            for (int j = firstColumn; j <= lastColumn; j++) {
                 Graphics gCopy = g.create();
                 gCopy.translate(j * tileSize, i * tileSize);
-                if (t instanceof HotelTile)
-                    paintHotelTile((HotelTile) t, gCopy, tileSize);
+                PlayerTile.Type type = board.getType(i, j);
+                if (type == null)
+                    paintHotelTile(board.getHotel(i, j), gCopy, tileSize);
                 else
-                    paintPlayerTile((PlayerTile) t, gCopy, tileSize);
+                    paintPlayerTile(type, board.getEntrance(i, j), gCopy, tileSize);
             }
 
         // Draw players
@@ -70,8 +80,7 @@ class BoardUI extends javax.swing.JPanel {
         });
     }
 
-    private void paintHotelTile(HotelTile ht, Graphics g, int tileSize) {
-        Hotel h = ht.getHotel();
+    private void paintHotelTile(Hotel h, Graphics g, int tileSize) {
         int p = h.getOwnerId();
         g.setColor((p > 0) ? getFrame().getPlayerColor(h.getOwnerId()) : Color.GRAY);
         g.fillRect(0, 0, tileSize, tileSize);
@@ -85,10 +94,10 @@ class BoardUI extends javax.swing.JPanel {
         drawString(state, gCopy, 6 * tileSize / 10); // it would be nice for this to be right-justified
     }
 
-    private void paintPlayerTile(PlayerTile pt, Graphics g, int tileSize) {
+    private void paintPlayerTile(PlayerTile.Type type, PlayerTile.Entrance entrance, Graphics g, int tileSize) {
         String t = null;
         Color c = null;
-        switch (pt.getType()) {
+        switch (type) {
             case START:
                 t = "S";
                 c = Color.CYAN;
@@ -123,7 +132,7 @@ class BoardUI extends javax.swing.JPanel {
         int entranceY = -1;
         int entranceHeight = -1;
         int entranceWidth = -1;
-        switch (pt.getEntrance()) {
+        switch (entrance) {
             case EAST:
                 entranceX = 9 * tileSize / 10;
                 entranceY = 4 * tileSize / 10;
@@ -1,7 +1,11 @@
 package hotel.view;
 
+import hotel.model.BoardFormatException;
+import hotel.model.BoardSource;
 import hotel.model.Game;
+import hotel.model.GameObserver;
 import hotel.model.Hotel;
+import hotel.sim.WinEstimator;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
@@ -10,21 +14,27 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.font.TextAttribute;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 
 @SuppressWarnings("serial")
-public class GameUI extends javax.swing.JFrame {
+public class GameUI extends javax.swing.JFrame implements GameObserver {
 
-    /**
-     * NOTE: it would be better to implement the observer pattern (this as the
-     * observer, Game as the observable, either directly or using JavaBeans.
-     */
-    private Game model;
+    private Game model;     // null until the first game is loaded
+    private SwingWorker<Game, Void> loader;   // the new game being set up, if any
     private final Timer timer;
     private final Color[] playerColors = {Color.BLUE, Color.RED, Color.GREEN};
+    private final int[] playerMoney = new int[3];
+    private final String[] winChances = {"", "", ""};
+    private final WinEstimator estimator = new WinEstimator(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 200);
+    private volatile int estimates;     // to drop the results of stale estimates
 
     private class timerActionListener implements ActionListener {
 
@@ -42,16 +52,13 @@ public class GameUI extends javax.swing.JFrame {
      *
      */
     public GameUI() {
-        javax.swing.SwingUtilities.invokeLater(() -> {
-            initComponents();
-            setLocationRelativeTo(null);  // center window on screen
-        });
-        model = new Game(this);
         timer = new Timer(60 * 1000, new timerActionListener());
         timer.setInitialDelay(0);  // fire the first event immediately to initialize the time display
-        timer.start();
         javax.swing.SwingUtilities.invokeLater(() -> {
+            initComponents();
+            setLocationRelativeTo(null);  // center window on screen
             setVisible(true);   // move to main?
+            startGame();
         });
     }
 
@@ -311,18 +318,29 @@ public class GameUI extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void nextRoundButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_nextRoundButtonActionPerformed
-        model.playRound();
+        synchronized (model) {  // the estimator forks it in the background
+            model.playRound();
+        }
+        estimateWinChances();
     }//GEN-LAST:event_nextRoundButtonActionPerformed
 
     private void reqMoneyButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_reqMoneyButtonActionPerformed
-        model.requestMoney();
+        synchronized (model) {
+            model.requestMoney();
+        }
+        estimateWinChances();
     }//GEN-LAST:event_reqMoneyButtonActionPerformed
 
     private void buyEntranceButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_buyEntranceButtonActionPerformed
         String s = JOptionPane.showInputDialog(this, "Enter the ID of the hotel to add an entrance to", "Enter hotel ID", JOptionPane.QUESTION_MESSAGE);
         try {
             int hid = Integer.parseInt(s);
-            if (model.buyEntrance(hid)) {
+            boolean done;
+            synchronized (model) {
+                done = model.buyEntrance(hid);
+            }
+            if (done) {
+                estimateWinChances();
                 board.repaint();
                 JOptionPane.showMessageDialog(this, "The request was satisfied", "Success", JOptionPane.INFORMATION_MESSAGE);
             } else
@@ -336,7 +354,12 @@ public class GameUI extends javax.swing.JFrame {
         String s = JOptionPane.showInputDialog(this, "Enter the ID of the hotel to buy", "Enter hotel ID", JOptionPane.QUESTION_MESSAGE);
         try {
             int hid = Integer.parseInt(s);
-            if (model.buyHotel(hid)) {
+            boolean done;
+            synchronized (model) {
+                done = model.buyHotel(hid);
+            }
+            if (done) {
+                estimateWinChances();
                 board.repaint();
                 JOptionPane.showMessageDialog(this, "The request was satisfied", "Success", JOptionPane.INFORMATION_MESSAGE);
             } else
@@ -350,7 +373,12 @@ public class GameUI extends javax.swing.JFrame {
         String s = JOptionPane.showInputDialog(this, "Enter the ID of the hotel to build", "Enter hotel ID", JOptionPane.QUESTION_MESSAGE);
         try {
             int hid = Integer.parseInt(s);
-            if (model.requestBuilding(hid)) {
+            boolean done;
+            synchronized (model) {
+                done = model.requestBuilding(hid);
+            }
+            if (done) {
+                estimateWinChances();
                 board.repaint();
                 JOptionPane.showMessageDialog(this, "The request was satisfied", "Success", JOptionPane.INFORMATION_MESSAGE);
             } else
@@ -361,14 +389,7 @@ public class GameUI extends javax.swing.JFrame {
     }//GEN-LAST:event_reqBuildingButtonActionPerformed
 
     private void startMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_startMenuItemActionPerformed
-        setInteractivityEnabled(true);  // this should happen before the new model is created, because the model may need to override (disable buttons)
-        diceLabel.setText("");
-        model = new Game(this);
-        board.repaint();
-        timer.stop();
-        timer.removeActionListener(timer.getActionListeners()[0]);
-        timer.addActionListener(new timerActionListener());
-        timer.restart();
+        startGame();
     }//GEN-LAST:event_startMenuItemActionPerformed
 
     private void stopMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_stopMenuItemActionPerformed
@@ -452,8 +473,164 @@ public class GameUI extends javax.swing.JFrame {
 
     }
 
+    /**
+     * Passes the notifications of a game on to this window, holding back
+     * those made while the game is set up in the background until it is
+     * shown, so that they apply after the window is reset for it (and not at
+     * all if the game is dropped).
+     */
+    private final class DeferredView implements GameObserver {
+
+        private List<Runnable> held = new ArrayList<>();    // null once shown
+
+        private synchronized void pass(Runnable r) {
+            if (held != null)
+                held.add(r);
+            else
+                r.run();
+        }
+
+        synchronized void show() {
+            for (Runnable r : held)
+                r.run();
+            held = null;
+        }
+
+        @Override
+        public void setPlayerMoney(int p, int money) {
+            pass(() -> GameUI.this.setPlayerMoney(p, money));
+        }
+
+        @Override
+        public void setPlayerTurns(int[] turns) {
+            pass(() -> GameUI.this.setPlayerTurns(turns));
+        }
+
+        @Override
+        public void setCurrentPlayer(int p) {
+            pass(() -> GameUI.this.setCurrentPlayer(p));
+        }
+
+        @Override
+        public void setPlayerMoved() {
+            pass(GameUI.this::setPlayerMoved);
+        }
+
+        @Override
+        public void setPlayerBankrupt(int p) {
+            pass(() -> GameUI.this.setPlayerBankrupt(p));
+        }
+
+        @Override
+        public void setAvailableHotels(int available) {
+            pass(() -> GameUI.this.setAvailableHotels(available));
+        }
+
+        @Override
+        public void setDiceResult(int dice) {
+            pass(() -> GameUI.this.setDiceResult(dice));
+        }
+
+        @Override
+        public void setRequestMoneyEnabled(boolean e) {
+            pass(() -> GameUI.this.setRequestMoneyEnabled(e));
+        }
+
+        @Override
+        public void setBuyHotelEnabled(boolean e) {
+            pass(() -> GameUI.this.setBuyHotelEnabled(e));
+        }
+
+        @Override
+        public void setRequestBuildingEnabled(boolean e) {
+            pass(() -> GameUI.this.setRequestBuildingEnabled(e));
+        }
+
+        @Override
+        public void setBuyEntranceEnabled(boolean e) {
+            pass(() -> GameUI.this.setBuyEntranceEnabled(e));
+        }
+
+        @Override
+        public void setStayPaid(int p, int hid, int cost) {
+            pass(() -> GameUI.this.setStayPaid(p, hid, cost));
+        }
+
+        @Override
+        public void setHotelBought(int p, int hid, int cost) {
+            pass(() -> GameUI.this.setHotelBought(p, hid, cost));
+        }
+
+        @Override
+        public void setWinner(int p) {
+            pass(() -> GameUI.this.setWinner(p));
+        }
+    }
+
+    /**
+     * Starts a new game on a random board. The board is read (the first time
+     * it is played, or after it changed) and the game set up in the
+     * background while the window shows that it is loading, and the new game
+     * replaces the current one only once it is ready. Stop drops the game
+     * being set up.
+     */
+    private void startGame() {
+        stop();
+        diceLabel.setText("Loading board...");
+        javax.swing.SwingUtilities.invokeLater(() -> stopMenuItem.setEnabled(true));  // after stop disables it
+        DeferredView view = new DeferredView();
+        loader = new SwingWorker<Game, Void>() {
+            @Override
+            protected Game doInBackground() throws IOException {
+                return new Game(view, BoardSource.getDefault().random());
+            }
+
+            @Override
+            protected void done() {
+                if (loader != this)
+                    return; // stopped, or superseded by a newer start
+                loader = null;
+                Game game;
+                try {
+                    game = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+                    diceLabel.setText("");
+                    JOptionPane.showMessageDialog(GameUI.this, (cause instanceof BoardFormatException)
+                            ? "Corrupted board: " + cause.getMessage() : cause.getMessage(),
+                            "Can't load a board", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                setInteractivityEnabled(true);  // this should happen before the new model's notifications, because the model may need to override (disable buttons)
+                diceLabel.setText("");
+                model = game;
+                view.show();
+                estimateWinChances();
+                board.repaint();
+                timer.stop();
+                timer.removeActionListener(timer.getActionListeners()[0]);
+                timer.addActionListener(new timerActionListener());
+                timer.restart();
+            }
+        };
+        loader.execute();
+    }
+
     private void stop() {
+        if (loader != null) {
+            loader.cancel(false);   // an interrupt would close the channels of a zipped board source; done() drops the game
+            loader = null;
+            diceLabel.setText("");
+        }
         timer.stop();
+        estimator.cancel();
+        estimates++;
+        javax.swing.SwingUtilities.invokeLater(() -> {
+            for (int p = 1; p <= winChances.length; p++) {
+                winChances[p - 1] = "";
+                updatePlayerLabel(p);
+            }
+        });
         setInteractivityEnabled(false);
     }
 
@@ -469,6 +646,26 @@ public class GameUI extends javax.swing.JFrame {
         return null;
     }
 
+    /**
+     * Starts estimating the players' chances to win from the current state
+     * of the game in the background, dropping any estimate in progress.
+     */
+    private void estimateWinChances() {
+        int id = ++estimates;
+        estimator.estimate(model, chances -> javax.swing.SwingUtilities.invokeLater(() -> {
+            if (id != estimates)
+                return; // the game moved on since
+            for (int p = 1; p <= chances.length; p++) {
+                winChances[p - 1] = String.format(" (%.0f%%)", 100 * chances[p - 1]);
+                updatePlayerLabel(p);
+            }
+        }));
+    }
+
+    private void updatePlayerLabel(int p) {
+        getPlayerLabel(p).setText("Player " + p + ": " + playerMoney[p - 1] + winChances[p - 1]);
+    }
+
     Color getPlayerColor(int p) {
         return playerColors[p - 1];
     }
@@ -482,12 +679,13 @@ public class GameUI extends javax.swing.JFrame {
      * @param p
      * @param money
      */
+    @Override
     public void setPlayerMoney(int p, int money) {
-        JLabel pl = getPlayerLabel(p);
-        if (pl == null)
+        if (getPlayerLabel(p) == null)
             return;
         javax.swing.SwingUtilities.invokeLater(() -> {
-            pl.setText("Player " + p + ": " + money);
+            playerMoney[p - 1] = money;
+            updatePlayerLabel(p);
         });
     }
 
@@ -495,6 +693,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param turns
      */
+    @Override
     public void setPlayerTurns(int[] turns) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             StringBuilder sb = new StringBuilder();
@@ -508,6 +707,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param p
      */
+    @Override
     public void setCurrentPlayer(int p) {
         // TODO: why don't bankrupt players stay strikethrough?
         javax.swing.SwingUtilities.invokeLater(() -> {
@@ -526,6 +726,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      *
      */
+    @Override
     public void setPlayerMoved() {
         javax.swing.SwingUtilities.invokeLater(board::repaint);
     }
@@ -534,6 +735,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param p
      */
+    @Override
     public void setPlayerBankrupt(int p) {
         JLabel pl = getPlayerLabel(p);
         if (pl == null)
@@ -549,6 +751,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param available
      */
+    @Override
     public void setAvailableHotels(int available) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             availableHotelsLabel.setText("Available Hotels: " + available);
@@ -559,6 +762,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param dice
      */
+    @Override
     public void setDiceResult(int dice) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             diceLabel.setText("Dice roll: " + dice);
@@ -569,6 +773,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param e
      */
+    @Override
     public void setRequestMoneyEnabled(boolean e) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             reqMoneyButton.setEnabled(e);
@@ -579,6 +784,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param e
      */
+    @Override
     public void setBuyHotelEnabled(boolean e) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             buyHotelButton.setEnabled(e);
@@ -589,6 +795,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param e
      */
+    @Override
     public void setRequestBuildingEnabled(boolean e) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             reqBuildingButton.setEnabled(e);
@@ -599,6 +806,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param e
      */
+    @Override
     public void setBuyEntranceEnabled(boolean e) {
         javax.swing.SwingUtilities.invokeLater(() -> {
             buyEntranceButton.setEnabled(e);
@@ -609,6 +817,7 @@ public class GameUI extends javax.swing.JFrame {
      *
      * @param p
      */
+    @Override
     public void setWinner(int p) {
         stop();
         JOptionPane.showMessageDialog(this, "Player " + p + " has won the game!", "Game over", JOptionPane.PLAIN_MESSAGE);